@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.mapper;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.core.StandardWrapper;
+import org.apache.tomcat.util.buf.MessageBytes;
+
+/**
+ * Mapping of a request to a host, context and wrapper by {@link Mapper}.
+ * Same layout as the performance test in TestMapper.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+
+    @Param({"/foo/bar/blah/bobou/foo", "/foo/bar/index.jsp", "/foo/bar/blh"})
+    public String path;
+
+    private final Mapper mapper = new Mapper();
+    private final MappingData mappingData = new MappingData();
+    private final MessageBytes host = MessageBytes.newInstance();
+    private final MessageBytes uri = MessageBytes.newInstance();
+
+    @Setup
+    public void setup() {
+        Host blah = createHost("blah7");
+        for (int i = 0; i < 16; i++) {
+            mapper.addHost("host" + i + ".example.org", new String[0],
+                    createHost("blah" + i));
+        }
+        mapper.addHost("iowejoiejfoiew", new String[0], blah);
+        mapper.setDefaultHostName("iowejoiejfoiew");
+
+        mapper.addContextVersion("iowejoiejfoiew", blah, "",
+                "0", createContext("context0"), new String[0], null);
+        mapper.addContextVersion("iowejoiejfoiew", blah, "/foo",
+                "0", createContext("context1"), new String[0], null);
+        mapper.addContextVersion("iowejoiejfoiew", blah, "/foo/bar",
+                "0", createContext("context2"), new String[0], null);
+        mapper.addContextVersion("iowejoiejfoiew", blah, "/foo/bar/bla",
+                "0", createContext("context3"), new String[0], null);
+
+        mapper.addWrapper("iowejoiejfoiew", "/foo/bar", "0", "/fo/*",
+                createWrapper("wrapper0"), false, false);
+        mapper.addWrapper("iowejoiejfoiew", "/foo/bar", "0", "/",
+                createWrapper("wrapper1"), false, false);
+        mapper.addWrapper("iowejoiejfoiew", "/foo/bar", "0", "/blh",
+                createWrapper("wrapper2"), false, false);
+        mapper.addWrapper("iowejoiejfoiew", "/foo/bar", "0", "*.jsp",
+                createWrapper("wrapper3"), false, false);
+        mapper.addWrapper("iowejoiejfoiew", "/foo/bar", "0", "/blah/bou/*",
+                createWrapper("wrapper4"), false, false);
+        mapper.addWrapper("iowejoiejfoiew", "/foo/bar", "0", "/blah/bobou/*",
+                createWrapper("wrapper5"), false, false);
+
+        host.setString("iowejoiejfoiew");
+        uri.setString(path);
+        uri.toChars();
+        uri.getCharChunk().setLimit(-1);
+    }
+
+    @Benchmark
+    public MappingData map() throws Exception {
+        mappingData.recycle();
+        mapper.map(host, uri, null, mappingData);
+        return mappingData;
+    }
+
+
+    private static Host createHost(String name) {
+        Host host = new StandardHost();
+        host.setName(name);
+        return host;
+    }
+
+    private static Context createContext(String name) {
+        Context context = new StandardContext();
+        context.setName(name);
+        return context;
+    }
+
+    private static Wrapper createWrapper(String name) {
+        Wrapper wrapper = new StandardWrapper();
+        wrapper.setName(name);
+        return wrapper;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.coyote.Request;
+import org.apache.tomcat.util.net.NioChannel;
+import org.apache.tomcat.util.net.NioEndpoint;
+import org.apache.tomcat.util.net.SocketWrapper;
+
+/**
+ * Parsing of the request line and headers by {@link InternalNioInputBuffer}.
+ * The socket is replaced by an in-memory channel that returns the same
+ * request every time it is read.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NioInputBufferBenchmark {
+
+    private static final String REQUEST =
+            "GET /examples/servlets/servlet/RequestInfoExample?a=1&b=2 HTTP/1.1\r\n" +
+            "Host: localhost:8080\r\n" +
+            "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:31.0) Gecko/20100101 Firefox/31.0\r\n" +
+            "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" +
+            "Accept-Language: en-GB,en;q=0.5\r\n" +
+            "Accept-Encoding: gzip, deflate\r\n" +
+            "Cookie: JSESSIONID=0123456789ABCDEF0123456789ABCDEF; theme=dark\r\n" +
+            "Connection: keep-alive\r\n" +
+            "\r\n";
+
+    @Param({"false", "true"})
+    public boolean bypassAppBuffers;
+
+    private Request request;
+    private InternalNioInputBuffer inputBuffer;
+    private InMemoryChannel channel;
+    private SocketWrapper<NioChannel> wrapper;
+    private NioEndpoint endpoint;
+
+    @Setup
+    public void setup() {
+        endpoint = new NioEndpoint();
+        endpoint.getSocketProperties().setBypassAppBuffers(bypassAppBuffers);
+        channel = new InMemoryChannel(REQUEST.getBytes(StandardCharsets.ISO_8859_1));
+        wrapper = new SocketWrapper<NioChannel>(channel);
+        request = new Request();
+        inputBuffer = new InternalNioInputBuffer(request, 8192);
+    }
+
+    @Benchmark
+    public Request parseRequest() throws IOException {
+        channel.rewind();
+        inputBuffer.init(wrapper, endpoint);
+        if (!inputBuffer.parseRequestLine(false) || !inputBuffer.parseHeaders()) {
+            throw new IllegalStateException();
+        }
+        inputBuffer.recycle();
+        request.recycle();
+        return request;
+    }
+
+
+    private static class InMemoryChannel extends NioChannel {
+
+        private final byte[] data;
+        private int pos = 0;
+
+        public InMemoryChannel(byte[] data) {
+            super(null, new NioEndpoint.NioBufferHandler(8192, 8192, false));
+            this.data = data;
+        }
+
+        public void rewind() {
+            pos = 0;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int len = Math.min(dst.remaining(), data.length - pos);
+            dst.put(data, pos, len);
+            pos += len;
+            return len;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of frequently seen header values to String through
+ * {@link StringCache}, once the cache has been trained.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringCacheBenchmark {
+
+    private static final String[] VALUES = { "GET", "POST", "HTTP/1.1",
+            "keep-alive", "gzip, deflate", "text/html", "localhost:8080",
+            "en-GB,en;q=0.5", "application/x-www-form-urlencoded", "close" };
+
+    private final ByteChunk[] chunks = new ByteChunk[VALUES.length];
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        // The settings are static, an instance is only needed to reach them
+        StringCache settings = new StringCache();
+        settings.setByteEnabled(true);
+        settings.reset();
+        for (int i = 0; i < VALUES.length; i++) {
+            byte[] bytes = VALUES[i].getBytes();
+            chunks[i] = new ByteChunk();
+            chunks[i].setBytes(bytes, 0, bytes.length);
+        }
+        // Train the cache
+        for (int i = 0; i < 2 * settings.getTrainThreshold(); i++) {
+            StringCache.toString(chunks[i % chunks.length]);
+        }
+    }
+
+    @Benchmark
+    public String toStringCached() {
+        ByteChunk bc = chunks[next];
+        next = (next + 1) % chunks.length;
+        return StringCache.toString(bc);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.tomcat.util.buf.MessageBytes;
+
+/**
+ * Parsing of a Cookie header by {@link Cookies}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CookiesBenchmark {
+
+    private static final byte[] COOKIE = ("JSESSIONID=0123456789ABCDEF0123456789ABCDEF; " +
+            "theme=dark; _ga=GA1.2.123456789.1400000000; " +
+            "prefs=\"a=1,b=2\"; lang=en").getBytes();
+
+    private final MimeHeaders headers = new MimeHeaders();
+    private final Cookies cookies = new Cookies(headers);
+
+    @Setup
+    public void setup() {
+        MessageBytes mb = headers.addValue("Cookie");
+        mb.setBytes(COOKIE, 0, COOKIE.length);
+    }
+
+    @Benchmark
+    public int parse() {
+        cookies.recycle();
+        return cookies.getCookieCount();
+    }
+}
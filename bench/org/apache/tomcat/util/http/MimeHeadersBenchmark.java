@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.tomcat.util.buf.MessageBytes;
+
+/**
+ * Header lookup by name in {@link MimeHeaders}, for the first and last
+ * header of a typical browser request and for a missing header.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MimeHeadersBenchmark {
+
+    private static final String[] NAMES = { "Host", "User-Agent", "Accept",
+            "Accept-Language", "Accept-Encoding", "Cookie", "Connection",
+            "Referer", "Cache-Control", "If-Modified-Since", "DNT",
+            "Upgrade-Insecure-Requests" };
+
+    @Param({"Host", "upgrade-insecure-requests", "X-Forwarded-For"})
+    public String name;
+
+    private final MimeHeaders headers = new MimeHeaders();
+
+    @Setup
+    public void setup() {
+        for (String header : NAMES) {
+            byte[] value = "value".getBytes();
+            MessageBytes mb = headers.addValue(header);
+            mb.setBytes(value, 0, value.length);
+        }
+    }
+
+    @Benchmark
+    public MessageBytes getValue() {
+        return headers.getValue(name);
+    }
+}
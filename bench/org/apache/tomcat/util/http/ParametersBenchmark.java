@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding of a query string or form body by
+ * {@link Parameters#processParameters(byte[], int, int)}, followed by the
+ * lookup of one parameter. Escaped parameters are decoded in place so the
+ * bytes are restored before each invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParametersBenchmark {
+
+    @Param({"plain", "encoded"})
+    public String type;
+
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    private byte[] template;
+    private byte[] data;
+    private final Parameters parameters = new Parameters();
+
+    @Setup
+    public void setup() {
+        String query;
+        if ("plain".equals(type)) {
+            query = "id=12345&name=value&page=2&sort=date&order=desc&q=tomcat";
+        } else {
+            query = "id=12345&name=J%C3%BCrgen+M%C3%BCller&path=%2Fa%2Fb%2Fc" +
+                    "&q=apache+tomcat&email=user%40example.com";
+        }
+        template = query.getBytes();
+        data = new byte[template.length];
+        parameters.setLazy(lazy);
+        parameters.setEncoding("UTF-8");
+        parameters.setQueryStringEncoding("UTF-8");
+    }
+
+    @Benchmark
+    public String process() {
+        System.arraycopy(template, 0, data, 0, template.length);
+        parameters.recycle();
+        parameters.setEncoding("UTF-8");
+        parameters.processParameters(data, 0, data.length);
+        return parameters.getParameter("id");
+    }
+}
@@ -177,6 +177,12 @@ public class Connector extends LifecycleMBeanBase  {
      */
     protected int maxParameterCount = 10000;
 
+
+    /**
+     * Should parameter values only be decoded when they are requested?
+     */
+    protected boolean lazyParameterDecoding = false;
+
     /**
      * Maximum size of a POST which will be automatically parsed by the
      * container. 2MB by default.
@@ -401,6 +407,27 @@ public class Connector extends LifecycleMBeanBase  {
         setProperty("maxHeaderCount", String.valueOf(maxHeaderCount));
     }
 
+    /**
+     * Return <code>true</code> if the values of the parameters (GET plus POST)
+     * are only decoded when they are requested.
+     */
+    public boolean getLazyParameterDecoding() {
+        return lazyParameterDecoding;
+    }
+
+
+    /**
+     * Set whether the values of the parameters (GET plus POST) are only
+     * decoded when they are requested. Errors decoding a value are then only
+     * detected once it has been requested.
+     *
+     * @param lazyParameterDecoding The new setting
+     */
+    public void setLazyParameterDecoding(boolean lazyParameterDecoding) {
+        this.lazyParameterDecoding = lazyParameterDecoding;
+    }
+
+
     /**
      * Return the maximum number of parameters (GET plus POST) that will be
      * automatically parsed by the container. A value of less than 0 means no
@@ -542,11 +569,15 @@ public class Connector extends LifecycleMBeanBase  {
     public String getProtocol() {
 
         if ("org.apache.coyote.http11.Http11NioProtocol".equals
+            (getProtocolHandlerClassName())
+            || "org.apache.coyote.http11.Http11Nio2Protocol".equals
             (getProtocolHandlerClassName())
             || "org.apache.coyote.http11.Http11AprProtocol".equals
             (getProtocolHandlerClassName())) {
             return "HTTP/1.1";
         } else if ("org.apache.coyote.ajp.AjpNioProtocol".equals
+                   (getProtocolHandlerClassName())
+                   || "org.apache.coyote.ajp.AjpNio2Protocol".equals
                    (getProtocolHandlerClassName())
                    || "org.apache.coyote.ajp.AjpAprProtocol".equals
                    (getProtocolHandlerClassName())) {
@@ -1073,39 +1073,35 @@ public class CoyoteAdapter implements Adapter {
             return;
         }
 
-        // Parse session id from cookies
+        // Parse session id from cookies. The cookie headers are only parsed
+        // if they contain the name of the session cookie.
         Cookies serverCookies = req.getCookies();
-        int count = serverCookies.getCookieCount();
-        if (count <= 0) {
-            return;
-        }
-
         String sessionCookieName = SessionConfig.getSessionCookieName(context);
 
-        for (int i = 0; i < count; i++) {
+        int i = serverCookies.findCookie(sessionCookieName, 0);
+        while (i >= 0) {
             ServerCookie scookie = serverCookies.getCookie(i);
-            if (scookie.getName().equals(sessionCookieName)) {
-                // Override anything requested in the URL
-                if (!request.isRequestedSessionIdFromCookie()) {
-                    // Accept only the first session id cookie
+            // Override anything requested in the URL
+            if (!request.isRequestedSessionIdFromCookie()) {
+                // Accept only the first session id cookie
+                convertMB(scookie.getValue());
+                request.setRequestedSessionId
+                    (scookie.getValue().toString());
+                request.setRequestedSessionCookie(true);
+                request.setRequestedSessionURL(false);
+                if (log.isDebugEnabled()) {
+                    log.debug(" Requested cookie session id is " +
+                        request.getRequestedSessionId());
+                }
+            } else {
+                if (!request.isRequestedSessionIdValid()) {
+                    // Replace the session id until one is valid
                     convertMB(scookie.getValue());
                     request.setRequestedSessionId
                         (scookie.getValue().toString());
-                    request.setRequestedSessionCookie(true);
-                    request.setRequestedSessionURL(false);
-                    if (log.isDebugEnabled()) {
-                        log.debug(" Requested cookie session id is " +
-                            request.getRequestedSessionId());
-                    }
-                } else {
-                    if (!request.isRequestedSessionIdValid()) {
-                        // Replace the session id until one is valid
-                        convertMB(scookie.getValue());
-                        request.setRequestedSessionId
-                            (scookie.getValue().toString());
-                    }
                 }
             }
+            i = serverCookies.findCookie(sessionCookieName, i + 1);
         }
 
     }
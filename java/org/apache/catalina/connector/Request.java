@@ -27,6 +27,7 @@ import java.nio.charset.Charset;
 import java.security.Principal;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -86,6 +87,7 @@ import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.http.Cookies;
 import org.apache.tomcat.util.http.FastHttpDateFormat;
+import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.http.Parameters;
 import org.apache.tomcat.util.http.ServerCookie;
 import org.apache.tomcat.util.http.fileupload.FileItem;
@@ -170,6 +172,13 @@ public class Request
     protected Cookie[] cookies = null;
 
 
+    /**
+     * Array reused to hold the cookies of the next request with the same
+     * number of cookies, unless facades are recycled.
+     */
+    private Cookie[] cookiesBuffer = null;
+
+
     /**
      * The set of SimpleDateFormat formats to use in getDateHeader().
      *
@@ -214,6 +223,15 @@ public class Request
     protected final ArrayList<Locale> locales = new ArrayList<>();
 
 
+    /**
+     * The Accept-Language header value that was parsed last, and the Locales
+     * it produced. A keep-alive client usually sends the same value with
+     * every request so the parsed result is reused.
+     */
+    private String lastLocalesHeader = null;
+    private final ArrayList<Locale> lastLocales = new ArrayList<>();
+
+
     /**
      * Internal notes associated with this request by Catalina components
      * and event listeners.
@@ -490,6 +508,9 @@ public class Request
         attributes.clear();
         sslAttributesParsed = false;
         notes.clear();
+        if (cookies != null && cookies == cookiesBuffer) {
+            Arrays.fill(cookiesBuffer, null);
+        }
         cookies = null;
 
         if (session != null) {
@@ -505,7 +526,10 @@ public class Request
         requestedSessionId = null;
         requestedSessionURL = false;
 
-        if (Globals.IS_SECURITY_ENABLED || Connector.RECYCLE_FACADES) {
+        if (parameterMap.isLocked() &&
+                (Globals.IS_SECURITY_ENABLED || Connector.RECYCLE_FACADES)) {
+            // The map has been handed out, don't let the application see
+            // the parameters of the next request through it
             parameterMap = new ParameterMap<>();
         } else {
             parameterMap.setLocked(false);
@@ -2867,7 +2891,13 @@ public class Request
             return;
         }
 
-        cookies = new Cookie[count];
+        if (cookiesBuffer != null && cookiesBuffer.length == count &&
+                !Globals.IS_SECURITY_ENABLED && !Connector.RECYCLE_FACADES) {
+            cookies = cookiesBuffer;
+        } else {
+            cookies = new Cookie[count];
+            cookiesBuffer = cookies;
+        }
 
         int idx=0;
         for (int i = 0; i < count; i++) {
@@ -2913,6 +2943,7 @@ public class Request
         try {
             // Set this every time in case limit has been changed via JMX
             parameters.setLimit(getConnector().getMaxParameterCount());
+            parameters.setLazy(getConnector().getLazyParameterDecoding());
 
             // getCharacterEncoding() may have been overridden to search for
             // hidden form field containing request encoding
@@ -3090,6 +3121,29 @@ public class Request
 
         localesParsed = true;
 
+        // Common case: a single header with the same value as the previous
+        // request. Compare the raw header to avoid converting it to a String.
+        MimeHeaders headers = coyoteRequest.getMimeHeaders();
+        int pos = headers.findHeader("accept-language", 0);
+        if (pos >= 0 && headers.findHeader("accept-language", pos + 1) < 0) {
+            MessageBytes value = headers.getValue(pos);
+            if (lastLocalesHeader != null && value.equals(lastLocalesHeader)) {
+                for (int i = 0; i < lastLocales.size(); i++) {
+                    locales.add(lastLocales.get(i));
+                }
+                return;
+            }
+            String header = value.toString();
+            int start = locales.size();
+            parseLocalesHeader(header);
+            lastLocalesHeader = header;
+            lastLocales.clear();
+            for (int i = start; i < locales.size(); i++) {
+                lastLocales.add(locales.get(i));
+            }
+            return;
+        }
+
         Enumeration<String> values = getHeaders("accept-language");
 
         while (values.hasMoreElements()) {
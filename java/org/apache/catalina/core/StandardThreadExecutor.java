@@ -24,14 +24,25 @@ import org.apache.catalina.Executor;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.util.LifecycleMBeanBase;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
+import org.apache.tomcat.util.threads.AdaptivePoolSizer;
 import org.apache.tomcat.util.threads.ResizableExecutor;
 import org.apache.tomcat.util.threads.TaskQueue;
 import org.apache.tomcat.util.threads.TaskThreadFactory;
 import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
 
 public class StandardThreadExecutor extends LifecycleMBeanBase
         implements Executor, ResizableExecutor {
 
+    private static final Log log =
+        LogFactory.getLog(StandardThreadExecutor.class);
+
+    private static final StringManager sm =
+        StringManager.getManager(Constants.Package);
+
     // ---------------------------------------------- Properties
     /**
      * Default thread priority
@@ -68,6 +79,30 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
      */
     protected ThreadPoolExecutor executor = null;
 
+    /**
+     * The executor we use for this component when running tasks on virtual
+     * threads
+     */
+    protected VirtualThreadExecutor virtualExecutor = null;
+
+    /**
+     * Run tasks on virtual threads, if the JVM supports them?
+     */
+    protected boolean useVirtualThreads = false;
+
+    /**
+     * Adjust the maximum pool size between minSpareThreads and maxThreads
+     * based on queue time and throughput?
+     */
+    protected boolean adaptiveSizing = false;
+
+    /**
+     * Interval in milliseconds between two pool size adjustments
+     */
+    protected long adaptiveSizingInterval = 1000;
+
+    private AdaptivePoolSizer poolSizer = null;
+
     /**
      * the name of this thread pool
      */
@@ -116,6 +151,17 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
     @Override
     protected void startInternal() throws LifecycleException {
 
+        if (useVirtualThreads) {
+            if (VirtualThreadExecutor.isSupported()) {
+                virtualExecutor = new VirtualThreadExecutor(
+                        namePrefix, getMaxThreads(), maxQueueSize);
+                setState(LifecycleState.STARTING);
+                return;
+            }
+            log.warn(sm.getString(
+                    "standardThreadExecutor.noVirtualThreads", getName()));
+        }
+
         taskqueue = new TaskQueue(maxQueueSize);
         TaskThreadFactory tf = new TaskThreadFactory(namePrefix,daemon,getThreadPriority());
         executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), maxIdleTime, TimeUnit.MILLISECONDS,taskqueue, tf);
@@ -123,6 +169,12 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
             executor.prestartAllCoreThreads();
         }
         taskqueue.setParent(executor);
+        if (adaptiveSizing) {
+            poolSizer = new AdaptivePoolSizer(namePrefix, executor, this,
+                    getMinSpareThreads(), getMaxThreads());
+            poolSizer.setInterval(adaptiveSizingInterval);
+            poolSizer.start();
+        }
 
         setState(LifecycleState.STARTING);
     }
@@ -139,8 +191,12 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
     protected void stopInternal() throws LifecycleException {
 
         setState(LifecycleState.STOPPING);
+        if ( poolSizer != null ) poolSizer.stop();
+        poolSizer = null;
         if ( executor != null ) executor.shutdownNow();
+        if ( virtualExecutor != null ) virtualExecutor.shutdownNow();
         executor = null;
+        virtualExecutor = null;
         taskqueue = null;
     }
 
@@ -153,7 +209,9 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
 
     @Override
     public void execute(Runnable command, long timeout, TimeUnit unit) {
-        if ( executor != null ) {
+        if ( virtualExecutor != null ) {
+            virtualExecutor.execute(command,timeout,unit);
+        } else if ( executor != null ) {
             executor.execute(command,timeout,unit);
         } else {
             throw new IllegalStateException("StandardThreadExecutor not started.");
@@ -163,7 +221,9 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
 
     @Override
     public void execute(Runnable command) {
-        if ( executor != null ) {
+        if ( virtualExecutor != null ) {
+            virtualExecutor.execute(command);
+        } else if ( executor != null ) {
             try {
                 executor.execute(command);
             } catch (RejectedExecutionException rx) {
@@ -238,6 +298,12 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         if (executor != null) {
             executor.setMaximumPoolSize(maxThreads);
         }
+        if (virtualExecutor != null) {
+            virtualExecutor.resizePool(0, maxThreads);
+        }
+        if (poolSizer != null) {
+            poolSizer.setBounds(minSpareThreads, maxThreads);
+        }
     }
 
     public void setMinSpareThreads(int minSpareThreads) {
@@ -245,6 +311,9 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         if (executor != null) {
             executor.setCorePoolSize(minSpareThreads);
         }
+        if (poolSizer != null) {
+            poolSizer.setBounds(minSpareThreads, maxThreads);
+        }
     }
 
     public void setPrestartminSpareThreads(boolean prestartminSpareThreads) {
@@ -263,6 +332,33 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         return maxQueueSize;
     }
 
+    public boolean getUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    public boolean getAdaptiveSizing() {
+        return adaptiveSizing;
+    }
+
+    public void setAdaptiveSizing(boolean adaptiveSizing) {
+        this.adaptiveSizing = adaptiveSizing;
+    }
+
+    public long getAdaptiveSizingInterval() {
+        return adaptiveSizingInterval;
+    }
+
+    public void setAdaptiveSizingInterval(long adaptiveSizingInterval) {
+        this.adaptiveSizingInterval = adaptiveSizingInterval;
+        if (poolSizer != null) {
+            poolSizer.setInterval(adaptiveSizingInterval);
+        }
+    }
+
     public long getThreadRenewalDelay() {
         return threadRenewalDelay;
     }
@@ -277,10 +373,16 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
     // Statistics from the thread pool
     @Override
     public int getActiveCount() {
+        if (virtualExecutor != null) {
+            return virtualExecutor.getActiveCount();
+        }
         return (executor != null) ? executor.getActiveCount() : 0;
     }
 
     public long getCompletedTaskCount() {
+        if (virtualExecutor != null) {
+            return virtualExecutor.getCompletedTaskCount();
+        }
         return (executor != null) ? executor.getCompletedTaskCount() : 0;
     }
 
@@ -289,21 +391,32 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
     }
 
     public int getLargestPoolSize() {
+        if (virtualExecutor != null) {
+            return virtualExecutor.getLargestPoolSize();
+        }
         return (executor != null) ? executor.getLargestPoolSize() : 0;
     }
 
     @Override
     public int getPoolSize() {
+        if (virtualExecutor != null) {
+            return virtualExecutor.getPoolSize();
+        }
         return (executor != null) ? executor.getPoolSize() : 0;
     }
 
     public int getQueueSize() {
+        if (virtualExecutor != null) {
+            return virtualExecutor.getQueueSize();
+        }
         return (executor != null) ? executor.getQueue().size() : -1;
     }
 
 
     @Override
     public boolean resizePool(int corePoolSize, int maximumPoolSize) {
+        if (virtualExecutor != null)
+            return virtualExecutor.resizePool(corePoolSize, maximumPoolSize);
         if (executor == null)
             return false;
 
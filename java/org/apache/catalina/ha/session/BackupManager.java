@@ -77,6 +77,9 @@ public class BackupManager extends ClusterManagerBase
      */
     public BackupManager() {
         super();
+        // Sessions made primary by the replicated map are not added via
+        // add(Session) so they would be missing from the expiry index
+        useExpiryIndex = false;
     }
 
 
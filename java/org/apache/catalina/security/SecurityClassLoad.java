@@ -258,6 +258,10 @@ public final class SecurityClassLoad {
         // buf
         loader.loadClass(basePackage + "util.buf.HexUtils");
         loader.loadClass(basePackage + "util.buf.StringCache");
+        loader.loadClass(basePackage + "util.buf.StringCache$Cache");
+        loader.loadClass(basePackage + "util.buf.StringCache$Shard");
+        loader.loadClass(basePackage + "util.buf.StringCache$FrequencySketch");
+        loader.loadClass(basePackage + "util.buf.StringCache$Entry");
         loader.loadClass(basePackage + "util.buf.StringCache$ByteEntry");
         loader.loadClass(basePackage + "util.buf.StringCache$CharEntry");
         // http
@@ -30,8 +30,15 @@ import java.sql.Driver;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -49,6 +56,11 @@ import org.apache.tomcat.util.ExceptionUtils;
  * Implementation of the <code>Store</code> interface that stores
  * serialized session objects in a database.  Sessions that are
  * saved are still subject to being expired based on inactivity.
+ * <p>
+ * When a DataSource is used and <code>writeBehind</code> is enabled, saves
+ * and removals are queued, coalesced per session and written in JDBC batches
+ * by a background thread. Reads use connections from the DataSource
+ * concurrently and take queued writes into account.
  *
  * @author Bip Thelin
  * @version $Id: JDBCStore.java 1514281 2013-08-15 14:06:20Z violetagg $
@@ -181,6 +193,47 @@ public class JDBCStore extends StoreBase {
      */
     protected PreparedStatement preparedLoadSql = null;
 
+    /**
+     * Variable to hold the <code>saveMetadata()</code> prepared statement.
+     */
+    protected PreparedStatement preparedSaveMetadataSql = null;
+
+    // ------------------------------------------------------------- Write behind
+
+    /**
+     * Are writes queued and written in batches by a background thread?
+     */
+    protected boolean writeBehind = false;
+
+    /**
+     * The maximum time in milliseconds a queued write waits to be written.
+     */
+    protected int writeBehindDelay = 1000;
+
+    /**
+     * The maximum number of statements in a JDBC batch.
+     */
+    protected int writeBehindBatchSize = 100;
+
+    /**
+     * The queued writes, at most one per session. A <code>null</code> data
+     * array marks a removal.
+     */
+    private final ConcurrentMap<String,PendingWrite> pendingWrites =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Held while queued writes are written so that {@link #clear()} cannot
+     * be overtaken by them.
+     */
+    private final Object flushLock = new Object();
+
+    private final Object flushSignal = new Object();
+
+    private volatile Thread writeBehindThread = null;
+
+    private volatile boolean writeBehindActive = false;
+
     // ------------------------------------------------------------- Properties
 
     /**
@@ -459,6 +512,76 @@ public class JDBCStore extends StoreBase {
         return this.dataSourceName;
     }
 
+    /**
+     * Set whether saves and removals are queued and written in batches by a
+     * background thread. Only used with a DataSource.
+     *
+     * @param writeBehind <code>true</code> to queue writes
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        boolean oldWriteBehind = this.writeBehind;
+        this.writeBehind = writeBehind;
+        support.firePropertyChange("writeBehind",
+                Boolean.valueOf(oldWriteBehind),
+                Boolean.valueOf(this.writeBehind));
+    }
+
+    /**
+     * Return whether saves and removals are queued.
+     */
+    public boolean getWriteBehind() {
+        return this.writeBehind;
+    }
+
+    /**
+     * Set the maximum time in milliseconds a queued write waits before it is
+     * written.
+     *
+     * @param writeBehindDelay The new delay
+     */
+    public void setWriteBehindDelay(int writeBehindDelay) {
+        int oldWriteBehindDelay = this.writeBehindDelay;
+        this.writeBehindDelay = writeBehindDelay;
+        support.firePropertyChange("writeBehindDelay",
+                Integer.valueOf(oldWriteBehindDelay),
+                Integer.valueOf(this.writeBehindDelay));
+    }
+
+    /**
+     * Return the maximum time in milliseconds a queued write waits.
+     */
+    public int getWriteBehindDelay() {
+        return this.writeBehindDelay;
+    }
+
+    /**
+     * Set the maximum number of statements in a JDBC batch. Queued writes
+     * are written early once this many are waiting.
+     *
+     * @param writeBehindBatchSize The new batch size
+     */
+    public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+        int oldWriteBehindBatchSize = this.writeBehindBatchSize;
+        this.writeBehindBatchSize = writeBehindBatchSize;
+        support.firePropertyChange("writeBehindBatchSize",
+                Integer.valueOf(oldWriteBehindBatchSize),
+                Integer.valueOf(this.writeBehindBatchSize));
+    }
+
+    /**
+     * Return the maximum number of statements in a JDBC batch.
+     */
+    public int getWriteBehindBatchSize() {
+        return this.writeBehindBatchSize;
+    }
+
+    /**
+     * Return the number of writes waiting to be written.
+     */
+    public int getPendingWriteCount() {
+        return pendingWrites.size();
+    }
+
     // --------------------------------------------------------- Public Methods
 
     /**
@@ -470,6 +593,9 @@ public class JDBCStore extends StoreBase {
      */
     @Override
     public String[] keys() throws IOException {
+        if (writeBehindActive) {
+            return keysWriteBehind();
+        }
         ResultSet rst = null;
         String keys[] = null;
         synchronized (this) {
@@ -532,6 +658,9 @@ public class JDBCStore extends StoreBase {
      */
     @Override
     public int getSize() throws IOException {
+        if (writeBehindActive) {
+            return keysWriteBehind().length;
+        }
         int size = 0;
         ResultSet rst = null;
 
@@ -591,6 +720,9 @@ public class JDBCStore extends StoreBase {
     @Override
     public Session load(String id)
             throws ClassNotFoundException, IOException {
+        if (writeBehindActive) {
+            return loadWriteBehind(id);
+        }
         ResultSet rst = null;
         StandardSession _session = null;
         Loader loader = null;
@@ -611,9 +743,11 @@ public class JDBCStore extends StoreBase {
                 try {
                     if (preparedLoadSql == null) {
                         String loadSql = "SELECT " + sessionIdCol + ", "
-                                + sessionDataCol + " FROM " + sessionTable
-                                + " WHERE " + sessionIdCol + " = ? AND "
-                                + sessionAppCol + " = ?";
+                                + sessionDataCol + ", "
+                                + sessionLastAccessedCol + ", "
+                                + sessionMaxInactiveCol + " FROM "
+                                + sessionTable + " WHERE " + sessionIdCol
+                                + " = ? AND " + sessionAppCol + " = ?";
                         preparedLoadSql = _conn.prepareStatement(loadSql);
                     }
 
@@ -645,6 +779,7 @@ public class JDBCStore extends StoreBase {
                         _session = (StandardSession) manager.createEmptySession();
                         _session.readObjectData(ois);
                         _session.setManager(manager);
+                        applyMetadata(_session, rst.getLong(3), rst.getInt(4));
                       } else if (manager.getContext().getLogger().isDebugEnabled()) {
                         manager.getContext().getLogger().debug(getStoreName() + ": No persisted data object found");
                     }
@@ -691,6 +826,14 @@ public class JDBCStore extends StoreBase {
     @Override
     public void remove(String id) throws IOException {
 
+        if (writeBehindActive) {
+            queue(id, new PendingWrite(null, false, 0, 0));
+            if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".removing", id, sessionTable));
+            }
+            return;
+        }
+
         synchronized (this) {
             int numberOfTries = 2;
             while (numberOfTries > 0) {
@@ -750,6 +893,11 @@ public class JDBCStore extends StoreBase {
     @Override
     public void clear() throws IOException {
 
+        if (writeBehindActive) {
+            clearWriteBehind();
+            return;
+        }
+
         synchronized (this) {
             int numberOfTries = 2;
             while (numberOfTries > 0) {
@@ -789,6 +937,17 @@ public class JDBCStore extends StoreBase {
      */
     @Override
     public void save(Session session) throws IOException {
+        if (writeBehindActive) {
+            queue(session.getIdInternal(), new PendingWrite(
+                    serialize(session), session.isValid(),
+                    session.getMaxInactiveInterval(),
+                    session.getLastAccessedTime()));
+            if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".saving",
+                        session.getIdInternal(), sessionTable));
+            }
+            return;
+        }
         ObjectOutputStream oos = null;
         ByteArrayOutputStream bos = null;
         ByteArrayInputStream bis = null;
@@ -867,6 +1026,60 @@ public class JDBCStore extends StoreBase {
         }
     }
 
+    /**
+     * Update the validity, maximum inactive interval and last access time
+     * columns of a stored session without rewriting its data.
+     *
+     * @param session the session to be updated
+     * @return <code>true</code> if the session was found and updated, or a
+     *         complete save of it is queued and has been updated instead
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public boolean saveMetadata(Session session) throws IOException {
+        String id = session.getIdInternal();
+        if (writeBehindActive) {
+            return saveMetadataWriteBehind(session);
+        }
+
+        boolean updated = false;
+        synchronized (this) {
+            int numberOfTries = 2;
+            while (numberOfTries > 0) {
+                Connection _conn = getConnection();
+                if (_conn == null) {
+                    return false;
+                }
+
+                try {
+                    if (preparedSaveMetadataSql == null) {
+                        preparedSaveMetadataSql =
+                                _conn.prepareStatement(getSaveMetadataSql());
+                    }
+                    setMetadataParameters(preparedSaveMetadataSql, id,
+                            session.isValid(), session.getMaxInactiveInterval(),
+                            session.getLastAccessedTimeInternal());
+                    updated = preparedSaveMetadataSql.executeUpdate() > 0;
+                    // Break out after the finally block
+                    numberOfTries = 0;
+                } catch (SQLException e) {
+                    manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+                    if (dbConnection != null)
+                        close(dbConnection);
+                } finally {
+                    release(_conn);
+                }
+                numberOfTries--;
+            }
+        }
+
+        if (updated && manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".savingMetadata",
+                    id, sessionTable));
+        }
+        return updated;
+    }
+
     // --------------------------------------------------------- Protected Methods
 
     /**
@@ -907,19 +1120,7 @@ public class JDBCStore extends StoreBase {
         if (dbConnection != null)
             return (dbConnection);
 
-        if (dataSourceName != null && dataSource == null) {
-            Context initCtx;
-            try {
-                initCtx = new InitialContext();
-                Context envCtx = (Context) initCtx.lookup("java:comp/env");
-                this.dataSource = (DataSource) envCtx.lookup(this.dataSourceName);
-            } catch (NamingException e) {
-                manager.getContext().getLogger().error(
-                        sm.getString(getStoreName() + ".wrongDataSource",
-                                this.dataSourceName), e);
-           }
-        }
-
+        DataSource dataSource = getDataSource();
         if (dataSource != null) {
             return dataSource.getConnection();
         }
@@ -953,6 +1154,28 @@ public class JDBCStore extends StoreBase {
 
     }
 
+    /**
+     * Look up the DataSource if one is configured and has not yet been found.
+     *
+     * @return the DataSource or <code>null</code> if none is configured or it
+     *         could not be found
+     */
+    protected DataSource getDataSource() {
+        if (dataSourceName != null && dataSource == null) {
+            Context initCtx;
+            try {
+                initCtx = new InitialContext();
+                Context envCtx = (Context) initCtx.lookup("java:comp/env");
+                this.dataSource = (DataSource) envCtx.lookup(this.dataSourceName);
+            } catch (NamingException e) {
+                manager.getContext().getLogger().error(
+                        sm.getString(getStoreName() + ".wrongDataSource",
+                                this.dataSourceName), e);
+           }
+        }
+        return dataSource;
+    }
+
     /**
      * Close the specified database connection.
      *
@@ -1006,6 +1229,13 @@ public class JDBCStore extends StoreBase {
         }
         this.preparedLoadSql = null;
 
+        try {
+            preparedSaveMetadataSql.close();
+        } catch (Throwable f) {
+            ExceptionUtils.handleThrowable(f);
+        }
+        this.preparedSaveMetadataSql = null;
+
         // Commit if autoCommit is false
         try {
             if (!dbConnection.getAutoCommit()) {
@@ -1038,6 +1268,462 @@ public class JDBCStore extends StoreBase {
         }
     }
 
+    // ----------------------------------------------------- Write behind methods
+
+    /**
+     * Queue a save or removal, replacing any write already queued for the
+     * same session.
+     */
+    private void queue(String id, PendingWrite write) {
+        pendingWrites.put(id, write);
+        if (pendingWrites.size() >= writeBehindBatchSize) {
+            synchronized (flushSignal) {
+                flushSignal.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Write the queued writes to the database in batches. Writes stay in the
+     * queue, where reads can find them, until they have been committed. The
+     * writes of a batch that fails are retried one at a time. Those that
+     * still fail are dropped if any other write succeeded, as the database is
+     * then available and the failure must be caused by the write itself.
+     * Otherwise they stay queued.
+     *
+     * @return <code>true</code> if all the writes that were queued when this
+     *         method was called have been written
+     */
+    protected boolean flushWrites() {
+        synchronized (flushLock) {
+            List<String> ids = new ArrayList<>();
+            List<PendingWrite> writes = new ArrayList<>();
+            for (Map.Entry<String,PendingWrite> entry : pendingWrites.entrySet()) {
+                ids.add(entry.getKey());
+                writes.add(entry.getValue());
+            }
+            boolean written = false;
+            List<Integer> failed = new ArrayList<>();
+            for (int start = 0; start < ids.size(); start += writeBehindBatchSize) {
+                int end = Math.min(ids.size(), start + writeBehindBatchSize);
+                if (writeBatch(ids.subList(start, end), writes.subList(start, end))) {
+                    for (int i = start; i < end; i++) {
+                        written(ids.get(i), writes.get(i));
+                    }
+                    written = true;
+                    continue;
+                }
+                for (int i = start; i < end; i++) {
+                    if (end - start > 1 && writeBatch(ids.subList(i, i + 1),
+                            writes.subList(i, i + 1))) {
+                        written(ids.get(i), writes.get(i));
+                        written = true;
+                    } else {
+                        failed.add(Integer.valueOf(i));
+                    }
+                }
+            }
+            if (written) {
+                for (Integer i : failed) {
+                    String id = ids.get(i.intValue());
+                    manager.getContext().getLogger().error(sm.getString(
+                            getStoreName() + ".writeBehindDropped", id));
+                    written(id, writes.get(i.intValue()));
+                }
+            }
+            return failed.isEmpty();
+        }
+    }
+
+    private void written(String id, PendingWrite write) {
+        // A newer write for the same session stays queued
+        pendingWrites.remove(id, write);
+    }
+
+    /**
+     * Write one batch in a single transaction. Saves are written as an
+     * update, followed by an insert for any session that was not already in
+     * the table.
+     */
+    private boolean writeBatch(List<String> ids, List<PendingWrite> writes) {
+        DataSource dataSource = getDataSource();
+        if (dataSource == null) {
+            return false;
+        }
+        Connection conn = null;
+        PreparedStatement removeStmt = null;
+        PreparedStatement updateStmt = null;
+        PreparedStatement insertStmt = null;
+        try {
+            conn = dataSource.getConnection();
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                List<Integer> saves = new ArrayList<>();
+                for (int i = 0; i < ids.size(); i++) {
+                    if (writes.get(i).data == null) {
+                        if (removeStmt == null) {
+                            removeStmt = conn.prepareStatement("DELETE FROM "
+                                    + sessionTable + " WHERE " + sessionIdCol
+                                    + " = ?  AND " + sessionAppCol + " = ?");
+                        }
+                        removeStmt.setString(1, ids.get(i));
+                        removeStmt.setString(2, getName());
+                        removeStmt.addBatch();
+                    } else {
+                        if (updateStmt == null) {
+                            updateStmt = conn.prepareStatement("UPDATE "
+                                    + sessionTable + " SET " + sessionDataCol
+                                    + " = ?, " + sessionValidCol + " = ?, "
+                                    + sessionMaxInactiveCol + " = ?, "
+                                    + sessionLastAccessedCol + " = ? WHERE "
+                                    + sessionIdCol + " = ? AND "
+                                    + sessionAppCol + " = ?");
+                        }
+                        setSaveParameters(updateStmt, ids.get(i), writes.get(i), false);
+                        updateStmt.addBatch();
+                        saves.add(Integer.valueOf(i));
+                    }
+                }
+                if (removeStmt != null) {
+                    removeStmt.executeBatch();
+                }
+                if (updateStmt != null) {
+                    int[] counts = updateStmt.executeBatch();
+                    for (int j = 0; j < counts.length; j++) {
+                        int i = saves.get(j).intValue();
+                        int count = counts[j];
+                        if (count == Statement.SUCCESS_NO_INFO) {
+                            // The driver did not say, so find out
+                            setSaveParameters(updateStmt, ids.get(i), writes.get(i), false);
+                            count = updateStmt.executeUpdate();
+                        }
+                        if (count == 0) {
+                            if (insertStmt == null) {
+                                insertStmt = conn.prepareStatement("INSERT INTO "
+                                        + sessionTable + " (" + sessionDataCol
+                                        + ", " + sessionValidCol + ", "
+                                        + sessionMaxInactiveCol + ", "
+                                        + sessionLastAccessedCol + ", "
+                                        + sessionIdCol + ", " + sessionAppCol
+                                        + ") VALUES (?, ?, ?, ?, ?, ?)");
+                            }
+                            setSaveParameters(insertStmt, ids.get(i), writes.get(i), true);
+                        }
+                    }
+                    if (insertStmt != null) {
+                        insertStmt.executeBatch();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+            return true;
+        } catch (SQLException e) {
+            manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+            return false;
+        } finally {
+            closeQuietly(removeStmt);
+            closeQuietly(updateStmt);
+            closeQuietly(insertStmt);
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    private void setSaveParameters(PreparedStatement stmt, String id,
+            PendingWrite write, boolean addBatch) throws SQLException {
+        stmt.setBinaryStream(1, new ByteArrayInputStream(write.data),
+                write.data.length);
+        stmt.setString(2, write.valid ? "1" : "0");
+        stmt.setInt(3, write.maxInactiveInterval);
+        stmt.setLong(4, write.lastAccessedTime);
+        stmt.setString(5, id);
+        stmt.setString(6, getName());
+        if (addBatch) {
+            stmt.addBatch();
+        }
+    }
+
+    /**
+     * Update the metadata of a complete save that is already queued, or else
+     * update the stored row straight away. A metadata update is never queued
+     * on its own as the row it applies to might not exist by the time it is
+     * written.
+     */
+    private boolean saveMetadataWriteBehind(Session session) {
+        String id = session.getIdInternal();
+        boolean valid = session.isValid();
+        int maxInactiveInterval = session.getMaxInactiveInterval();
+        long lastAccessedTime = session.getLastAccessedTimeInternal();
+        PendingWrite current;
+        while ((current = pendingWrites.get(id)) != null) {
+            if (current.data == null) {
+                // Removal queued
+                return false;
+            }
+            PendingWrite merged = new PendingWrite(current.data, valid,
+                    maxInactiveInterval, lastAccessedTime);
+            if (pendingWrites.replace(id, current, merged)) {
+                return true;
+            }
+        }
+
+        DataSource dataSource = getDataSource();
+        if (dataSource == null) {
+            return false;
+        }
+        boolean updated = false;
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        try {
+            conn = dataSource.getConnection();
+            stmt = conn.prepareStatement(getSaveMetadataSql());
+            setMetadataParameters(stmt, id, valid, maxInactiveInterval,
+                    lastAccessedTime);
+            updated = stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+        } finally {
+            closeQuietly(null, stmt, conn);
+        }
+        current = pendingWrites.get(id);
+        if (current != null && current.data == null) {
+            // Removed while the row was being updated
+            return false;
+        }
+        if (updated && manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".savingMetadata",
+                    id, sessionTable));
+        }
+        return updated;
+    }
+
+    private String getSaveMetadataSql() {
+        return "UPDATE " + sessionTable + " SET " + sessionValidCol + " = ?, "
+                + sessionMaxInactiveCol + " = ?, " + sessionLastAccessedCol
+                + " = ? WHERE " + sessionIdCol + " = ? AND " + sessionAppCol
+                + " = ?";
+    }
+
+    private void setMetadataParameters(PreparedStatement stmt, String id,
+            boolean valid, int maxInactiveInterval, long lastAccessedTime)
+            throws SQLException {
+        stmt.setString(1, valid ? "1" : "0");
+        stmt.setInt(2, maxInactiveInterval);
+        stmt.setLong(3, lastAccessedTime);
+        stmt.setString(4, id);
+        stmt.setString(5, getName());
+    }
+
+    private static void closeQuietly(Statement stmt) {
+        if (stmt != null) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Read the stored session identifiers with a connection of its own and
+     * apply the queued writes.
+     */
+    private String[] keysWriteBehind() {
+        Set<String> keys = new HashSet<>();
+        DataSource dataSource = getDataSource();
+        if (dataSource != null) {
+            Connection conn = null;
+            PreparedStatement stmt = null;
+            ResultSet rst = null;
+            try {
+                conn = dataSource.getConnection();
+                stmt = conn.prepareStatement("SELECT " + sessionIdCol
+                        + " FROM " + sessionTable + " WHERE "
+                        + sessionAppCol + " = ?");
+                stmt.setString(1, getName());
+                rst = stmt.executeQuery();
+                while (rst.next()) {
+                    keys.add(rst.getString(1));
+                }
+            } catch (SQLException e) {
+                manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+            } finally {
+                closeQuietly(rst, stmt, conn);
+            }
+        }
+        for (Map.Entry<String,PendingWrite> entry : pendingWrites.entrySet()) {
+            PendingWrite write = entry.getValue();
+            if (write.data == null) {
+                keys.remove(entry.getKey());
+            } else {
+                keys.add(entry.getKey());
+            }
+        }
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    /**
+     * Load a session from the queued writes or else with a connection of its
+     * own, so that loads do not wait for each other.
+     */
+    private Session loadWriteBehind(String id)
+            throws ClassNotFoundException, IOException {
+        PendingWrite write = pendingWrites.get(id);
+        if (write != null) {
+            if (write.data == null) {
+                return null;
+            }
+            if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".loading",
+                        id, sessionTable));
+            }
+            StandardSession session =
+                    deserialize(new ByteArrayInputStream(write.data));
+            applyMetadata(session, write.lastAccessedTime,
+                    write.maxInactiveInterval);
+            return session;
+        }
+        DataSource dataSource = getDataSource();
+        if (dataSource == null) {
+            return null;
+        }
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rst = null;
+        try {
+            conn = dataSource.getConnection();
+            stmt = conn.prepareStatement("SELECT " + sessionIdCol + ", "
+                    + sessionDataCol + ", " + sessionLastAccessedCol + ", "
+                    + sessionMaxInactiveCol + " FROM " + sessionTable
+                    + " WHERE " + sessionIdCol + " = ? AND " + sessionAppCol
+                    + " = ?");
+            stmt.setString(1, id);
+            stmt.setString(2, getName());
+            rst = stmt.executeQuery();
+            if (rst.next()) {
+                if (manager.getContext().getLogger().isDebugEnabled()) {
+                    manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".loading",
+                            id, sessionTable));
+                }
+                StandardSession session =
+                        deserialize(new BufferedInputStream(rst.getBinaryStream(2)));
+                applyMetadata(session, rst.getLong(3), rst.getInt(4));
+                return session;
+            } else if (manager.getContext().getLogger().isDebugEnabled()) {
+                manager.getContext().getLogger().debug(getStoreName() + ": No persisted data object found");
+            }
+        } catch (SQLException e) {
+            manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+        } finally {
+            closeQuietly(rst, stmt, conn);
+        }
+        return null;
+    }
+
+    /**
+     * Discard the queued writes and remove the stored sessions.
+     */
+    private void clearWriteBehind() {
+        synchronized (flushLock) {
+            pendingWrites.clear();
+            DataSource dataSource = getDataSource();
+            if (dataSource == null) {
+                return;
+            }
+            Connection conn = null;
+            PreparedStatement stmt = null;
+            try {
+                conn = dataSource.getConnection();
+                stmt = conn.prepareStatement("DELETE FROM " + sessionTable
+                        + " WHERE " + sessionAppCol + " = ?");
+                stmt.setString(1, getName());
+                stmt.execute();
+            } catch (SQLException e) {
+                manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+            } finally {
+                closeQuietly(null, stmt, conn);
+            }
+        }
+    }
+
+    private static void closeQuietly(ResultSet rst, Statement stmt,
+            Connection conn) {
+        if (rst != null) {
+            try {
+                rst.close();
+            } catch (SQLException e) {
+                // Ignore
+            }
+        }
+        closeQuietly(stmt);
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private byte[] serialize(Session session) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos =
+                new ObjectOutputStream(new BufferedOutputStream(bos));
+        try {
+            ((StandardSession) session).writeObjectData(oos);
+        } finally {
+            oos.close();
+        }
+        return bos.toByteArray();
+    }
+
+    private StandardSession deserialize(InputStream is)
+            throws ClassNotFoundException, IOException {
+        Loader loader = null;
+        ClassLoader classLoader = null;
+        ObjectInputStream ois = null;
+        org.apache.catalina.Context context = manager.getContext();
+        ClassLoader oldThreadContextCL = Thread.currentThread().getContextClassLoader();
+        try {
+            if (context != null) {
+                loader = context.getLoader();
+            }
+            if (loader != null) {
+                classLoader = loader.getClassLoader();
+            }
+            if (classLoader != null) {
+                Thread.currentThread().setContextClassLoader(classLoader);
+                ois = new CustomObjectInputStream(is, classLoader);
+            } else {
+                ois = new ObjectInputStream(is);
+            }
+            StandardSession session = (StandardSession) manager.createEmptySession();
+            session.readObjectData(ois);
+            session.setManager(manager);
+            return session;
+        } finally {
+            if (ois != null) {
+                try {
+                    ois.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+            Thread.currentThread().setContextClassLoader(oldThreadContextCL);
+        }
+    }
+
     /**
      * Start this component and implement the requirements
      * of {@link org.apache.catalina.util.LifecycleBase#startInternal()}.
@@ -1051,6 +1737,17 @@ public class JDBCStore extends StoreBase {
         if (dataSourceName == null) {
             // If not using a connection pool, open a connection to the database
             this.dbConnection = getConnection();
+            if (writeBehind) {
+                manager.getContext().getLogger().warn(
+                        sm.getString(getStoreName() + ".writeBehindNoDataSource"));
+            }
+        } else if (writeBehind) {
+            writeBehindActive = true;
+            Thread thread = new Thread(new WriteBehindProcessor(),
+                    getThreadName() + "-WriteBehind[" + getName() + "]");
+            thread.setDaemon(true);
+            writeBehindThread = thread;
+            thread.start();
         }
 
         super.startInternal();
@@ -1068,6 +1765,26 @@ public class JDBCStore extends StoreBase {
 
         super.stopInternal();
 
+        Thread thread = writeBehindThread;
+        if (thread != null) {
+            writeBehindThread = null;
+            synchronized (flushSignal) {
+                flushSignal.notifyAll();
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+            if (!flushWrites()) {
+                manager.getContext().getLogger().error(sm.getString(
+                        getStoreName() + ".writeBehindUnflushed",
+                        Integer.valueOf(pendingWrites.size())));
+            }
+            pendingWrites.clear();
+            writeBehindActive = false;
+        }
+
         // Close and release everything associated with our db.
         if (dbConnection != null) {
             try {
@@ -1078,4 +1795,51 @@ public class JDBCStore extends StoreBase {
             close(dbConnection);
         }
     }
+
+
+    /**
+     * A queued save, or a removal if <code>data</code> is <code>null</code>.
+     */
+    private static final class PendingWrite {
+        private final byte[] data;
+        private final boolean valid;
+        private final int maxInactiveInterval;
+        private final long lastAccessedTime;
+
+        private PendingWrite(byte[] data, boolean valid,
+                int maxInactiveInterval, long lastAccessedTime) {
+            this.data = data;
+            this.valid = valid;
+            this.maxInactiveInterval = maxInactiveInterval;
+            this.lastAccessedTime = lastAccessedTime;
+        }
+    }
+
+    /**
+     * Writes the queued writes once <code>writeBehindDelay</code> has passed
+     * or <code>writeBehindBatchSize</code> writes are waiting.
+     */
+    protected class WriteBehindProcessor implements Runnable {
+
+        @Override
+        public void run() {
+            boolean failed = false;
+            while (writeBehindThread == Thread.currentThread()) {
+                synchronized (flushSignal) {
+                    if (failed || pendingWrites.size() < writeBehindBatchSize) {
+                        try {
+                            flushSignal.wait(writeBehindDelay);
+                        } catch (InterruptedException e) {
+                            // Ignore
+                        }
+                    }
+                }
+                if (writeBehindThread != Thread.currentThread()) {
+                    // The final flush is made by stopInternal()
+                    break;
+                }
+                failed = !flushWrites();
+            }
+        }
+    }
 }
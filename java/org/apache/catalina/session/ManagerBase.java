@@ -154,6 +154,19 @@ public abstract class ManagerBase extends LifecycleMBeanBase
      */
     protected Map<String, Session> sessions = new ConcurrentHashMap<>();
 
+    /**
+     * The currently active Sessions for this Manager, indexed by the time at
+     * which they may expire.
+     */
+    protected final SessionExpiryIndex expiryIndex = new SessionExpiryIndex();
+
+    /**
+     * Should {@link #expiryIndex} be used to find expired sessions? Managers
+     * whose session map is also filled by other means than
+     * {@link #add(Session)} must disable it so that all sessions are checked.
+     */
+    protected boolean useExpiryIndex = true;
+
     // Number of sessions created by this manager
     protected long sessionCounter=0;
 
@@ -512,16 +525,10 @@ public abstract class ManagerBase extends LifecycleMBeanBase
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session sessions[] = findSessions();
-        int expireHere = 0 ;
 
         if(log.isDebugEnabled())
-            log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
-        for (int i = 0; i < sessions.length; i++) {
-            if (sessions[i]!=null && !sessions[i].isValid()) {
-                expireHere++;
-            }
-        }
+            log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.size());
+        int expireHere = expireDueSessions(timeNow);
         long timeEnd = System.currentTimeMillis();
         if(log.isDebugEnabled())
              log.debug("End expire sessions " + getName() + " processingTime " + (timeEnd - timeNow) + " expired sessions: " + expireHere);
@@ -529,6 +536,59 @@ public abstract class ManagerBase extends LifecycleMBeanBase
 
     }
 
+    /**
+     * Check the sessions that the expiry index reports as due and expire
+     * those that are no longer valid. Sessions that are still valid, for
+     * example because they have been accessed since they were indexed, are
+     * put back into the index.
+     *
+     * @param timeNow The current time
+     * @return the number of sessions found to be no longer valid
+     */
+    protected int expireDueSessions(long timeNow) {
+        int expireHere = 0;
+        if (!useExpiryIndex) {
+            Session sessions[] = findSessions();
+            for (int i = 0; i < sessions.length; i++) {
+                if (sessions[i]!=null && !sessions[i].isValid()) {
+                    expireHere++;
+                }
+            }
+            return expireHere;
+        }
+        for (Session session : expiryIndex.pollDue(timeNow)) {
+            String id = session.getIdInternal();
+            if (id == null || sessions.get(id) != session) {
+                // No longer managed here
+                continue;
+            }
+            if (!session.isValid()) {
+                expireHere++;
+            } else {
+                expiryIndex.reschedule(session, timeNow);
+            }
+        }
+        return expireHere;
+    }
+
+
+    /**
+     * Notify this manager that the time at which the session expires may have
+     * changed.
+     *
+     * @param session The session that has been accessed or reconfigured
+     */
+    public void sessionExpiryChanged(Session session) {
+        if (!useExpiryIndex) {
+            return;
+        }
+        String id = session.getIdInternal();
+        if (id != null && sessions.get(id) == session) {
+            expiryIndex.update(session);
+        }
+    }
+
+
     @Override
     protected void initInternal() throws LifecycleException {
 
@@ -579,6 +639,9 @@ public abstract class ManagerBase extends LifecycleMBeanBase
     public void add(Session session) {
 
         sessions.put(session.getIdInternal(), session);
+        if (useExpiryIndex) {
+            expiryIndex.update(session);
+        }
         int size = getActiveSessions();
         if( size > maxActive ) {
             synchronized(maxActiveUpdateLock) {
@@ -733,6 +796,7 @@ public abstract class ManagerBase extends LifecycleMBeanBase
         if (session.getIdInternal() != null) {
             sessions.remove(session.getIdInternal());
         }
+        expiryIndex.remove(session);
     }
 
 
@@ -0,0 +1,805 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.ServletContext;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Loader;
+import org.apache.catalina.Session;
+import org.apache.catalina.util.CustomObjectInputStream;
+
+/**
+ * Concrete implementation of the <b>Store</b> interface that appends saved
+ * Sessions to memory-mapped segment files in a configured directory. An
+ * in-memory index records where the latest copy of each Session is, so
+ * {@link #keys()} and {@link #load(String)} do not need to touch the file
+ * system. Removing a Session appends a marker record so that the Session is
+ * not restored when the Store is next started. {@link #saveMetadata(Session)}
+ * appends a record of the access time and maximum inactive interval only.
+ * <p>
+ * Once a segment is full a new one is started. Segments in which no more
+ * than half of the space is used by current Sessions are compacted during
+ * background processing by copying the current records to the newest
+ * segment and deleting the old segment file.
+ */
+public final class MappedFileStore extends StoreBase {
+
+    // ----------------------------------------------------- Constants
+
+
+    /**
+     * The extension to use for segment filenames.
+     */
+    private static final String FILE_EXT = ".segment";
+
+    private static final byte TYPE_SAVE = 1;
+    private static final byte TYPE_REMOVE = 2;
+    private static final byte TYPE_METADATA = 3;
+
+    /**
+     * Record length, type, last access time and maximum inactive interval.
+     * The session ID and the serialized session follow.
+     */
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 4;
+
+
+    // ----------------------------------------------------- Instance Variables
+
+
+    /**
+     * The pathname of the directory in which Sessions are stored.
+     * This may be an absolute pathname, or a relative path that is
+     * resolved against the temporary work directory for this application.
+     */
+    private String directory = ".";
+
+
+    /**
+     * A File representing the directory in which Sessions are stored.
+     */
+    private File directoryFile = null;
+
+
+    /**
+     * The size of each segment file.
+     */
+    private int segmentSize = 16 * 1024 * 1024;
+
+
+    /**
+     * Name to register for this Store, used for logging.
+     */
+    private static final String storeName = "mappedFileStore";
+
+
+    /**
+     * Name to register for the background thread.
+     */
+    private static final String threadName = "MappedFileStore";
+
+
+    /**
+     * The location of the latest record of each stored Session.
+     */
+    private final Map<String,Record> index = new ConcurrentHashMap<>();
+
+
+    /**
+     * The segments, oldest first. The last one is the one being written.
+     * Guarded by {@link #lock}.
+     */
+    private final List<Segment> segments = new ArrayList<>();
+
+    private long nextSequence = 0;
+
+    private final Object lock = new Object();
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Return the directory path for this Store.
+     */
+    public String getDirectory() {
+        return (directory);
+    }
+
+
+    /**
+     * Set the directory path for this Store.
+     *
+     * @param path The new directory path
+     */
+    public void setDirectory(String path) {
+        String oldDirectory = this.directory;
+        this.directory = path;
+        this.directoryFile = null;
+        support.firePropertyChange("directory", oldDirectory,
+                                   this.directory);
+    }
+
+
+    /**
+     * Return the size in bytes of each segment file.
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+
+    /**
+     * Set the size in bytes of each segment file. A Session that is larger
+     * than this is written to a segment of its own.
+     *
+     * @param segmentSize The new segment size
+     */
+    public void setSegmentSize(int segmentSize) {
+        int oldSegmentSize = this.segmentSize;
+        this.segmentSize = segmentSize;
+        support.firePropertyChange("segmentSize",
+                Integer.valueOf(oldSegmentSize),
+                Integer.valueOf(this.segmentSize));
+    }
+
+
+    /**
+     * Return the number of segment files currently in use.
+     */
+    public int getSegmentCount() {
+        synchronized (lock) {
+            return segments.size();
+        }
+    }
+
+
+    /**
+     * Return the thread name for this Store.
+     */
+    public String getThreadName() {
+        return(threadName);
+    }
+
+
+    /**
+     * Return the name for this Store, used for logging.
+     */
+    @Override
+    public String getStoreName() {
+        return(storeName);
+    }
+
+
+    /**
+     * Return the number of Sessions present in this Store.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public int getSize() throws IOException {
+        return index.size();
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+
+    /**
+     * Remove all of the Sessions in this Store.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public void clear() throws IOException {
+        synchronized (lock) {
+            index.clear();
+            for (Segment segment : segments) {
+                delete(segment);
+            }
+            segments.clear();
+            segments.add(createSegment(segmentSize));
+        }
+    }
+
+
+    /**
+     * Return an array containing the session identifiers of all Sessions
+     * currently saved in this Store.  If there are no such Sessions, a
+     * zero-length array is returned.
+     *
+     * @exception IOException if an input/output error occurred
+     */
+    @Override
+    public String[] keys() throws IOException {
+        return index.keySet().toArray(new String[0]);
+    }
+
+
+    /**
+     * Load and return the Session associated with the specified session
+     * identifier from this Store, without removing it.  If there is no
+     * such stored Session, return <code>null</code>.
+     *
+     * @param id Session identifier of the session to load
+     *
+     * @exception ClassNotFoundException if a deserialization error occurs
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public Session load(String id)
+        throws ClassNotFoundException, IOException {
+
+        Record record = index.get(id);
+        if (record == null) {
+            return (null);
+        }
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(getStoreName()+".loading",
+                             id, record.segment.file.getAbsolutePath()));
+        }
+
+        // A segment that has since been compacted remains mapped until it is
+        // garbage collected so the record can still be read
+        byte[] data = record.segment.read(record.offset + record.dataOffset,
+                record.length - record.dataOffset);
+
+        ObjectInputStream ois = null;
+        Loader loader = null;
+        ClassLoader classLoader = null;
+        ClassLoader oldThreadContextCL = Thread.currentThread().getContextClassLoader();
+        try {
+            ByteArrayInputStream bis = new ByteArrayInputStream(data);
+            Context context = manager.getContext();
+            if (context != null)
+                loader = context.getLoader();
+            if (loader != null)
+                classLoader = loader.getClassLoader();
+            if (classLoader != null) {
+                Thread.currentThread().setContextClassLoader(classLoader);
+                ois = new CustomObjectInputStream(bis, classLoader);
+            } else {
+                ois = new ObjectInputStream(bis);
+            }
+
+            StandardSession session =
+                    (StandardSession) manager.createEmptySession();
+            session.readObjectData(ois);
+            session.setManager(manager);
+            applyMetadata(session, record.thisAccessedTime,
+                    record.maxInactiveInterval);
+            return (session);
+        } finally {
+            if (ois != null) {
+                try {
+                    ois.close();
+                } catch (IOException f) {
+                    // Ignore
+                }
+            }
+            Thread.currentThread().setContextClassLoader(oldThreadContextCL);
+        }
+    }
+
+
+    /**
+     * Remove the Session with the specified session identifier from
+     * this Store, if present.  If no such Session is present, this method
+     * takes no action.
+     *
+     * @param id Session identifier of the Session to be removed
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public void remove(String id) throws IOException {
+
+        if (!index.containsKey(id)) {
+            return;
+        }
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(getStoreName()+".removing",
+                             id, directory()));
+        }
+        byte[] data = createRecord(TYPE_REMOVE, id, 0, 0, null);
+        synchronized (lock) {
+            Record old = index.remove(id);
+            if (old != null) {
+                old.segment.liveBytes -= old.length;
+                append(data);
+            }
+        }
+    }
+
+
+    /**
+     * Save the specified Session into this Store.  Any previously saved
+     * information for the associated session identifier is replaced.
+     *
+     * @param session Session to be saved
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public void save(Session session) throws IOException {
+
+        String id = session.getIdInternal();
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(getStoreName()+".saving",
+                             id, directory()));
+        }
+        byte[] data = createRecord(TYPE_SAVE, id,
+                session.getThisAccessedTimeInternal(),
+                session.getMaxInactiveInterval(), (StandardSession) session);
+        synchronized (lock) {
+            Record record = append(data);
+            Record old = index.put(id, record);
+            if (old != null) {
+                old.segment.liveBytes -= old.length;
+            }
+            record.segment.liveBytes += record.length;
+        }
+    }
+
+
+    /**
+     * Record the access time and maximum inactive interval of a stored
+     * Session without writing the Session again.
+     *
+     * @param session Session to be updated
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public boolean saveMetadata(Session session) throws IOException {
+
+        String id = session.getIdInternal();
+        long thisAccessedTime = session.getThisAccessedTimeInternal();
+        int maxInactiveInterval = session.getMaxInactiveInterval();
+        byte[] data = createRecord(TYPE_METADATA, id, thisAccessedTime,
+                maxInactiveInterval, null);
+        synchronized (lock) {
+            Record current = index.get(id);
+            if (current == null) {
+                return false;
+            }
+            append(data);
+            index.put(id, current.withMetadata(thisAccessedTime,
+                    maxInactiveInterval));
+        }
+        return true;
+    }
+
+
+    /**
+     * Expire Sessions as {@link StoreBase#processExpires()} does, then
+     * compact any segments that are mostly unused.
+     */
+    @Override
+    public void processExpires() {
+        super.processExpires();
+        if (getState().isAvailable()) {
+            try {
+                compact();
+            } catch (IOException e) {
+                manager.getContext().getLogger().error(sm.getString(
+                        getStoreName() + ".compactFailed", directoryFile), e);
+            }
+        }
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+
+    /**
+     * Only Sessions whose recorded last access time and maximum inactive
+     * interval indicate that they may have expired need to be loaded.
+     */
+    @Override
+    protected String[] expiryCandidates(long timeNow) {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String,Record> entry : index.entrySet()) {
+            Record record = entry.getValue();
+            int timeIdle = (int) ((timeNow - record.thisAccessedTime) / 1000L);
+            if (timeIdle >= record.maxInactiveInterval) {
+                result.add(entry.getKey());
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+
+    /**
+     * Rebuild the index from the segment files left by a previous run and
+     * start a new segment.
+     */
+    @Override
+    protected synchronized void startInternal() throws LifecycleException {
+        synchronized (lock) {
+            try {
+                File dir = directory();
+                File[] files = dir.listFiles();
+                List<Long> sequences = new ArrayList<>();
+                if (files != null) {
+                    for (File file : files) {
+                        String name = file.getName();
+                        if (name.endsWith(FILE_EXT)) {
+                            try {
+                                sequences.add(Long.valueOf(name.substring(0,
+                                        name.length() - FILE_EXT.length())));
+                            } catch (NumberFormatException e) {
+                                // Not one of ours
+                            }
+                        }
+                    }
+                }
+                Long[] sorted = sequences.toArray(new Long[sequences.size()]);
+                Arrays.sort(sorted);
+                for (Long sequence : sorted) {
+                    Segment segment =
+                            new Segment(new File(dir, sequence + FILE_EXT), 0);
+                    segments.add(segment);
+                    replay(segment);
+                    nextSequence = sequence.longValue() + 1;
+                }
+                segments.add(createSegment(segmentSize));
+            } catch (IOException e) {
+                throw new LifecycleException(e);
+            }
+        }
+        super.startInternal();
+    }
+
+
+    @Override
+    protected synchronized void stopInternal() throws LifecycleException {
+        super.stopInternal();
+        synchronized (lock) {
+            if (!segments.isEmpty()) {
+                segments.get(segments.size() - 1).buffer.force();
+            }
+            segments.clear();
+            index.clear();
+        }
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Serialize a record. The length field is left as zero until the record
+     * has been appended.
+     */
+    private static byte[] createRecord(byte type, String id,
+            long thisAccessedTime, int maxInactiveInterval,
+            StandardSession session) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeInt(0);
+        dos.writeByte(type);
+        dos.writeLong(thisAccessedTime);
+        dos.writeInt(maxInactiveInterval);
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        dos.writeShort(idBytes.length);
+        dos.write(idBytes);
+        dos.flush();
+        if (session != null) {
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            try {
+                session.writeObjectData(oos);
+            } finally {
+                oos.close();
+            }
+        }
+        return bos.toByteArray();
+    }
+
+
+    /**
+     * Append a record to the newest segment, starting a new one if it is
+     * full. The caller must hold {@link #lock}.
+     */
+    private Record append(byte[] data) throws IOException {
+        Segment segment = segments.get(segments.size() - 1);
+        if (data.length > segment.buffer.capacity() - segment.writePos) {
+            segment.buffer.force();
+            segment = createSegment(Math.max(segmentSize, data.length + 4));
+            segments.add(segment);
+        }
+        int offset = segment.writePos;
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + 4);
+        buffer.put(data, 4, data.length - 4);
+        // Written last so an incomplete record is never read back
+        buffer.putInt(offset, data.length - 4);
+        segment.writePos += data.length;
+        return parse(segment, offset);
+    }
+
+
+    /**
+     * Read the header of the record at the given offset.
+     *
+     * @return the record or <code>null</code> if there are no more records
+     *         in the segment
+     */
+    private static Record parse(Segment segment, int offset) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        if (offset + HEADER_SIZE + 2 > buffer.capacity()) {
+            return null;
+        }
+        buffer.position(offset);
+        int length = buffer.getInt() + 4;
+        if (length <= HEADER_SIZE + 2 ||
+                length > buffer.capacity() - offset) {
+            return null;
+        }
+        byte type = buffer.get();
+        long thisAccessedTime = buffer.getLong();
+        int maxInactiveInterval = buffer.getInt();
+        byte[] idBytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(idBytes);
+        return new Record(segment, offset, length,
+                HEADER_SIZE + 2 + idBytes.length, type,
+                new String(idBytes, StandardCharsets.UTF_8),
+                thisAccessedTime, maxInactiveInterval);
+    }
+
+
+    /**
+     * Apply the records in a segment left by a previous run to the index.
+     */
+    private void replay(Segment segment) {
+        int offset = 0;
+        Record record;
+        while ((record = parse(segment, offset)) != null) {
+            if (record.type == TYPE_METADATA) {
+                Record current = index.get(record.id);
+                if (current != null) {
+                    index.put(record.id, current.withMetadata(
+                            record.thisAccessedTime,
+                            record.maxInactiveInterval));
+                }
+            } else {
+                Record old;
+                if (record.type == TYPE_SAVE) {
+                    old = index.put(record.id, record);
+                    segment.liveBytes += record.length;
+                } else {
+                    old = index.remove(record.id);
+                }
+                if (old != null) {
+                    old.segment.liveBytes -= old.length;
+                }
+            }
+            offset += record.length;
+        }
+        segment.writePos = offset;
+    }
+
+
+    /**
+     * Copy the current records out of any full segment that is no more than
+     * half used and delete it. A removal marker is copied too while an older
+     * segment might still contain a record of the removed Session, and the
+     * latest metadata of each Session is kept.
+     */
+    private void compact() throws IOException {
+        List<Segment> candidates = new ArrayList<>();
+        synchronized (lock) {
+            for (int i = 0; i < segments.size() - 1; i++) {
+                Segment segment = segments.get(i);
+                if (segment.liveBytes * 2 <= segment.writePos) {
+                    candidates.add(segment);
+                }
+            }
+        }
+        for (Segment segment : candidates) {
+            int offset = 0;
+            Record record;
+            while ((record = parse(segment, offset)) != null) {
+                synchronized (lock) {
+                    if (record.type == TYPE_SAVE) {
+                        Record current = index.get(record.id);
+                        if (current != null && current.segment == segment &&
+                                current.offset == offset) {
+                            // Carry over any metadata recorded since
+                            byte[] data = segment.read(offset, record.length);
+                            ByteBuffer.wrap(data).putLong(5,
+                                    current.thisAccessedTime).putInt(13,
+                                    current.maxInactiveInterval);
+                            Record moved = append(data);
+                            index.put(record.id, moved);
+                            segment.liveBytes -= record.length;
+                            moved.segment.liveBytes += moved.length;
+                        }
+                    } else if (record.type == TYPE_METADATA) {
+                        Record current = index.get(record.id);
+                        if (current != null && current.segment != segment) {
+                            append(createRecord(TYPE_METADATA, record.id,
+                                    current.thisAccessedTime,
+                                    current.maxInactiveInterval, null));
+                        }
+                    } else if (segments.indexOf(segment) > 0 &&
+                            !index.containsKey(record.id)) {
+                        append(segment.read(offset, record.length));
+                    }
+                }
+                offset += record.length;
+            }
+            synchronized (lock) {
+                segments.remove(segment);
+                delete(segment);
+            }
+        }
+    }
+
+
+    private Segment createSegment(int size) throws IOException {
+        long sequence = nextSequence++;
+        return new Segment(new File(directory(), sequence + FILE_EXT), size);
+    }
+
+
+    private void delete(Segment segment) {
+        // The mapping remains valid for any concurrent reader
+        if (!segment.file.delete() && segment.file.exists()) {
+            manager.getContext().getLogger().warn(sm.getString(
+                    getStoreName() + ".deleteFailed", segment.file));
+            segment.file.deleteOnExit();
+        }
+    }
+
+
+    /**
+     * Return a File object representing the pathname to our
+     * session persistence directory, if any.  The directory will be
+     * created if it does not already exist.
+     */
+    private File directory() throws IOException {
+
+        if (this.directoryFile != null) {
+            // NOTE:  Race condition is harmless, so do not synchronize
+            return (this.directoryFile);
+        }
+        File file = new File(this.directory);
+        if (!file.isAbsolute()) {
+            Context context = manager.getContext();
+            if (context != null) {
+                ServletContext servletContext = context.getServletContext();
+                File work = (File)
+                    servletContext.getAttribute(ServletContext.TEMPDIR);
+                file = new File(work, this.directory);
+            } else {
+                throw new IllegalArgumentException
+                    ("Parent Container is not a Context");
+            }
+        }
+        if (!file.exists() || !file.isDirectory()) {
+            if (!file.delete() && file.exists()) {
+                throw new IOException(
+                        sm.getString("fileStore.deleteFailed", file));
+            }
+            if (!file.mkdirs() && !file.isDirectory()) {
+                throw new IOException(
+                        sm.getString("fileStore.createFailed", file));
+            }
+        }
+        this.directoryFile = file;
+        return (file);
+
+    }
+
+
+    /**
+     * A segment file, mapped into memory for its whole length.
+     */
+    private static final class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        /**
+         * The end of the last record. Guarded by the store lock.
+         */
+        private int writePos = 0;
+        /**
+         * The number of bytes used by the latest records of stored Sessions.
+         * Guarded by the store lock.
+         */
+        private long liveBytes = 0;
+
+        /**
+         * @param size The size of a new segment file or zero to map an
+         *             existing one
+         */
+        private Segment(File file, int size) throws IOException {
+            this.file = file;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                if (size > 0) {
+                    raf.setLength(size);
+                }
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                        0, raf.length());
+            }
+        }
+
+        private byte[] read(int offset, int length) {
+            ByteBuffer buffer = this.buffer.duplicate();
+            buffer.position(offset);
+            byte[] data = new byte[length];
+            buffer.get(data);
+            return data;
+        }
+    }
+
+
+    /**
+     * The header of a record and where to find it.
+     */
+    private static final class Record {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final int dataOffset;
+        private final byte type;
+        private final String id;
+        private final long thisAccessedTime;
+        private final int maxInactiveInterval;
+
+        private Record(Segment segment, int offset, int length, int dataOffset,
+                byte type, String id, long thisAccessedTime,
+                int maxInactiveInterval) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.dataOffset = dataOffset;
+            this.type = type;
+            this.id = id;
+            this.thisAccessedTime = thisAccessedTime;
+            this.maxInactiveInterval = maxInactiveInterval;
+        }
+
+        /**
+         * @return a copy of this record with different metadata
+         */
+        private Record withMetadata(long thisAccessedTime,
+                int maxInactiveInterval) {
+            return new Record(segment, offset, length, dataOffset, type, id,
+                    thisAccessedTime, maxInactiveInterval);
+        }
+    }
+}
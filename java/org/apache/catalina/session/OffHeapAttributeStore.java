@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores byte arrays outside of the Java heap using a simple slab allocator.
+ * Memory is obtained from the operating system as direct buffers (slabs) of
+ * a fixed size. Each slab is divided into chunks of one size class, the size
+ * classes being the powers of two from {@link #MIN_CHUNK_SIZE} up to the slab
+ * size. Freed chunks are reused for values of the same size class. Values
+ * too large for the biggest chunk get a slab of their own that is released
+ * when the value is freed.
+ * <p>
+ * A stored value is identified by a handle that combines the index of its
+ * slab with the offset of its chunk. Each chunk starts with the length of
+ * the value.
+ */
+public class OffHeapAttributeStore {
+
+    public static final int MIN_CHUNK_SIZE = 64;
+
+    private final int slabSize;
+    private final SizeClass[] sizeClasses;
+
+    /**
+     * The slabs, indexed by the high half of a handle. Replaced rather than
+     * modified when it has to grow so that it can be read without locking.
+     */
+    private volatile Slab[] slabs = new Slab[16];
+    private int slabCount = 0;
+    private int[] freeSlabIndexes = new int[16];
+    private int freeSlabCount = 0;
+    private final Object slabLock = new Object();
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+
+    /**
+     * @param slabSize The size in bytes of the direct buffers obtained from
+     *                 the operating system
+     */
+    public OffHeapAttributeStore(int slabSize) {
+        if (slabSize < MIN_CHUNK_SIZE) {
+            slabSize = MIN_CHUNK_SIZE;
+        }
+        this.slabSize = slabSize;
+        int count = 0;
+        for (int size = MIN_CHUNK_SIZE; size > 0 && size <= slabSize; size <<= 1) {
+            count++;
+        }
+        sizeClasses = new SizeClass[count];
+        for (int i = 0; i < count; i++) {
+            sizeClasses[i] = new SizeClass(MIN_CHUNK_SIZE << i);
+        }
+    }
+
+
+    /**
+     * @return the number of bytes obtained from the operating system
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+
+    /**
+     * @return the number of bytes in chunks that currently hold a value
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+
+    /**
+     * Copy the value into off-heap memory.
+     *
+     * @param data The value to store
+     * @return the handle to use to load or free the value
+     */
+    public long store(byte[] data) {
+        int needed = data.length + 4;
+        long handle;
+        int sizeClass = getSizeClass(needed);
+        if (sizeClass < 0) {
+            handle = toHandle(addSlab(needed, true), 0);
+            usedBytes.addAndGet(needed);
+        } else {
+            handle = sizeClasses[sizeClass].allocate();
+        }
+        ByteBuffer buffer = slabs[toSlabIndex(handle)].buffer.duplicate();
+        buffer.position(toOffset(handle));
+        buffer.putInt(data.length);
+        buffer.put(data);
+        return handle;
+    }
+
+
+    /**
+     * Copy a value back onto the heap.
+     *
+     * @param handle The handle returned when the value was stored
+     * @return a copy of the stored value
+     */
+    public byte[] load(long handle) {
+        ByteBuffer buffer = slabs[toSlabIndex(handle)].buffer.duplicate();
+        buffer.position(toOffset(handle));
+        byte[] data = new byte[buffer.getInt()];
+        buffer.get(data);
+        return data;
+    }
+
+
+    /**
+     * Release the memory used by a value. The handle must not be used again.
+     *
+     * @param handle The handle returned when the value was stored
+     */
+    public void free(long handle) {
+        int index = toSlabIndex(handle);
+        Slab slab = slabs[index];
+        if (slab.dedicated) {
+            usedBytes.addAndGet(-slab.chunkSize);
+            removeSlab(index);
+        } else {
+            sizeClasses[getSizeClass(slab.chunkSize)].free(handle);
+        }
+    }
+
+
+    private int getSizeClass(int needed) {
+        for (int i = 0; i < sizeClasses.length; i++) {
+            if (sizeClasses[i].chunkSize >= needed) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    private int addSlab(int chunkSize, boolean dedicated) {
+        int capacity = dedicated ? chunkSize : slabSize;
+        Slab slab = new Slab(ByteBuffer.allocateDirect(capacity), chunkSize,
+                dedicated);
+        allocatedBytes.addAndGet(capacity);
+        synchronized (slabLock) {
+            int index;
+            if (freeSlabCount > 0) {
+                index = freeSlabIndexes[--freeSlabCount];
+            } else {
+                index = slabCount++;
+            }
+            Slab[] current = slabs;
+            if (index >= current.length) {
+                Slab[] expanded = new Slab[current.length * 2];
+                System.arraycopy(current, 0, expanded, 0, current.length);
+                current = expanded;
+            }
+            current[index] = slab;
+            // Publish the slab
+            slabs = current;
+            return index;
+        }
+    }
+
+
+    private void removeSlab(int index) {
+        synchronized (slabLock) {
+            Slab[] current = slabs;
+            allocatedBytes.addAndGet(-current[index].buffer.capacity());
+            current[index] = null;
+            slabs = current;
+            if (freeSlabCount == freeSlabIndexes.length) {
+                int[] expanded = new int[freeSlabIndexes.length * 2];
+                System.arraycopy(freeSlabIndexes, 0, expanded, 0, freeSlabCount);
+                freeSlabIndexes = expanded;
+            }
+            freeSlabIndexes[freeSlabCount++] = index;
+        }
+    }
+
+
+    private static long toHandle(int slabIndex, int offset) {
+        return ((long) slabIndex << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+
+    private static int toSlabIndex(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+
+    private static int toOffset(long handle) {
+        return (int) handle;
+    }
+
+
+    private static final class Slab {
+        private final ByteBuffer buffer;
+        private final int chunkSize;
+        private final boolean dedicated;
+
+        private Slab(ByteBuffer buffer, int chunkSize, boolean dedicated) {
+            this.buffer = buffer;
+            this.chunkSize = chunkSize;
+            this.dedicated = dedicated;
+        }
+    }
+
+
+    /**
+     * The chunks of one size. New chunks are taken from the end of the most
+     * recently added slab, freed chunks are kept in a list for reuse.
+     */
+    private final class SizeClass {
+        private final int chunkSize;
+        private long[] free = new long[16];
+        private int freeCount = 0;
+        private int currentSlab = -1;
+        private int nextOffset = 0;
+
+        private SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        private synchronized long allocate() {
+            long handle;
+            if (freeCount > 0) {
+                handle = free[--freeCount];
+            } else {
+                if (currentSlab < 0 || nextOffset + chunkSize > slabSize) {
+                    currentSlab = addSlab(chunkSize, false);
+                    nextOffset = 0;
+                }
+                handle = toHandle(currentSlab, nextOffset);
+                nextOffset += chunkSize;
+            }
+            usedBytes.addAndGet(chunkSize);
+            return handle;
+        }
+
+        private synchronized void free(long handle) {
+            if (freeCount == free.length) {
+                long[] expanded = new long[free.length * 2];
+                System.arraycopy(free, 0, expanded, 0, freeCount);
+                free = expanded;
+            }
+            free[freeCount++] = handle;
+            usedBytes.addAndGet(-chunkSize);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Loader;
+import org.apache.catalina.Session;
+import org.apache.catalina.util.CustomObjectInputStream;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+/**
+ * A {@link StandardManager} that keeps the serialized form of session
+ * attributes outside of the Java heap. Attributes that have been set or read
+ * recently are kept on the heap as objects. Once the number of such hot
+ * attributes exceeds <code>maxHotAttributes</code> the attributes of sessions
+ * that are not being used by a request are serialized into an
+ * {@link OffHeapAttributeStore} and are deserialized again the next time they
+ * are read.
+ * <p>
+ * As for a distributed application, a change to an attribute value is only
+ * guaranteed to be retained if it is made during a request that uses the
+ * session or is followed by a call to <code>setAttribute()</code>.
+ * Attributes that are not serializable are always kept on the heap.
+ * <p>
+ * Each attribute value is serialized on its own. An object that is shared by
+ * two attributes of a session, or by an attribute and another object on the
+ * heap, is no longer shared once either attribute has been moved off-heap
+ * and read back.
+ */
+public class OffHeapManager extends StandardManager {
+
+    private final Log log = LogFactory.getLog(OffHeapManager.class); // must not be static
+
+    /**
+     * The maximum number of sessions whose attributes are moved off-heap
+     * at the end of a request.
+     */
+    private static final int EVICTION_BATCH = 64;
+
+
+    // ----------------------------------------------------- Instance Variables
+
+    /**
+     * The descriptive name of this Manager implementation (for logging).
+     */
+    protected static final String name = "OffHeapManager";
+
+
+    /**
+     * The size of the direct buffers used to store attribute values.
+     */
+    protected int slabSize = 4 * 1024 * 1024;
+
+
+    /**
+     * The number of attribute values that may be kept on the heap before the
+     * attributes of idle sessions are moved off-heap.
+     */
+    protected int maxHotAttributes = 10000;
+
+
+    private volatile OffHeapAttributeStore store = null;
+
+    private final AtomicInteger hotAttributeCount = new AtomicInteger();
+
+    /**
+     * The sessions that may have attributes on the heap, in the order in
+     * which they first gained one.
+     */
+    private final ConcurrentLinkedQueue<OffHeapSession> hotSessions =
+            new ConcurrentLinkedQueue<>();
+
+
+    // ------------------------------------------------------------- Properties
+
+    /**
+     * Return the descriptive short name of this Manager implementation.
+     */
+    @Override
+    public String getName() {
+        return name;
+    }
+
+
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+
+    public void setSlabSize(int slabSize) {
+        this.slabSize = slabSize;
+    }
+
+
+    public int getMaxHotAttributes() {
+        return maxHotAttributes;
+    }
+
+
+    public void setMaxHotAttributes(int maxHotAttributes) {
+        this.maxHotAttributes = maxHotAttributes;
+    }
+
+
+    /**
+     * @return the number of attribute values currently held on the heap,
+     *         excluding values that cannot be serialized
+     */
+    public int getHotAttributeCount() {
+        return hotAttributeCount.get();
+    }
+
+
+    /**
+     * @return the number of bytes of off-heap memory obtained by this manager
+     */
+    public long getOffHeapAllocatedBytes() {
+        OffHeapAttributeStore store = this.store;
+        return store == null ? 0 : store.getAllocatedBytes();
+    }
+
+
+    /**
+     * @return the number of bytes of off-heap memory holding attribute values
+     */
+    public long getOffHeapUsedBytes() {
+        OffHeapAttributeStore store = this.store;
+        return store == null ? 0 : store.getUsedBytes();
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+    @Override
+    public void processExpires() {
+        super.processExpires();
+        // Catch up with eviction that requests did not get to
+        while (hotAttributeCount.get() > maxHotAttributes &&
+                evict(EVICTION_BATCH) > 0) {
+            // Keep going
+        }
+    }
+
+
+    @Override
+    public void remove(Session session, boolean update) {
+        super.remove(session, update);
+        if (session instanceof OffHeapSession &&
+                ((OffHeapSession) session).dequeue()) {
+            hotSessions.remove(session);
+        }
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+    @Override
+    protected synchronized void startInternal() throws LifecycleException {
+        store = new OffHeapAttributeStore(slabSize);
+        super.startInternal();
+    }
+
+
+    @Override
+    protected synchronized void stopInternal() throws LifecycleException {
+        super.stopInternal();
+        hotSessions.clear();
+        hotAttributeCount.set(0);
+        // Releases the slabs once the buffers are collected
+        store = null;
+    }
+
+
+    @Override
+    protected StandardSession getNewSession() {
+        return new OffHeapSession(this);
+    }
+
+
+    // -------------------------------------------------------- Package Methods
+
+    OffHeapAttributeStore getStore() {
+        return store;
+    }
+
+
+    /**
+     * Record that an attribute of the given session is now on the heap.
+     */
+    void attributeHot(OffHeapSession session) {
+        hotAttributeCount.incrementAndGet();
+        if (session.enqueue()) {
+            hotSessions.offer(session);
+        }
+    }
+
+
+    /**
+     * Record that an attribute is no longer on the heap.
+     */
+    void attributeCold() {
+        hotAttributeCount.decrementAndGet();
+    }
+
+
+    /**
+     * Called at the end of each request. Moves the attributes of some idle
+     * sessions off-heap if there are too many on the heap.
+     */
+    void requestEnded() {
+        if (hotAttributeCount.get() > maxHotAttributes) {
+            evict(EVICTION_BATCH);
+        }
+    }
+
+
+    /**
+     * Examine up to <code>max</code> sessions, oldest first, and move their
+     * attributes off-heap. Sessions that are in use are sent to the back of
+     * the queue.
+     *
+     * @return the number of sessions that no longer have attributes on the
+     *         heap
+     */
+    int evict(int max) {
+        int count = 0;
+        int evicted = 0;
+        while (count < max && hotAttributeCount.get() > maxHotAttributes) {
+            OffHeapSession session = hotSessions.poll();
+            if (session == null) {
+                break;
+            }
+            count++;
+            session.dequeue();
+            if (session.writeBack()) {
+                evicted++;
+            } else if (session.enqueue()) {
+                hotSessions.offer(session);
+            }
+        }
+        return evicted;
+    }
+
+
+    /**
+     * @return the serialized form of the value or <code>null</code> if it
+     *         cannot be serialized
+     */
+    byte[] serialize(String name, Object value) {
+        if (!(value instanceof Serializable)) {
+            return null;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(value);
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("offHeapManager.serializeFail", name), e);
+            }
+            return null;
+        }
+        return bos.toByteArray();
+    }
+
+
+    Object deserialize(String name, byte[] data) {
+        ClassLoader classLoader = null;
+        Context c = getContext();
+        if (c != null) {
+            Loader loader = c.getLoader();
+            if (loader != null) {
+                classLoader = loader.getClassLoader();
+            }
+        }
+        ByteArrayInputStream bis = new ByteArrayInputStream(data);
+        try (ObjectInputStream ois = classLoader == null ?
+                new ObjectInputStream(bis) :
+                new CustomObjectInputStream(bis, classLoader)) {
+            return ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException(
+                    sm.getString("offHeapManager.deserializeFail", name), e);
+        }
+    }
+}
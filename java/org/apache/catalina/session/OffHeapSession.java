@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The session used by {@link OffHeapManager}. The attribute map holds each
+ * value either as an object on the heap or as a handle to its serialized
+ * form in the manager's {@link OffHeapAttributeStore}, never both.
+ */
+public class OffHeapSession extends StandardSession {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient AtomicInteger activeRequests = new AtomicInteger();
+
+    /**
+     * Is this session in the manager's queue of sessions with attributes on
+     * the heap?
+     */
+    private final transient AtomicBoolean queued = new AtomicBoolean();
+
+
+    public OffHeapSession(OffHeapManager manager) {
+        super(manager);
+        attributes = new AttributeMap();
+    }
+
+
+    @Override
+    public void access() {
+        activeRequests.incrementAndGet();
+        super.access();
+    }
+
+
+    @Override
+    public void endAccess() {
+        super.endAccess();
+        if (activeRequests.decrementAndGet() <= 0) {
+            activeRequests.set(0);
+            ((OffHeapManager) manager).requestEnded();
+        }
+    }
+
+
+    boolean enqueue() {
+        return queued.compareAndSet(false, true);
+    }
+
+
+    boolean dequeue() {
+        return queued.compareAndSet(true, false);
+    }
+
+
+    /**
+     * Move the attribute values held on the heap off-heap unless the session
+     * is in use by a request.
+     *
+     * @return <code>true</code> if no serializable attribute value remains
+     *         on the heap
+     */
+    boolean writeBack() {
+        if (!isValid) {
+            return true;
+        }
+        OffHeapManager manager = (OffHeapManager) this.manager;
+        OffHeapAttributeStore store = manager.getStore();
+        if (store == null) {
+            return true;
+        }
+        for (Map.Entry<String,Value> e : ((AttributeMap) attributes).entries.entrySet()) {
+            Value entry = e.getValue();
+            synchronized (entry) {
+                if (!entry.hot) {
+                    continue;
+                }
+                // Checked under the lock so that a request that starts now
+                // will see the value once it has been moved
+                if (activeRequests.get() > 0) {
+                    return false;
+                }
+                byte[] data = manager.serialize(e.getKey(), entry.value);
+                if (data == null) {
+                    entry.hot = false;
+                } else {
+                    entry.handle = store.store(data);
+                    entry.value = null;
+                    entry.hot = false;
+                }
+                manager.attributeCold();
+            }
+        }
+        return true;
+    }
+
+
+    private static final class Value {
+        private Object value;
+        private long handle = -1;
+        /**
+         * Is the value on the heap and counted as such by the manager?
+         * Values that cannot be serialized stay on the heap but are not
+         * counted.
+         */
+        private boolean hot;
+
+        private Value(Object value) {
+            this.value = value;
+        }
+    }
+
+
+    /**
+     * The attribute map. Only the operations used by {@link StandardSession}
+     * are implemented efficiently.
+     */
+    private final class AttributeMap extends AbstractMap<String,Object> {
+
+        private final Map<String,Value> entries = new ConcurrentHashMap<>();
+
+        @Override
+        public Object get(Object key) {
+            Value entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            return load((String) key, entry);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            Value entry = new Value(value);
+            OffHeapManager manager = (OffHeapManager) OffHeapSession.this.manager;
+            if (value instanceof java.io.Serializable) {
+                entry.hot = true;
+                manager.attributeHot(OffHeapSession.this);
+            }
+            return release(key, entries.put(key, entry), true);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return release((String) key, entries.remove(key), true);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return entries.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        public void clear() {
+            Iterator<Map.Entry<String,Value>> iter =
+                    entries.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<String,Value> e = iter.next();
+                iter.remove();
+                release(e.getKey(), e.getValue(), false);
+            }
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(entries.keySet());
+        }
+
+        /**
+         * Returns a snapshot. Values held off-heap are loaded.
+         */
+        @Override
+        public Set<Map.Entry<String,Object>> entrySet() {
+            Set<Map.Entry<String,Object>> result = new HashSet<>();
+            for (Map.Entry<String,Value> e : entries.entrySet()) {
+                result.add(new SimpleImmutableEntry<>(e.getKey(),
+                        load(e.getKey(), e.getValue())));
+            }
+            return result;
+        }
+
+        private Object load(String key, Value entry) {
+            synchronized (entry) {
+                if (entry.handle >= 0) {
+                    OffHeapManager manager =
+                            (OffHeapManager) OffHeapSession.this.manager;
+                    OffHeapAttributeStore store = manager.getStore();
+                    if (store == null) {
+                        return null;
+                    }
+                    // The loaded object becomes the master copy as the
+                    // caller may modify it
+                    entry.value = manager.deserialize(key, store.load(entry.handle));
+                    store.free(entry.handle);
+                    entry.handle = -1;
+                    entry.hot = true;
+                    manager.attributeHot(OffHeapSession.this);
+                }
+                return entry.value;
+            }
+        }
+
+        /**
+         * Free the resources used by an entry that has been removed from the
+         * map, optionally returning its value.
+         */
+        private Object release(String key, Value entry, boolean returnValue) {
+            if (entry == null) {
+                return null;
+            }
+            OffHeapManager manager = (OffHeapManager) OffHeapSession.this.manager;
+            synchronized (entry) {
+                Object value = entry.value;
+                if (entry.handle >= 0) {
+                    OffHeapAttributeStore store = manager.getStore();
+                    if (store != null) {
+                        if (returnValue) {
+                            value = manager.deserialize(key, store.load(entry.handle));
+                        }
+                        store.free(entry.handle);
+                    }
+                    entry.handle = -1;
+                }
+                if (entry.hot) {
+                    entry.hot = false;
+                    manager.attributeCold();
+                }
+                entry.value = null;
+                return value;
+            }
+        }
+    }
+}
@@ -118,6 +118,21 @@ public abstract class PersistentManagerBase extends ManagerBase
         }
     }
 
+    private class PrivilegedStoreSaveMetadata
+        implements PrivilegedExceptionAction<Boolean> {
+
+        private Session session;
+
+        PrivilegedStoreSaveMetadata(Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public Boolean run() throws Exception{
+           return Boolean.valueOf(((StoreBase) store).saveMetadata(session));
+        }
+    }
+
     private class PrivilegedStoreKeys
         implements PrivilegedExceptionAction<String[]> {
 
@@ -159,6 +174,14 @@ public abstract class PersistentManagerBase extends ManagerBase
     protected int maxIdleBackup = -1;
 
 
+    /**
+     * Should a session whose attributes have not been set or removed since it
+     * was last written to or read from the Store be written without its
+     * attributes, if the Store supports it?
+     */
+    protected boolean trackAttributeChanges = false;
+
+
     /**
      * Minimum time a session must be idle before it is swapped to disk.
      * This overrides maxActiveSessions, to prevent thrashing if there are lots
@@ -373,6 +396,41 @@ public abstract class PersistentManagerBase extends ManagerBase
     }
 
 
+    /**
+     * Indicates whether sessions whose attributes have not changed are
+     * written to the Store without their attributes.
+     */
+    public boolean getTrackAttributeChanges() {
+
+        return trackAttributeChanges;
+
+    }
+
+
+    /**
+     * Set whether a session whose attributes have not been set or removed
+     * since it was last written to or read from the Store is written without
+     * its attributes, for Stores that support it. An application that
+     * modifies an attribute value must then call <code>setAttribute()</code>
+     * again for the change to be written.
+     *
+     * @param trackAttributeChanges true to write unchanged sessions without
+     *     their attributes
+     */
+    public void setTrackAttributeChanges(boolean trackAttributeChanges) {
+
+        if (trackAttributeChanges == this.trackAttributeChanges)
+            return;
+
+        boolean oldTrackAttributeChanges = this.trackAttributeChanges;
+        this.trackAttributeChanges = trackAttributeChanges;
+        support.firePropertyChange("trackAttributeChanges",
+                                   Boolean.valueOf(oldTrackAttributeChanges),
+                                   Boolean.valueOf(this.trackAttributeChanges));
+
+    }
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -400,6 +458,14 @@ public abstract class PersistentManagerBase extends ManagerBase
             log.error("Exception clearing the Store: " + e, e);
         }
 
+        // The Store no longer has the attributes of any session
+        Session sessions[] = findSessions();
+        for (int i = 0; i < sessions.length; i++) {
+            if (sessions[i] instanceof StandardSession) {
+                ((StandardSession) sessions[i]).markAllAttributesDirty();
+            }
+        }
+
     }
 
 
@@ -410,16 +476,10 @@ public abstract class PersistentManagerBase extends ManagerBase
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session sessions[] = findSessions();
-        int expireHere = 0 ;
         if(log.isDebugEnabled())
-             log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
-        for (int i = 0; i < sessions.length; i++) {
-            if (!sessions[i].isValid()) {
-                expiredSessions.incrementAndGet();
-                expireHere++;
-            }
-        }
+             log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.size());
+        int expireHere = expireDueSessions(timeNow);
+        expiredSessions.addAndGet(expireHere);
         processPersistenceChecks();
         if ((getStore() != null) && (getStore() instanceof StoreBase)) {
             ((StoreBase) getStore()).processExpires();
@@ -515,6 +575,7 @@ public abstract class PersistentManagerBase extends ManagerBase
 
         // Initialize our internal data structures
         sessions.clear();
+        expiryIndex.clear();
 
         if (store == null)
             return;
@@ -743,6 +804,8 @@ public abstract class PersistentManagerBase extends ManagerBase
                         log.debug(sm.getString("persistentManager.swapIn", id));
 
                     session.setManager(this);
+                    // The attributes match the copy in the Store
+                    ((StandardSession)session).clearDirtyAttributes();
                     // make sure the listeners know about it.
                     ((StandardSession)session).tellNew();
                     add(session);
@@ -799,6 +862,17 @@ public abstract class PersistentManagerBase extends ManagerBase
             return;
         }
 
+        StandardSession standardSession = null;
+        if (session instanceof StandardSession) {
+            standardSession = (StandardSession) session;
+            if (trackAttributeChanges && !standardSession.isAttributesDirty() &&
+                    writeSessionMetadata(session)) {
+                return;
+            }
+            standardSession.clearDirtyAttributes();
+        }
+
+        boolean saved = false;
         try {
             if (SecurityUtil.isPackageProtectionEnabled()){
                 try{
@@ -814,12 +888,52 @@ public abstract class PersistentManagerBase extends ManagerBase
             } else {
                  store.save(session);
             }
+            saved = true;
         } catch (IOException e) {
             log.error(sm.getString
                 ("persistentManager.serializeError", session.getIdInternal(), e));
             throw e;
+        } finally {
+            if (!saved && standardSession != null) {
+                standardSession.markAllAttributesDirty();
+            }
+        }
+
+    }
+
+
+    /**
+     * Update the copy of the session in the Store without writing its
+     * attributes.
+     *
+     * @return <code>true</code> if the Store did so, <code>false</code> if
+     *         the complete session must be written instead
+     */
+    protected boolean writeSessionMetadata(Session session) {
+
+        if (!(store instanceof StoreBase)) {
+            return false;
         }
 
+        try {
+            if (SecurityUtil.isPackageProtectionEnabled()){
+                try{
+                    return AccessController.doPrivileged(
+                            new PrivilegedStoreSaveMetadata(session)).booleanValue();
+                }catch(PrivilegedActionException ex){
+                    Exception exception = ex.getException();
+                    log.error("Exception in the Store during writeSessionMetadata: "
+                              + exception, exception);
+                }
+            } else {
+                 return ((StoreBase) store).saveMetadata(session);
+            }
+        } catch (IOException e) {
+            log.error(sm.getString
+                ("persistentManager.serializeError", session.getIdInternal(), e));
+        }
+        return false;
+
     }
 
 
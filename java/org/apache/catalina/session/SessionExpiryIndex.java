@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.catalina.Session;
+
+/**
+ * Index of sessions by the time at which they may expire, so that the
+ * background expiration only has to look at sessions that are due rather
+ * than at every session of the manager.
+ * <p>
+ * Sessions are kept in buckets of {@link #TICK} milliseconds, keyed by their
+ * expiry time rounded up to the end of the bucket. A session is only moved
+ * when its expiry time moves to another bucket, so repeated access within a
+ * bucket does not change the index. Updates only lock the session being
+ * updated.
+ * <p>
+ * The index may record an expiry time that is earlier than the real one, for
+ * example when a session was accessed without the index being told. That is
+ * safe as due sessions are always checked with {@link Session#isValid()} and
+ * put back into the index if they are still valid. It must never record a
+ * later time, so anything that can bring the expiry time of a session forward
+ * must call {@link #update(Session)}.
+ */
+public class SessionExpiryIndex {
+
+    /**
+     * Width of a bucket in milliseconds.
+     */
+    public static final long TICK = 1000;
+
+    private final ConcurrentNavigableMap<Long,Set<Session>> buckets =
+            new ConcurrentSkipListMap<>();
+
+    private final ConcurrentMap<Session,Long> bucketOf =
+            new ConcurrentHashMap<>();
+
+
+    /**
+     * Add the session to the index or move it to the bucket of its current
+     * expiry time. Sessions that never expire are removed from the index.
+     *
+     * @param session The session to index
+     */
+    public void update(Session session) {
+        long expiry = getExpiryTime(session);
+        Long current = bucketOf.get(session);
+        if (expiry < 0) {
+            if (current != null) {
+                remove(session);
+            }
+            return;
+        }
+        long key = toBucket(expiry);
+        if (current != null && current.longValue() == key) {
+            return;
+        }
+        move(session, Long.valueOf(key));
+    }
+
+
+    /**
+     * Remove the session from the index.
+     *
+     * @param session The session to remove
+     */
+    public void remove(Session session) {
+        synchronized (session) {
+            Long current = bucketOf.remove(session);
+            if (current != null) {
+                Set<Session> bucket = buckets.get(current);
+                if (bucket != null) {
+                    bucket.remove(session);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Remove and return the sessions whose bucket ended at or before the
+     * given time. The caller must check each session and return those that
+     * are still valid with {@link #reschedule(Session, long)}.
+     *
+     * @param timeNow The current time
+     * @return The sessions that may have expired
+     */
+    public List<Session> pollDue(long timeNow) {
+        List<Session> result = new ArrayList<>();
+        Map.Entry<Long,Set<Session>> entry;
+        while ((entry = buckets.firstEntry()) != null &&
+                entry.getKey().longValue() <= timeNow) {
+            if (!buckets.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            for (Session session : entry.getValue()) {
+                synchronized (session) {
+                    // Skip sessions that have since moved to another bucket
+                    if (bucketOf.remove(session, entry.getKey())) {
+                        result.add(session);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Put a due session that is still valid back into the index. It is
+     * placed no earlier than the bucket after the current time so that it is
+     * not returned again by the same call to {@link #pollDue(long)}.
+     *
+     * @param session The session to put back
+     * @param timeNow The current time
+     */
+    public void reschedule(Session session, long timeNow) {
+        long expiry = getExpiryTime(session);
+        if (expiry < 0) {
+            remove(session);
+            return;
+        }
+        move(session, Long.valueOf(toBucket(Math.max(expiry, timeNow + 1))));
+    }
+
+
+    /**
+     * @return the number of indexed sessions
+     */
+    public int size() {
+        return bucketOf.size();
+    }
+
+
+    /**
+     * Remove all sessions from the index.
+     */
+    public void clear() {
+        buckets.clear();
+        bucketOf.clear();
+    }
+
+
+    private void move(Session session, Long key) {
+        synchronized (session) {
+            Long current = bucketOf.put(session, key);
+            if (key.equals(current)) {
+                return;
+            }
+            add(key, session);
+            if (current != null) {
+                Set<Session> bucket = buckets.get(current);
+                if (bucket != null) {
+                    bucket.remove(session);
+                }
+            }
+        }
+    }
+
+
+    private void add(Long key, Session session) {
+        while (true) {
+            Set<Session> bucket = buckets.get(key);
+            if (bucket == null) {
+                Set<Session> newBucket = Collections.newSetFromMap(
+                        new ConcurrentHashMap<Session,Boolean>());
+                bucket = buckets.putIfAbsent(key, newBucket);
+                if (bucket == null) {
+                    bucket = newBucket;
+                }
+            }
+            bucket.add(session);
+            // Retry if the bucket was polled concurrently
+            if (buckets.get(key) == bucket) {
+                return;
+            }
+        }
+    }
+
+
+    private static long toBucket(long time) {
+        return (time / TICK + 1) * TICK;
+    }
+
+
+    /**
+     * @return the time at which the session expires if it is not accessed
+     *         again, or -1 if it never expires
+     */
+    static long getExpiryTime(Session session) {
+        int maxInactiveInterval = session.getMaxInactiveInterval();
+        if (maxInactiveInterval <= 0) {
+            return -1;
+        }
+        long accessed;
+        if (StandardSession.LAST_ACCESS_AT_START) {
+            accessed = session.getLastAccessedTimeInternal();
+        } else {
+            accessed = session.getThisAccessedTimeInternal();
+        }
+        return accessed + maxInactiveInterval * 1000L;
+    }
+}
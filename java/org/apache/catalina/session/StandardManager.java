@@ -200,6 +200,7 @@ public class StandardManager extends ManagerBase {
 
         // Initialize our internal data structures
         sessions.clear();
+        expiryIndex.clear();
 
         // Open an input stream to the specified pathname, if any
         File file = file();
@@ -264,6 +265,7 @@ public class StandardManager extends ManagerBase {
                     session.readObjectData(ois);
                     session.setManager(this);
                     sessions.put(session.getIdInternal(), session);
+                    expiryIndex.update(session);
                     session.activate();
                     if (!session.isValidInternal()) {
                         // If session is already invalid,
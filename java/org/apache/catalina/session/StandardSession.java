@@ -156,6 +156,21 @@ public class StandardSession implements HttpSession, Session, Serializable {
     protected Map<String, Object> attributes = new ConcurrentHashMap<>();
 
 
+    /**
+     * The names of the attributes that have been set or removed since the
+     * attributes were last marked clean.
+     */
+    protected transient Set<String> dirtyAttributes =
+            Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
+
+    /**
+     * Is every attribute to be treated as changed? True until the session
+     * has been written to or read from a Store.
+     */
+    protected transient volatile boolean allAttributesDirty = true;
+
+
     /**
      * The authentication type used to authenticate our cached Principal,
      * if any.  NOTE:  This value is not included in the serialized
@@ -380,6 +395,8 @@ public class StandardSession implements HttpSession, Session, Serializable {
             manager.remove(this);
 
         this.id = id;
+        // Any copy in a Store is under the old identifier
+        markAllAttributesDirty();
 
         if (manager != null)
             manager.add(this);
@@ -577,6 +594,7 @@ public class StandardSession implements HttpSession, Session, Serializable {
     @Override
     public void setMaxInactiveInterval(int interval) {
         this.maxInactiveInterval = interval;
+        expiryChanged();
     }
 
 
@@ -742,6 +760,65 @@ public class StandardSession implements HttpSession, Session, Serializable {
             accessCount.decrementAndGet();
         }
 
+        expiryChanged();
+
+    }
+
+
+    /**
+     * Tell the manager that the expiry time of this session may have changed
+     * so that it can update its expiry index. access() does not call this as
+     * it only makes the session expire later, which the index tolerates until
+     * the session is next checked.
+     */
+    protected void expiryChanged() {
+        Manager manager = this.manager;
+        if (manager instanceof ManagerBase) {
+            ((ManagerBase) manager).sessionExpiryChanged(this);
+        }
+    }
+
+
+    /**
+     * Have any attributes been set or removed since the attributes were last
+     * marked clean? Changes made to an attribute value without a subsequent
+     * call to <code>setAttribute()</code> are not seen.
+     */
+    public boolean isAttributesDirty() {
+        return allAttributesDirty || !dirtyAttributes.isEmpty();
+    }
+
+
+    /**
+     * Return the names of the attributes that have been set or removed since
+     * the attributes were last marked clean, or <code>null</code> if every
+     * attribute is to be treated as changed.
+     */
+    public Set<String> getDirtyAttributeNames() {
+        if (allAttributesDirty) {
+            return null;
+        }
+        return new HashSet<>(dirtyAttributes);
+    }
+
+
+    /**
+     * Mark the attributes clean. Called before the complete session is
+     * written to a Store, so that an attribute set while it is being written
+     * is seen as changed, and after it has been read from a Store.
+     */
+    public void clearDirtyAttributes() {
+        dirtyAttributes.clear();
+        allAttributesDirty = false;
+    }
+
+
+    /**
+     * Treat every attribute as changed, for example because the copy of the
+     * session in the Store could not be written or has been removed.
+     */
+    public void markAllAttributesDirty() {
+        allAttributesDirty = true;
     }
 
 
@@ -1010,6 +1087,8 @@ public class StandardSession implements HttpSession, Session, Serializable {
         isNew = false;
         isValid = false;
         manager = null;
+        dirtyAttributes.clear();
+        allAttributesDirty = true;
 
     }
 
@@ -1488,6 +1567,7 @@ public class StandardSession implements HttpSession, Session, Serializable {
 
         // Replace or add this attribute
         Object unbound = attributes.put(name, value);
+        dirtyAttributes.add(name);
 
         // Call the valueUnbound() method if necessary
         if (notify && (unbound != null) && (unbound != value) &&
@@ -1637,6 +1717,12 @@ public class StandardSession implements HttpSession, Session, Serializable {
         if (notes == null) {
             notes = new Hashtable<>();
         }
+
+        if (dirtyAttributes == null) {
+            dirtyAttributes = Collections.newSetFromMap(
+                    new ConcurrentHashMap<String,Boolean>());
+        }
+        allAttributesDirty = true;
     }
 
 
@@ -1789,6 +1875,9 @@ public class StandardSession implements HttpSession, Session, Serializable {
 
         // Remove this attribute from our collection
         Object value = attributes.remove(name);
+        if (value != null) {
+            dirtyAttributes.add(name);
+        }
 
         // Do we need to do valueUnbound() and attributeRemoved() notification?
         if (!notify || (value == null)) {
@@ -24,6 +24,7 @@ import java.io.IOException;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
 import org.apache.catalina.Store;
 import org.apache.catalina.util.LifecycleBase;
 import org.apache.tomcat.util.res.StringManager;
@@ -129,8 +130,10 @@ public abstract class StoreBase extends LifecycleBase implements Store {
             return;
         }
 
+        long timeNow = System.currentTimeMillis();
+
         try {
-            keys = keys();
+            keys = expiryCandidates(timeNow);
         } catch (IOException e) {
             manager.getContext().getLogger().error("Error getting keys", e);
             return;
@@ -139,8 +142,6 @@ public abstract class StoreBase extends LifecycleBase implements Store {
             manager.getContext().getLogger().debug(getStoreName()+ ": processExpires check number of " + keys.length + " sessions" );
         }
 
-        long timeNow = System.currentTimeMillis();
-
         for (int i = 0; i < keys.length; i++) {
             try {
                 StandardSession session = (StandardSession) load(keys[i]);
@@ -174,6 +175,13 @@ public abstract class StoreBase extends LifecycleBase implements Store {
                     session.expire();
                 }
                 remove(keys[i]);
+                if (isLoaded && manager instanceof ManagerBase) {
+                    // The loaded session no longer has a copy here
+                    Session loaded = ((ManagerBase) manager).sessions.get(keys[i]);
+                    if (loaded instanceof StandardSession) {
+                        ((StandardSession) loaded).markAllAttributesDirty();
+                    }
+                }
             } catch (Exception e) {
                 manager.getContext().getLogger().error("Session: "+keys[i]+"; ", e);
                 try {
@@ -186,6 +194,61 @@ public abstract class StoreBase extends LifecycleBase implements Store {
     }
 
 
+    /**
+     * Update the copy of a Session in this Store with its current last
+     * access time, maximum inactive interval and validity, without writing
+     * its attributes. Used for Sessions whose attributes have not changed
+     * since they were last written to or read from this Store. This
+     * implementation does nothing.
+     *
+     * @param session Session to be updated
+     * @return <code>true</code> if the copy was updated, <code>false</code>
+     *         if the Store does not support this or does not hold a copy of
+     *         the Session, in which case it must be saved in full
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public boolean saveMetadata(Session session) throws IOException {
+        return false;
+    }
+
+
+    /**
+     * Apply the access time and maximum inactive interval recorded by
+     * {@link #saveMetadata(Session)} to a Session read from a copy whose
+     * attributes, and so its serialized times, may be older.
+     *
+     * @param session The Session that has been read
+     * @param accessedTime The recorded access time
+     * @param maxInactiveInterval The recorded maximum inactive interval
+     */
+    protected static void applyMetadata(StandardSession session,
+            long accessedTime, int maxInactiveInterval) {
+        if (accessedTime > session.lastAccessedTime) {
+            session.lastAccessedTime = accessedTime;
+        }
+        if (accessedTime > session.thisAccessedTime) {
+            session.thisAccessedTime = accessedTime;
+        }
+        session.maxInactiveInterval = maxInactiveInterval;
+    }
+
+
+    /**
+     * Return the identifiers of the Sessions that {@link #processExpires()}
+     * should load to check whether they have expired. This implementation
+     * returns all of them; a Store that can tell cheaply that a Session has
+     * not expired may return fewer.
+     *
+     * @param timeNow The time of the check
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    protected String[] expiryCandidates(long timeNow) throws IOException {
+        return keys();
+    }
+
+
     @Override
     protected void initInternal() {
         // NOOP
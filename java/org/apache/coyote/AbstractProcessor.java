@@ -116,6 +116,19 @@ public abstract class AbstractProcessor<S> implements ActionHook, Processor<S> {
     }
 
 
+    /**
+     * Record how long the given socket waited for a processing thread, if it
+     * was dispatched to the executor by the endpoint.
+     */
+    protected void recordQueueTime(SocketWrapper<S> socketWrapper) {
+        long dispatchTime = socketWrapper.takeDispatchTime();
+        if (dispatchTime != -1) {
+            request.getRequestProcessor().recordQueueTime(
+                    System.nanoTime() - dispatchTime);
+        }
+    }
+
+
     /**
      * Obtain the Executor used by the underlying endpoint.
      */
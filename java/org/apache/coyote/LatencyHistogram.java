@@ -0,0 +1,126 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.coyote;
+
+/**
+ * Fixed size histogram of latencies in microseconds. Buckets are log-linear:
+ * every power of two is split into {@link #SUB_BUCKETS} equal buckets so the
+ * value reported for a percentile is within 12.5% of the recorded value.
+ * Values above roughly 71 minutes are recorded in the last bucket.
+ *
+ * Like the other counters of {@link RequestInfo} a histogram is written by a
+ * single thread without synchronization. Readers may observe a slightly stale
+ * view, which is acceptable for monitoring.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_VALUE_BITS = 32;
+    private static final int BUCKETS =
+            (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount;
+
+
+    /**
+     * Record a latency.
+     *
+     * @param value the latency in microseconds, negative values are ignored
+     */
+    public void recordValue(long value) {
+        if (value < 0) {
+            return;
+        }
+        counts[index(value)]++;
+        totalCount++;
+    }
+
+
+    /**
+     * Add all the values recorded by the given histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+    }
+
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+
+    /**
+     * Obtain the value at the given percentile.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the highest value of the bucket holding the percentile, in
+     *         microseconds, or 0 if no value has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = totalCount;
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * Math.min(percentile, 100.0) / 100.0);
+        if (target < 1) {
+            target = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(BUCKETS - 1);
+    }
+
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = 0;
+        }
+        totalCount = 0;
+    }
+
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int index = (shift + 1) * SUB_BUCKETS +
+                (int) ((value >>> shift) - SUB_BUCKETS);
+        return Math.min(index, BUCKETS - 1);
+    }
+
+
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -135,6 +135,7 @@ public final class Request {
     private int bytesRead=0;
     // Time of the request - useful to avoid repeated calls to System.currentTime
     private long startTime = -1;
+    private long startTimeNanos;
     private int available = 0;
 
     private final RequestInfo reqProcessorMX=new RequestInfo(this);
@@ -484,6 +485,19 @@ public final class Request {
         this.startTime = startTime;
     }
 
+    /**
+     * @return the value of {@link System#nanoTime()} when processing of the
+     *         request started. Only meaningful if {@link #getStartTime()} is
+     *         not negative.
+     */
+    public long getStartTimeNanos() {
+        return startTimeNanos;
+    }
+
+    public void setStartTimeNanos(long startTimeNanos) {
+        this.startTimeNanos = startTimeNanos;
+    }
+
     // -------------------- Per-Request "notes" --------------------
 
 
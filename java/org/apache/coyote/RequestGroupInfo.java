@@ -31,6 +31,15 @@ public class RequestGroupInfo {
     private int deadErrorCount = 0;
     private long deadBytesReceived = 0;
     private long deadBytesSent = 0;
+    private final LatencyHistogram deadQueueTime = new LatencyHistogram();
+    private final LatencyHistogram deadParseTime = new LatencyHistogram();
+    private final LatencyHistogram deadServiceTime = new LatencyHistogram();
+    private final LatencyHistogram deadWriteTime = new LatencyHistogram();
+
+    private static final int QUEUE = 0;
+    private static final int PARSE = 1;
+    private static final int SERVICE = 2;
+    private static final int WRITE = 3;
 
     public synchronized void addRequestProcessor( RequestInfo rp ) {
         processors.add( rp );
@@ -45,6 +54,10 @@ public class RequestGroupInfo {
             deadErrorCount += rp.getErrorCount();
             deadBytesReceived += rp.getBytesReceived();
             deadBytesSent += rp.getBytesSent();
+            deadQueueTime.add(rp.getQueueTimeHistogram());
+            deadParseTime.add(rp.getParseTimeHistogram());
+            deadServiceTime.add(rp.getServiceTimeHistogram());
+            deadWriteTime.add(rp.getWriteTimeHistogram());
 
             processors.remove( rp );
         }
@@ -153,6 +166,89 @@ public class RequestGroupInfo {
         }
     }
 
+    // Latency percentiles, in microseconds. Queue time is measured per
+    // dispatch of a connection to the executor, the other times per request.
+
+    public long getQueueTime50() {
+        return getPercentile(QUEUE, 50);
+    }
+
+    public long getQueueTime99() {
+        return getPercentile(QUEUE, 99);
+    }
+
+    public long getQueueTime999() {
+        return getPercentile(QUEUE, 99.9);
+    }
+
+    public long getParseTime50() {
+        return getPercentile(PARSE, 50);
+    }
+
+    public long getParseTime99() {
+        return getPercentile(PARSE, 99);
+    }
+
+    public long getParseTime999() {
+        return getPercentile(PARSE, 99.9);
+    }
+
+    public long getServiceTime50() {
+        return getPercentile(SERVICE, 50);
+    }
+
+    public long getServiceTime99() {
+        return getPercentile(SERVICE, 99);
+    }
+
+    public long getServiceTime999() {
+        return getPercentile(SERVICE, 99.9);
+    }
+
+    public long getWriteTime50() {
+        return getPercentile(WRITE, 50);
+    }
+
+    public long getWriteTime99() {
+        return getPercentile(WRITE, 99);
+    }
+
+    public long getWriteTime999() {
+        return getPercentile(WRITE, 99.9);
+    }
+
+    private synchronized long getPercentile(int type, double percentile) {
+        LatencyHistogram result = new LatencyHistogram();
+        result.add(getHistogram(null, type));
+        for( int i=0; i<processors.size(); i++ ) {
+            result.add(getHistogram(processors.get(i), type));
+        }
+        return result.getValueAtPercentile(percentile);
+    }
+
+    private LatencyHistogram getHistogram(RequestInfo rp, int type) {
+        switch (type) {
+            case QUEUE:
+                return rp == null ? deadQueueTime : rp.getQueueTimeHistogram();
+            case PARSE:
+                return rp == null ? deadParseTime : rp.getParseTimeHistogram();
+            case SERVICE:
+                return rp == null ? deadServiceTime : rp.getServiceTimeHistogram();
+            default:
+                return rp == null ? deadWriteTime : rp.getWriteTimeHistogram();
+        }
+    }
+
+    public synchronized void resetHistograms() {
+        deadQueueTime.reset();
+        deadParseTime.reset();
+        deadServiceTime.reset();
+        deadWriteTime.reset();
+        for( int i=0; i<processors.size(); i++ ) {
+            processors.get(i).resetHistograms();
+        }
+    }
+
     public void resetCounters() {
         this.setBytesReceived(0);
         this.setBytesSent(0);
@@ -160,5 +256,6 @@ public class RequestGroupInfo {
         this.setProcessingTime(0);
         this.setMaxTime(0);
         this.setErrorCount(0);
+        this.resetHistograms();
     }
 }
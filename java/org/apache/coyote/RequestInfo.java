@@ -134,6 +134,14 @@ public class RequestInfo  {
     //the time of the last request
     private long lastRequestProcessingTime = 0;
 
+    // Latency distributions, in microseconds
+    private final LatencyHistogram queueTimeHistogram = new LatencyHistogram();
+    private final LatencyHistogram parseTimeHistogram = new LatencyHistogram();
+    private final LatencyHistogram serviceTimeHistogram = new LatencyHistogram();
+    private final LatencyHistogram writeTimeHistogram = new LatencyHistogram();
+    // System.nanoTime() when the current stage was entered
+    private long stageStartTime;
+
 
     /** Called by the processor before recycling the request. It'll collect
      * statistic information.
@@ -160,10 +168,83 @@ public class RequestInfo  {
         return stage;
     }
 
+    /**
+     * Change the processing stage. Leaving the parse, service and end input
+     * stages records the time spent in them in the matching histogram.
+     */
     public void setStage(int stage) {
+        int previous = this.stage;
+        if (previous != stage) {
+            switch (stage) {
+                case Constants.STAGE_SERVICE:
+                    if ((previous == Constants.STAGE_PARSE ||
+                            previous == Constants.STAGE_PREPARE) &&
+                            req.getStartTime() >= 0) {
+                        long now = System.nanoTime();
+                        parseTimeHistogram.recordValue(
+                                (now - req.getStartTimeNanos()) / 1000);
+                        stageStartTime = now;
+                    } else {
+                        stageStartTime = System.nanoTime();
+                    }
+                    break;
+                case Constants.STAGE_ENDINPUT:
+                    stageStartTime = leaveService();
+                    break;
+                case Constants.STAGE_ENDOUTPUT:
+                    if (previous == Constants.STAGE_ENDINPUT) {
+                        writeTimeHistogram.recordValue(
+                                (System.nanoTime() - stageStartTime) / 1000);
+                    }
+                    break;
+                default:
+                    leaveService();
+            }
+        }
         this.stage = stage;
     }
 
+    private long leaveService() {
+        long now = System.nanoTime();
+        if (stage == Constants.STAGE_SERVICE) {
+            serviceTimeHistogram.recordValue((now - stageStartTime) / 1000);
+        }
+        return now;
+    }
+
+    /**
+     * Record the time a socket waited in the executor queue before being
+     * processed.
+     *
+     * @param queueTime the time in nanoseconds
+     */
+    public void recordQueueTime(long queueTime) {
+        queueTimeHistogram.recordValue(queueTime / 1000);
+    }
+
+    public LatencyHistogram getQueueTimeHistogram() {
+        return queueTimeHistogram;
+    }
+
+    public LatencyHistogram getParseTimeHistogram() {
+        return parseTimeHistogram;
+    }
+
+    public LatencyHistogram getServiceTimeHistogram() {
+        return serviceTimeHistogram;
+    }
+
+    public LatencyHistogram getWriteTimeHistogram() {
+        return writeTimeHistogram;
+    }
+
+    public void resetHistograms() {
+        queueTimeHistogram.reset();
+        parseTimeHistogram.reset();
+        serviceTimeHistogram.reset();
+        writeTimeHistogram.reset();
+    }
+
     public long getBytesSent() {
         return bytesSent;
     }
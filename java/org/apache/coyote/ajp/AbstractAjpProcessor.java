@@ -704,6 +704,7 @@ public abstract class AbstractAjpProcessor<S> extends AbstractProcessor<S> {
     public SocketState process(SocketWrapper<S> socket) throws IOException {
 
         RequestInfo rp = request.getRequestProcessor();
+        recordQueueTime(socket);
         rp.setStage(org.apache.coyote.Constants.STAGE_PARSE);
 
         // Setting up the socket
@@ -757,6 +758,7 @@ public abstract class AbstractAjpProcessor<S> extends AbstractProcessor<S> {
                 }
                 keptAlive = true;
                 request.setStartTime(System.currentTimeMillis());
+                request.setStartTimeNanos(System.nanoTime());
             } catch (IOException e) {
                 error = true;
                 break;
@@ -814,6 +816,7 @@ public abstract class AbstractAjpProcessor<S> extends AbstractProcessor<S> {
             }
 
             // Finish the response if not done yet
+            rp.setStage(org.apache.coyote.Constants.STAGE_ENDINPUT);
             if (!finished) {
                 try {
                     finish();
@@ -822,6 +825,7 @@ public abstract class AbstractAjpProcessor<S> extends AbstractProcessor<S> {
                     error = true;
                 }
             }
+            rp.setStage(org.apache.coyote.Constants.STAGE_ENDOUTPUT);
 
             // If there was an error, make sure the request is counted as
             // and error, and update the statistics counter
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.ajp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.net.Nio2Channel;
+import org.apache.tomcat.util.net.Nio2Endpoint;
+import org.apache.tomcat.util.net.SocketStatus;
+import org.apache.tomcat.util.net.SocketWrapper;
+
+/**
+ * Processes AJP requests using NIO2.
+ */
+public class AjpNio2Processor extends AbstractAjpProcessor<Nio2Channel> {
+
+    private static final Log log = LogFactory.getLog(AjpNio2Processor.class);
+    @Override
+    protected Log getLog() {
+        return log;
+    }
+
+
+    public AjpNio2Processor(int packetSize, Nio2Endpoint endpoint) {
+
+        super(packetSize, endpoint);
+
+        response.setOutputBuffer(new SocketOutputBuffer());
+    }
+
+
+    @Override
+    protected void registerForEvent(boolean read, boolean write) {
+        if (read) {
+            ((Nio2Endpoint) endpoint).awaitBytes(socketWrapper);
+        }
+        if (write) {
+            // Writes are always blocking so the socket is always writable
+            endpoint.processSocket(socketWrapper, SocketStatus.OPEN_WRITE, true);
+        }
+    }
+
+
+    @Override
+    protected void resetTimeouts() {
+        // The NIO2 connector uses the timeout configured on the wrapper while
+        // waiting for the next request. Therefore, it needs to be reset once
+        // async processing has finished.
+        if (!error && socketWrapper != null &&
+                asyncStateMachine.isAsyncDispatching()) {
+            long soTimeout = endpoint.getSoTimeout();
+
+            //reset the timeout
+            if (keepAliveTimeout > 0) {
+                socketWrapper.setTimeout(keepAliveTimeout);
+            } else {
+                socketWrapper.setTimeout(soTimeout);
+            }
+        }
+
+    }
+
+
+    @Override
+    protected void setupSocket(SocketWrapper<Nio2Channel> socketWrapper)
+            throws IOException {
+        // NO-OP
+    }
+
+
+    @Override
+    protected void setTimeout(SocketWrapper<Nio2Channel> socketWrapper,
+            int timeout) throws IOException {
+        socketWrapper.setTimeout(timeout);
+    }
+
+
+    /**
+     * Writes are always blocking, as they are with the BIO connector.
+     */
+    @Override
+    protected int output(byte[] src, int offset, int length, boolean block)
+            throws IOException {
+
+        Nio2Channel channel = socketWrapper.getSocket();
+        ByteBuffer writeBuffer = channel.getBufHandler().getWriteBuffer();
+        long writeTimeout = endpoint.getSoTimeout();
+
+        int left = length;
+        int pos = offset;
+        while (left > 0) {
+            int thisTime = Math.min(left, writeBuffer.capacity());
+            writeBuffer.clear();
+            writeBuffer.put(src, pos, thisTime);
+            writeBuffer.flip();
+            try {
+                channel.blockingWrite(writeBuffer, writeTimeout);
+            } finally {
+                writeBuffer.clear();
+            }
+            pos += thisTime;
+            left -= thisTime;
+        }
+        return length;
+    }
+
+
+    @Override
+    protected boolean read(byte[] buf, int pos, int n, boolean blockFirstRead)
+        throws IOException {
+
+        int read = 0;
+        int res = 0;
+        boolean block = blockFirstRead;
+
+        while (read < n) {
+            res = readSocket(buf, read + pos, n - read, block);
+            if (res > 0) {
+                read += res;
+            } else if (res == 0 && !block) {
+                return false;
+            } else {
+                throw new IOException(sm.getString("ajpprocessor.failedread"));
+            }
+            block = true;
+        }
+        return true;
+    }
+
+
+    /**
+     * Uses the data the endpoint has already read first and only reads from
+     * the network, waiting for the data, if a blocking read is requested.
+     */
+    private int readSocket(byte[] buf, int pos, int n, boolean block)
+            throws IOException {
+        Nio2Channel channel = socketWrapper.getSocket();
+        ByteBuffer readBuffer = channel.getBufHandler().getReadBuffer();
+        if (!readBuffer.hasRemaining()) {
+            if (!block) {
+                return 0;
+            }
+            readBuffer.clear();
+            int nRead;
+            try {
+                nRead = channel.blockingRead(readBuffer, endpoint.getSoTimeout());
+            } finally {
+                readBuffer.flip();
+            }
+            if (nRead == -1) {
+                return -1;
+            }
+        }
+        int nRead = Math.min(n, readBuffer.remaining());
+        readBuffer.get(buf, pos, nRead);
+        return nRead;
+    }
+}
@@ -65,6 +65,8 @@ public class AjpNioProtocol extends AbstractAjpProtocol<NioChannel> {
         setTcpNoDelay(Constants.DEFAULT_TCP_NO_DELAY);
         // AJP does not use Send File
         ((NioEndpoint) endpoint).setUseSendfile(false);
+        // AJP processors use fixed size application buffers
+        ((NioEndpoint) endpoint).setUseAppBufferPool(false);
     }
 
 
@@ -190,6 +190,19 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
     protected boolean disableUploadTimeout = false;
 
 
+    /**
+     * Flag to write the responses to already received pipelined requests
+     * together rather than flushing each one.
+     */
+    protected boolean batchPipelinedResponses = false;
+
+
+    /**
+     * Is the body of the current response being written with sendfile?
+     */
+    protected boolean sendingWithSendfile = false;
+
+
     /**
      * Allowed compression level.
      */
@@ -468,6 +481,20 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
         return disableUploadTimeout;
     }
 
+    /**
+     * Set the flag that controls batching of pipelined responses.
+     */
+    public void setBatchPipelinedResponses(boolean batchPipelinedResponses) {
+        this.batchPipelinedResponses = batchPipelinedResponses;
+    }
+
+    /**
+     * Get the flag that controls batching of pipelined responses.
+     */
+    public boolean getBatchPipelinedResponses() {
+        return batchPipelinedResponses;
+    }
+
     /**
      * Set the socket buffer flag.
      */
@@ -889,6 +916,7 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
     public SocketState process(SocketWrapper<S> socketWrapper)
         throws IOException {
         RequestInfo rp = request.getRequestProcessor();
+        recordQueueTime(socketWrapper);
         rp.setStage(org.apache.coyote.Constants.STAGE_PARSE);
 
         // Setting up the I/O
@@ -936,6 +964,7 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
                     // time a request is processed.
                     if (request.getStartTime() < 0) {
                         request.setStartTime(System.currentTimeMillis());
+                        request.setStartTimeNanos(System.nanoTime());
                     }
                     keptAlive = true;
                     // Set this every time in case limit has been changed via JMX
@@ -1092,6 +1121,14 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
             }
         }
 
+        // Write any responses held back for pipelined requests that were
+        // not processed in the loop
+        try {
+            getOutputBuffer().flushDeferred();
+        } catch (IOException e) {
+            error = true;
+        }
+
         rp.setStage(org.apache.coyote.Constants.STAGE_ENDED);
 
         if (error || endpoint.isPaused()) {
@@ -1362,7 +1399,7 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
         }
 
         // Sendfile support
-        boolean sendingWithSendfile = false;
+        sendingWithSendfile = false;
         if (getEndpoint().getUseSendfile()) {
             sendingWithSendfile = prepareSendfile(outputFilters);
         }
@@ -1441,10 +1478,11 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
         }
 
         // Add date header unless application has already set one (e.g. in a
-        // Caching Filter)
+        // Caching Filter). It is written from its cached byte form.
+        MessageBytes date = null;
         if (headers.getValue("Date") == null) {
-            headers.setValue("Date").setString(
-                    FastHttpDateFormat.getCurrentDate());
+            date = headers.setValue("Date");
+            date.setString(FastHttpDateFormat.getCurrentDate());
         }
 
         // FIXME: Add transfer encoding header
@@ -1482,7 +1520,13 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
 
         int size = headers.size();
         for (int i = 0; i < size; i++) {
-            getOutputBuffer().sendHeader(headers.getName(i), headers.getValue(i));
+            MessageBytes value = headers.getValue(i);
+            if (value == date) {
+                getOutputBuffer().write(
+                        PreEncodedHeaders.getDateHeader(date.getString()));
+            } else {
+                getOutputBuffer().sendHeader(headers.getName(i), value);
+            }
         }
         getOutputBuffer().endHeaders();
 
@@ -1692,8 +1736,20 @@ public abstract class AbstractHttp11Processor<S> extends AbstractProcessor<S> {
             response.setStatus(500);
             error = true;
         }
+        boolean flush = true;
+        if (batchPipelinedResponses && keepAlive && !error &&
+                httpUpgradeHandler == null &&
+                getInputBuffer().hasPipelinedRequest()) {
+            if (!response.isCommitted()) {
+                // Commit now so it is known if sendfile will be used
+                action(ActionCode.COMMIT, null);
+            }
+            // The body of a sendfile response is written after the request
+            // has ended so the headers have to be written now
+            flush = sendingWithSendfile;
+        }
         try {
-            getOutputBuffer().endRequest();
+            getOutputBuffer().endRequest(flush);
         } catch (IOException e) {
             error = true;
         } catch (Throwable t) {
@@ -76,6 +76,19 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
     }
 
 
+    /**
+     * If true, responses to pipelined requests that have already been
+     * received are written together rather than flushed one at a time.
+     */
+    private boolean batchPipelinedResponses = false;
+    public boolean getBatchPipelinedResponses() {
+        return batchPipelinedResponses;
+    }
+    public void setBatchPipelinedResponses(boolean batchPipelinedResponses) {
+        this.batchPipelinedResponses = batchPipelinedResponses;
+    }
+
+
     /**
      * Integrated compression support.
      */
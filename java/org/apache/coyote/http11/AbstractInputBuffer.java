@@ -326,6 +326,35 @@ public abstract class AbstractInputBuffer<S> implements InputBuffer{
     }
 
 
+    /**
+     * Is the complete header block of a further, pipelined request already
+     * present in the buffer after the current request? Only meaningful once
+     * the current request has ended.
+     */
+    public boolean hasPipelinedRequest() {
+
+        int start = pos;
+        // Skip blank lines before the request line
+        while (start < lastValid &&
+                (buf[start] == Constants.CR || buf[start] == Constants.LF)) {
+            start++;
+        }
+        for (int i = start; i < lastValid - 1; i++) {
+            if (buf[i] == Constants.LF) {
+                if (buf[i + 1] == Constants.LF) {
+                    return true;
+                }
+                if (buf[i + 1] == Constants.CR && i + 2 < lastValid &&
+                        buf[i + 2] == Constants.LF) {
+                    return true;
+                }
+            }
+        }
+        return false;
+
+    }
+
+
     /**
      * Available bytes in the buffers (note that due to encoding, this may not
      * correspond).
@@ -117,6 +117,13 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
      */
     protected int bufferedWriteSize = 64*1024; //64k default write buffer
 
+    /**
+     * Has the flush at the end of the previous request(s) been skipped so the
+     * response(s) can be written together with the response to the next
+     * pipelined request?
+     */
+    protected boolean deferredFlush = false;
+
 
     protected AbstractOutputBuffer(Response response, int headerBufferSize) {
 
@@ -334,6 +341,7 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
         // Sub-classes may wish to do more than this.
         nextRequest();
         bufferedWrites.clear();
+        deferredFlush = false;
     }
 
     /**
@@ -364,6 +372,19 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
      * @throws IOException an underlying I/O error occurred
      */
     public void endRequest() throws IOException {
+        endRequest(true);
+    }
+
+
+    /**
+     * End request.
+     *
+     * @param flush <code>false</code> if the response should be left in the
+     *              buffers to be written together with the response to the
+     *              next pipelined request
+     * @throws IOException an underlying I/O error occurred
+     */
+    public void endRequest(boolean flush) throws IOException {
 
         if (!committed) {
             // Send the connector a request for commit. The connector should
@@ -378,12 +399,31 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
         if (lastActiveFilter != -1)
             activeFilters[lastActiveFilter].end();
 
-        flushBuffer(true);
+        if (flush) {
+            flushBuffer(true);
+            deferredFlush = false;
+        } else {
+            deferredFlush = true;
+        }
 
         finished = true;
     }
 
 
+    /**
+     * Write any responses that were left in the buffers when their requests
+     * ended.
+     *
+     * @throws IOException an underlying I/O error occurred
+     */
+    public void flushDeferred() throws IOException {
+        if (deferredFlush) {
+            deferredFlush = false;
+            flushBuffer(true);
+        }
+    }
+
+
     public abstract void init(SocketWrapper<S> socketWrapper,
             AbstractEndpoint<S> endpoint) throws IOException;
 
@@ -397,12 +437,29 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
      */
     public void sendStatus() {
 
+        int status = response.getStatus();
+        String message = null;
+        if (org.apache.coyote.Constants.USE_CUSTOM_STATUS_MSG_IN_HEADER &&
+                HttpMessages.isSafeInHttpHeader(response.getMessage())) {
+            message = response.getMessage();
+        }
+        HttpMessages messages = null;
+        if (message == null) {
+            // Common case: the whole status line is available pre-encoded
+            messages = HttpMessages.getInstance(response.getLocale());
+            byte[] statusLine =
+                    PreEncodedHeaders.getStatusLine(status, messages);
+            if (statusLine != null) {
+                write(statusLine);
+                return;
+            }
+        }
+
         // Write protocol name
         write(Constants.HTTP_11_BYTES);
         headerBuffer[pos++] = Constants.SP;
 
         // Write status code
-        int status = response.getStatus();
         switch (status) {
         case 200:
             write(Constants._200_BYTES);
@@ -420,14 +477,8 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
         headerBuffer[pos++] = Constants.SP;
 
         // Write message
-        String message = null;
-        if (org.apache.coyote.Constants.USE_CUSTOM_STATUS_MSG_IN_HEADER &&
-                HttpMessages.isSafeInHttpHeader(response.getMessage())) {
-            message = response.getMessage();
-        }
         if (message == null) {
-            write(HttpMessages.getInstance(
-                    response.getLocale()).getMessage(status));
+            write(messages.getMessage(status));
         } else {
             write(message);
         }
@@ -460,9 +511,17 @@ public abstract class AbstractOutputBuffer<S> implements OutputBuffer {
      */
     public void sendHeader(MessageBytes name, MessageBytes value) {
 
-        write(name);
-        headerBuffer[pos++] = Constants.COLON;
-        headerBuffer[pos++] = Constants.SP;
+        byte[] encodedName = null;
+        if (name.getType() == MessageBytes.T_STR) {
+            encodedName = PreEncodedHeaders.getName(name.getString());
+        }
+        if (encodedName == null) {
+            write(name);
+            headerBuffer[pos++] = Constants.COLON;
+            headerBuffer[pos++] = Constants.SP;
+        } else {
+            write(encodedName);
+        }
         write(value);
         headerBuffer[pos++] = Constants.CR;
         headerBuffer[pos++] = Constants.LF;
@@ -326,6 +326,8 @@ public class Http11AprProtocol extends AbstractHttp11Protocol<Long> {
             processor.setConnectionUploadTimeout(
                     proto.getConnectionUploadTimeout());
             processor.setDisableUploadTimeout(proto.getDisableUploadTimeout());
+            processor.setBatchPipelinedResponses(
+                    proto.getBatchPipelinedResponses());
             processor.setCompressionMinSize(proto.getCompressionMinSize());
             processor.setCompression(proto.getCompression());
             processor.setNoCompressionUserAgents(proto.getNoCompressionUserAgents());
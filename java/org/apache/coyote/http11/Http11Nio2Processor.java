@@ -0,0 +1,378 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import org.apache.coyote.ActionCode;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
+import org.apache.tomcat.util.net.Nio2Channel;
+import org.apache.tomcat.util.net.Nio2Endpoint;
+import org.apache.tomcat.util.net.SSLSupport;
+import org.apache.tomcat.util.net.SocketStatus;
+import org.apache.tomcat.util.net.SocketWrapper;
+
+
+/**
+ * Processes HTTP requests for the NIO2 connector.
+ */
+public class Http11Nio2Processor extends AbstractHttp11Processor<Nio2Channel> {
+
+    private static final Log log = LogFactory.getLog(Http11Nio2Processor.class);
+    @Override
+    protected Log getLog() {
+        return log;
+    }
+
+
+    /**
+     * SSL information.
+     */
+    protected SSLSupport sslSupport;
+
+    // ----------------------------------------------------------- Constructors
+
+
+    public Http11Nio2Processor(int maxHttpHeaderSize, Nio2Endpoint endpoint,
+            int maxTrailerSize, int maxExtensionSize) {
+
+        super(endpoint);
+
+        inputBuffer = new InternalNio2InputBuffer(request, maxHttpHeaderSize);
+        request.setInputBuffer(inputBuffer);
+
+        outputBuffer = new InternalNio2OutputBuffer(response, maxHttpHeaderSize);
+        response.setOutputBuffer(outputBuffer);
+
+        initializeFilters(maxTrailerSize, maxExtensionSize);
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+    @Override
+    public SocketState event(SocketStatus status) throws IOException {
+        // Should never reach this code but in case we do...
+        throw new IOException(
+                sm.getString("http11processor.comet.notsupported"));
+    }
+
+
+    @Override
+    protected void registerForEvent(boolean read, boolean write) {
+        if (read) {
+            ((Nio2Endpoint) endpoint).awaitBytes(socketWrapper);
+        }
+        if (write) {
+            try {
+                outputBuffer.registerWriteInterest();
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Unable to register for write", e);
+                }
+            }
+        }
+    }
+
+
+    @Override
+    protected void resetTimeouts() {
+        if (!error && socketWrapper != null &&
+                asyncStateMachine.isAsyncDispatching()) {
+            long soTimeout = endpoint.getSoTimeout();
+
+            //reset the timeout
+            if (keepAlive) {
+                socketWrapper.setTimeout(keepAliveTimeout);
+            } else {
+                socketWrapper.setTimeout(soTimeout);
+            }
+        }
+    }
+
+
+    @Override
+    protected boolean disableKeepAlive() {
+        return false;
+    }
+
+
+    @Override
+    protected void setRequestLineReadTimeout() throws IOException {
+        // The endpoint waits for the request line without holding a thread
+        // and uses the timeout of the socket wrapper to do so. Those timeouts
+        // are set when the processor gives the socket back to the endpoint
+        // rather than here.
+
+        // NO-OP
+    }
+
+
+    @Override
+    protected boolean handleIncompleteRequestLineRead() {
+        // Haven't finished reading the request so keep the socket
+        // open
+        openSocket = true;
+        // Check to see if we have read any of the request line yet
+        if (((InternalNio2InputBuffer)
+                inputBuffer).getParsingRequestLinePhase() < 2) {
+            if (socketWrapper.getLastAccess() > -1 || keptAlive) {
+                // Haven't read the request line and have previously processed a
+                // request. Must be keep-alive. Make sure the endpoint uses
+                // keepAlive.
+                socketWrapper.setTimeout(endpoint.getKeepAliveTimeout());
+            }
+        } else {
+            // Started to read request line. Need to keep processor
+            // associated with socket
+            readComplete = false;
+            // Make sure the endpoint uses soTimeout from here onwards
+            socketWrapper.setTimeout(endpoint.getSoTimeout());
+        }
+        if (endpoint.isPaused()) {
+            // 503 - Service unavailable
+            response.setStatus(503);
+            getAdapter().log(request, response, 0);
+            error = true;
+        } else {
+            return true;
+        }
+        return false;
+    }
+
+
+    @Override
+    protected void setSocketTimeout(int timeout) throws IOException {
+        // Blocking reads and writes always use the endpoint's soTimeout
+        // NO-OP
+    }
+
+
+    @Override
+    protected void setCometTimeouts(SocketWrapper<Nio2Channel> socketWrapper) {
+        // NO-OP for NIO2
+    }
+
+
+    @Override
+    protected boolean breakKeepAliveLoop(
+            SocketWrapper<Nio2Channel> socketWrapper) {
+        // The next request, if any, is read without blocking so there is no
+        // need to break out of the loop here
+        return false;
+    }
+
+
+    @Override
+    public void recycleInternal() {
+        socketWrapper = null;
+        sslSupport = null;
+    }
+
+
+    // ----------------------------------------------------- ActionHook Methods
+
+
+    /**
+     * Send an action to the connector.
+     *
+     * @param actionCode Type of the action
+     * @param param Action parameter
+     */
+    @Override
+    public void actionInternal(ActionCode actionCode, Object param) {
+
+        if (actionCode == ActionCode.REQ_HOST_ADDR_ATTRIBUTE) {
+
+            if (socketWrapper == null) {
+                request.remoteAddr().recycle();
+            } else {
+                if (socketWrapper.getRemoteAddr() == null) {
+                    InetSocketAddress addr = getRemoteAddress();
+                    if (addr != null && addr.getAddress() != null) {
+                        socketWrapper.setRemoteAddr(addr.getAddress().getHostAddress());
+                    }
+                }
+                request.remoteAddr().setString(socketWrapper.getRemoteAddr());
+            }
+
+        } else if (actionCode == ActionCode.REQ_LOCAL_NAME_ATTRIBUTE) {
+
+            if (socketWrapper == null) {
+                request.localName().recycle();
+            } else {
+                if (socketWrapper.getLocalName() == null) {
+                    InetSocketAddress addr = getLocalAddress();
+                    if (addr != null && addr.getAddress() != null) {
+                        socketWrapper.setLocalName(addr.getAddress().getHostName());
+                    }
+                }
+                request.localName().setString(socketWrapper.getLocalName());
+            }
+
+        } else if (actionCode == ActionCode.REQ_HOST_ATTRIBUTE) {
+
+            if (socketWrapper == null) {
+                request.remoteHost().recycle();
+            } else {
+                if (socketWrapper.getRemoteHost() == null) {
+                    InetSocketAddress addr = getRemoteAddress();
+                    InetAddress inetAddr = addr == null ? null : addr.getAddress();
+                    if (inetAddr != null) {
+                        socketWrapper.setRemoteHost(inetAddr.getHostName());
+                    }
+                    if (socketWrapper.getRemoteHost() == null) {
+                        if (socketWrapper.getRemoteAddr() == null &&
+                                inetAddr != null) {
+                            socketWrapper.setRemoteAddr(inetAddr.getHostAddress());
+                        }
+                        if (socketWrapper.getRemoteAddr() != null) {
+                            socketWrapper.setRemoteHost(socketWrapper.getRemoteAddr());
+                        }
+                    }
+                }
+                request.remoteHost().setString(socketWrapper.getRemoteHost());
+            }
+
+        } else if (actionCode == ActionCode.REQ_LOCAL_ADDR_ATTRIBUTE) {
+
+            if (socketWrapper == null) {
+                request.localAddr().recycle();
+            } else {
+                if (socketWrapper.getLocalAddr() == null) {
+                    InetSocketAddress addr = getLocalAddress();
+                    if (addr != null && addr.getAddress() != null) {
+                        socketWrapper.setLocalAddr(addr.getAddress().getHostAddress());
+                    }
+                }
+                request.localAddr().setString(socketWrapper.getLocalAddr());
+            }
+
+        } else if (actionCode == ActionCode.REQ_REMOTEPORT_ATTRIBUTE) {
+
+            if (socketWrapper == null) {
+                request.setRemotePort(0);
+            } else {
+                if (socketWrapper.getRemotePort() == -1) {
+                    InetSocketAddress addr = getRemoteAddress();
+                    if (addr != null) {
+                        socketWrapper.setRemotePort(addr.getPort());
+                    }
+                }
+                request.setRemotePort(socketWrapper.getRemotePort());
+            }
+
+        } else if (actionCode == ActionCode.REQ_LOCALPORT_ATTRIBUTE) {
+
+            if (socketWrapper == null) {
+                request.setLocalPort(0);
+            } else {
+                if (socketWrapper.getLocalPort() == -1) {
+                    InetSocketAddress addr = getLocalAddress();
+                    if (addr != null) {
+                        socketWrapper.setLocalPort(addr.getPort());
+                    }
+                }
+                request.setLocalPort(socketWrapper.getLocalPort());
+            }
+
+        } else if (actionCode == ActionCode.ASYNC_COMPLETE) {
+            socketWrapper.clearDispatches();
+            if (asyncStateMachine.asyncComplete()) {
+                endpoint.processSocket(this.socketWrapper,
+                        SocketStatus.OPEN_READ, true);
+            }
+        } else if (actionCode == ActionCode.ASYNC_SETTIMEOUT) {
+            if (param == null || socketWrapper == null) {
+                return;
+            }
+            long timeout = ((Long)param).longValue();
+            socketWrapper.setTimeout(timeout);
+        } else if (actionCode == ActionCode.ASYNC_DISPATCH) {
+            if (asyncStateMachine.asyncDispatch()) {
+                endpoint.processSocket(this.socketWrapper,
+                        SocketStatus.OPEN_READ, true);
+            }
+        }
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+
+    @Override
+    protected void prepareRequestInternal() {
+        // NOOP for NIO2
+    }
+
+    @Override
+    protected boolean prepareSendfile(OutputFilter[] outputFilters) {
+        // Should never, ever get here
+        return false;
+    }
+
+    @Override
+    protected AbstractInputBuffer<Nio2Channel> getInputBuffer() {
+        return inputBuffer;
+    }
+
+    @Override
+    protected AbstractOutputBuffer<Nio2Channel> getOutputBuffer() {
+        return outputBuffer;
+    }
+
+    /**
+     * Set the SSL information for this HTTP connection.
+     */
+    @Override
+    public void setSslSupport(SSLSupport sslSupport) {
+        this.sslSupport = sslSupport;
+    }
+
+
+    private InetSocketAddress getRemoteAddress() {
+        try {
+            SocketAddress sa =
+                    socketWrapper.getSocket().getIOChannel().getRemoteAddress();
+            if (sa instanceof InetSocketAddress) {
+                return (InetSocketAddress) sa;
+            }
+        } catch (IOException e) {
+            // Ignore
+        }
+        return null;
+    }
+
+
+    private InetSocketAddress getLocalAddress() {
+        try {
+            SocketAddress sa =
+                    socketWrapper.getSocket().getIOChannel().getLocalAddress();
+            if (sa instanceof InetSocketAddress) {
+                return (InetSocketAddress) sa;
+            }
+        } catch (IOException e) {
+            // Ignore
+        }
+        return null;
+    }
+}
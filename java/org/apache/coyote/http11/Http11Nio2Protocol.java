@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpUpgradeHandler;
+
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.Processor;
+import org.apache.coyote.http11.upgrade.Nio2Processor;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.net.AbstractEndpoint;
+import org.apache.tomcat.util.net.Nio2Channel;
+import org.apache.tomcat.util.net.Nio2Endpoint;
+import org.apache.tomcat.util.net.Nio2Endpoint.Handler;
+import org.apache.tomcat.util.net.SSLImplementation;
+import org.apache.tomcat.util.net.SocketWrapper;
+
+
+/**
+ * HTTP/1.1 protocol implementation using the NIO2 (asynchronous channel)
+ * endpoint.
+ */
+public class Http11Nio2Protocol extends AbstractHttp11Protocol<Nio2Channel> {
+
+    private static final Log log = LogFactory.getLog(Http11Nio2Protocol.class);
+
+
+    @Override
+    protected Log getLog() { return log; }
+
+
+    @Override
+    protected AbstractEndpoint.Handler getHandler() {
+        return cHandler;
+    }
+
+
+    public Http11Nio2Protocol() {
+        endpoint=new Nio2Endpoint();
+        cHandler = new Http11ConnectionHandler(this);
+        ((Nio2Endpoint) endpoint).setHandler(cHandler);
+        setSoLinger(Constants.DEFAULT_CONNECTION_LINGER);
+        setSoTimeout(Constants.DEFAULT_CONNECTION_TIMEOUT);
+        setTcpNoDelay(Constants.DEFAULT_TCP_NO_DELAY);
+    }
+
+
+    public Nio2Endpoint getEndpoint() {
+        return ((Nio2Endpoint)endpoint);
+    }
+
+
+    // -------------------- Properties--------------------
+
+    private final Http11ConnectionHandler cHandler;
+
+
+    // ----------------------------------------------------- JMX related methods
+
+    @Override
+    protected String getNamePrefix() {
+        return ("http-nio2");
+    }
+
+
+    // --------------------  Connection handler --------------------
+
+    protected static class Http11ConnectionHandler
+            extends AbstractConnectionHandler<Nio2Channel,Http11Nio2Processor>
+            implements Handler {
+
+        protected Http11Nio2Protocol proto;
+
+        Http11ConnectionHandler(Http11Nio2Protocol proto) {
+            this.proto = proto;
+        }
+
+        @Override
+        protected AbstractProtocol<Nio2Channel> getProtocol() {
+            return proto;
+        }
+
+        @Override
+        protected Log getLog() {
+            return log;
+        }
+
+
+        @Override
+        public SSLImplementation getSslImplementation() {
+            // SSL is not supported by NIO2
+            return null;
+        }
+
+        /**
+         * Expected to be used by the endpoint to release resources on socket
+         * close, errors etc.
+         */
+        @Override
+        public void release(SocketWrapper<Nio2Channel> socket) {
+            Processor<Nio2Channel> processor =
+                connections.remove(socket.getSocket());
+            if (processor != null) {
+                if (processor.isUpgrade()) {
+                    processor.getHttpUpgradeHandler().destroy();
+                } else {
+                    processor.recycle(true);
+                    recycledProcessors.push(processor);
+                }
+            }
+        }
+
+
+        /**
+         * Expected to be used by the handler once the processor is no longer
+         * required.
+         *
+         * @param socket
+         * @param processor
+         * @param isSocketClosing   Not used in HTTP
+         * @param addToPoller       Should the endpoint wait for the next
+         *                          request on this connection
+         */
+        @Override
+        public void release(SocketWrapper<Nio2Channel> socket,
+                Processor<Nio2Channel> processor, boolean isSocketClosing,
+                boolean addToPoller) {
+            processor.recycle(isSocketClosing);
+            recycledProcessors.push(processor);
+            if (addToPoller) {
+                proto.getEndpoint().awaitBytes(socket);
+            }
+        }
+
+
+        @Override
+        protected void initSsl(SocketWrapper<Nio2Channel> socket,
+                Processor<Nio2Channel> processor) {
+            processor.setSslSupport(null);
+        }
+
+        @Override
+        protected void longPoll(SocketWrapper<Nio2Channel> socket,
+                Processor<Nio2Channel> processor) {
+
+            if (processor.isAsync()) {
+                // The endpoint adds the socket to the async timeout queue
+                socket.setAsync(true);
+            } else {
+                // Either:
+                //  - this is an upgraded connection
+                //  - the request line/headers have not been completely
+                //    read
+                proto.getEndpoint().awaitBytes(socket);
+            }
+        }
+
+        @Override
+        public Http11Nio2Processor createProcessor() {
+            Http11Nio2Processor processor = new Http11Nio2Processor(
+                    proto.getMaxHttpHeaderSize(), (Nio2Endpoint)proto.endpoint,
+                    proto.getMaxTrailerSize(), proto.getMaxExtensionSize());
+            processor.setAdapter(proto.getAdapter());
+            processor.setMaxKeepAliveRequests(proto.getMaxKeepAliveRequests());
+            processor.setKeepAliveTimeout(proto.getKeepAliveTimeout());
+            processor.setConnectionUploadTimeout(
+                    proto.getConnectionUploadTimeout());
+            processor.setDisableUploadTimeout(proto.getDisableUploadTimeout());
+            processor.setBatchPipelinedResponses(
+                    proto.getBatchPipelinedResponses());
+            processor.setCompressionMinSize(proto.getCompressionMinSize());
+            processor.setCompression(proto.getCompression());
+            processor.setNoCompressionUserAgents(proto.getNoCompressionUserAgents());
+            processor.setCompressableMimeTypes(proto.getCompressableMimeTypes());
+            processor.setRestrictedUserAgents(proto.getRestrictedUserAgents());
+            processor.setSocketBuffer(proto.getSocketBuffer());
+            processor.setMaxSavePostSize(proto.getMaxSavePostSize());
+            processor.setServer(proto.getServer());
+            register(processor);
+            return processor;
+        }
+
+        @Override
+        protected Processor<Nio2Channel> createUpgradeProcessor(
+                SocketWrapper<Nio2Channel> socket,
+                HttpUpgradeHandler httpUpgradeProcessor)
+                throws IOException {
+            return new Nio2Processor(socket, httpUpgradeProcessor,
+                    ((Http11Nio2Protocol) getProtocol()).getEndpoint());
+        }
+    }
+}
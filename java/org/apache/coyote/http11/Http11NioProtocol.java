@@ -242,6 +242,8 @@ public class Http11NioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
             processor.recycle(isSocketClosing);
             recycledProcessors.push(processor);
             if (addToPoller) {
+                // The connection is idle until the next request arrives
+                socket.getSocket().releaseIdleBuffers();
                 socket.getSocket().getPoller().add(socket.getSocket());
             }
         }
@@ -290,6 +292,8 @@ public class Http11NioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
             processor.setConnectionUploadTimeout(
                     proto.getConnectionUploadTimeout());
             processor.setDisableUploadTimeout(proto.getDisableUploadTimeout());
+            processor.setBatchPipelinedResponses(
+                    proto.getBatchPipelinedResponses());
             processor.setCompressionMinSize(proto.getCompressionMinSize());
             processor.setCompression(proto.getCompression());
             processor.setNoCompressionUserAgents(proto.getNoCompressionUserAgents());
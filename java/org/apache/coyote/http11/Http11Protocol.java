@@ -193,6 +193,8 @@ public class Http11Protocol extends AbstractHttp11JsseProtocol<Socket> {
             processor.setConnectionUploadTimeout(
                     proto.getConnectionUploadTimeout());
             processor.setDisableUploadTimeout(proto.getDisableUploadTimeout());
+            processor.setBatchPipelinedResponses(
+                    proto.getBatchPipelinedResponses());
             processor.setCompressionMinSize(proto.getCompressionMinSize());
             processor.setCompression(proto.getCompression());
             processor.setNoCompressionUserAgents(proto.getNoCompressionUserAgents());
@@ -126,6 +126,8 @@ public class InternalAprOutputBuffer extends AbstractOutputBuffer<Long> {
     @Override
     public void sendAck() throws IOException {
         if (!committed) {
+            // Earlier pipelined responses must be written first
+            flushDeferred();
             if (Socket.send(socket, Constants.ACK_BYTES, 0, Constants.ACK_BYTES.length) < 0)
                 throw new IOException(sm.getString("iob.failedwrite.ack"));
         }
@@ -149,7 +151,12 @@ public class InternalAprOutputBuffer extends AbstractOutputBuffer<Long> {
 
         if (pos > 0) {
             // Sending the response header buffer
-            bbuf.put(headerBuffer, 0, pos);
+            if (deferredFlush) {
+                // bbuf may already be holding earlier pipelined responses
+                addToBB(headerBuffer, 0, pos);
+            } else {
+                bbuf.put(headerBuffer, 0, pos);
+            }
         }
 
     }
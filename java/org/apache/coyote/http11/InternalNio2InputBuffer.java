@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.coyote.Request;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.net.AbstractEndpoint;
+import org.apache.tomcat.util.net.Nio2Channel;
+import org.apache.tomcat.util.net.SocketWrapper;
+
+/**
+ * Implementation of InputBuffer which provides HTTP request header parsing as
+ * well as transfer decoding for the NIO2 connector.
+ * <p>
+ * Non-blocking reads only consume the data the endpoint has already read into
+ * the channel's read buffer. Blocking reads wait for an asynchronous read to
+ * complete.
+ */
+public class InternalNio2InputBuffer extends AbstractNioInputBuffer<Nio2Channel> {
+
+    private static final Log log =
+            LogFactory.getLog(InternalNio2InputBuffer.class);
+
+    // ----------------------------------------------------------- Constructors
+
+
+    public InternalNio2InputBuffer(Request request, int headerBufferSize) {
+        super(request, headerBufferSize);
+    }
+
+
+    // ----------------------------------------------------- Instance Variables
+
+    /**
+     * Underlying socket.
+     */
+    private Nio2Channel socket;
+
+    /**
+     * Timeout for blocking reads.
+     */
+    private long readTimeout;
+
+
+    // --------------------------------------------------------- Public Methods
+
+    @Override
+    protected final Log getLog() {
+        return log;
+    }
+
+
+    /**
+     * Recycle the input buffer. This should be called when closing the
+     * connection.
+     */
+    @Override
+    public void recycle() {
+        super.recycle();
+        socket = null;
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+    /**
+     * Read data into the input buffer.
+     * @param timeout Unused, the timeout for blocking reads is always the
+     *                socket timeout
+     * @param block   true if the system should wait for data, false to only
+     *                use the data already read by the endpoint
+     * @return the number of bytes read
+     * @throws IOException if a socket exception occurs
+     * @throws EOFException if end of stream is reached
+     */
+    @Override
+    protected int readSocket(boolean timeout, boolean block)
+            throws IOException {
+        ByteBuffer readBuffer = socket.getBufHandler().getReadBuffer();
+        int nRead = readBuffer.remaining();
+        if (nRead == 0) {
+            if (!block) {
+                return 0;
+            }
+            readBuffer.clear();
+            try {
+                nRead = socket.blockingRead(readBuffer, readTimeout);
+            } finally {
+                readBuffer.flip();
+            }
+        }
+        if (nRead > 0) {
+            expand(nRead + pos);
+            readBuffer.get(buf, pos, nRead);
+            lastValid = pos + nRead;
+            return nRead;
+        } else if (nRead == -1) {
+            throw new EOFException(sm.getString("iib.eof.error"));
+        } else {
+            return 0;
+        }
+    }
+
+
+    @Override
+    protected void init(SocketWrapper<Nio2Channel> socketWrapper,
+            AbstractEndpoint<Nio2Channel> endpoint) throws IOException {
+
+        socket = socketWrapper.getSocket();
+        if (socket == null) {
+            // Socket has been closed in another thread
+            throw new IOException(sm.getString("iib.socketClosed"));
+        }
+        socketReadBufferSize =
+            socket.getBufHandler().getReadBuffer().capacity();
+
+        int bufLength = headerBufferSize + socketReadBufferSize;
+        if (buf == null || buf.length < bufLength) {
+            buf = new byte[bufLength];
+        }
+
+        readTimeout = endpoint.getSoTimeout();
+    }
+}
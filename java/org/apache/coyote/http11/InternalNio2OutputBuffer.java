@@ -0,0 +1,418 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.coyote.ByteBufferHolder;
+import org.apache.coyote.OutputBuffer;
+import org.apache.coyote.Response;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.net.AbstractEndpoint;
+import org.apache.tomcat.util.net.Nio2Channel;
+import org.apache.tomcat.util.net.SocketStatus;
+import org.apache.tomcat.util.net.SocketWrapper;
+
+/**
+ * Output buffer for the NIO2 connector.
+ * <p>
+ * Blocking writes wait for the asynchronous write to complete. Non-blocking
+ * writes return as soon as the write has been started; the connection is
+ * dispatched for {@link SocketStatus#OPEN_WRITE} when the write completes if
+ * write interest has been registered in the meantime.
+ */
+public class InternalNio2OutputBuffer extends AbstractOutputBuffer<Nio2Channel> {
+
+    // ----------------------------------------------------------- Constructors
+
+    /**
+     * Default constructor.
+     */
+    public InternalNio2OutputBuffer(Response response, int headerBufferSize) {
+
+        super(response, headerBufferSize);
+
+        outputStreamOutputBuffer = new SocketOutputBuffer();
+    }
+
+
+    /**
+     * Underlying socket.
+     */
+    private volatile Nio2Channel socket;
+
+    /**
+     * Underlying socket wrapper, needed to dispatch write events.
+     */
+    private SocketWrapper<Nio2Channel> socketWrapper;
+
+    /**
+     * Associated endpoint.
+     */
+    private AbstractEndpoint<Nio2Channel> endpoint;
+
+    /**
+     * Track if the byte buffer is flipped
+     */
+    protected volatile boolean flipped = false;
+
+    /**
+     * Has write interest been registered while a non-blocking write was in
+     * progress.
+     */
+    private boolean writeInterest = false;
+
+    /**
+     * Completion handler for non-blocking writes.
+     */
+    private final CompletionHandler<Integer,ByteBuffer> completionHandler =
+            new CompletionHandler<Integer,ByteBuffer>() {
+
+        @Override
+        public void completed(Integer nBytes, ByteBuffer attachment) {
+            Nio2Channel channel = socket;
+            if (channel == null) {
+                // Recycled after an error, the connection is being closed
+                return;
+            }
+            if (nBytes.intValue() >= 0 && attachment.hasRemaining()) {
+                // Partial write, carry on with the same permit
+                channel.write(attachment, getWriteTimeout(),
+                        TimeUnit.MILLISECONDS, attachment, this);
+                return;
+            }
+            if (nBytes.intValue() >= 0) {
+                attachment.clear();
+                flipped = false;
+            }
+            writeComplete();
+        }
+
+        @Override
+        public void failed(Throwable exc, ByteBuffer attachment) {
+            // Leave the data in the buffer, the next blocking write will
+            // fail and report the error
+            writeComplete();
+        }
+    };
+
+
+    // --------------------------------------------------------- Public Methods
+
+    @Override
+    public void init(SocketWrapper<Nio2Channel> socketWrapper,
+            AbstractEndpoint<Nio2Channel> endpoint) throws IOException {
+
+        this.socketWrapper = socketWrapper;
+        this.endpoint = endpoint;
+        socket = socketWrapper.getSocket();
+    }
+
+
+    /**
+     * Recycle the output buffer. This should be called when closing the
+     * connection.
+     */
+    @Override
+    public void recycle() {
+        super.recycle();
+        if (socket != null) {
+            if (socket.getWritePending().availablePermits() > 0) {
+                socket.getBufHandler().getWriteBuffer().clear();
+            }
+            socket = null;
+        }
+        socketWrapper = null;
+        endpoint = null;
+        flipped = false;
+        synchronized (completionHandler) {
+            writeInterest = false;
+        }
+    }
+
+
+    // ------------------------------------------------ HTTP/1.1 Output Methods
+
+    /**
+     * Send an acknowledgment.
+     */
+    @Override
+    public void sendAck() throws IOException {
+        if (!committed) {
+            socket.getBufHandler().getWriteBuffer().put(
+                    Constants.ACK_BYTES, 0, Constants.ACK_BYTES.length);
+            writeToSocket(socket.getBufHandler().getWriteBuffer(), true, true);
+        }
+    }
+
+    /**
+     * Write the content of the buffer to the socket.
+     *
+     * @param bytebuffer The buffer holding the data to write
+     * @param block      Should the write wait for the data to be written
+     * @param flip       Does the buffer need to be flipped first
+     * @return true if the data was written, false if the write is still in
+     *         progress
+     * @throws IOException
+     */
+    private synchronized boolean writeToSocket(ByteBuffer bytebuffer,
+            boolean block, boolean flip) throws IOException {
+        if ( flip ) {
+            bytebuffer.flip();
+            flipped = true;
+        }
+
+        if (block) {
+            socket.blockingWrite(bytebuffer, getWriteTimeout());
+            //blocking writes must empty the buffer
+            bytebuffer.clear();
+            flipped = false;
+            return true;
+        }
+
+        if (!bytebuffer.hasRemaining()) {
+            bytebuffer.clear();
+            flipped = false;
+            return true;
+        }
+        if (!socket.getWritePending().tryAcquire()) {
+            // A write is already in progress
+            return false;
+        }
+        socket.write(bytebuffer, getWriteTimeout(), TimeUnit.MILLISECONDS,
+                bytebuffer, completionHandler);
+        // If there is data left in the buffer the socket will be registered for
+        // write further up the stack. This is to ensure the socket is only
+        // registered for write once as both container and user code can trigger
+        // write registration.
+        return false;
+    }
+
+
+    private long getWriteTimeout() {
+        return endpoint == null ? 0 : endpoint.getSoTimeout();
+    }
+
+
+    private void writeComplete() {
+        boolean dispatch;
+        SocketWrapper<Nio2Channel> wrapper;
+        AbstractEndpoint<Nio2Channel> ep;
+        synchronized (completionHandler) {
+            Nio2Channel channel = socket;
+            if (channel == null) {
+                return;
+            }
+            channel.getWritePending().release();
+            dispatch = writeInterest;
+            writeInterest = false;
+            wrapper = socketWrapper;
+            ep = endpoint;
+        }
+        if (dispatch && wrapper != null && ep != null) {
+            ep.processSocket(wrapper, SocketStatus.OPEN_WRITE, true);
+        }
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+    /**
+     * Commit the response.
+     *
+     * @throws IOException an underlying I/O error occurred
+     */
+    @Override
+    protected void commit() throws IOException {
+
+        // The response is now committed
+        committed = true;
+        response.setCommitted(true);
+
+        if (pos > 0) {
+            // Sending the response header buffer
+            addToBB(headerBuffer, 0, pos);
+        }
+
+    }
+
+
+    private synchronized void addToBB(byte[] buf, int offset, int length)
+            throws IOException {
+
+        if (length == 0) return;
+
+        ByteBuffer writeBuffer = socket.getBufHandler().getWriteBuffer();
+        if (deferredFlush && isBlocking() && !flipped &&
+                length <= writeBuffer.remaining()) {
+            // Keep the data with the earlier pipelined responses
+            transfer(buf, offset, length, writeBuffer);
+            return;
+        }
+
+        // Try to flush any data in the socket's write buffer first
+        boolean dataLeft = flushBuffer(isBlocking());
+
+        // Keep writing until all the data is written or a non-blocking write
+        // leaves data in the buffer
+        while (!dataLeft && length > 0) {
+            int thisTime = transfer(buf,offset,length,socket.getBufHandler().getWriteBuffer());
+            length = length - thisTime;
+            offset = offset + thisTime;
+            if (writeToSocket(socket.getBufHandler().getWriteBuffer(),
+                    isBlocking(), true)) {
+                dataLeft = flushBuffer(isBlocking());
+            } else {
+                dataLeft = true;
+            }
+        }
+
+        socketWrapper.access();//prevent timeouts for just doing client writes
+
+        if (!isBlocking() && length > 0) {
+            // Remaining data must be buffered
+            addToBuffers(buf, offset, length);
+        }
+    }
+
+
+    private void addToBuffers(byte[] buf, int offset, int length) {
+        ByteBufferHolder holder = bufferedWrites.peekLast();
+        if (holder==null || holder.isFlipped() || holder.getBuf().remaining()<length) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(bufferedWriteSize,length));
+            holder = new ByteBufferHolder(buffer,false);
+            bufferedWrites.add(holder);
+        }
+        holder.getBuf().put(buf,offset,length);
+    }
+
+
+    /**
+     * Callback to write data from the buffer.
+     */
+    @Override
+    protected synchronized boolean flushBuffer(boolean block) throws IOException {
+
+        //prevent timeout for async,
+        socketWrapper.access();
+
+        if (!block && socket.getWritePending().availablePermits() == 0) {
+            // The previous non-blocking write is still in progress
+            return true;
+        }
+
+        boolean dataLeft = hasMoreDataToFlush();
+
+        //write to the socket, if there is anything to write
+        if (dataLeft) {
+            writeToSocket(socket.getBufHandler().getWriteBuffer(),block, !flipped);
+        }
+
+        dataLeft = hasMoreDataToFlush();
+
+        if (!dataLeft && bufferedWrites.size() > 0) {
+            Iterator<ByteBufferHolder> bufIter = bufferedWrites.iterator();
+            while (!hasMoreDataToFlush() && bufIter.hasNext()) {
+                ByteBufferHolder buffer = bufIter.next();
+                buffer.flip();
+                while (!hasMoreDataToFlush() && buffer.getBuf().remaining()>0) {
+                    transfer(buffer.getBuf(), socket.getBufHandler().getWriteBuffer());
+                    if (buffer.getBuf().remaining() == 0) {
+                        bufIter.remove();
+                    }
+                    writeToSocket(socket.getBufHandler().getWriteBuffer(),block, true);
+                    //here we must break if we didn't finish the write
+                }
+            }
+        }
+
+        return hasMoreDataToFlush();
+    }
+
+
+    @Override
+    protected boolean hasMoreDataToFlush() {
+        if (socket.getWritePending().availablePermits() == 0) {
+            return true;
+        }
+        return (flipped && socket.getBufHandler().getWriteBuffer().remaining()>0) ||
+        (!flipped && socket.getBufHandler().getWriteBuffer().position() > 0);
+    }
+
+
+    @Override
+    protected void registerWriteInterest() throws IOException {
+        synchronized (completionHandler) {
+            if (socket.getWritePending().availablePermits() == 0) {
+                writeInterest = true;
+                return;
+            }
+        }
+        // No write in progress so the socket can be written to straight away
+        endpoint.processSocket(socketWrapper, SocketStatus.OPEN_WRITE, true);
+    }
+
+
+    private int transfer(byte[] from, int offset, int length, ByteBuffer to) {
+        int max = Math.min(length, to.remaining());
+        to.put(from, offset, max);
+        return max;
+    }
+
+
+    private void transfer(ByteBuffer from, ByteBuffer to) {
+        int max = Math.min(from.remaining(), to.remaining());
+        ByteBuffer tmp = from.duplicate ();
+        tmp.limit (tmp.position() + max);
+        to.put (tmp);
+        from.position(from.position() + max);
+    }
+
+
+    // ----------------------------------- OutputStreamOutputBuffer Inner Class
+
+    /**
+     * This class is an output buffer which will write data to an output
+     * stream.
+     */
+    protected class SocketOutputBuffer implements OutputBuffer {
+
+
+        /**
+         * Write chunk.
+         */
+        @Override
+        public int doWrite(ByteChunk chunk, Response res) throws IOException {
+
+            int len = chunk.getLength();
+            int start = chunk.getStart();
+            byte[] b = chunk.getBuffer();
+            addToBB(b, start, len);
+            byteCount += chunk.getLength();
+            return chunk.getLength();
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return byteCount;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.apache.tomcat.util.net.AbstractEndpoint;
 import org.apache.tomcat.util.net.NioChannel;
 import org.apache.tomcat.util.net.NioEndpoint;
 import org.apache.tomcat.util.net.NioSelectorPool;
+import org.apache.tomcat.util.net.SecureNioChannel;
 import org.apache.tomcat.util.net.SocketWrapper;
 
 /**
@@ -69,6 +70,23 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
      */
     protected volatile boolean flipped = false;
 
+    /**
+     * Write large blocking writes directly from the source array rather than
+     * via the write buffer of the channel.
+     */
+    private boolean bypassAppBuffers = false;
+
+    /**
+     * Response headers that have been committed but not yet written. They are
+     * written together with the first body data using a gathering write.
+     */
+    private boolean headersPending = false;
+
+    /**
+     * Buffers used for the gathering write of the headers and the body.
+     */
+    private final ByteBuffer[] gatherBuffers = new ByteBuffer[2];
+
 
     // --------------------------------------------------------- Public Methods
 
@@ -78,6 +96,11 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
 
         socket = socketWrapper.getSocket();
         pool = ((NioEndpoint)endpoint).getSelectorPool();
+
+        // SSL data has to be encrypted via the write buffer of the channel
+        bypassAppBuffers =
+                endpoint.getSocketProperties().getBypassAppBuffers() &&
+                !(socket instanceof SecureNioChannel);
     }
 
 
@@ -96,6 +119,25 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
     }
 
 
+    @Override
+    public void nextRequest() {
+        super.nextRequest();
+        headersPending = false;
+    }
+
+
+    @Override
+    public void endRequest(boolean flush) throws IOException {
+        super.endRequest(flush);
+        if (headersPending) {
+            // No body data was written and the response is not being flushed
+            // so the headers have to join the other deferred data
+            headersPending = false;
+            addToBB(headerBuffer, 0, pos);
+        }
+    }
+
+
     // ------------------------------------------------ HTTP/1.1 Output Methods
 
     /**
@@ -174,8 +216,13 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
         response.setCommitted(true);
 
         if (pos > 0) {
-            // Sending the response header buffer
-            addToBB(headerBuffer, 0, pos);
+            if (bypassAppBuffers && isBlocking() && !deferredFlush) {
+                // Send the headers with the first body data
+                headersPending = true;
+            } else {
+                // Sending the response header buffer
+                addToBB(headerBuffer, 0, pos);
+            }
         }
 
     }
@@ -186,12 +233,34 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
 
         if (length == 0) return;
 
+        if (headersPending && isBlocking()) {
+            headersPending = false;
+            writeGathered(buf, offset, length);
+            return;
+        }
+
+        ByteBuffer writeBuffer = socket.getBufHandler().getWriteBuffer();
+        if (deferredFlush && isBlocking() && !flipped &&
+                length <= writeBuffer.remaining()) {
+            // Keep the data with the earlier pipelined responses
+            transfer(buf, offset, length, writeBuffer);
+            return;
+        }
+
         // Try to flush any data in the socket's write buffer first
         boolean dataLeft = flushBuffer(isBlocking());
 
         // Keep writing until all the data is written or a non-blocking write
         // leaves data in the buffer
         while (!dataLeft && length > 0) {
+            if (bypassAppBuffers && isBlocking() && length >=
+                    socket.getBufHandler().getWriteBuffer().capacity()) {
+                // The write buffer is empty so there is no need to copy the
+                // data into it first
+                writeToSocket(ByteBuffer.wrap(buf, offset, length), true, false);
+                length = 0;
+                break;
+            }
             int thisTime = transfer(buf,offset,length,socket.getBufHandler().getWriteBuffer());
             length = length - thisTime;
             offset = offset + thisTime;
@@ -201,6 +270,10 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
                 dataLeft = true;
             } else {
                 dataLeft = flushBuffer(isBlocking());
+                if (!dataLeft && length > 0) {
+                    // The data did not fit in the now empty write buffer
+                    socket.growWriteBuffer();
+                }
             }
         }
 
@@ -214,6 +287,33 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
     }
 
 
+    /**
+     * Writes the pending response headers and the given body data with a
+     * single gathering write, without copying either into the write buffer of
+     * the channel. Anything the socket does not accept immediately is written
+     * with the standard blocking write.
+     */
+    private void writeGathered(byte[] buf, int offset, int length)
+            throws IOException {
+        gatherBuffers[0] = ByteBuffer.wrap(headerBuffer, 0, pos);
+        gatherBuffers[1] = ByteBuffer.wrap(buf, offset, length);
+        try {
+            socket.getIOChannel().write(gatherBuffers);
+            for (ByteBuffer src : gatherBuffers) {
+                if (src.hasRemaining()) {
+                    writeToSocket(src, true, false);
+                }
+            }
+        } finally {
+            gatherBuffers[0] = null;
+            gatherBuffers[1] = null;
+        }
+
+        NioEndpoint.KeyAttachment ka = (NioEndpoint.KeyAttachment)socket.getAttachment(false);
+        if (ka != null) ka.access();//prevent timeouts for just doing client writes
+    }
+
+
     private void addToBuffers(byte[] buf, int offset, int length) {
         ByteBufferHolder holder = bufferedWrites.peekLast();
         if (holder==null || holder.isFlipped() || holder.getBuf().remaining()<length) {
@@ -238,6 +338,12 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
             attach.access();
         }
 
+        if (headersPending) {
+            // No body data was written so the headers are sent on their own
+            headersPending = false;
+            addToBB(headerBuffer, 0, pos);
+        }
+
         boolean dataLeft = hasMoreDataToFlush();
 
         //write to the socket, if there is anything to write
@@ -269,7 +375,8 @@ public class InternalNioOutputBuffer extends AbstractOutputBuffer<NioChannel> {
 
     @Override
     protected boolean hasMoreDataToFlush() {
-        return (flipped && socket.getBufHandler().getWriteBuffer().remaining()>0) ||
+        return headersPending ||
+        (flipped && socket.getBufHandler().getWriteBuffer().remaining()>0) ||
         (!flipped && socket.getBufHandler().getWriteBuffer().position() > 0);
     }
 
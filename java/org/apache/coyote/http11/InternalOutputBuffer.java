@@ -113,7 +113,9 @@ public class InternalOutputBuffer extends AbstractOutputBuffer<Socket>
     @Override
     public void nextRequest() {
         super.nextRequest();
-        socketBuffer.recycle();
+        if (!deferredFlush) {
+            socketBuffer.recycle();
+        }
     }
 
 
@@ -126,8 +128,11 @@ public class InternalOutputBuffer extends AbstractOutputBuffer<Socket>
     public void sendAck()
         throws IOException {
 
-        if (!committed)
+        if (!committed) {
+            // Earlier pipelined responses must be written first
+            flushDeferred();
             outputStream.write(Constants.ACK_BYTES);
+        }
 
     }
 
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.http.FastHttpDateFormat;
+import org.apache.tomcat.util.http.HttpMessages;
+
+/**
+ * Byte forms of the parts of a response header that are the same for most
+ * responses, so that writing them is a plain array copy:
+ * <ul>
+ * <li>the names of common headers, followed by ": "</li>
+ * <li>complete status lines using the default reason phrases</li>
+ * <li>a complete Date header, regenerated when the date changes</li>
+ * </ul>
+ */
+public final class PreEncodedHeaders {
+
+    private static final String[] NAMES = { "Cache-Control", "Connection",
+            "Content-Disposition", "Content-Encoding", "Content-Language",
+            "Content-Length", "Content-Type", "Date", "ETag", "Expires",
+            "Keep-Alive", "Last-Modified", "Location", "Server", "Set-Cookie",
+            "Transfer-Encoding", "Vary", "WWW-Authenticate" };
+
+    private static final Map<String,byte[]> names = new HashMap<>();
+
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 599;
+
+    private static final byte[][] statusLines =
+            new byte[MAX_STATUS - MIN_STATUS + 1][];
+
+    private static final HttpMessages defaultMessages =
+            HttpMessages.getInstance(Locale.getDefault());
+
+    private static volatile DateHeader dateHeader = new DateHeader(null, null);
+
+    static {
+        for (String name : NAMES) {
+            names.put(name, ByteChunk.convertToBytes(name + ": "));
+        }
+        for (int status = MIN_STATUS; status <= MAX_STATUS; status++) {
+            String message = defaultMessages.getMessage(status);
+            if (message != null) {
+                statusLines[status - MIN_STATUS] = encodeLine(
+                        Constants.HTTP_11 + " " + status + " " + message);
+            }
+        }
+    }
+
+
+    private PreEncodedHeaders() {
+        // Hide default constructor
+    }
+
+
+    /**
+     * Obtain the bytes for the given header name followed by a colon and a
+     * space.
+     *
+     * @param name the header name, as set by the application. The case must
+     *             match the usual form of the header name.
+     * @return the bytes or <code>null</code> if the name is not a common one
+     */
+    public static byte[] getName(String name) {
+        return names.get(name);
+    }
+
+
+    /**
+     * Obtain the complete status line, including the trailing CRLF, for the
+     * given status.
+     *
+     * @param status   the status code
+     * @param messages the messages for the locale of the response
+     * @return the bytes or <code>null</code> if the reason phrase is not the
+     *         default one or the status is unknown
+     */
+    public static byte[] getStatusLine(int status, HttpMessages messages) {
+        if (messages != defaultMessages || status < MIN_STATUS ||
+                status > MAX_STATUS) {
+            return null;
+        }
+        return statusLines[status - MIN_STATUS];
+    }
+
+
+    /**
+     * Obtain a complete Date header, including the trailing CRLF.
+     *
+     * @param date the header value, usually
+     *             {@link FastHttpDateFormat#getCurrentDate()}
+     */
+    public static byte[] getDateHeader(String date) {
+        DateHeader current = dateHeader;
+        if (!date.equals(current.date)) {
+            current = new DateHeader(date, encodeLine("Date: " + date));
+            dateHeader = current;
+        }
+        return current.bytes;
+    }
+
+
+    /*
+     * Same filtering as AbstractOutputBuffer.write(String), followed by CRLF.
+     */
+    private static byte[] encodeLine(String s) {
+        int len = s.length();
+        byte[] result = new byte[len + 2];
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (((c <= 31) && (c != 9)) || c == 127 || c > 255) {
+                c = ' ';
+            }
+            result[i] = (byte) c;
+        }
+        result[len] = Constants.CR;
+        result[len + 1] = Constants.LF;
+        return result;
+    }
+
+
+    private static final class DateHeader {
+        private final String date;
+        private final byte[] bytes;
+
+        private DateHeader(String date, byte[] bytes) {
+            this.date = date;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -55,8 +55,12 @@ public abstract class AbstractProcessor<S>
 
     // --------------------------------------------------- AutoCloseable methods
 
+    /*
+     * Declared to throw IOException rather than Exception so that javac does
+     * not warn that close() may throw InterruptedException.
+     */
     @Override
-    public void close() throws Exception {
+    public void close() throws IOException {
         upgradeServletInputStream.close();
         upgradeServletOutputStream.close();
     }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11.upgrade;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tomcat.util.net.Nio2Channel;
+import org.apache.tomcat.util.net.Nio2Endpoint;
+import org.apache.tomcat.util.net.SocketStatus;
+import org.apache.tomcat.util.net.SocketWrapper;
+
+public class Nio2ServletOutputStream extends AbstractServletOutputStream {
+
+    private static final int INFINITE_TIMEOUT = -1;
+
+    private final SocketWrapper<Nio2Channel> wrapper;
+    private final Nio2Channel channel;
+    private final Nio2Endpoint endpoint;
+    private final int maxWrite;
+
+    /**
+     * Guarded by writeCompletion. Set when a non-blocking write could not
+     * accept all the data so a write event must be triggered once the write
+     * in progress completes.
+     */
+    private boolean writeInterest = false;
+
+    private final CompletionHandler<Integer,ByteBuffer> writeCompletion =
+            new CompletionHandler<Integer,ByteBuffer>() {
+
+        @Override
+        public void completed(Integer nBytes, ByteBuffer attachment) {
+            if (nBytes.intValue() >= 0 && attachment.hasRemaining()) {
+                channel.write(attachment, 0, TimeUnit.MILLISECONDS,
+                        attachment, this);
+            } else {
+                writeComplete();
+            }
+        }
+
+        @Override
+        public void failed(Throwable exc, ByteBuffer attachment) {
+            writeComplete();
+        }
+    };
+
+
+    public Nio2ServletOutputStream(
+            SocketWrapper<Nio2Channel> wrapper, Nio2Endpoint endpoint) {
+        this.wrapper = wrapper;
+        this.endpoint = endpoint;
+        channel = wrapper.getSocket();
+        maxWrite = channel.getBufHandler().getWriteBuffer().capacity();
+    }
+
+
+    @Override
+    protected int doWrite(boolean block, byte[] b, int off, int len)
+            throws IOException {
+        ByteBuffer writeBuffer = channel.getBufHandler().getWriteBuffer();
+
+        if (!block) {
+            synchronized (writeCompletion) {
+                if (!channel.getWritePending().tryAcquire()) {
+                    writeInterest = true;
+                    return 0;
+                }
+                int writeThisTime = Math.min(len, maxWrite);
+                if (writeThisTime < len) {
+                    writeInterest = true;
+                }
+                writeBuffer.clear();
+                writeBuffer.put(b, off, writeThisTime);
+                writeBuffer.flip();
+                channel.write(writeBuffer, 0, TimeUnit.MILLISECONDS,
+                        writeBuffer, writeCompletion);
+                return writeThisTime;
+            }
+        }
+
+        int leftToWrite = len;
+        int offset = off;
+        while (leftToWrite > 0) {
+            int writeThisLoop = Math.min(leftToWrite, maxWrite);
+            channel.flush(INFINITE_TIMEOUT);
+            writeBuffer.clear();
+            writeBuffer.put(b, offset, writeThisLoop);
+            writeBuffer.flip();
+            channel.blockingWrite(writeBuffer, INFINITE_TIMEOUT);
+            offset += writeThisLoop;
+            leftToWrite -= writeThisLoop;
+        }
+        return len;
+    }
+
+
+    private void writeComplete() {
+        boolean dispatch;
+        synchronized (writeCompletion) {
+            channel.getWritePending().release();
+            dispatch = writeInterest;
+            writeInterest = false;
+        }
+        if (dispatch) {
+            endpoint.processSocket(wrapper, SocketStatus.OPEN_WRITE, true);
+        }
+    }
+
+
+    @Override
+    protected void doFlush() throws IOException {
+        channel.flush(INFINITE_TIMEOUT);
+    }
+
+
+    @Override
+    protected void doClose() throws IOException {
+        channel.close();
+    }
+}
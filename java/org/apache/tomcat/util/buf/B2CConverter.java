@@ -81,6 +81,28 @@ public class B2CConverter {
         return charset;
     }
 
+    /**
+     * Characters up to the returned value are encoded as a single byte of the
+     * same value, and those bytes decode back to the same characters.
+     *
+     * @return 0xFF for ISO-8859-1, 0x7F for US-ASCII and UTF-8, otherwise -1
+     */
+    static int getDirectMax(Charset charset) {
+        if (charset.equals(StandardCharsets.ISO_8859_1)) {
+            return 0xFF;
+        } else if (charset.equals(StandardCharsets.US_ASCII) ||
+                charset.equals(StandardCharsets.UTF_8)) {
+            return 0x7F;
+        }
+        return -1;
+    }
+
+    /**
+     * The highest byte value that is decoded by copying it to a char without
+     * using the decoder: 0xFF for ISO-8859-1, 0x7F for US-ASCII and UTF-8 and
+     * -1 if every byte must go through the decoder.
+     */
+    private final int directMax;
     private final CharsetDecoder decoder;
     private ByteBuffer bb = null;
     private CharBuffer cb = null;
@@ -113,6 +135,7 @@ public class B2CConverter {
         } else {
             decoder = charset.newDecoder();
         }
+        directMax = getDirectMax(charset);
         decoder.onMalformedInput(action);
         decoder.onUnmappableCharacter(action);
     }
@@ -134,6 +157,34 @@ public class B2CConverter {
      */
     public void convert(ByteChunk bc, CharChunk cc, boolean endOfInput)
             throws IOException {
+        if (directMax > 0 && leftovers.position() == 0) {
+            // Copy the leading run of bytes that map directly to chars
+            byte[] src = bc.getBuffer();
+            int srcPos = bc.getStart();
+            char[] dest = cc.getBuffer();
+            int destPos = cc.getEnd();
+            int len = Math.min(bc.getLength(), dest.length - destPos);
+            int i = 0;
+            if (directMax == 0xFF) {
+                for (; i < len; i++) {
+                    dest[destPos + i] = (char) (src[srcPos + i] & 0xFF);
+                }
+            } else {
+                for (; i < len; i++) {
+                    byte b = src[srcPos + i];
+                    if (b < 0) {
+                        break;
+                    }
+                    dest[destPos + i] = (char) b;
+                }
+            }
+            bc.setOffset(srcPos + i);
+            cc.setEnd(destPos + i);
+            if (i == len) {
+                // Either all the input has been used or the output is full
+                return;
+            }
+        }
         if ((bb == null) || (bb.array() != bc.getBuffer())) {
             // Create a new byte buffer if anything changed
             bb = ByteBuffer.wrap(bc.getBuffer(), bc.getStart(), bc.getLength());
@@ -159,7 +210,8 @@ public class B2CConverter {
             do {
                 leftovers.put(bc.substractB());
                 leftovers.flip();
-                result = decoder.decode(leftovers, cb, endOfInput);
+                result = decoder.decode(leftovers, cb,
+                        endOfInput && bc.getLength() == 0);
                 leftovers.position(leftovers.limit());
                 leftovers.limit(leftovers.array().length);
             } while (result.isUnderflow() && (cb.position() == pos));
@@ -775,6 +775,44 @@ public final class ByteChunk implements Cloneable, Serializable {
         return -1;
     }
 
+    /**
+     * Creates a lookup table for use with
+     * {@link #findBytes(byte[], int, int, boolean[])}. Searching with a table
+     * costs one array access per byte, however many bytes are searched for.
+     *
+     * @param b     The bytes to search for
+     * @return      The table, indexed by the unsigned value of a byte
+     */
+    public static boolean[] createByteTable(byte... b) {
+        boolean[] table = new boolean[256];
+        for (byte value : b) {
+            table[value & 0xFF] = true;
+        }
+        return table;
+    }
+
+    /**
+     * Returns the first instance of any of the bytes in the given table in the
+     * byte array between the specified start and end.
+     *
+     * @param bytes The byte array to search
+     * @param start The point to start searching from in the byte array
+     * @param end   The point to stop searching in the byte array
+     * @param table The bytes to search for, as created by
+     *              {@link #createByteTable(byte...)}
+     * @return      The position of the first instance of the byte or -1 if the
+     *                  byte is not found.
+     */
+    public static int findBytes(byte bytes[], int start, int end,
+            boolean[] table) {
+        for (int offset = start; offset < end; offset++) {
+            if (table[bytes[offset] & 0xFF]) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Convert specified String to a byte array. This ONLY WORKS for ascii, UTF
      * chars will be truncated.
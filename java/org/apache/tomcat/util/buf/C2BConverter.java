@@ -19,6 +19,7 @@ package org.apache.tomcat.util.buf;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
@@ -28,6 +29,11 @@ import java.nio.charset.CodingErrorAction;
  */
 public final class C2BConverter {
 
+    /**
+     * The highest char value that is encoded by copying it to a byte without
+     * using the encoder, or -1 if every char must go through the encoder.
+     */
+    private final int directMax;
     private final CharsetEncoder encoder;
     private ByteBuffer bb = null;
     private CharBuffer cb = null;
@@ -38,7 +44,9 @@ public final class C2BConverter {
     private final CharBuffer leftovers;
 
     public C2BConverter(String encoding) throws IOException {
-        encoder = B2CConverter.getCharset(encoding).newEncoder();
+        Charset charset = B2CConverter.getCharset(encoding);
+        encoder = charset.newEncoder();
+        directMax = B2CConverter.getDirectMax(charset);
         // FIXME: See if unmappable/malformed behavior configuration is needed
         //        in practice
         encoder.onUnmappableCharacter(CodingErrorAction.REPLACE)
@@ -67,6 +75,29 @@ public final class C2BConverter {
      */
     public void convert(CharChunk cc, ByteChunk bc)
             throws IOException {
+        if (directMax > 0 && leftovers.position() == 0) {
+            // Copy the leading run of chars that map directly to bytes
+            char[] src = cc.getBuffer();
+            int srcPos = cc.getStart();
+            byte[] dest = bc.getBuffer();
+            int destPos = bc.getEnd();
+            int len = Math.min(cc.getLength(), dest.length - destPos);
+            int max = directMax;
+            int i = 0;
+            for (; i < len; i++) {
+                char c = src[srcPos + i];
+                if (c > max) {
+                    break;
+                }
+                dest[destPos + i] = (byte) c;
+            }
+            cc.setOffset(srcPos + i);
+            bc.setEnd(destPos + i);
+            if (i == len) {
+                // Either all the input has been used or the output is full
+                return;
+            }
+        }
         if ((bb == null) || (bb.array() != bc.getBuffer())) {
             // Create a new byte buffer if anything changed
             bb = ByteBuffer.wrap(bc.getBuffer(), bc.getEnd(),
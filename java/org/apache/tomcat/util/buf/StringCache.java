@@ -17,23 +17,23 @@
 package org.apache.tomcat.util.buf;
 
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This class implements a String cache for ByteChunk and CharChunk.
+ * <p>
+ * Each cache is split into shards selected by the hash of the chunk. A shard
+ * is a set associative table that is read without locking, and a compact
+ * frequency sketch (TinyLFU) that decides whether a String that missed the
+ * cache is worth more than the entry it would replace. The sketch counters
+ * are periodically halved so the content of the cache follows the traffic
+ * rather than being fixed once trained.
  *
  * @author Remy Maucherat
  */
 public class StringCache {
 
 
-    private static final org.apache.juli.logging.Log log=
-        org.apache.juli.logging.LogFactory.getLog( StringCache.class );
-
-
     // ------------------------------------------------------- Static Variables
 
 
@@ -48,6 +48,9 @@ public class StringCache {
             "tomcat.util.buf.StringCache.char.enabled", "false")));
 
 
+    /**
+     * Number of accesses after which the frequency counters are halved.
+     */
     protected static int trainThreshold = Integer.parseInt(System.getProperty(
             "tomcat.util.buf.StringCache.trainThreshold", "20000"));
 
@@ -61,54 +64,31 @@ public class StringCache {
                     "tomcat.util.buf.StringCache.maxStringSize", "128"));
 
 
-   /**
-     * Statistics hash map for byte chunk.
-     */
-    protected static final HashMap<ByteEntry,int[]> bcStats =
-            new HashMap<>(cacheSize);
-
-
     /**
-     * toString count for byte chunk.
+     * Number of entries in each set of a shard.
      */
-    protected static int bcCount = 0;
+    private static final int WAYS = 4;
 
 
     /**
-     * Cache for byte chunk.
+     * Minimum number of entries per shard.
      */
-    protected static ByteEntry[] bcCache = null;
+    private static final int MIN_SHARD_SIZE = 16;
 
 
-    /**
-     * Statistics hash map for char chunk.
-     */
-    protected static final HashMap<CharEntry,int[]> ccStats =
-            new HashMap<>(cacheSize);
+    private static final int MAX_SHARDS = 64;
 
 
     /**
-     * toString count for char chunk.
+     * Cache for byte chunk.
      */
-    protected static int ccCount = 0;
+    private static volatile Cache bcCache = new Cache(cacheSize, trainThreshold);
 
 
     /**
      * Cache for char chunk.
      */
-    protected static CharEntry[] ccCache = null;
-
-
-    /**
-     * Access count.
-     */
-    protected static int accessCount = 0;
-
-
-    /**
-     * Hit count.
-     */
-    protected static int hitCount = 0;
+    private static volatile Cache ccCache = new Cache(cacheSize, trainThreshold);
 
 
     // ------------------------------------------------------------ Properties
@@ -123,10 +103,12 @@ public class StringCache {
 
 
     /**
-     * @param cacheSize The cacheSize to set.
+     * @param cacheSize The cacheSize to set. The current content of the cache
+     *                  is discarded.
      */
     public void setCacheSize(int cacheSize) {
         StringCache.cacheSize = cacheSize;
+        reset();
     }
 
 
@@ -171,10 +153,12 @@ public class StringCache {
 
 
     /**
-     * @param trainThreshold The trainThreshold to set.
+     * @param trainThreshold The trainThreshold to set. The current content of
+     *                       the cache is discarded.
      */
     public void setTrainThreshold(int trainThreshold) {
         StringCache.trainThreshold = trainThreshold;
+        reset();
     }
 
 
@@ -182,7 +166,7 @@ public class StringCache {
      * @return Returns the accessCount.
      */
     public int getAccessCount() {
-        return accessCount;
+        return (int) (bcCache.getAccessCount() + ccCache.getAccessCount());
     }
 
 
@@ -190,7 +174,21 @@ public class StringCache {
      * @return Returns the hitCount.
      */
     public int getHitCount() {
-        return hitCount;
+        return (int) (bcCache.getHitCount() + ccCache.getHitCount());
+    }
+
+
+    /**
+     * @return the ratio of accesses, between 0 and 1, that were served from
+     *         the cache since the last reset
+     */
+    public double getHitRatio() {
+        long access = bcCache.getAccessCount() + ccCache.getAccessCount();
+        if (access == 0) {
+            return 0;
+        }
+        return (double) (bcCache.getHitCount() + ccCache.getHitCount()) /
+                access;
     }
 
 
@@ -198,248 +196,77 @@ public class StringCache {
 
 
     public void reset() {
-        hitCount = 0;
-        accessCount = 0;
-        synchronized (bcStats) {
-            bcCache = null;
-            bcCount = 0;
-        }
-        synchronized (ccStats) {
-            ccCache = null;
-            ccCount = 0;
-        }
+        bcCache = new Cache(cacheSize, trainThreshold);
+        ccCache = new Cache(cacheSize, trainThreshold);
     }
 
 
     public static String toString(ByteChunk bc) {
 
-        // If the cache is null, then either caching is disabled, or we're
-        // still training
-        if (bcCache == null) {
-            String value = bc.toStringInternal();
-            if (byteEnabled && (value.length() < maxStringSize)) {
-                // If training, everything is synced
-                synchronized (bcStats) {
-                    // If the cache has been generated on a previous invocation
-                    // while waiting for the lock, just return the toString
-                    // value we just calculated
-                    if (bcCache != null) {
-                        return value;
-                    }
-                    // Two cases: either we just exceeded the train count, in
-                    // which case the cache must be created, or we just update
-                    // the count for the string
-                    if (bcCount > trainThreshold) {
-                        long t1 = System.currentTimeMillis();
-                        // Sort the entries according to occurrence
-                        TreeMap<Integer,ArrayList<ByteEntry>> tempMap =
-                                new TreeMap<>();
-                        for (Entry<ByteEntry,int[]> item : bcStats.entrySet()) {
-                            ByteEntry entry = item.getKey();
-                            int[] countA = item.getValue();
-                            Integer count = Integer.valueOf(countA[0]);
-                            // Add to the list for that count
-                            ArrayList<ByteEntry> list = tempMap.get(count);
-                            if (list == null) {
-                                // Create list
-                                list = new ArrayList<>();
-                                tempMap.put(count, list);
-                            }
-                            list.add(entry);
-                        }
-                        // Allocate array of the right size
-                        int size = bcStats.size();
-                        if (size > cacheSize) {
-                            size = cacheSize;
-                        }
-                        ByteEntry[] tempbcCache = new ByteEntry[size];
-                        // Fill it up using an alphabetical order
-                        // and a dumb insert sort
-                        ByteChunk tempChunk = new ByteChunk();
-                        int n = 0;
-                        while (n < size) {
-                            Object key = tempMap.lastKey();
-                            ArrayList<ByteEntry> list = tempMap.get(key);
-                            for (int i = 0; i < list.size() && n < size; i++) {
-                                ByteEntry entry = list.get(i);
-                                tempChunk.setBytes(entry.name, 0,
-                                        entry.name.length);
-                                int insertPos = findClosest(tempChunk,
-                                        tempbcCache, n);
-                                if (insertPos == n) {
-                                    tempbcCache[n + 1] = entry;
-                                } else {
-                                    System.arraycopy(tempbcCache, insertPos + 1,
-                                            tempbcCache, insertPos + 2,
-                                            n - insertPos - 1);
-                                    tempbcCache[insertPos + 1] = entry;
-                                }
-                                n++;
-                            }
-                            tempMap.remove(key);
-                        }
-                        bcCount = 0;
-                        bcStats.clear();
-                        bcCache = tempbcCache;
-                        if (log.isDebugEnabled()) {
-                            long t2 = System.currentTimeMillis();
-                            log.debug("ByteCache generation time: " +
-                                    (t2 - t1) + "ms");
-                        }
-                    } else {
-                        bcCount++;
-                        // Allocate new ByteEntry for the lookup
-                        ByteEntry entry = new ByteEntry();
-                        entry.value = value;
-                        int[] count = bcStats.get(entry);
-                        if (count == null) {
-                            int end = bc.getEnd();
-                            int start = bc.getStart();
-                            // Create byte array and copy bytes
-                            entry.name = new byte[bc.getLength()];
-                            System.arraycopy(bc.getBuffer(), start, entry.name,
-                                    0, end - start);
-                            // Set encoding
-                            entry.charset = bc.getCharset();
-                            // Initialize occurrence count to one
-                            count = new int[1];
-                            count[0] = 1;
-                            // Set in the stats hash map
-                            bcStats.put(entry, count);
-                        } else {
-                            count[0] = count[0] + 1;
-                        }
-                    }
-                }
-            }
-            return value;
-        } else {
-            accessCount++;
-            // Find the corresponding String
-            String result = find(bc);
-            if (result == null) {
-                return bc.toStringInternal();
+        if (!byteEnabled || bc.getLength() >= maxStringSize) {
+            return bc.toStringInternal();
+        }
+
+        int hash = spread(bc.hash());
+        Shard shard = bcCache.getShard(hash);
+        // Note: We don't care about safety for the stats
+        shard.accessCount++;
+        Charset charset = bc.getCharset();
+        int base = shard.getSet(hash);
+        for (int i = base; i < base + WAYS; i++) {
+            Entry entry = shard.table.get(i);
+            if (entry != null && entry.hash == hash &&
+                    ((ByteEntry) entry).matches(bc, charset)) {
+                shard.hitCount++;
+                shard.sketch.increment(hash);
+                return entry.value;
             }
-            // Note: We don't care about safety for the stats
-            hitCount++;
-            return result;
         }
 
+        String value = bc.toStringInternal();
+        int slot = shard.admit(hash, base);
+        if (slot >= 0) {
+            byte[] name = new byte[bc.getLength()];
+            System.arraycopy(bc.getBuffer(), bc.getStart(), name, 0,
+                    name.length);
+            shard.table.set(slot, new ByteEntry(hash, value, name, charset));
+        }
+        return value;
+
     }
 
 
     public static String toString(CharChunk cc) {
 
-        // If the cache is null, then either caching is disabled, or we're
-        // still training
-        if (ccCache == null) {
-            String value = cc.toStringInternal();
-            if (charEnabled && (value.length() < maxStringSize)) {
-                // If training, everything is synced
-                synchronized (ccStats) {
-                    // If the cache has been generated on a previous invocation
-                    // while waiting for the lock, just return the toString
-                    // value we just calculated
-                    if (ccCache != null) {
-                        return value;
-                    }
-                    // Two cases: either we just exceeded the train count, in
-                    // which case the cache must be created, or we just update
-                    // the count for the string
-                    if (ccCount > trainThreshold) {
-                        long t1 = System.currentTimeMillis();
-                        // Sort the entries according to occurrence
-                        TreeMap<Integer,ArrayList<CharEntry>> tempMap =
-                                new TreeMap<>();
-                        for (Entry<CharEntry,int[]> item : ccStats.entrySet()) {
-                            CharEntry entry = item.getKey();
-                            int[] countA = item.getValue();
-                            Integer count = Integer.valueOf(countA[0]);
-                            // Add to the list for that count
-                            ArrayList<CharEntry> list = tempMap.get(count);
-                            if (list == null) {
-                                // Create list
-                                list = new ArrayList<>();
-                                tempMap.put(count, list);
-                            }
-                            list.add(entry);
-                        }
-                        // Allocate array of the right size
-                        int size = ccStats.size();
-                        if (size > cacheSize) {
-                            size = cacheSize;
-                        }
-                        CharEntry[] tempccCache = new CharEntry[size];
-                        // Fill it up using an alphabetical order
-                        // and a dumb insert sort
-                        CharChunk tempChunk = new CharChunk();
-                        int n = 0;
-                        while (n < size) {
-                            Object key = tempMap.lastKey();
-                            ArrayList<CharEntry> list = tempMap.get(key);
-                            for (int i = 0; i < list.size() && n < size; i++) {
-                                CharEntry entry = list.get(i);
-                                tempChunk.setChars(entry.name, 0,
-                                        entry.name.length);
-                                int insertPos = findClosest(tempChunk,
-                                        tempccCache, n);
-                                if (insertPos == n) {
-                                    tempccCache[n + 1] = entry;
-                                } else {
-                                    System.arraycopy(tempccCache, insertPos + 1,
-                                            tempccCache, insertPos + 2,
-                                            n - insertPos - 1);
-                                    tempccCache[insertPos + 1] = entry;
-                                }
-                                n++;
-                            }
-                            tempMap.remove(key);
-                        }
-                        ccCount = 0;
-                        ccStats.clear();
-                        ccCache = tempccCache;
-                        if (log.isDebugEnabled()) {
-                            long t2 = System.currentTimeMillis();
-                            log.debug("CharCache generation time: " +
-                                    (t2 - t1) + "ms");
-                        }
-                    } else {
-                        ccCount++;
-                        // Allocate new CharEntry for the lookup
-                        CharEntry entry = new CharEntry();
-                        entry.value = value;
-                        int[] count = ccStats.get(entry);
-                        if (count == null) {
-                            int end = cc.getEnd();
-                            int start = cc.getStart();
-                            // Create char array and copy chars
-                            entry.name = new char[cc.getLength()];
-                            System.arraycopy(cc.getBuffer(), start, entry.name,
-                                    0, end - start);
-                            // Initialize occurrence count to one
-                            count = new int[1];
-                            count[0] = 1;
-                            // Set in the stats hash map
-                            ccStats.put(entry, count);
-                        } else {
-                            count[0] = count[0] + 1;
-                        }
-                    }
-                }
-            }
-            return value;
-        } else {
-            accessCount++;
-            // Find the corresponding String
-            String result = find(cc);
-            if (result == null) {
-                return cc.toStringInternal();
+        if (!charEnabled || cc.getLength() >= maxStringSize) {
+            return cc.toStringInternal();
+        }
+
+        int hash = spread(cc.hash());
+        Shard shard = ccCache.getShard(hash);
+        // Note: We don't care about safety for the stats
+        shard.accessCount++;
+        int base = shard.getSet(hash);
+        for (int i = base; i < base + WAYS; i++) {
+            Entry entry = shard.table.get(i);
+            if (entry != null && entry.hash == hash &&
+                    ((CharEntry) entry).matches(cc)) {
+                shard.hitCount++;
+                shard.sketch.increment(hash);
+                return entry.value;
             }
-            // Note: We don't care about safety for the stats
-            hitCount++;
-            return result;
         }
 
+        String value = cc.toStringInternal();
+        int slot = shard.admit(hash, base);
+        if (slot >= 0) {
+            char[] name = new char[cc.getLength()];
+            System.arraycopy(cc.getBuffer(), cc.getStart(), name, 0,
+                    name.length);
+            shard.table.set(slot, new CharEntry(hash, value, name));
+        }
+        return value;
+
     }
 
 
@@ -479,68 +306,6 @@ public class StringCache {
     }
 
 
-    /**
-     * Find an entry given its name in the cache and return the associated
-     * String.
-     */
-    protected static final String find(ByteChunk name) {
-        int pos = findClosest(name, bcCache, bcCache.length);
-        if ((pos < 0) || (compare(name, bcCache[pos].name) != 0)
-                || !(name.getCharset().equals(bcCache[pos].charset))) {
-            return null;
-        } else {
-            return bcCache[pos].value;
-        }
-    }
-
-
-    /**
-     * Find an entry given its name in a sorted array of map elements.
-     * This will return the index for the closest inferior or equal item in the
-     * given array.
-     */
-    protected static final int findClosest(ByteChunk name, ByteEntry[] array,
-            int len) {
-
-        int a = 0;
-        int b = len - 1;
-
-        // Special cases: -1 and 0
-        if (b == -1) {
-            return -1;
-        }
-
-        if (compare(name, array[0].name) < 0) {
-            return -1;
-        }
-        if (b == 0) {
-            return 0;
-        }
-
-        int i = 0;
-        while (true) {
-            i = (b + a) >>> 1;
-            int result = compare(name, array[i].name);
-            if (result == 1) {
-                a = i;
-            } else if (result == 0) {
-                return i;
-            } else {
-                b = i;
-            }
-            if ((b - a) == 1) {
-                int result2 = compare(name, array[b].name);
-                if (result2 < 0) {
-                    return a;
-                } else {
-                    return b;
-                }
-            }
-        }
-
-    }
-
-
     /**
      * Compare given char chunk with char array.
      * Return -1, 0 or +1 if inferior, equal, or superior to the String.
@@ -575,118 +340,257 @@ public class StringCache {
 
 
     /**
-     * Find an entry given its name in the cache and return the associated
-     * String.
+     * Mix the bits of the chunk hash so that both the shard, which uses the
+     * high bits, and the set, which uses the low bits, are well distributed.
      */
-    protected static final String find(CharChunk name) {
-        int pos = findClosest(name, ccCache, ccCache.length);
-        if ((pos < 0) || (compare(name, ccCache[pos].name) != 0)) {
-            return null;
-        } else {
-            return ccCache[pos].value;
-        }
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
 
 
-    /**
-     * Find an entry given its name in a sorted array of map elements.
-     * This will return the index for the closest inferior or equal item in the
-     * given array.
-     */
-    protected static final int findClosest(CharChunk name, CharEntry[] array,
-            int len) {
+    // ------------------------------------------------------ Cache Inner Class
+
 
-        int a = 0;
-        int b = len - 1;
+    private static final class Cache {
 
-        // Special cases: -1 and 0
-        if (b == -1) {
-            return -1;
+        private final Shard[] shards;
+        private final int shardMask;
+
+        private Cache(int size, int sampleSize) {
+            int shardCount = 1;
+            int cpus = Runtime.getRuntime().availableProcessors();
+            while (shardCount < cpus && shardCount < MAX_SHARDS &&
+                    shardCount * 2 * MIN_SHARD_SIZE <= size) {
+                shardCount <<= 1;
+            }
+            int shardSize = (Math.max(size, 1) + shardCount - 1) / shardCount;
+            int sets = (shardSize + WAYS - 1) / WAYS;
+            int shardSampleSize = Math.max(sampleSize / shardCount,
+                    10 * sets * WAYS);
+            shards = new Shard[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                shards[i] = new Shard(sets, shardSampleSize);
+            }
+            shardMask = shardCount - 1;
         }
 
-        if (compare(name, array[0].name) < 0 ) {
-            return -1;
+        private Shard getShard(int hash) {
+            return shards[(hash >>> 24) & shardMask];
         }
-        if (b == 0) {
-            return 0;
+
+        private long getAccessCount() {
+            long result = 0;
+            for (Shard shard : shards) {
+                result += shard.accessCount;
+            }
+            return result;
         }
 
-        int i = 0;
-        while (true) {
-            i = (b + a) >>> 1;
-            int result = compare(name, array[i].name);
-            if (result == 1) {
-                a = i;
-            } else if (result == 0) {
-                return i;
-            } else {
-                b = i;
+        private long getHitCount() {
+            long result = 0;
+            for (Shard shard : shards) {
+                result += shard.hitCount;
             }
-            if ((b - a) == 1) {
-                int result2 = compare(name, array[b].name);
-                if (result2 < 0) {
-                    return a;
-                } else {
-                    return b;
+            return result;
+        }
+    }
+
+
+    // ------------------------------------------------------ Shard Inner Class
+
+
+    private static final class Shard {
+
+        private final AtomicReferenceArray<Entry> table;
+        private final int sets;
+        private final FrequencySketch sketch;
+        private int accessCount = 0;
+        private int hitCount = 0;
+
+        private Shard(int sets, int sampleSize) {
+            this.sets = sets;
+            table = new AtomicReferenceArray<>(sets * WAYS);
+            sketch = new FrequencySketch(sets * WAYS, sampleSize);
+        }
+
+        /**
+         * @return the index of the first entry of the set for the given hash
+         */
+        private int getSet(int hash) {
+            return ((hash & Integer.MAX_VALUE) % sets) * WAYS;
+        }
+
+        /**
+         * Record an access for a String that is not in the cache and decide
+         * whether it should be added.
+         *
+         * @return the index of the entry to replace, or -1 if the String is
+         *         less frequent than every entry of its set
+         */
+        private int admit(int hash, int base) {
+            int frequency = sketch.increment(hash);
+            int victim = -1;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int i = base; i < base + WAYS; i++) {
+                Entry entry = table.get(i);
+                if (entry == null) {
+                    return i;
+                }
+                int f = sketch.frequency(entry.hash);
+                if (f < victimFrequency) {
+                    victim = i;
+                    victimFrequency = f;
                 }
             }
+            return frequency > victimFrequency ? victim : -1;
         }
-
     }
 
 
-    // -------------------------------------------------- ByteEntry Inner Class
+    // -------------------------------------------- FrequencySketch Inner Class
 
 
-    private static class ByteEntry {
+    /**
+     * A count-min sketch of 4 bit counters, sixteen to a long, with four
+     * counters per String. The counters are updated without synchronization:
+     * a lost update only makes an estimate slightly lower.
+     */
+    private static final class FrequencySketch {
 
-        private byte[] name = null;
-        private Charset charset = null;
-        private String value = null;
+        private static final long[] SEEDS = { 0xc3a5c85c97cb3127L,
+                0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        private static final long RESET_MASK = 0x7777777777777777L;
 
-        @Override
-        public String toString() {
-            return value;
+        private final long[] table;
+        private final int tableMask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        private FrequencySketch(int capacity, int sampleSize) {
+            int size = 8;
+            while (size < capacity) {
+                size <<= 1;
+            }
+            table = new long[size];
+            tableMask = size - 1;
+            this.sampleSize = sampleSize;
         }
-        @Override
-        public int hashCode() {
-            return value.hashCode();
+
+        private int frequency(int hash) {
+            int result = 15;
+            for (int i = 0; i < 4; i++) {
+                long value = table[indexOf(hash, i)];
+                int count = (int) ((value >>> offsetOf(hash, i)) & 0xF);
+                if (count < result) {
+                    result = count;
+                }
+            }
+            return result;
         }
-        @Override
-        public boolean equals(Object obj) {
-            if (obj instanceof ByteEntry) {
-                return value.equals(((ByteEntry) obj).value);
+
+        /**
+         * @return the estimated frequency, including this access
+         */
+        private int increment(int hash) {
+            int result = 15;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int offset = offsetOf(hash, i);
+                long value = table[index];
+                int count = (int) ((value >>> offset) & 0xF);
+                if (count < 15) {
+                    table[index] = value + (1L << offset);
+                    count++;
+                    added = true;
+                }
+                if (count < result) {
+                    result = count;
+                }
             }
-            return false;
+            if (added && ++additions >= sampleSize) {
+                halve();
+            }
+            return result;
+        }
+
+        private void halve() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions = additions >>> 1;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & tableMask;
         }
 
+        private static int offsetOf(int hash, int i) {
+            return ((hash >>> (i << 3)) & 0xF) << 2;
+        }
     }
 
 
-    // -------------------------------------------------- CharEntry Inner Class
+    // ------------------------------------------------------ Entry Inner Class
 
 
-    private static class CharEntry {
+    private abstract static class Entry {
 
-        private char[] name = null;
-        private String value = null;
+        private final int hash;
+        private final String value;
+
+        private Entry(int hash, String value) {
+            this.hash = hash;
+            this.value = value;
+        }
 
         @Override
         public String toString() {
             return value;
         }
-        @Override
-        public int hashCode() {
-            return value.hashCode();
+    }
+
+
+    // -------------------------------------------------- ByteEntry Inner Class
+
+
+    private static final class ByteEntry extends Entry {
+
+        private final byte[] name;
+        private final Charset charset;
+
+        private ByteEntry(int hash, String value, byte[] name,
+                Charset charset) {
+            super(hash, value);
+            this.name = name;
+            this.charset = charset;
         }
-        @Override
-        public boolean equals(Object obj) {
-            if (obj instanceof CharEntry) {
-                return value.equals(((CharEntry) obj).value);
-            }
-            return false;
+
+        private boolean matches(ByteChunk bc, Charset charset) {
+            return name.length == bc.getLength() && compare(bc, name) == 0 &&
+                    this.charset.equals(charset);
+        }
+    }
+
+
+    // -------------------------------------------------- CharEntry Inner Class
+
+
+    private static final class CharEntry extends Entry {
+
+        private final char[] name;
+
+        private CharEntry(int hash, String value, char[] name) {
+            super(hash, value);
+            this.name = name;
         }
 
+        private boolean matches(CharChunk cc) {
+            return name.length == cc.getLength() && compare(cc, name) == 0;
+        }
     }
 
 
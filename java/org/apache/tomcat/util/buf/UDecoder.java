@@ -67,6 +67,10 @@ public final class UDecoder {
     private static final IOException EXCEPTION_SLASH = new DecodeException(
             "noSlash");
 
+    /** Bytes that start an escape in a query string */
+    private static final boolean[] QUERY_ESCAPES =
+            ByteChunk.createByteTable((byte) '%', (byte) '+');
+
     public UDecoder()
     {
     }
@@ -80,27 +84,36 @@ public final class UDecoder {
         byte buff[]=mb.getBytes();
         int end=mb.getEnd();
 
-        int idx= ByteChunk.findByte( buff, start, end, (byte) '%' );
-        int idx2=-1;
+        // Find the first % (or + for a query string) in a single pass
+        int idx;
         if( query ) {
-            idx2= ByteChunk.findByte( buff, start, (idx >= 0 ? idx : end), (byte) '+' );
+            idx= ByteChunk.findBytes( buff, start, end, QUERY_ESCAPES );
+        } else {
+            idx= ByteChunk.findByte( buff, start, end, (byte) '%' );
         }
-        if( idx<0 && idx2<0 ) {
+        if( idx<0 ) {
             return;
         }
 
-        // idx will be the smallest positive index ( first % or + )
-        if( (idx2 >= 0 && idx2 < idx) || idx < 0 ) {
-            idx=idx2;
-        }
-
         final boolean noSlash = !(ALLOW_ENCODED_SLASH || query);
 
         for( int j=idx; j<end; j++, idx++ ) {
             if( buff[ j ] == '+' && query) {
                 buff[idx]= (byte)' ' ;
             } else if( buff[ j ] != '%' ) {
-                buff[idx]= buff[j];
+                // Move the whole run of bytes up to the next escape
+                int next;
+                if( query ) {
+                    next= ByteChunk.findBytes( buff, j + 1, end, QUERY_ESCAPES );
+                } else {
+                    next= ByteChunk.findByte( buff, j + 1, end, (byte) '%' );
+                }
+                if( next<0 ) {
+                    next=end;
+                }
+                System.arraycopy( buff, j, buff, idx, next - j );
+                idx+=next - j - 1;
+                j=next - 1;
             } else {
                 // read next 2 digits
                 if( j+2 >= end ) {
@@ -139,20 +152,19 @@ public final class UDecoder {
         char buff[]=mb.getBuffer();
         int cend=mb.getEnd();
 
-        int idx= CharChunk.indexOf( buff, start, cend, '%' );
-        int idx2=-1;
-        if( query ) {
-            idx2= CharChunk.indexOf( buff, start, (idx >= 0 ? idx : cend), '+' );
+        // Find the first % (or + for a query string) in a single pass
+        int idx=-1;
+        for( int i=start; i<cend; i++ ) {
+            char c=buff[i];
+            if( c=='%' || (c=='+' && query) ) {
+                idx=i;
+                break;
+            }
         }
-        if( idx<0 && idx2<0 ) {
+        if( idx<0 ) {
             return;
         }
 
-        // idx will be the smallest positive index ( first % or + )
-        if( (idx2 >= 0 && idx2 < idx) || idx < 0 ) {
-            idx=idx2;
-        }
-
         final boolean noSlash = !(ALLOW_ENCODED_SLASH || query);
 
         for( int j=idx; j<cend; j++, idx++ ) {
@@ -108,6 +108,58 @@ public final class Cookies {
         return cookieCount;
     }
 
+    /**
+     * Find the next cookie with the given name. If the cookie headers have
+     * not been parsed yet and none of them contains the name, they are left
+     * unparsed.
+     *
+     * @param name  The name of the cookie
+     * @param start The index to start searching from
+     * @return      The index of the cookie, or -1 if there is no such cookie
+     *                  at or after start
+     */
+    public int findCookie(String name, int start) {
+        if (unprocessed && cookieCount == 0 && !headersContain(name)) {
+            return -1;
+        }
+        int count = getCookieCount();
+        for (int i = start; i < count; i++) {
+            if (scookies[i].getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Cookie names are neither decoded nor unescaped so a cookie can only
+     * have the given name if the raw headers contain it.
+     */
+    private boolean headersContain(String name) {
+        if (headers == null) {
+            return false;
+        }
+        if (name.length() == 0) {
+            return true;
+        }
+        int pos = 0;
+        while ((pos = headers.findHeader("Cookie", pos)) >= 0) {
+            MessageBytes cookieValue = headers.getValue(pos);
+            if (cookieValue != null && !cookieValue.isNull()) {
+                if (cookieValue.getType() == MessageBytes.T_BYTES) {
+                    if (cookieValue.getByteChunk().indexOf(
+                            name, 0, name.length(), 0) >= 0) {
+                        return true;
+                    }
+                } else if (cookieValue.toString().indexOf(name) >= 0) {
+                    return true;
+                }
+            }
+            pos++;
+        }
+        return false;
+    }
+
     // -------------------- Adding cookies --------------------
 
     /** Register a new, initialized cookie. Cookies are recycled, and
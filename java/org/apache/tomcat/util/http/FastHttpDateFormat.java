@@ -23,10 +23,17 @@ import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Utility class to generate HTTP dates.
  *
+ * Nothing in this class is synchronized. The current date is an immutable
+ * snapshot that is replaced once per second, the formats are held per
+ * thread and the caches are bounded, evicting their oldest entry when a new
+ * one is added to a full cache.
+ *
  * @author Remy Maucherat
  */
 public final class FastHttpDateFormat {
@@ -45,61 +52,63 @@ public final class FastHttpDateFormat {
     public static final String RFC1123_DATE =
             "EEE, dd MMM yyyy HH:mm:ss zzz";
 
-    private static final SimpleDateFormat format =
-            new SimpleDateFormat(RFC1123_DATE, Locale.US);
-
-
-    /**
-     * The set of SimpleDateFormat formats to use in getDateHeader().
-     */
-    private static final SimpleDateFormat formats[] = {
-        new SimpleDateFormat(RFC1123_DATE, Locale.US),
-        new SimpleDateFormat("EEEEEE, dd-MMM-yy HH:mm:ss zzz", Locale.US),
-        new SimpleDateFormat("EEE MMMM d HH:mm:ss yyyy", Locale.US)
-    };
-
 
     private static final TimeZone gmtZone = TimeZone.getTimeZone("GMT");
 
 
     /**
-     * GMT timezone - all HTTP dates are on GMT
+     * The format used to generate dates, per thread.
      */
-    static {
-
-        format.setTimeZone(gmtZone);
-
-        formats[0].setTimeZone(gmtZone);
-        formats[1].setTimeZone(gmtZone);
-        formats[2].setTimeZone(gmtZone);
-
-    }
+    private static final ThreadLocal<DateFormat> format =
+            new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            DateFormat result = new SimpleDateFormat(RFC1123_DATE, Locale.US);
+            result.setTimeZone(gmtZone);
+            return result;
+        }
+    };
 
 
     /**
-     * Instant on which the currentDate object was generated.
+     * The set of formats accepted when parsing dates, per thread.
      */
-    private static volatile long currentDateGenerated = 0L;
+    private static final ThreadLocal<DateFormat[]> formats =
+            new ThreadLocal<DateFormat[]>() {
+        @Override
+        protected DateFormat[] initialValue() {
+            DateFormat[] result = new DateFormat[] {
+                new SimpleDateFormat(RFC1123_DATE, Locale.US),
+                new SimpleDateFormat("EEEEEE, dd-MMM-yy HH:mm:ss zzz", Locale.US),
+                new SimpleDateFormat("EEE MMMM d HH:mm:ss yyyy", Locale.US)
+            };
+            for (DateFormat f : result) {
+                f.setTimeZone(gmtZone);
+            }
+            return result;
+        }
+    };
 
 
     /**
      * Current formatted date.
      */
-    private static String currentDate = null;
+    private static volatile CurrentDate currentDate = new CurrentDate(
+            Long.MIN_VALUE, null);
 
 
     /**
-     * Formatter cache.
+     * Formatter cache, keyed by the number of seconds since the epoch.
      */
-    private static final ConcurrentHashMap<Long, String> formatCache =
-            new ConcurrentHashMap<>(CACHE_SIZE);
+    private static final BoundedCache<Long, String> formatCache =
+            new BoundedCache<>(CACHE_SIZE);
 
 
     /**
      * Parser cache.
      */
-    private static final ConcurrentHashMap<String, Long> parseCache =
-            new ConcurrentHashMap<>(CACHE_SIZE);
+    private static final BoundedCache<String, Long> parseCache =
+            new BoundedCache<>(CACHE_SIZE);
 
 
     // --------------------------------------------------------- Public Methods
@@ -109,18 +118,7 @@ public final class FastHttpDateFormat {
      * Get the current date in HTTP format.
      */
     public static final String getCurrentDate() {
-
-        long now = System.currentTimeMillis();
-        if ((now - currentDateGenerated) > 1000) {
-            synchronized (format) {
-                if ((now - currentDateGenerated) > 1000) {
-                    currentDate = format.format(new Date(now));
-                    currentDateGenerated = now;
-                }
-            }
-        }
-        return currentDate;
-
+        return getCurrent(toSeconds(System.currentTimeMillis())).value;
     }
 
 
@@ -130,23 +128,25 @@ public final class FastHttpDateFormat {
     public static final String formatDate
         (long value, DateFormat threadLocalformat) {
 
-        Long longValue = new Long(value);
-        String cachedDate = formatCache.get(longValue);
+        // HTTP dates have a resolution of one second
+        long seconds = toSeconds(value);
+        CurrentDate current = currentDate;
+        if (current.seconds == seconds) {
+            return current.value;
+        }
+
+        Long key = Long.valueOf(seconds);
+        String cachedDate = formatCache.get(key);
         if (cachedDate != null) {
             return cachedDate;
         }
 
-        String newDate = null;
-        Date dateValue = new Date(value);
-        if (threadLocalformat != null) {
-            newDate = threadLocalformat.format(dateValue);
-            updateFormatCache(longValue, newDate);
-        } else {
-            synchronized (format) {
-                newDate = format.format(dateValue);
-            }
-            updateFormatCache(longValue, newDate);
+        DateFormat df = threadLocalformat;
+        if (df == null) {
+            df = format.get();
         }
+        String newDate = df.format(new Date(value));
+        formatCache.put(key, newDate);
         return newDate;
     }
 
@@ -162,22 +162,45 @@ public final class FastHttpDateFormat {
             return cachedDate.longValue();
         }
 
-        Long date = null;
-        if (threadLocalformats != null) {
-            date = internalParseDate(value, threadLocalformats);
-            updateParseCache(value, date);
-        } else {
-            date = internalParseDate(value, formats);
-            updateParseCache(value, date);
+        DateFormat[] dfs = threadLocalformats;
+        if (dfs == null) {
+            dfs = formats.get();
         }
+        Long date = internalParseDate(value, dfs);
         if (date == null) {
             return (-1L);
         }
+        parseCache.put(value, date);
 
         return date.longValue();
     }
 
 
+    // -------------------------------------------------------- Private Methods
+
+
+    private static CurrentDate getCurrent(long seconds) {
+        CurrentDate current = currentDate;
+        if (current.seconds != seconds) {
+            // Several threads may do this at the start of a second. They all
+            // produce the same value so whichever is published last is fine.
+            current = new CurrentDate(seconds,
+                    format.get().format(new Date(seconds * 1000)));
+            currentDate = current;
+        }
+        return current;
+    }
+
+
+    private static long toSeconds(long millis) {
+        long seconds = millis / 1000;
+        if (millis < 0 && seconds * 1000 != millis) {
+            seconds--;
+        }
+        return seconds;
+    }
+
+
     /**
      * Parse date with given formatters.
      */
@@ -194,36 +217,60 @@ public final class FastHttpDateFormat {
         if (date == null) {
             return null;
         }
-        return new Long(date.getTime());
+        return Long.valueOf(date.getTime());
     }
 
 
-    /**
-     * Update cache.
-     */
-    private static void updateFormatCache(Long key, String value) {
-        if (value == null) {
-            return;
-        }
-        if (formatCache.size() > CACHE_SIZE) {
-            formatCache.clear();
+    // ---------------------------------------------------------- Inner Classes
+
+
+    private static final class CurrentDate {
+        private final long seconds;
+        private final String value;
+
+        private CurrentDate(long seconds, String value) {
+            this.seconds = seconds;
+            this.value = value;
         }
-        formatCache.put(key, value);
     }
 
 
     /**
-     * Update cache.
+     * A map bounded in size that evicts its entries in insertion order, one
+     * at a time, rather than being cleared when it is full. The keys are kept
+     * in a ring; adding an entry replaces the oldest key of the ring and
+     * removes it from the map. Concurrent updates may occasionally evict an
+     * entry too early, which only costs a cache miss.
      */
-    private static void updateParseCache(String key, Long value) {
-        if (value == null) {
-            return;
+    static final class BoundedCache<K,V> {
+
+        private final ConcurrentHashMap<K,V> map;
+        private final AtomicReferenceArray<K> keys;
+        private final AtomicInteger next = new AtomicInteger();
+
+        BoundedCache(int size) {
+            map = new ConcurrentHashMap<>(size);
+            keys = new AtomicReferenceArray<>(Math.max(1, size));
         }
-        if (parseCache.size() > CACHE_SIZE) {
-            parseCache.clear();
+
+        V get(K key) {
+            return map.get(key);
         }
-        parseCache.put(key, value);
-    }
 
+        void put(K key, V value) {
+            if (map.putIfAbsent(key, value) != null) {
+                return;
+            }
+            int slot = (next.getAndIncrement() & Integer.MAX_VALUE) %
+                    keys.length();
+            K old = keys.getAndSet(slot, key);
+            if (old != null && !old.equals(key)) {
+                map.remove(old);
+            }
+        }
 
+        int size() {
+            return map.size();
+        }
+    }
 }
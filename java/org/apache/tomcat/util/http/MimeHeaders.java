@@ -18,8 +18,12 @@ package org.apache.tomcat.util.http;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.Enumeration;
 
+import org.apache.tomcat.util.buf.Ascii;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.CharChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.res.StringManager;
 
@@ -96,6 +100,12 @@ public class MimeHeaders {
      */
     public static final int DEFAULT_HEADER_SIZE=8;
 
+    /**
+     * Number of headers from which lookups by name use a hash index instead
+     * of a linear scan.
+     */
+    private static final int INDEX_THRESHOLD = 8;
+
     private static final StringManager sm =
             StringManager.getManager("org.apache.tomcat.util.http");
 
@@ -115,6 +125,25 @@ public class MimeHeaders {
      */
     private int limit = -1;
 
+    /**
+     * Open addressing hash index over the header names. A slot holds the
+     * position of a header plus one, 0 marks an empty slot. The arrays are
+     * kept when the headers are recycled.
+     */
+    private int[] index;
+
+    /**
+     * Case insensitive hash of the name of each header, used by the index.
+     */
+    private int[] hashes;
+
+    /**
+     * Is the index up to date with the current headers? It is built by the
+     * first lookup once there are enough headers and then maintained as
+     * headers are added. Removing a header invalidates it.
+     */
+    private boolean indexed = false;
+
     /**
      * Creates a new MimeHeaders object using a default buffer size.
      */
@@ -151,6 +180,7 @@ public class MimeHeaders {
             headers[i].recycle();
         }
         count = 0;
+        indexed = false;
     }
 
     /**
@@ -202,13 +232,12 @@ public class MimeHeaders {
     /** Find the index of a header with the given name.
      */
     public int findHeader( String name, int starting ) {
-        // We can use a hash - but it's not clear how much
-        // benefit you can get - there is an  overhead
-        // and the number of headers is small (4-5 ?)
-        // Another problem is that we'll pay the overhead
-        // of constructing the hashtable
-
-        // A custom search tree may be better
+        // The number of headers is usually small and a linear scan is
+        // cheaper than building a hash index. Large header sets (e.g.
+        // requests passing through proxies and CDNs) use the index.
+        if (count >= INDEX_THRESHOLD && name != null) {
+            return findIndexed(name, starting);
+        }
         for (int i = starting; i < count; i++) {
             if (headers[i].getName().equalsIgnoreCase(name)) {
                 return i;
@@ -217,6 +246,120 @@ public class MimeHeaders {
         return -1;
     }
 
+    // -------------------- Hash index --------------------
+
+    private int findIndexed(String name, int starting) {
+        if (!indexed) {
+            buildIndex();
+        }
+        int hash = hash(name);
+        int mask = index.length - 1;
+        int result = -1;
+        for (int slot = spread(hash) & mask; index[slot] != 0;
+                slot = (slot + 1) & mask) {
+            int pos = index[slot] - 1;
+            if (pos >= starting && (result == -1 || pos < result) &&
+                    hashes[pos] == hash &&
+                    headers[pos].getName().equalsIgnoreCase(name)) {
+                result = pos;
+            }
+        }
+        return result;
+    }
+
+    private void buildIndex() {
+        int size = 16;
+        while (size < count * 2) {
+            size <<= 1;
+        }
+        if (index == null || index.length < size) {
+            index = new int[size];
+        } else {
+            Arrays.fill(index, 0);
+        }
+        if (hashes == null || hashes.length < headers.length) {
+            hashes = new int[headers.length];
+        }
+        for (int i = 0; i < count; i++) {
+            hashes[i] = hash(headers[i].getName());
+            insert(i);
+        }
+        indexed = true;
+    }
+
+    /**
+     * Add the last created header to the index, if the index is in use.
+     */
+    private void indexNewHeader() {
+        if (!indexed) {
+            return;
+        }
+        int pos = count - 1;
+        if (count * 2 > index.length) {
+            // Too full, rebuild it larger on the next lookup
+            indexed = false;
+            return;
+        }
+        if (hashes.length <= pos) {
+            hashes = Arrays.copyOf(hashes, headers.length);
+        }
+        hashes[pos] = hash(headers[pos].getName());
+        insert(pos);
+    }
+
+    private void insert(int pos) {
+        int mask = index.length - 1;
+        int slot = spread(hashes[pos]) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = pos + 1;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /*
+     * The hashes ignore the case of ASCII letters, the same way as the
+     * equalsIgnoreCase() methods of MessageBytes.
+     */
+    private static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + Ascii.toLower(name.charAt(i));
+        }
+        return hash;
+    }
+
+    private static int hash(MessageBytes name) {
+        int hash = 0;
+        switch (name.getType()) {
+            case MessageBytes.T_BYTES: {
+                ByteChunk bc = name.getByteChunk();
+                byte[] b = bc.getBuffer();
+                for (int i = bc.getStart(); i < bc.getEnd(); i++) {
+                    hash = 31 * hash + Ascii.toLower(b[i]);
+                }
+                break;
+            }
+            case MessageBytes.T_CHARS: {
+                CharChunk cc = name.getCharChunk();
+                char[] c = cc.getBuffer();
+                for (int i = cc.getStart(); i < cc.getEnd(); i++) {
+                    hash = 31 * hash + Ascii.toLower(c[i]);
+                }
+                break;
+            }
+            case MessageBytes.T_STR:
+                hash = hash(name.getString());
+                break;
+            default:
+                // Null name
+        }
+        return hash;
+    }
+
     // -------------------- --------------------
 
     /**
@@ -269,6 +412,7 @@ public class MimeHeaders {
     public MessageBytes addValue( String name ) {
          MimeHeaderField mh = createHeader();
         mh.getName().setString(name);
+        indexNewHeader();
         return mh.getValue();
     }
 
@@ -280,6 +424,7 @@ public class MimeHeaders {
     {
         MimeHeaderField mhf=createHeader();
         mhf.getName().setBytes(b, startN, len);
+        indexNewHeader();
         return mhf.getValue();
     }
 
@@ -289,18 +434,18 @@ public class MimeHeaders {
         if this .
     */
     public MessageBytes setValue( String name ) {
-        for ( int i = 0; i < count; i++ ) {
-            if(headers[i].getName().equalsIgnoreCase(name)) {
-                for ( int j=i+1; j < count; j++ ) {
-                    if(headers[j].getName().equalsIgnoreCase(name)) {
-                        removeHeader(j--);
-                    }
+        int i = findHeader(name, 0);
+        if (i >= 0) {
+            for ( int j=i+1; j < count; j++ ) {
+                if(headers[j].getName().equalsIgnoreCase(name)) {
+                    removeHeader(j--);
                 }
-                return headers[i].getValue();
             }
+            return headers[i].getValue();
         }
         MimeHeaderField mh = createHeader();
         mh.getName().setString(name);
+        indexNewHeader();
         return mh.getValue();
     }
 
@@ -311,12 +456,8 @@ public class MimeHeaders {
      * in the header, an arbitrary one is returned.
      */
     public MessageBytes getValue(String name) {
-        for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
-                return headers[i].getValue();
-            }
-        }
-        return null;
+        int i = findHeader(name, 0);
+        return i >= 0 ? headers[i].getValue() : null;
     }
 
     /**
@@ -325,17 +466,14 @@ public class MimeHeaders {
      * unique then an {@link IllegalArgumentException} is thrown.
      */
     public MessageBytes getUniqueValue(String name) {
-        MessageBytes result = null;
-        for (int i = 0; i < count; i++) {
-            if (headers[i].getName().equalsIgnoreCase(name)) {
-                if (result == null) {
-                    result = headers[i].getValue();
-                } else {
-                    throw new IllegalArgumentException();
-                }
-            }
+        int i = findHeader(name, 0);
+        if (i < 0) {
+            return null;
         }
-        return result;
+        if (findHeader(name, i + 1) >= 0) {
+            throw new IllegalArgumentException();
+        }
+        return headers[i].getValue();
     }
 
     // bad shortcut - it'll convert to string ( too early probably,
@@ -373,6 +511,7 @@ public class MimeHeaders {
         headers[idx] = headers[count - 1];
         headers[count - 1] = mh;
         count--;
+        indexed = false;
     }
 
 }
@@ -451,11 +590,12 @@ class ValuesEnumerator implements Enumeration<String> {
 
     private void findNext() {
         next=null;
-        for(; pos< size; pos++ ) {
-            MessageBytes n1=headers.getName( pos );
-            if( n1.equalsIgnoreCase( name )) {
-                next=headers.getValue( pos );
-                break;
+        if (pos < size) {
+            pos = headers.findHeader(name, pos);
+            if (pos >= 0 && pos < size) {
+                next = headers.getValue(pos);
+            } else {
+                pos = size;
             }
         }
         pos++;
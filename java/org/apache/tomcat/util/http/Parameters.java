@@ -20,11 +20,14 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.apache.tomcat.util.buf.B2CConverter;
 import org.apache.tomcat.util.buf.ByteChunk;
@@ -53,6 +56,16 @@ public final class Parameters {
             new LinkedHashMap<>();
     private boolean didQueryParameters=false;
 
+    /**
+     * In lazy mode, the parameters whose values have not been moved to
+     * paramHashValues yet. The entries are reused across requests and only
+     * the first lazyCount are in use. While any are in use, paramHashValues
+     * is empty.
+     */
+    private final ArrayList<LazyParameter> lazyParameters = new ArrayList<>();
+    private int lazyCount = 0;
+    private boolean lazy = false;
+
     private MessageBytes queryMB;
 
     private UDecoder urlDec;
@@ -82,6 +95,24 @@ public final class Parameters {
         this.limit = limit;
     }
 
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * In lazy mode, only the names of the parameters are decoded when the
+     * parameters are processed. The position of each value is recorded and
+     * the value is decoded the first time it is requested by name, so
+     * failures to decode a value are only reported at that point. The bytes
+     * that were processed must not be modified until {@link #recycle()}.
+     * Requesting all the names decodes every value.
+     *
+     * @param lazy  <code>true</code> to decode values on demand
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     public String getEncoding() {
         return encoding;
     }
@@ -111,6 +142,10 @@ public final class Parameters {
     public void recycle() {
         parameterCount = 0;
         paramHashValues.clear();
+        for (int i = 0; i < lazyCount; i++) {
+            lazyParameters.get(i).recycle();
+        }
+        lazyCount = 0;
         didQueryParameters=false;
         encoding=null;
         decodedQuery.recycle();
@@ -123,6 +158,25 @@ public final class Parameters {
 
     public String[] getParameterValues(String name) {
         handleQueryParameters();
+        if (lazyCount > 0) {
+            ArrayList<String> values = null;
+            for (int i = 0; i < lazyCount; i++) {
+                LazyParameter parameter = lazyParameters.get(i);
+                if (parameter.name.equals(name)) {
+                    String value = decodeValue(parameter);
+                    if (value != null) {
+                        if (values == null) {
+                            values = new ArrayList<>(1);
+                        }
+                        values.add(value);
+                    }
+                }
+            }
+            if (values == null) {
+                return null;
+            }
+            return values.toArray(new String[values.size()]);
+        }
         // no "facade"
         ArrayList<String> values = paramHashValues.get(name);
         if (values == null) {
@@ -133,11 +187,24 @@ public final class Parameters {
 
     public Enumeration<String> getParameterNames() {
         handleQueryParameters();
+        decodeLazyParameters();
         return Collections.enumeration(paramHashValues.keySet());
     }
 
     public String getParameter(String name ) {
         handleQueryParameters();
+        if (lazyCount > 0) {
+            for (int i = 0; i < lazyCount; i++) {
+                LazyParameter parameter = lazyParameters.get(i);
+                if (parameter.name.equals(name)) {
+                    String value = decodeValue(parameter);
+                    if (value != null) {
+                        return value;
+                    }
+                }
+            }
+            return null;
+        }
         ArrayList<String> values = paramHashValues.get(name);
         if (values != null) {
             if(values.size() == 0) {
@@ -184,6 +251,13 @@ public final class Parameters {
             return;
         }
 
+        countParameter();
+        // Keep the parameters in the order they were added
+        decodeLazyParameters();
+        putParameter(key, value);
+    }
+
+    private void countParameter() throws IllegalStateException {
         parameterCount ++;
         if (limit > -1 && parameterCount > limit) {
             // Processing this parameter will push us over the limit. ISE is
@@ -192,7 +266,9 @@ public final class Parameters {
             throw new IllegalStateException(sm.getString(
                     "parameters.maxCountFail", Integer.valueOf(limit)));
         }
+    }
 
+    private void putParameter(String key, String value) {
         ArrayList<String> values = paramHashValues.get(key);
         if (values == null) {
             values = new ArrayList<>(1);
@@ -201,6 +277,83 @@ public final class Parameters {
         values.add(value);
     }
 
+    private void addLazyParameter(String key, byte[] bytes, int valueStart,
+            int valueEnd, boolean decode, Charset charset)
+            throws IllegalStateException {
+        countParameter();
+        LazyParameter parameter;
+        if (lazyCount < lazyParameters.size()) {
+            parameter = lazyParameters.get(lazyCount);
+        } else {
+            parameter = new LazyParameter();
+            lazyParameters.add(parameter);
+        }
+        parameter.name = key;
+        parameter.bytes = bytes;
+        parameter.start = valueStart;
+        parameter.end = valueEnd;
+        parameter.decode = decode;
+        parameter.charset = charset;
+        lazyCount++;
+    }
+
+    /**
+     * Decode the value of a parameter recorded in lazy mode.
+     *
+     * @return the value or <code>null</code> if it could not be decoded, in
+     *         which case the parameter is ignored as it would have been if it
+     *         had been decoded when the parameters were processed
+     */
+    private String decodeValue(LazyParameter parameter) {
+        if (parameter.value != null || parameter.failed) {
+            return parameter.value;
+        }
+        if (parameter.start < 0) {
+            parameter.value = "";
+            return parameter.value;
+        }
+        tmpValue.setBytes(parameter.bytes, parameter.start,
+                parameter.end - parameter.start);
+        try {
+            if (parameter.decode) {
+                urlDecode(tmpValue);
+            }
+            tmpValue.setCharset(parameter.charset);
+            parameter.value = tmpValue.toString();
+        } catch (IOException e) {
+            parseFailed = true;
+            parameter.failed = true;
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("parameters.decodeFail.debug",
+                        parameter.name, new String(parameter.bytes,
+                                parameter.start, parameter.end - parameter.start,
+                                DEFAULT_CHARSET)), e);
+            }
+        } finally {
+            tmpValue.recycle();
+        }
+        return parameter.value;
+    }
+
+    /**
+     * Decode all the values recorded in lazy mode and store them with any
+     * other parameters.
+     */
+    private void decodeLazyParameters() {
+        if (lazyCount == 0) {
+            return;
+        }
+        for (int i = 0; i < lazyCount; i++) {
+            LazyParameter parameter = lazyParameters.get(i);
+            String value = decodeValue(parameter);
+            if (value != null) {
+                putParameter(parameter.name, value);
+            }
+            parameter.recycle();
+        }
+        lazyCount = 0;
+    }
+
     public void setURLDecoder( UDecoder u ) {
         urlDec=u;
     }
@@ -231,6 +384,10 @@ public final class Parameters {
 
         int decodeFailCount = 0;
 
+        // Values can only be decoded later while none have been stored, as
+        // otherwise the order of the parameters would change
+        boolean deferValues = lazy && paramHashValues.isEmpty();
+
         int pos = start;
         int end = start + len;
 
@@ -364,7 +521,7 @@ public final class Parameters {
 
             try {
                 String name;
-                String value;
+                String value = null;
 
                 if (decodeName) {
                     urlDecode(tmpName);
@@ -372,7 +529,9 @@ public final class Parameters {
                 tmpName.setCharset(charset);
                 name = tmpName.toString();
 
-                if (valueStart >= 0) {
+                if (deferValues) {
+                    // The value is decoded when it is requested
+                } else if (valueStart >= 0) {
                     if (decodeValue) {
                         urlDecode(tmpValue);
                     }
@@ -383,7 +542,12 @@ public final class Parameters {
                 }
 
                 try {
-                    addParameter(name, value);
+                    if (deferValues) {
+                        addLazyParameter(name, bytes, valueStart, valueEnd,
+                                decodeValue, charset);
+                    } else {
+                        addParameter(name, value);
+                    }
                 } catch (IllegalStateException ise) {
                     // Hitting limit stops processing further params but does
                     // not cause request to fail.
@@ -494,11 +658,31 @@ public final class Parameters {
         }
     }
 
+    /**
+     * Returns an iterator over the parameters in the given bytes. Each
+     * parameter is decoded when the iterator reaches it and none of them are
+     * stored, so this is suitable for very large bodies. As with
+     * {@link #processParameters(byte[], int, int)}, escaped names and values
+     * are decoded in place. Parameters that cannot be decoded are skipped.
+     *
+     * @param bytes     The bytes to parse
+     * @param start     The offset of the first byte
+     * @param len       The number of bytes
+     * @param encoding  The encoding of the parameters, or <code>null</code>
+     *                  for {@link #DEFAULT_ENCODING}
+     * @return          The name and value of each parameter, in order
+     */
+    public static Iterator<Map.Entry<String,String>> iterator(byte bytes[],
+            int start, int len, String encoding) {
+        return new ParameterIterator(bytes, start, len, encoding);
+    }
+
     /**
      * Debug purpose
      */
     @Override
     public String toString() {
+        decodeLazyParameters();
         StringBuilder sb = new StringBuilder();
         for (Map.Entry<String, ArrayList<String>> e : paramHashValues.entrySet()) {
             sb.append(e.getKey()).append('=');
@@ -510,4 +694,85 @@ public final class Parameters {
         }
         return sb.toString();
     }
+
+
+    private static final class LazyParameter {
+
+        private String name;
+        private byte[] bytes;
+        private int start;
+        private int end;
+        private boolean decode;
+        private Charset charset;
+        private String value;
+        private boolean failed;
+
+        private void recycle() {
+            name = null;
+            bytes = null;
+            charset = null;
+            value = null;
+            failed = false;
+        }
+    }
+
+
+    /**
+     * Hands each parameter, delimited by '&amp;', in turn to a private
+     * Parameters so that it is validated, decoded and logged exactly as when
+     * all the parameters are processed at once.
+     */
+    private static final class ParameterIterator
+            implements Iterator<Map.Entry<String,String>> {
+
+        private final Parameters parser = new Parameters();
+        private final byte[] bytes;
+        private final int end;
+        private final Charset charset;
+        private int pos;
+        private Map.Entry<String,String> next;
+
+        private ParameterIterator(byte bytes[], int start, int len,
+                String encoding) {
+            this.bytes = bytes;
+            this.pos = start;
+            this.end = start + len;
+            this.charset = parser.getCharset(encoding);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && pos < end) {
+                int paramEnd = ByteChunk.findByte(bytes, pos, end, (byte) '&');
+                if (paramEnd < 0) {
+                    paramEnd = end;
+                }
+                parser.processParameters(bytes, pos, paramEnd - pos, charset);
+                pos = paramEnd + 1;
+                if (!parser.paramHashValues.isEmpty()) {
+                    Map.Entry<String,ArrayList<String>> entry =
+                            parser.paramHashValues.entrySet().iterator().next();
+                    next = new SimpleImmutableEntry<>(entry.getKey(),
+                            entry.getValue().get(0));
+                    parser.recycle();
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String,String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String,String> result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -34,11 +34,14 @@ import org.apache.juli.logging.Log;
 import org.apache.tomcat.util.IntrospectionUtils;
 import org.apache.tomcat.util.net.AbstractEndpoint.Acceptor.AcceptorState;
 import org.apache.tomcat.util.res.StringManager;
+import org.apache.tomcat.util.threads.AdaptivePoolSizer;
 import org.apache.tomcat.util.threads.LimitLatch;
+import org.apache.tomcat.util.threads.ShardedLimitLatch;
 import org.apache.tomcat.util.threads.ResizableExecutor;
 import org.apache.tomcat.util.threads.TaskQueue;
 import org.apache.tomcat.util.threads.TaskThreadFactory;
 import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
 /**
  *
  * @author fhanik
@@ -212,6 +215,19 @@ public abstract class AbstractEndpoint<S> {
 
     public int  getMaxConnections() { return this.maxConnections; }
 
+    /**
+     * Number of shards used to count connections when maxConnections is
+     * enforced. Values greater than one spread the count over a
+     * {@link ShardedLimitLatch} so acceptor threads and closing sockets do
+     * not contend on a single counter. Takes effect when the latch is next
+     * created.
+     */
+    private int connectionLimitShards = 1;
+    public void setConnectionLimitShards(int connectionLimitShards) {
+        this.connectionLimitShards = connectionLimitShards;
+    }
+    public int getConnectionLimitShards() { return connectionLimitShards; }
+
     /**
      * Return the current count of connections handled by this endpoint, if the
      * connections are counted (which happens when the maximum count of
@@ -339,6 +355,12 @@ public abstract class AbstractEndpoint<S> {
     }
     public void setMinSpareThreads(int minSpareThreads) {
         this.minSpareThreads = minSpareThreads;
+        AdaptivePoolSizer sizer = poolSizer;
+        if (sizer != null) {
+            // The executor's current size may have been adapted already so
+            // use the configured bounds
+            sizer.setBounds(Math.min(minSpareThreads, maxThreads), maxThreads);
+        }
         if (running && executor!=null) {
             if (executor instanceof java.util.concurrent.ThreadPoolExecutor) {
                 ((java.util.concurrent.ThreadPoolExecutor)executor).setCorePoolSize(minSpareThreads);
@@ -354,6 +376,10 @@ public abstract class AbstractEndpoint<S> {
     private int maxThreads = 200;
     public void setMaxThreads(int maxThreads) {
         this.maxThreads = maxThreads;
+        AdaptivePoolSizer sizer = poolSizer;
+        if (sizer != null) {
+            sizer.setBounds(Math.min(minSpareThreads, maxThreads), maxThreads);
+        }
         if (running && executor!=null) {
             if (executor instanceof java.util.concurrent.ThreadPoolExecutor) {
                 ((java.util.concurrent.ThreadPoolExecutor)executor).setMaximumPoolSize(maxThreads);
@@ -428,6 +454,30 @@ public abstract class AbstractEndpoint<S> {
     public void setThreadPriority(int threadPriority) { this.threadPriority = threadPriority; }
     public int getThreadPriority() { return threadPriority; }
 
+
+    /**
+     * Run the tasks of the internal executor on virtual threads, if the JVM
+     * supports them. maxThreads limits the number of concurrent tasks.
+     */
+    private boolean useVirtualThreads = false;
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+    public boolean getUseVirtualThreads() { return useVirtualThreads; }
+
+
+    /**
+     * Let the internal executor adjust its maximum size between
+     * minSpareThreads and maxThreads based on queue time and throughput.
+     */
+    private boolean adaptiveSizing = false;
+    public void setAdaptiveSizing(boolean adaptiveSizing) {
+        this.adaptiveSizing = adaptiveSizing;
+    }
+    public boolean getAdaptiveSizing() { return adaptiveSizing; }
+
+    private volatile AdaptivePoolSizer poolSizer = null;
+
     protected abstract boolean getDeferAccept();
 
 
@@ -533,13 +583,34 @@ public abstract class AbstractEndpoint<S> {
 
     public void createExecutor() {
         internalExecutor = true;					// 看起来这个参数是用来标记线程池到底是内部创建的还是外部xml配置的
+        if (useVirtualThreads) {
+            if (VirtualThreadExecutor.isSupported()) {
+                executor = new VirtualThreadExecutor(getName() + "-exec-",
+                        getMaxThreads(), Integer.MAX_VALUE);
+                return;
+            }
+            getLog().warn(sm.getString("endpoint.warn.noVirtualThreads",
+                    getName()));
+        }
         TaskQueue taskqueue = new TaskQueue();
         TaskThreadFactory tf = new TaskThreadFactory(getName() + "-exec-", daemon, getThreadPriority());
-        executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), 60, TimeUnit.SECONDS,taskqueue, tf);
-        taskqueue.setParent( (ThreadPoolExecutor) executor);
+        ThreadPoolExecutor tpe = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), 60, TimeUnit.SECONDS,taskqueue, tf);
+        taskqueue.setParent(tpe);
+        executor = tpe;
+        if (adaptiveSizing) {
+            AdaptivePoolSizer sizer = new AdaptivePoolSizer(getName() + "-exec",
+                    tpe, tpe, getMinSpareThreads(), getMaxThreads());
+            sizer.start();
+            poolSizer = sizer;
+        }
     }
 
     public void shutdownExecutor() {
+        AdaptivePoolSizer sizer = poolSizer;
+        if (sizer != null) {
+            sizer.stop();
+            poolSizer = null;
+        }
         if ( executor!=null && internalExecutor ) {
             if ( executor instanceof ThreadPoolExecutor ) {
                 //this is our internal one, so we need to shut it down
@@ -556,6 +627,18 @@ public abstract class AbstractEndpoint<S> {
                 }
                 TaskQueue queue = (TaskQueue) tpe.getQueue();
                 queue.setParent(null);
+            } else if ( executor instanceof VirtualThreadExecutor ) {
+                VirtualThreadExecutor vte = (VirtualThreadExecutor) executor;
+                vte.shutdownNow();
+                try {
+                    vte.awaitTermination(getExecutorTerminationTimeoutMillis(),
+                            TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                if (!vte.isTerminated()) {
+                    getLog().warn(sm.getString("endpoint.warn.executorShutdown", getName()));
+                }
             }
             executor = null;
         }
@@ -669,21 +752,24 @@ public abstract class AbstractEndpoint<S> {
          * Processing the dispatches requires (for BIO and APR/native at least)
          * that the socket has been added to the waitingRequests queue. This may
          * not have occurred by the time that the non-container thread completes
-         * triggering the call to this method. Therefore, the coded syncs on the
-         * SocketWrapper as the container thread that initiated this
-         * non-container thread holds a lock on the SocketWrapper. The container
+         * triggering the call to this method. Therefore, the code takes the
+         * process lock of the SocketWrapper as the container thread that
+         * initiated this non-container thread holds that lock. The container
          * thread will add the socket to the waitingRequests queue before
-         * releasing the lock on the socketWrapper. Therefore, by obtaining the
-         * lock on socketWrapper before processing the dispatches, we can be
-         * sure that the socket has been added to the waitingRequests queue.
+         * releasing the lock. Therefore, by obtaining the lock before
+         * processing the dispatches, we can be sure that the socket has been
+         * added to the waitingRequests queue.
          */
-        synchronized (socketWrapper) {
+        socketWrapper.getProcessLock().lock();
+        try {
             Iterator<DispatchType> dispatches = socketWrapper.getIteratorAndClearDispatches();
 
             while (dispatches != null && dispatches.hasNext()) {
                 DispatchType dispatchType = dispatches.next();
                 processSocket(socketWrapper, dispatchType.getSocketStatus(), false);
             }
+        } finally {
+            socketWrapper.getProcessLock().unlock();
         }
     }
 
@@ -802,7 +888,12 @@ public abstract class AbstractEndpoint<S> {
     protected LimitLatch initializeConnectionLatch() {
         if (maxConnections==-1) return null;
         if (connectionLimitLatch==null) {
-            connectionLimitLatch = new LimitLatch(getMaxConnections());
+            if (connectionLimitShards > 1) {
+                connectionLimitLatch = new ShardedLimitLatch(
+                        getMaxConnections(), connectionLimitShards);
+            } else {
+                connectionLimitLatch = new LimitLatch(getMaxConnections());
+            }
         }
         return connectionLimitLatch;
     }
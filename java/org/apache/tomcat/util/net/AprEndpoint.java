@@ -28,6 +28,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
@@ -832,6 +833,7 @@ public class AprEndpoint extends AbstractEndpoint<Long> {
                 wrapper.setKeepAliveLeft(getMaxKeepAliveRequests());
                 wrapper.setSecure(isSSLEnabled());
                 connections.put(Long.valueOf(socket), wrapper);
+                wrapper.dispatched();
                 getExecutor().execute(new SocketWithOptionsProcessor(wrapper));
             }
         } catch (RejectedExecutionException x) {
@@ -863,6 +865,7 @@ public class AprEndpoint extends AbstractEndpoint<Long> {
                         connections.get(Long.valueOf(socket));
                 // Make sure connection hasn't been closed
                 if (wrapper != null) {
+                    wrapper.dispatched();
                     executor.execute(new SocketProcessor(wrapper, status));
                 }
             }
@@ -887,7 +890,8 @@ public class AprEndpoint extends AbstractEndpoint<Long> {
             // Synchronisation is required here as this code may be called as a
             // result of calling AsyncContext.dispatch() from a non-container
             // thread
-            synchronized (socket) {
+            socket.getProcessLock().lock();
+            try {
                 if (waitingRequests.remove(socket)) {
                     SocketProcessor proc = new SocketProcessor(socket, status);
                     Executor executor = getExecutor();
@@ -916,6 +920,8 @@ public class AprEndpoint extends AbstractEndpoint<Long> {
                         proc.run();
                     }
                 }
+            } finally {
+                socket.getProcessLock().unlock();
             }
         } catch (RejectedExecutionException ree) {
             log.warn(sm.getString("endpoint.executor.fail", socket) , ree);
@@ -2387,7 +2393,10 @@ public class AprEndpoint extends AbstractEndpoint<Long> {
         @Override
         public void run() {
 
-            synchronized (socket) {
+            // socket may be cleared below
+            ReentrantLock processLock = socket.getProcessLock();
+            processLock.lock();
+            try {
                 if (!deferAccept) {
                     if (setSocketOptions(socket.getSocket().longValue())) {
                         getPoller().add(socket.getSocket().longValue(),
@@ -2419,6 +2428,8 @@ public class AprEndpoint extends AbstractEndpoint<Long> {
                         }
                     }
                 }
+            } finally {
+                processLock.unlock();
             }
         }
     }
@@ -2457,8 +2468,11 @@ public class AprEndpoint extends AbstractEndpoint<Long> {
                     doRun();
                 }
             } else {
-                synchronized (socket) {
+                socket.getProcessLock().lock();
+                try {
                     doRun();
+                } finally {
+                    socket.getProcessLock().unlock();
                 }
             }
         }
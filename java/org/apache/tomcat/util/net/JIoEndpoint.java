@@ -305,7 +305,8 @@ public class JIoEndpoint extends AbstractEndpoint<Socket> {
         @Override
         public void run() {
             boolean launch = false;
-            synchronized (socket) {
+            socket.getProcessLock().lock();
+            try {
                 try {
                     SocketState state = SocketState.OPEN;
                     handler.beforeHandshake(socket);
@@ -371,6 +372,8 @@ public class JIoEndpoint extends AbstractEndpoint<Socket> {
                         }
                     }
                 }
+            } finally {
+                socket.getProcessLock().unlock();
             }
             socket = null;
             // Finish up this request
@@ -539,6 +542,7 @@ public class JIoEndpoint extends AbstractEndpoint<Socket> {
             if (!running) {
                 return false;
             }
+            wrapper.dispatched();
             getExecutor().execute(new SocketProcessor(wrapper));
         } catch (RejectedExecutionException x) {
             log.warn("Socket processing request was rejected for:"+socket,x);
@@ -561,7 +565,8 @@ public class JIoEndpoint extends AbstractEndpoint<Socket> {
             // Synchronisation is required here as this code may be called as a
             // result of calling AsyncContext.dispatch() from a non-container
             // thread
-            synchronized (socket) {
+            socket.getProcessLock().lock();
+            try {
                 if (waitingRequests.remove(socket)) {
                     SocketProcessor proc = new SocketProcessor(socket,status);
                     Executor executor = getExecutor();
@@ -595,6 +600,8 @@ public class JIoEndpoint extends AbstractEndpoint<Socket> {
                         proc.run();
                     }
                 }
+            } finally {
+                socket.getProcessLock().unlock();
             }
         } catch (RejectedExecutionException ree) {
             log.warn(sm.getString("endpoint.executor.fail", socket) , ree);
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.tomcat.util.net.SecureNioChannel.ApplicationBufferHandler;
+
+/**
+ * Base class for an AsynchronousSocketChannel wrapper used by the NIO2
+ * endpoint.
+ * <p>
+ * The application read buffer is always left ready for reading (flipped) so
+ * that the data read by the endpoint while waiting for a request is available
+ * to the processor. At most one read and one write may be in progress on an
+ * AsynchronousSocketChannel at any one time and the read and write permits
+ * provided by this class are used to enforce that.
+ * <p>
+ * Instances are not re-used across connections, only their buffers are, so a
+ * late completion of an operation on a closed connection can never be mistaken
+ * for an operation on a new one.
+ */
+public class Nio2Channel {
+
+    protected AsynchronousSocketChannel sc = null;
+
+    protected ApplicationBufferHandler bufHandler;
+
+    protected final Semaphore readPending = new Semaphore(1);
+
+    protected final Semaphore writePending = new Semaphore(1);
+
+    public Nio2Channel(AsynchronousSocketChannel channel,
+            ApplicationBufferHandler bufHandler) {
+        this.sc = channel;
+        this.bufHandler = bufHandler;
+        bufHandler.getReadBuffer().clear();
+        bufHandler.getReadBuffer().limit(0);
+        bufHandler.getWriteBuffer().clear();
+    }
+
+    /**
+     * Returns true if neither a read nor a write is in progress on this
+     * channel, which means that nothing else will touch its buffers.
+     */
+    public boolean isIdle() {
+        return readPending.availablePermits() > 0 &&
+                writePending.availablePermits() > 0;
+    }
+
+    public int getBufferSize() {
+        if ( bufHandler == null ) return 0;
+        int size = 0;
+        size += bufHandler.getReadBuffer()!=null?bufHandler.getReadBuffer().capacity():0;
+        size += bufHandler.getWriteBuffer()!=null?bufHandler.getWriteBuffer().capacity():0;
+        return size;
+    }
+
+    /**
+     * Closes this channel.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public void close() throws IOException {
+        sc.close();
+    }
+
+    public void close(boolean force) throws IOException {
+        if (isOpen() || force ) close();
+    }
+
+    /**
+     * Tells whether or not this channel is open.
+     *
+     * @return <tt>true</tt> if, and only if, this channel is open
+     */
+    public boolean isOpen() {
+        return sc.isOpen();
+    }
+
+    /**
+     * Initiates an asynchronous read.
+     *
+     * @see AsynchronousSocketChannel#read(ByteBuffer)
+     */
+    public Future<Integer> read(ByteBuffer dst) {
+        return sc.read(dst);
+    }
+
+    /**
+     * Initiates an asynchronous read that will call the given handler on
+     * completion.
+     *
+     * @see AsynchronousSocketChannel#read(ByteBuffer, long, TimeUnit, Object,
+     *      CompletionHandler)
+     */
+    public <A> void read(ByteBuffer dst, long timeout, TimeUnit unit,
+            A attachment, CompletionHandler<Integer,? super A> handler) {
+        sc.read(dst, timeout, unit, attachment, handler);
+    }
+
+    /**
+     * Initiates an asynchronous write.
+     *
+     * @see AsynchronousSocketChannel#write(ByteBuffer)
+     */
+    public Future<Integer> write(ByteBuffer src) {
+        return sc.write(src);
+    }
+
+    /**
+     * Initiates an asynchronous write that will call the given handler on
+     * completion.
+     *
+     * @see AsynchronousSocketChannel#write(ByteBuffer, long, TimeUnit, Object,
+     *      CompletionHandler)
+     */
+    public <A> void write(ByteBuffer src, long timeout, TimeUnit unit,
+            A attachment, CompletionHandler<Integer,? super A> handler) {
+        sc.write(src, timeout, unit, attachment, handler);
+    }
+
+    /**
+     * Reads a sequence of bytes from this channel into the given buffer,
+     * waiting for the read to complete.
+     *
+     * @param dst       The buffer into which bytes are to be transferred
+     * @param timeout   The maximum time to wait in milliseconds. A value of
+     *                  zero or less means wait indefinitely.
+     * @return The number of bytes read or <tt>-1</tt> if the channel has
+     *         reached end-of-stream
+     * @throws SocketTimeoutException If the read did not complete in time
+     * @throws IOException If some other I/O error occurs
+     */
+    public int blockingRead(ByteBuffer dst, long timeout) throws IOException {
+        acquire(readPending, timeout);
+        try {
+            return await(sc.read(dst), timeout);
+        } finally {
+            readPending.release();
+        }
+    }
+
+    /**
+     * Writes all the remaining bytes in the given buffer to this channel,
+     * waiting for the writes to complete.
+     *
+     * @param src       The buffer from which bytes are to be retrieved
+     * @param timeout   The maximum time to wait for each write in
+     *                  milliseconds. A value of zero or less means wait
+     *                  indefinitely.
+     * @return The number of bytes written
+     * @throws SocketTimeoutException If a write did not complete in time
+     * @throws IOException If some other I/O error occurs
+     */
+    public int blockingWrite(ByteBuffer src, long timeout) throws IOException {
+        acquire(writePending, timeout);
+        try {
+            int written = 0;
+            while (src.hasRemaining()) {
+                int thisTime = await(sc.write(src), timeout);
+                if (thisTime < 0) {
+                    throw new IOException("Channel closed during write");
+                }
+                written += thisTime;
+            }
+            return written;
+        } finally {
+            writePending.release();
+        }
+    }
+
+    /**
+     * Waits for the write in progress on this channel, if any, to complete.
+     *
+     * @param timeout   The maximum time to wait in milliseconds. A value of
+     *                  zero or less means wait indefinitely.
+     * @throws SocketTimeoutException If the write did not complete in time
+     * @throws IOException If some other I/O error occurs
+     */
+    public void flush(long timeout) throws IOException {
+        acquire(writePending, timeout);
+        writePending.release();
+    }
+
+    private static void acquire(Semaphore permit, long timeout)
+            throws IOException {
+        try {
+            if (timeout > 0) {
+                if (!permit.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new SocketTimeoutException();
+                }
+            } else {
+                permit.acquire();
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static int await(Future<Integer> future, long timeout)
+            throws IOException {
+        try {
+            if (timeout > 0) {
+                return future.get(timeout, TimeUnit.MILLISECONDS).intValue();
+            } else {
+                return future.get().intValue();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new SocketTimeoutException();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * The permit that must be held while a read is in progress.
+     */
+    public Semaphore getReadPending() {
+        return readPending;
+    }
+
+    /**
+     * The permit that must be held while a write is in progress.
+     */
+    public Semaphore getWritePending() {
+        return writePending;
+    }
+
+    public ApplicationBufferHandler getBufHandler() {
+        return bufHandler;
+    }
+
+    public AsynchronousSocketChannel getIOChannel() {
+        return sc;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString()+":"+this.sc.toString();
+    }
+}
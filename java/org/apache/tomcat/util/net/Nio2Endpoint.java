@@ -0,0 +1,677 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.InterruptedByTimeoutException;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.collections.SynchronizedStack;
+import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
+import org.apache.tomcat.util.net.NioEndpoint.NioBufferHandler;
+import org.apache.tomcat.util.net.SecureNioChannel.ApplicationBufferHandler;
+
+/**
+ * NIO2 endpoint.
+ * <p>
+ * Connections are accepted by the acceptor thread(s) and then handled with
+ * asynchronous reads: rather than a poller, the endpoint issues a read on each
+ * idle connection and the channel group notifies the endpoint, on one of the
+ * executor's threads, once request data is available. Request and response
+ * bodies are read and written on the processing thread by waiting on the
+ * asynchronous operations.
+ * <p>
+ * SSL, sendfile and Comet are not supported by this endpoint.
+ */
+public class Nio2Endpoint extends AbstractEndpoint<Nio2Channel> {
+
+
+    // -------------------------------------------------------------- Constants
+
+
+    private static final Log log = LogFactory.getLog(Nio2Endpoint.class);
+
+
+    // ----------------------------------------------------------------- Fields
+
+    /**
+     * Server socket "pointer".
+     */
+    private volatile AsynchronousServerSocketChannel serverSock = null;
+
+    /**
+     * The channel group all the connections of this endpoint belong to.
+     */
+    private AsynchronousChannelGroup threadGroup = null;
+
+    /**
+     * Cache for the connection buffers. The channels themselves are not
+     * re-used, see {@link Nio2Channel}.
+     */
+    private final SynchronizedStack<ApplicationBufferHandler> bufferHandlers =
+            new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, socketProperties.getBufferPoolSize());
+
+    /**
+     * Connections in async mode, checked for timeouts by the async timeout
+     * thread.
+     */
+    protected ConcurrentLinkedQueue<SocketWrapper<Nio2Channel>> waitingRequests =
+            new ConcurrentLinkedQueue<>();
+
+    /**
+     * Completion handler for the reads issued while waiting for a request.
+     */
+    private final CompletionHandler<Integer,SocketWrapper<Nio2Channel>> awaitBytesHandler =
+            new AwaitBytesHandler();
+
+
+    // ------------------------------------------------------------- Properties
+
+
+    /**
+     * Handling of accepted sockets.
+     */
+    private Handler handler = null;
+    public void setHandler(Handler handler ) { this.handler = handler; }
+    public Handler getHandler() { return handler; }
+
+
+    /**
+     * Port in use.
+     */
+    @Override
+    public int getLocalPort() {
+        AsynchronousServerSocketChannel ssc = serverSock;
+        if (ssc == null) {
+            return -1;
+        } else {
+            try {
+                SocketAddress sa = ssc.getLocalAddress();
+                if (sa instanceof InetSocketAddress) {
+                    return ((InetSocketAddress) sa).getPort();
+                }
+            } catch (IOException e) {
+                // Ignore
+            }
+            return -1;
+        }
+    }
+
+
+    @Override
+    public String[] getCiphersUsed() {
+        return new String[0];
+    }
+
+
+    /*
+     * Optional feature support.
+     */
+    @Override
+    public boolean getUseSendfile() { return false; } // Not supported
+    @Override
+    public boolean getUseComet() { return false; } // Not supported
+    @Override
+    public boolean getUseCometTimeout() { return false; } // Not supported
+    @Override
+    public boolean getDeferAccept() { return false; } // Not supported
+    @Override
+    public boolean getUsePolling() { return true; } // Always supported
+
+
+    // ----------------------------------------------- Public Lifecycle Methods
+
+
+    /**
+     * Initialize the endpoint.
+     */
+    @Override
+    public void bind() throws Exception {
+
+        if (isSSLEnabled()) {
+            throw new IllegalStateException(sm.getString("endpoint.nio2.noSsl"));
+        }
+
+        // Create worker collection. The channel group needs an executor
+        // service that is available before the server socket is opened.
+        if (getExecutor() == null) {
+            createExecutor();
+        }
+        if (getExecutor() instanceof ExecutorService) {
+            threadGroup = AsynchronousChannelGroup.withThreadPool(
+                    (ExecutorService) getExecutor());
+        } else if (log.isDebugEnabled()) {
+            log.debug(sm.getString("endpoint.nio2.defaultGroup", getName()));
+        }
+
+        serverSock = AsynchronousServerSocketChannel.open(threadGroup);
+        socketProperties.setProperties(serverSock);
+        InetSocketAddress addr = (getAddress()!=null?new InetSocketAddress(getAddress(),getPort()):new InetSocketAddress(getPort()));
+        serverSock.bind(addr,getBacklog());
+
+        // Initialize thread count defaults for acceptor
+        if (acceptorThreadCount == 0) {
+            acceptorThreadCount = 1;
+        }
+    }
+
+
+    /**
+     * Start the NIO2 endpoint, creating acceptor and async timeout threads.
+     */
+    @Override
+    public void startInternal() throws Exception {
+
+        if (!running) {
+            running = true;
+            paused = false;
+
+            initializeConnectionLatch();
+
+            startAcceptorThreads();
+
+            // Start async timeout thread
+            Thread timeoutThread = new Thread(new AsyncTimeout(),
+                    getName() + "-AsyncTimeout");
+            timeoutThread.setPriority(threadPriority);
+            timeoutThread.setDaemon(true);
+            timeoutThread.start();
+        }
+    }
+
+
+    /**
+     * Stop the endpoint. The executor is left running as it belongs to the
+     * channel group and is only shut down with it in {@link #unbind()}.
+     */
+    @Override
+    public void stopInternal() {
+        releaseConnectionLatch();
+        if (!paused) {
+            pause();
+        }
+        if (running) {
+            running = false;
+            unlockAccept();
+        }
+        bufferHandlers.clear();
+    }
+
+
+    /**
+     * Close the server socket and shut down the channel group, closing all
+     * the remaining connections.
+     */
+    @Override
+    public void unbind() throws Exception {
+        if (log.isDebugEnabled()) {
+            log.debug("Destroy initiated for "+new InetSocketAddress(getAddress(),getPort()));
+        }
+        if (running) {
+            stop();
+        }
+        // Close server socket
+        serverSock.close();
+        serverSock = null;
+        if (threadGroup != null) {
+            threadGroup.shutdownNow();
+            try {
+                threadGroup.awaitTermination(getExecutorTerminationTimeoutMillis(),
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+            threadGroup = null;
+        }
+        shutdownExecutor();
+        bufferHandlers.clear();
+        if (handler != null) {
+            handler.recycle();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Destroy completed for "+new InetSocketAddress(getAddress(),getPort()));
+        }
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+
+    @Override
+    protected AbstractEndpoint.Acceptor createAcceptor() {
+        return new Acceptor();
+    }
+
+
+    /**
+     * Configure the newly accepted connection and start waiting for the
+     * first request.
+     */
+    protected boolean setSocketOptions(AsynchronousSocketChannel socket) {
+        try {
+            socketProperties.setProperties(socket);
+
+            ApplicationBufferHandler bufhandler = bufferHandlers.pop();
+            if (bufhandler == null) {
+                bufhandler = new NioBufferHandler(socketProperties.getAppReadBufSize(),
+                        socketProperties.getAppWriteBufSize(),
+                        socketProperties.getDirectBuffer());
+            }
+            Nio2Channel channel = new Nio2Channel(socket, bufhandler);
+            SocketWrapper<Nio2Channel> wrapper = new SocketWrapper<>(channel);
+            wrapper.setTimeout(getSoTimeout());
+            wrapper.setKeepAliveLeft(getMaxKeepAliveRequests());
+            wrapper.setSecure(false);
+            awaitBytes(wrapper);
+        } catch (Throwable t) {
+            ExceptionUtils.handleThrowable(t);
+            try {
+                log.error("",t);
+            } catch (Throwable tt) {
+                ExceptionUtils.handleThrowable(t);
+            }
+            // Tell to close the socket
+            return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Wait, without holding a thread, for data to arrive on the given
+     * connection. If data has already been read it is processed straight
+     * away. The connection is processed with {@link SocketStatus#OPEN_READ}
+     * once data is available or closed if the read fails or times out.
+     * Calling this method while a read is already in progress on the
+     * connection is a NO-OP.
+     *
+     * @param socket    The connection to wait on
+     */
+    public void awaitBytes(SocketWrapper<Nio2Channel> socket) {
+        Nio2Channel channel = socket.getSocket();
+        if (channel == null || !channel.getReadPending().tryAcquire()) {
+            return;
+        }
+        ByteBuffer readBuffer = channel.getBufHandler().getReadBuffer();
+        if (readBuffer.hasRemaining()) {
+            channel.getReadPending().release();
+            processSocket(socket, SocketStatus.OPEN_READ, true);
+            return;
+        }
+        readBuffer.clear();
+        long timeout = socket.getTimeout();
+        try {
+            channel.read(readBuffer, timeout > 0 ? timeout : 0,
+                    TimeUnit.MILLISECONDS, socket, awaitBytesHandler);
+        } catch (RuntimeException e) {
+            // Typically the group has been shut down
+            readBuffer.limit(0);
+            channel.getReadPending().release();
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("endpoint.err.unexpected"), e);
+            }
+            closeSocket(socket);
+        }
+    }
+
+
+    /**
+     * Close the given connection, releasing the processor associated with it
+     * if any. Closing a connection that has already been closed is a NO-OP.
+     */
+    public void closeSocket(SocketWrapper<Nio2Channel> socket) {
+        socket.getProcessLock().lock();
+        try {
+            Nio2Channel channel = socket.getSocket();
+            if (channel == null || !channel.isOpen()) {
+                return;
+            }
+            waitingRequests.remove(socket);
+            try {
+                handler.release(socket);
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                if (log.isDebugEnabled()) log.error("",t);
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("endpoint.debug.socketCloseFail"), e);
+                }
+            }
+            countDownConnection();
+            // The buffers may only be re-used if no pending operation can
+            // complete later and touch them
+            if (running && !paused && channel.isIdle()) {
+                bufferHandlers.push(channel.getBufHandler());
+            }
+        } finally {
+            socket.getProcessLock().unlock();
+        }
+    }
+
+
+    @Override
+    public void processSocket(SocketWrapper<Nio2Channel> socketWrapper,
+            SocketStatus socketStatus, boolean dispatch) {
+        try {
+            waitingRequests.remove(socketWrapper);
+            SocketProcessor sc = new SocketProcessor(socketWrapper, socketStatus);
+            Executor executor = getExecutor();
+            if (dispatch && executor != null) {
+                ClassLoader loader = Thread.currentThread().getContextClassLoader();
+                try {
+                    //threads should not be created by the webapp classloader
+                    if (Constants.IS_SECURITY_ENABLED) {
+                        PrivilegedAction<Void> pa = new PrivilegedSetTccl(getClass().getClassLoader());
+                        AccessController.doPrivileged(pa);
+                    } else {
+                        Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
+                    }
+                    socketWrapper.dispatched();
+                    executor.execute(sc);
+                } finally {
+                    if (Constants.IS_SECURITY_ENABLED) {
+                        PrivilegedAction<Void> pa = new PrivilegedSetTccl(loader);
+                        AccessController.doPrivileged(pa);
+                    } else {
+                        Thread.currentThread().setContextClassLoader(loader);
+                    }
+                }
+            } else {
+                sc.run();
+            }
+        } catch (RejectedExecutionException ree) {
+            log.warn(sm.getString("endpoint.executor.fail", socketWrapper), ree);
+            closeSocket(socketWrapper);
+        } catch (Throwable t) {
+            ExceptionUtils.handleThrowable(t);
+            // This means we got an OOM or similar creating a thread, or that
+            // the pool and its queue are full
+            log.error(sm.getString("endpoint.process.fail"), t);
+            closeSocket(socketWrapper);
+        }
+    }
+
+
+    @Override
+    protected Log getLog() {
+        return log;
+    }
+
+
+    // --------------------------------------------------- Acceptor Inner Class
+    /**
+     * The background thread that listens for incoming TCP/IP connections and
+     * hands them off to an appropriate processor.
+     */
+    protected class Acceptor extends AbstractEndpoint.Acceptor {
+
+        @Override
+        public void run() {
+
+            int errorDelay = 0;
+
+            // Loop until we receive a shutdown command
+            while (running) {
+
+                // Loop if endpoint is paused
+                while (paused && running) {
+                    state = AcceptorState.PAUSED;
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
+
+                if (!running) {
+                    break;
+                }
+                state = AcceptorState.RUNNING;
+
+                try {
+                    //if we have reached max connections, wait
+                    countUpOrAwaitConnection();
+
+                    AsynchronousSocketChannel socket = null;
+                    try {
+                        // Accept the next incoming connection from the server
+                        // socket
+                        socket = serverSock.accept().get();
+                    } catch (ExecutionException e) {
+                        countDownConnection();
+                        // Introduce delay if necessary
+                        errorDelay = handleExceptionWithDelay(errorDelay);
+                        // re-throw
+                        if (e.getCause() instanceof IOException) {
+                            throw (IOException) e.getCause();
+                        }
+                        throw new IOException(e.getCause());
+                    }
+                    // Successful accept, reset the error delay
+                    errorDelay = 0;
+
+                    // Configure the socket and start waiting for a request
+                    if (running && !paused) {
+                        if (!setSocketOptions(socket)) {
+                            countDownConnection();
+                            closeSocket(socket);
+                        }
+                    } else {
+                        countDownConnection();
+                        closeSocket(socket);
+                    }
+                } catch (IOException x) {
+                    if (running) {
+                        log.error(sm.getString("endpoint.accept.fail"), x);
+                    }
+                } catch (Throwable t) {
+                    ExceptionUtils.handleThrowable(t);
+                    log.error(sm.getString("endpoint.accept.fail"), t);
+                }
+            }
+            state = AcceptorState.ENDED;
+        }
+    }
+
+
+    private void closeSocket(AsynchronousSocketChannel socket) {
+        try {
+            socket.close();
+        } catch (IOException ioe)  {
+            if (log.isDebugEnabled()) {
+                log.debug("", ioe);
+            }
+        }
+    }
+
+
+    // ----------------------------------------- AwaitBytesHandler Inner Class
+
+    /**
+     * Hands the connection over for processing once the read issued by
+     * {@link Nio2Endpoint#awaitBytes(SocketWrapper)} completes.
+     */
+    private class AwaitBytesHandler
+            implements CompletionHandler<Integer,SocketWrapper<Nio2Channel>> {
+
+        @Override
+        public void completed(Integer nBytes, SocketWrapper<Nio2Channel> socket) {
+            Nio2Channel channel = socket.getSocket();
+            ByteBuffer readBuffer = channel.getBufHandler().getReadBuffer();
+            if (nBytes.intValue() < 0) {
+                readBuffer.limit(0);
+                channel.getReadPending().release();
+                closeSocket(socket);
+            } else {
+                readBuffer.flip();
+                channel.getReadPending().release();
+                socket.access();
+                processSocket(socket, SocketStatus.OPEN_READ, true);
+            }
+        }
+
+        @Override
+        public void failed(Throwable exc, SocketWrapper<Nio2Channel> socket) {
+            Nio2Channel channel = socket.getSocket();
+            channel.getBufHandler().getReadBuffer().limit(0);
+            channel.getReadPending().release();
+            if (log.isDebugEnabled()) {
+                if (exc instanceof InterruptedByTimeoutException) {
+                    log.debug(sm.getString("endpoint.debug.socketTimeout", socket));
+                } else {
+                    log.debug(sm.getString("endpoint.debug.socket", socket), exc);
+                }
+            }
+            closeSocket(socket);
+        }
+    }
+
+
+    // ------------------------------------------------ Handler Inner Interface
+
+
+    /**
+     * Bare bones interface used for socket processing. Per thread data is to be
+     * stored in the ThreadWithAttributes extra folders, or alternately in
+     * thread local fields.
+     */
+    public interface Handler extends AbstractEndpoint.Handler {
+        public SocketState process(SocketWrapper<Nio2Channel> socket,
+                SocketStatus status);
+        public void release(SocketWrapper<Nio2Channel> socket);
+        public SSLImplementation getSslImplementation();
+    }
+
+
+    /**
+     * Async timeout thread
+     */
+    protected class AsyncTimeout implements Runnable {
+        /**
+         * The background thread that checks async requests and fires the
+         * timeout if there has been no activity.
+         */
+        @Override
+        public void run() {
+
+            // Loop until we receive a shutdown command
+            while (running) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                long now = System.currentTimeMillis();
+                Iterator<SocketWrapper<Nio2Channel>> sockets =
+                    waitingRequests.iterator();
+                while (sockets.hasNext()) {
+                    SocketWrapper<Nio2Channel> socket = sockets.next();
+                    long access = socket.getLastAccess();
+                    if (socket.getTimeout() > 0 &&
+                            (now-access)>socket.getTimeout()) {
+                        processSocket(socket, SocketStatus.TIMEOUT, true);
+                    }
+                }
+
+                // Loop if endpoint is paused
+                while (paused && running) {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
+
+            }
+        }
+    }
+
+
+    // ---------------------------------------------- SocketProcessor Inner Class
+
+
+    /**
+     * This class is the equivalent of the Worker, but will simply use in an
+     * external Executor thread pool.
+     */
+    protected class SocketProcessor implements Runnable {
+
+        private final SocketWrapper<Nio2Channel> socket;
+        private final SocketStatus status;
+
+        public SocketProcessor(SocketWrapper<Nio2Channel> socket,
+                SocketStatus status) {
+            this.socket = socket;
+            this.status = status;
+        }
+
+        @Override
+        public void run() {
+            socket.getProcessLock().lock();
+            try {
+                if (!socket.getSocket().isOpen()) {
+                    // Closed while this processor was waiting
+                    return;
+                }
+                // The connection may have been added by the previous processor
+                // after this one was created
+                waitingRequests.remove(socket);
+                SocketState state;
+                if (status == null) {
+                    state = handler.process(socket, SocketStatus.OPEN_READ);
+                } else {
+                    state = handler.process(socket, status);
+                }
+                if (state == SocketState.CLOSED) {
+                    // Close socket
+                    if (log.isTraceEnabled()) {
+                        log.trace("Closing socket:"+socket);
+                    }
+                    closeSocket(socket);
+                } else if (state == SocketState.LONG && socket.isAsync()) {
+                    // The handler does not wait for data for async requests.
+                    // They are timed out by the async timeout thread instead.
+                    socket.access();
+                    waitingRequests.add(socket);
+                }
+            } finally {
+                socket.getProcessLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tomcat.util.collections.SynchronizedStack;
+
+/**
+ * Shared pool of application buffers for NIO connections. It supports two
+ * modes that may be combined:
+ * <ul>
+ * <li>adaptive buffers - a connection starts with small buffers, borrows a
+ *     full size buffer from this pool when a transfer does not fit and
+ *     returns it once the connection is idle</li>
+ * <li>idle release - a connection waiting for its next request returns all
+ *     of its buffers to this pool and borrows new ones when data arrives</li>
+ * </ul>
+ */
+public class NioBufferPool {
+
+    private final int initialReadSize;
+    private final int initialWriteSize;
+    private final int readBufSize;
+    private final int writeBufSize;
+    private final boolean direct;
+    private final boolean releaseIdle;
+
+    private final SynchronizedStack<ByteBuffer> initialReadBuffers;
+    private final SynchronizedStack<ByteBuffer> initialWriteBuffers;
+    private final SynchronizedStack<ByteBuffer> readBuffers;
+    private final SynchronizedStack<ByteBuffer> writeBuffers;
+
+    /**
+     * Bytes in full size buffers that are currently held by connections.
+     */
+    private final AtomicLong grownBytes = new AtomicLong();
+
+    /**
+     * Bytes in buffers that are waiting in this pool.
+     */
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    /**
+     * Connections that currently hold no buffers at all.
+     */
+    private final AtomicInteger releasedCount = new AtomicInteger();
+
+
+    /**
+     * @param initialReadSize   Size of the read buffer a connection starts
+     *                          with
+     * @param initialWriteSize  Size of the write buffer a connection starts
+     *                          with
+     * @param readBufSize       Size of a full size read buffer
+     * @param writeBufSize      Size of a full size write buffer
+     * @param direct            Use direct buffers
+     * @param releaseIdle       Should idle connections return all of their
+     *                          buffers
+     * @param limit             Maximum number of buffers of each kind kept in
+     *                          the pool, -1 for unlimited
+     */
+    public NioBufferPool(int initialReadSize, int initialWriteSize,
+            int readBufSize, int writeBufSize, boolean direct,
+            boolean releaseIdle, int limit) {
+        this.initialReadSize = initialReadSize;
+        this.initialWriteSize = initialWriteSize;
+        this.readBufSize = readBufSize;
+        this.writeBufSize = writeBufSize;
+        this.direct = direct;
+        this.releaseIdle = releaseIdle;
+        initialReadBuffers = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, limit);
+        initialWriteBuffers = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, limit);
+        readBuffers = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, limit);
+        writeBuffers = new SynchronizedStack<>(SynchronizedStack.DEFAULT_SIZE, limit);
+    }
+
+
+    public int getInitialReadSize() {
+        return initialReadSize;
+    }
+
+    public int getInitialWriteSize() {
+        return initialWriteSize;
+    }
+
+    public boolean getReleaseIdle() {
+        return releaseIdle;
+    }
+
+    public long getGrownBytes() {
+        return grownBytes.get();
+    }
+
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public int getReleasedCount() {
+        return releasedCount.get();
+    }
+
+
+    /**
+     * Obtain a read buffer of the initial size, either from the pool or newly
+     * allocated.
+     */
+    public ByteBuffer borrowInitialReadBuffer() {
+        return borrow(initialReadBuffers, initialReadSize);
+    }
+
+
+    /**
+     * Obtain a write buffer of the initial size, either from the pool or
+     * newly allocated.
+     */
+    public ByteBuffer borrowInitialWriteBuffer() {
+        return borrow(initialWriteBuffers, initialWriteSize);
+    }
+
+
+    /**
+     * Obtain a full size read buffer, either from the pool or newly
+     * allocated. Returns <code>null</code> if the initial read buffer is
+     * already full size.
+     */
+    public ByteBuffer borrowReadBuffer() {
+        if (initialReadSize >= readBufSize) {
+            return null;
+        }
+        ByteBuffer buffer = borrow(readBuffers, readBufSize);
+        grownBytes.addAndGet(buffer.capacity());
+        return buffer;
+    }
+
+
+    /**
+     * Obtain a full size write buffer, either from the pool or newly
+     * allocated. Returns <code>null</code> if the initial write buffer is
+     * already full size.
+     */
+    public ByteBuffer borrowWriteBuffer() {
+        if (initialWriteSize >= writeBufSize) {
+            return null;
+        }
+        ByteBuffer buffer = borrow(writeBuffers, writeBufSize);
+        grownBytes.addAndGet(buffer.capacity());
+        return buffer;
+    }
+
+
+    /**
+     * Give the initial buffers of an idle connection back to the pool. The
+     * contents of the buffers are discarded.
+     */
+    public void returnInitialBuffers(ByteBuffer readBuffer,
+            ByteBuffer writeBuffer) {
+        giveBack(initialReadBuffers, readBuffer);
+        giveBack(initialWriteBuffers, writeBuffer);
+        releasedCount.incrementAndGet();
+    }
+
+
+    /**
+     * Record that a connection that returned its initial buffers has either
+     * borrowed new ones or been closed.
+     */
+    public void unreleased() {
+        releasedCount.decrementAndGet();
+    }
+
+
+    /**
+     * Give a full size read buffer back to the pool. The contents of the
+     * buffer are discarded.
+     */
+    public void returnReadBuffer(ByteBuffer buffer) {
+        grownBytes.addAndGet(-buffer.capacity());
+        giveBack(readBuffers, buffer);
+    }
+
+
+    /**
+     * Give a full size write buffer back to the pool. The contents of the
+     * buffer are discarded.
+     */
+    public void returnWriteBuffer(ByteBuffer buffer) {
+        grownBytes.addAndGet(-buffer.capacity());
+        giveBack(writeBuffers, buffer);
+    }
+
+
+    /**
+     * Stop tracking a full size buffer that will not be returned to the
+     * pool, for example because another thread may still be using it.
+     */
+    public void discard(ByteBuffer buffer) {
+        grownBytes.addAndGet(-buffer.capacity());
+    }
+
+
+    /**
+     * Empty the pool.
+     */
+    public void clear() {
+        initialReadBuffers.clear();
+        initialWriteBuffers.clear();
+        readBuffers.clear();
+        writeBuffers.clear();
+        pooledBytes.set(0);
+    }
+
+
+    private ByteBuffer borrow(SynchronizedStack<ByteBuffer> buffers,
+            int size) {
+        ByteBuffer buffer = buffers.pop();
+        if (buffer == null) {
+            buffer = allocate(size);
+        } else {
+            pooledBytes.addAndGet(-buffer.capacity());
+        }
+        return buffer;
+    }
+
+
+    private void giveBack(SynchronizedStack<ByteBuffer> buffers,
+            ByteBuffer buffer) {
+        buffer.clear();
+        if (buffers.push(buffer)) {
+            pooledBytes.addAndGet(buffer.capacity());
+        }
+    }
+
+
+    private ByteBuffer allocate(int size) {
+        if (direct) {
+            return ByteBuffer.allocateDirect(size);
+        } else {
+            return ByteBuffer.allocate(size);
+        }
+    }
+}
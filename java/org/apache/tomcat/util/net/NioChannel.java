@@ -22,7 +22,9 @@ import java.nio.channels.ByteChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.apache.tomcat.util.net.NioEndpoint.NioBufferHandler;
 import org.apache.tomcat.util.net.NioEndpoint.Poller;
 import org.apache.tomcat.util.net.SecureNioChannel.ApplicationBufferHandler;
 
@@ -47,11 +49,22 @@ public class NioChannel implements ByteChannel {
 
     protected boolean sendFile = false;
 
+    /*
+     * Held while a SocketProcessor processes the connection. A lock rather
+     * than the monitor of the channel so that a virtual thread that blocks
+     * while holding it is not pinned to its carrier thread.
+     */
+    private final ReentrantLock processLock = new ReentrantLock();
+
     public NioChannel(SocketChannel channel, ApplicationBufferHandler bufHandler) {
         this.sc = channel;
         this.bufHandler = bufHandler;
     }
 
+    public ReentrantLock getProcessLock() {
+        return processLock;
+    }
+
     /**
      * Reset the channel
      *
@@ -63,6 +76,56 @@ public class NioChannel implements ByteChannel {
         this.sendFile = false;
     }
 
+    /**
+     * Use a full size read buffer from now on if the channel uses adaptive
+     * application buffers. The read buffer must not hold unread data.
+     */
+    public void growReadBuffer() {
+        if (bufHandler instanceof NioBufferHandler) {
+            ((NioBufferHandler) bufHandler).growReadBuffer();
+        }
+    }
+
+    /**
+     * Use a full size write buffer from now on if the channel uses adaptive
+     * application buffers. The write buffer must not hold unwritten data.
+     */
+    public void growWriteBuffer() {
+        if (bufHandler instanceof NioBufferHandler) {
+            ((NioBufferHandler) bufHandler).growWriteBuffer();
+        }
+    }
+
+    /**
+     * Return the pooled application buffers of an idle connection to the
+     * shared pool, if the channel uses pooled application buffers.
+     */
+    public void releaseIdleBuffers() {
+        if (bufHandler instanceof NioBufferHandler) {
+            ((NioBufferHandler) bufHandler).release();
+        }
+    }
+
+    /**
+     * Obtain application buffers from the shared pool again if they were
+     * released while the connection was idle.
+     */
+    public void acquireBuffers() {
+        if (bufHandler instanceof NioBufferHandler) {
+            ((NioBufferHandler) bufHandler).acquire();
+        }
+    }
+
+    /**
+     * Release the full size application buffers of a closed connection
+     * without returning them to the shared pool.
+     */
+    public void freeBuffers() {
+        if (bufHandler instanceof NioBufferHandler) {
+            ((NioBufferHandler) bufHandler).free();
+        }
+    }
+
     public int getBufferSize() {
         if ( bufHandler == null ) return 0;
         int size = 0;
@@ -42,6 +42,7 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
@@ -90,6 +91,12 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
 
     private NioSelectorPool selectorPool = new NioSelectorPool();
 
+    /**
+     * Pool of application buffers, only used when adaptive application
+     * buffers or the release of idle buffers are enabled.
+     */
+    private volatile NioBufferPool appBufferPool = null;
+
     /**
      * Server socket "pointer".
      */
@@ -100,6 +107,13 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
      */
     private boolean useSendfile = true;
 
+    /**
+     * Whether the handler's processors grow and release pooled application
+     * buffers. If not, adaptive application buffers and the release of idle
+     * buffers are disabled.
+     */
+    private boolean useAppBufferPool = true;
+
     /**
      * The size of the OOM parachute.
      */
@@ -260,6 +274,11 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
         this.useSendfile = useSendfile;
     }
 
+    public void setUseAppBufferPool(boolean useAppBufferPool) {
+        this.useAppBufferPool = useAppBufferPool;
+    }
+    public boolean getUseAppBufferPool() { return useAppBufferPool; }
+
     /**
      * Is deferAccept supported?
      */
@@ -355,6 +374,52 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
         }
     }
 
+    /**
+     * Estimated number of bytes held in application buffers of the initial
+     * size by open connections. Every open connection that has not released
+     * its buffers while idle holds a read and a write buffer of this size,
+     * even while it uses full size buffers. Without adaptive application
+     * buffers the initial size is the full size.
+     */
+    public long getAppBufferInitialBytes() {
+        NioBufferPool pool = appBufferPool;
+        long connections = Math.max(0, getConnectionCount());
+        if (pool == null) {
+            return connections * (socketProperties.getAppReadBufSize() +
+                    socketProperties.getAppWriteBufSize());
+        }
+        connections = Math.max(0, connections - pool.getReleasedCount());
+        return connections *
+                (pool.getInitialReadSize() + pool.getInitialWriteSize());
+    }
+
+    /**
+     * Number of open connections that hold no application buffers because
+     * they released them while idle.
+     */
+    public int getAppBufferReleasedCount() {
+        NioBufferPool pool = appBufferPool;
+        return pool == null ? 0 : pool.getReleasedCount();
+    }
+
+    /**
+     * Number of bytes in full size application buffers that open connections
+     * have taken from the shared pool.
+     */
+    public long getAppBufferGrownBytes() {
+        NioBufferPool pool = appBufferPool;
+        return pool == null ? 0 : pool.getGrownBytes();
+    }
+
+    /**
+     * Number of bytes in full size application buffers waiting in the shared
+     * pool.
+     */
+    public long getAppBufferPooledBytes() {
+        NioBufferPool pool = appBufferPool;
+        return pool == null ? 0 : pool.getPooledBytes();
+    }
+
 
     // ----------------------------------------------- Public Lifecycle Methods
 
@@ -450,6 +515,29 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
 
             initializeConnectionLatch();
 
+            if (!useAppBufferPool) {
+                appBufferPool = null;
+            } else if (socketProperties.getAdaptiveAppBuffers()) {
+                appBufferPool = new NioBufferPool(
+                        socketProperties.getAppBufInitialSize(),
+                        socketProperties.getAppBufInitialSize(),
+                        socketProperties.getAppReadBufSize(),
+                        socketProperties.getAppWriteBufSize(),
+                        socketProperties.getDirectBuffer(),
+                        socketProperties.getReleaseIdleBuffers(),
+                        socketProperties.getBufferPool());
+            } else if (socketProperties.getReleaseIdleBuffers()) {
+                appBufferPool = new NioBufferPool(
+                        socketProperties.getAppReadBufSize(),
+                        socketProperties.getAppWriteBufSize(),
+                        socketProperties.getAppReadBufSize(),
+                        socketProperties.getAppWriteBufSize(),
+                        socketProperties.getDirectBuffer(),
+                        true, socketProperties.getBufferPool());
+            } else {
+                appBufferPool = null;
+            }
+
             // Start poller threads
             // 开始轮询线程。 数组的大小为2，因为我是双核处理器。
             pollers = new Poller[getPollerThreadCount()];
@@ -497,6 +585,9 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
         keyCache.clear();
         nioChannels.clear();
         processorCache.clear();
+        if (appBufferPool != null) {
+            appBufferPool.clear();
+        }
         shutdownExecutor();
 
     }
@@ -593,9 +684,14 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                     channel = new SecureNioChannel(socket, engine, bufhandler, selectorPool);
                 } else {
                     // normal tcp setup
-                    NioBufferHandler bufhandler = new NioBufferHandler(socketProperties.getAppReadBufSize(),
-                                                                       socketProperties.getAppWriteBufSize(),
-                                                                       socketProperties.getDirectBuffer());
+                    NioBufferHandler bufhandler;
+                    if (appBufferPool != null) {
+                        bufhandler = new NioBufferHandler(appBufferPool);
+                    } else {
+                        bufhandler = new NioBufferHandler(socketProperties.getAppReadBufSize(),
+                                                          socketProperties.getAppWriteBufSize(),
+                                                          socketProperties.getDirectBuffer());
+                    }
 
                     channel = new NioChannel(socket, bufhandler);
                 }
@@ -704,6 +800,7 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                     }
                     
                     // 线程池执行socket处理器
+                    attachment.dispatched();
                     executor.execute(sc);
                 } finally {
                     if (Constants.IS_SECURITY_ENABLED) {
@@ -1133,6 +1230,7 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                 }
                 try {
                     if (ka!=null) {
+                        ka.getSocket().freeBuffers();
                         ka.getSocket().close(true);
                     }
                 } catch (Exception e){
@@ -1307,6 +1405,8 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                                 boolean closeSocket = false;
                                 // Read goes before write
                                 if (sk.isReadable()) {
+                                    // Buffers released while idle are needed again
+                                    channel.acquireBuffers();
                                     if (!processSocket(channel, SocketStatus.OPEN_READ, true)) {
                                         closeSocket = true;
                                     }
@@ -1623,6 +1723,16 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
         private ByteBuffer readbuf = null;
         private ByteBuffer writebuf = null;
 
+        /**
+         * Pooled buffers only: the pool providing the buffers, the initial
+         * size buffers that are used while the connection does not need more
+         * and whether they have been given back while the connection is idle.
+         */
+        private final NioBufferPool pool;
+        private ByteBuffer initialReadbuf = null;
+        private ByteBuffer initialWritebuf = null;
+        private boolean released = false;
+
         public NioBufferHandler(int readsize, int writesize, boolean direct) {
             if ( direct ) {
                 readbuf = ByteBuffer.allocateDirect(readsize);
@@ -1631,15 +1741,138 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                 readbuf = ByteBuffer.allocate(readsize);
                 writebuf = ByteBuffer.allocate(writesize);
             }
+            pool = null;
+        }
+
+        public NioBufferHandler(NioBufferPool pool) {
+            this.pool = pool;
+            acquire();
         }
 
         @Override
         public ByteBuffer expand(ByteBuffer buffer, int remaining) {return buffer;}
         @Override
-        public ByteBuffer getReadBuffer() {return readbuf;}
+        public ByteBuffer getReadBuffer() {
+            if (readbuf == null) {
+                acquire();
+            }
+            return readbuf;
+        }
         @Override
-        public ByteBuffer getWriteBuffer() {return writebuf;}
+        public ByteBuffer getWriteBuffer() {
+            if (writebuf == null) {
+                acquire();
+            }
+            return writebuf;
+        }
 
+        /**
+         * Obtain initial size buffers from the pool if this handler gave its
+         * buffers back while the connection was idle.
+         */
+        public synchronized void acquire() {
+            if (pool == null || initialReadbuf != null) {
+                return;
+            }
+            initialReadbuf = pool.borrowInitialReadBuffer();
+            initialWritebuf = pool.borrowInitialWriteBuffer();
+            readbuf = initialReadbuf;
+            writebuf = initialWritebuf;
+            if (released) {
+                released = false;
+                pool.unreleased();
+            }
+        }
+
+        /**
+         * Switch to a full size read buffer if this handler is adaptive and
+         * still using its initial read buffer. The current read buffer must
+         * not hold any unread data.
+         */
+        public synchronized void growReadBuffer() {
+            if (pool != null && readbuf != null && readbuf == initialReadbuf) {
+                ByteBuffer buffer = pool.borrowReadBuffer();
+                if (buffer != null) {
+                    readbuf = buffer;
+                }
+            }
+        }
+
+        /**
+         * Switch to a full size write buffer if this handler is adaptive and
+         * still using its initial write buffer. The current write buffer must
+         * not hold any unwritten data.
+         */
+        public synchronized void growWriteBuffer() {
+            if (pool != null && writebuf != null && writebuf == initialWritebuf) {
+                ByteBuffer buffer = pool.borrowWriteBuffer();
+                if (buffer != null) {
+                    writebuf = buffer;
+                }
+            }
+        }
+
+        /**
+         * Return any full size buffers to the pool and, if the pool releases
+         * the buffers of idle connections, the initial buffers as well. Only
+         * to be called by the thread processing the connection once both
+         * buffers are empty. A write buffer that still appears to hold data
+         * is kept.
+         */
+        public synchronized void release() {
+            if (pool == null || readbuf == null) {
+                return;
+            }
+            if (readbuf != initialReadbuf) {
+                pool.returnReadBuffer(readbuf);
+                readbuf = initialReadbuf;
+                readbuf.clear();
+            }
+            if (writebuf.position() != 0 ||
+                    writebuf.limit() != writebuf.capacity()) {
+                return;
+            }
+            if (writebuf != initialWritebuf) {
+                pool.returnWriteBuffer(writebuf);
+                writebuf = initialWritebuf;
+                writebuf.clear();
+            }
+            if (pool.getReleaseIdle()) {
+                pool.returnInitialBuffers(initialReadbuf, initialWritebuf);
+                initialReadbuf = null;
+                initialWritebuf = null;
+                readbuf = null;
+                writebuf = null;
+                released = true;
+            }
+        }
+
+        /**
+         * Go back to the initial buffers without pooling the full size ones
+         * as another thread may still be using them. Used when the connection
+         * is closed.
+         */
+        public synchronized void free() {
+            if (pool == null) {
+                return;
+            }
+            if (released) {
+                // Any later use acquires new buffers
+                released = false;
+                pool.unreleased();
+                return;
+            }
+            if (readbuf != initialReadbuf) {
+                pool.discard(readbuf);
+                readbuf = initialReadbuf;
+                readbuf.clear();
+            }
+            if (writebuf != initialWritebuf) {
+                pool.discard(writebuf);
+                writebuf = initialWritebuf;
+                writebuf.clear();
+            }
+        }
     }
 
     // ------------------------------------------------ Handler Inner Interface
@@ -1696,8 +1929,13 @@ public class NioEndpoint extends AbstractEndpoint<NioChannel> {
                     doRun(key, ka);
                 }
             } else {
-                synchronized (socket) {
+                // doRun() clears socket
+                ReentrantLock processLock = socket.getProcessLock();
+                processLock.lock();
+                try {
                     doRun(key, ka);
+                } finally {
+                    processLock.unlock();
                 }
             }
         }
@@ -16,9 +16,13 @@
  */
 package org.apache.tomcat.util.net;
 
+import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
 
 /**
  * Properties that can be set in the &lt;Connector&gt; element
@@ -67,6 +71,37 @@ public class SocketProperties {
      */
     protected boolean directBuffer = false;
 
+    /**
+     * Enable/disable reading and writing directly between the socket and the
+     * HTTP header and body buffers, bypassing the application buffers of the
+     * channel. Only used for non-SSL NIO connections.
+     * Default value is disabled
+     */
+    protected boolean bypassAppBuffers = false;
+
+    /**
+     * Enable/disable starting non-SSL NIO connections with small application
+     * buffers that are swapped for full size buffers from a shared pool
+     * during large transfers and given back once the connection is idle.
+     * Default value is disabled
+     */
+    protected boolean adaptiveAppBuffers = false;
+
+    /**
+     * The initial application read and write buffer size in bytes when
+     * adaptive application buffers are enabled.
+     * Default value is 1024
+     */
+    protected int appBufInitialSize = 1024;
+
+    /**
+     * Enable/disable returning all application buffers of non-SSL NIO
+     * connections to a shared pool while the connection waits for its next
+     * request.
+     * Default value is disabled
+     */
+    protected boolean releaseIdleBuffers = false;
+
     /**
      * Socket receive buffer size in bytes (SO_RCVBUF).
      * JVM default used if not set.
@@ -228,11 +263,45 @@ public class SocketProperties {
             socket.setSoTimeout(soTimeout.intValue());
     }
 
+    public void setProperties(AsynchronousSocketChannel socket) throws IOException {
+        if (rxBufSize != null)
+            socket.setOption(StandardSocketOptions.SO_RCVBUF, rxBufSize);
+        if (txBufSize != null)
+            socket.setOption(StandardSocketOptions.SO_SNDBUF, txBufSize);
+        if (soKeepAlive != null)
+            socket.setOption(StandardSocketOptions.SO_KEEPALIVE, soKeepAlive);
+        if (soReuseAddress != null)
+            socket.setOption(StandardSocketOptions.SO_REUSEADDR, soReuseAddress);
+        if (soLingerOn != null && soLingerOn.booleanValue() && soLingerTime != null)
+            socket.setOption(StandardSocketOptions.SO_LINGER, soLingerTime);
+        if (tcpNoDelay != null)
+            socket.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+    }
+
+    public void setProperties(AsynchronousServerSocketChannel socket) throws IOException {
+        if (rxBufSize != null)
+            socket.setOption(StandardSocketOptions.SO_RCVBUF, rxBufSize);
+        if (soReuseAddress != null)
+            socket.setOption(StandardSocketOptions.SO_REUSEADDR, soReuseAddress);
+    }
+
 
     public boolean getDirectBuffer() {
         return directBuffer;
     }
 
+    public boolean getBypassAppBuffers() {
+        return bypassAppBuffers;
+    }
+
+    public boolean getAdaptiveAppBuffers() {
+        return adaptiveAppBuffers;
+    }
+
+    public boolean getReleaseIdleBuffers() {
+        return releaseIdleBuffers;
+    }
+
     public boolean getOoBInline() {
         return ooBInline.booleanValue();
     }
@@ -305,6 +374,10 @@ public class SocketProperties {
         return appWriteBufSize;
     }
 
+    public int getAppBufInitialSize() {
+        return appBufInitialSize;
+    }
+
     public int getProcessorCache() {
         return processorCache;
     }
@@ -366,6 +439,18 @@ public class SocketProperties {
         this.directBuffer = directBuffer;
     }
 
+    public void setBypassAppBuffers(boolean bypassAppBuffers) {
+        this.bypassAppBuffers = bypassAppBuffers;
+    }
+
+    public void setAdaptiveAppBuffers(boolean adaptiveAppBuffers) {
+        this.adaptiveAppBuffers = adaptiveAppBuffers;
+    }
+
+    public void setReleaseIdleBuffers(boolean releaseIdleBuffers) {
+        this.releaseIdleBuffers = releaseIdleBuffers;
+    }
+
     public void setSoLingerOn(boolean soLingerOn) {
         this.soLingerOn = Boolean.valueOf(soLingerOn);
     }
@@ -394,6 +479,10 @@ public class SocketProperties {
         this.appWriteBufSize = appWriteBufSize;
     }
 
+    public void setAppBufInitialSize(int appBufInitialSize) {
+        this.appBufInitialSize = appBufInitialSize;
+    }
+
     public void setProcessorCache(int processorCache) {
         this.processorCache = processorCache;
     }
@@ -20,6 +20,7 @@ import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
@@ -28,6 +29,7 @@ public class SocketWrapper<E> {
     private volatile E socket;
 
     private volatile long lastAccess = -1;
+    private long dispatchTime = -1;
     private long timeout = -1;
     private boolean error = false;
     private volatile int keepAliveLeft = 100;
@@ -55,12 +57,19 @@ public class SocketWrapper<E> {
 
     /*
      * In normal servlet processing only one thread is allowed to access the
-     * socket at a time. That is controlled by a lock on the socket for both
+     * socket at a time. That is controlled by the process lock for both
      * read and writes). When HTTP upgrade is used, one read thread and one
      * write thread are allowed to access the socket concurrently. In this case
-     * the lock on the socket is used for reads and the lock below is used for
+     * the process lock is used for reads and the write thread lock is used for
      * writes.
+     *
+     * The process lock is held for the whole of the processing, blocking I/O
+     * included. It is a lock rather than the monitor of this object as a
+     * blocked virtual thread that holds a monitor stays pinned to its carrier
+     * thread whereas one that holds this lock does not.
      */
+    private final ReentrantLock processLock = new ReentrantLock();
+
     private final Object writeThreadLock = new Object();
 
     private Set<DispatchType> dispatches = new CopyOnWriteArraySet<>();
@@ -87,6 +96,22 @@ public class SocketWrapper<E> {
     public long getLastAccess() { return lastAccess; }
     public void access() { access(System.currentTimeMillis()); }
     public void access(long access) { lastAccess = access; }
+    /**
+     * Record, using {@link System#nanoTime()}, that the socket has just been
+     * handed to the executor.
+     */
+    public void dispatched() { dispatchTime = System.nanoTime(); }
+    /**
+     * Obtain and clear the time the socket was handed to the executor.
+     *
+     * @return the dispatch time or -1 if the socket was not dispatched since
+     *         the last call
+     */
+    public long takeDispatchTime() {
+        long result = dispatchTime;
+        dispatchTime = -1;
+        return result;
+    }
     public void setTimeout(long timeout) {this.timeout = timeout;}
     public long getTimeout() {return this.timeout;}
     public boolean getError() { return error; }
@@ -116,6 +141,7 @@ public class SocketWrapper<E> {
         return blockingStatusWriteLock;
     }
     public Object getWriteThreadLock() { return writeThreadLock; }
+    public ReentrantLock getProcessLock() { return processLock; }
     public void addDispatch(DispatchType dispatchType) {
         synchronized (dispatches) {
             dispatches.add(dispatchType);
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+/**
+ * Adjusts the maximum size of a thread pool between a lower and an upper
+ * bound based on the timings recorded by a {@link ThreadPoolExecutor}. The
+ * pool is resized through the {@link ResizableExecutor} interface.
+ * <p>
+ * At each interval the sizer looks at the tasks completed since the previous
+ * interval:
+ * <ul>
+ * <li>If tasks are not waiting in the queue and the threads are busy for
+ *     less than half of the time, the pool is shrunk.</li>
+ * <li>If tasks are waiting in the queue, the sizer hill climbs on the
+ *     throughput: it keeps moving the pool size in the same direction while
+ *     the throughput improves and reverses when it degrades. A pool that is
+ *     already large enough shows no gain and is left alone. The climb
+ *     starts afresh, by growing the pool, each time tasks start to wait.</li>
+ * </ul>
+ */
+public class AdaptivePoolSizer implements Runnable {
+
+    private static final Log log = LogFactory.getLog(AdaptivePoolSizer.class);
+
+    /**
+     * Relative change in throughput that is treated as a real change rather
+     * than noise.
+     */
+    private static final double TOLERANCE = 0.05;
+
+    private final ThreadPoolExecutor source;
+    private final ResizableExecutor target;
+    private final String name;
+
+    private volatile int minThreads;
+    private volatile int maxThreads;
+    private volatile long interval = 1000;
+    private volatile long queueTimeThreshold = TimeUnit.MILLISECONDS.toNanos(1);
+    private volatile boolean running = false;
+    private Thread thread = null;
+
+    private long lastTaskCount;
+    private long lastQueueTime;
+    private long lastServiceTime;
+    private long lastTime;
+    private double lastThroughput = 0;
+    private int direction = 0;
+
+
+    /**
+     * @param name       Name used for the background thread
+     * @param source     Executor that records the task timings
+     * @param target     Pool that is resized
+     * @param minThreads Lower bound for the maximum pool size
+     * @param maxThreads Upper bound for the maximum pool size
+     */
+    public AdaptivePoolSizer(String name, ThreadPoolExecutor source,
+            ResizableExecutor target, int minThreads, int maxThreads) {
+        this.name = name;
+        this.source = source;
+        this.target = target;
+        this.minThreads = Math.max(1, minThreads);
+        this.maxThreads = Math.max(this.minThreads, maxThreads);
+    }
+
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Average queue time, in milliseconds, below which tasks are not
+     * considered to be waiting for a thread.
+     */
+    public long getQueueTimeThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(queueTimeThreshold);
+    }
+
+    public void setQueueTimeThreshold(long queueTimeThreshold) {
+        this.queueTimeThreshold =
+                TimeUnit.MILLISECONDS.toNanos(queueTimeThreshold);
+    }
+
+    public void setBounds(int minThreads, int maxThreads) {
+        this.minThreads = Math.max(1, minThreads);
+        this.maxThreads = Math.max(this.minThreads, maxThreads);
+    }
+
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        source.setCollectTimings(true);
+        lastTaskCount = source.getTimedTaskCount();
+        lastQueueTime = source.getTotalQueueTime();
+        lastServiceTime = source.getTotalServiceTime();
+        lastTime = System.nanoTime();
+        running = true;
+        thread = new Thread(this, name + "-sizer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    public synchronized void stop() {
+        running = false;
+        source.setCollectTimings(false);
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                // Ignore - the running flag is checked below
+            }
+            if (!running || source.isShutdown()) {
+                break;
+            }
+            try {
+                adjust();
+            } catch (RuntimeException e) {
+                log.warn(name + ": pool resize failed", e);
+            }
+        }
+    }
+
+
+    /**
+     * Performs one sizing step. Package private so it can be driven directly
+     * by tests.
+     */
+    void adjust() {
+        long now = System.nanoTime();
+        long taskCount = source.getTimedTaskCount();
+        long queueTime = source.getTotalQueueTime();
+        long serviceTime = source.getTotalServiceTime();
+
+        long tasks = taskCount - lastTaskCount;
+        long elapsed = now - lastTime;
+        long queued = queueTime - lastQueueTime;
+        long service = serviceTime - lastServiceTime;
+
+        lastTaskCount = taskCount;
+        lastQueueTime = queueTime;
+        lastServiceTime = serviceTime;
+        lastTime = now;
+
+        int current = source.getMaximumPoolSize();
+        if (tasks == 0 || elapsed <= 0) {
+            direction = 0;
+            lastThroughput = 0;
+            if (source.getActiveCount() == 0 && source.getQueue().isEmpty()) {
+                resize(current, -1);
+            }
+            return;
+        }
+
+        double throughput = tasks * 1e9 / elapsed;
+        long avgQueueTime = queued / tasks;
+        double utilization = (double) service / ((double) elapsed * current);
+
+        int step;
+        if (avgQueueTime < queueTimeThreshold) {
+            step = utilization < 0.5 ? -1 : 0;
+            // Not part of a climb
+            direction = 0;
+        } else {
+            if (direction == 0) {
+                step = 1;
+            } else if (throughput > lastThroughput * (1 + TOLERANCE)) {
+                step = direction;
+            } else if (throughput < lastThroughput * (1 - TOLERANCE)) {
+                step = -direction;
+            } else {
+                step = 0;
+            }
+            direction = step;
+        }
+        lastThroughput = throughput;
+
+        if (log.isDebugEnabled()) {
+            log.debug(name + ": size=" + current + ", throughput=" +
+                    throughput + ", avgQueueTime=" + avgQueueTime +
+                    "ns, utilization=" + utilization + ", step=" + step);
+        }
+        resize(current, step);
+    }
+
+
+    private void resize(int current, int step) {
+        if (step == 0) {
+            return;
+        }
+        int delta = Math.max(1, current / 10);
+        int size = current + step * delta;
+        size = Math.max(minThreads, Math.min(maxThreads, size));
+        if (size != current) {
+            target.resizePool(minThreads, size);
+        }
+    }
+}
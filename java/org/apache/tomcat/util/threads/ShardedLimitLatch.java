@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+/**
+ * A {@link LimitLatch} that spreads the available shares over a number of
+ * shards so that threads acquiring and returning shares do not all contend on
+ * a single counter. Shares are leased in small batches from a global pool to
+ * the shard of the acquiring thread and returned to the pool when a shard
+ * holds more than it needs. A thread only blocks when the global pool and all
+ * of the shards are empty, so the overall limit is still enforced.
+ */
+public class ShardedLimitLatch extends LimitLatch {
+
+    private static final Log log = LogFactory.getLog(ShardedLimitLatch.class);
+
+    /**
+     * Distance between the counters of two shards in the array. Keeps each
+     * counter on its own cache line.
+     */
+    private static final int PADDING = 16;
+
+    private final int shardCount;
+    private final AtomicLongArray shards;
+    private final AtomicLong available;
+    private final AtomicInteger waiting = new AtomicInteger(0);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition sharesAvailable = lock.newCondition();
+    private final Collection<Thread> queuedThreads = new ArrayList<>();
+    private volatile long limit;
+    private volatile boolean released = false;
+
+    /**
+     * Instantiates a ShardedLimitLatch object with an initial limit.
+     * @param limit - maximum number of concurrent acquisitions of this latch
+     * @param shardCount - number of shards to spread the shares over
+     */
+    public ShardedLimitLatch(long limit, int shardCount) {
+        super(limit);
+        this.limit = limit;
+        this.shardCount = Math.max(1, shardCount);
+        this.shards = new AtomicLongArray(this.shardCount * PADDING);
+        this.available = new AtomicLong(limit);
+    }
+
+    /**
+     * Returns the current count for the latch
+     * @return the current count for latch
+     */
+    @Override
+    public long getCount() {
+        long free = available.get();
+        for (int i = 0; i < shardCount; i++) {
+            free += shards.get(i * PADDING);
+        }
+        return limit - free;
+    }
+
+    /**
+     * Obtain the current limit.
+     */
+    @Override
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Sets a new limit. See {@link LimitLatch#setLimit(long)}. When the limit
+     * is decreased the shares held by the shards are returned to the global
+     * pool so that the new limit takes effect as soon as possible.
+     *
+     * @param limit The new limit
+     */
+    @Override
+    public synchronized void setLimit(long limit) {
+        long delta = limit - this.limit;
+        this.limit = limit;
+        available.addAndGet(delta);
+        if (delta < 0) {
+            for (int i = 0; i < shardCount; i++) {
+                available.addAndGet(shards.getAndSet(i * PADDING, 0));
+            }
+        } else {
+            signalWaiting();
+        }
+    }
+
+    /**
+     * Acquires a shared latch if one is available or waits for one if no shared
+     * latch is current available.
+     */
+    @Override
+    public void countUpOrAwait() throws InterruptedException {
+        if (log.isDebugEnabled()) {
+            log.debug("Counting up["+Thread.currentThread().getName()+"] latch="+getCount());
+        }
+        int index = shardIndex();
+        if (tryAcquire(index)) {
+            return;
+        }
+        waiting.incrementAndGet();
+        try {
+            lock.lockInterruptibly();
+            try {
+                queuedThreads.add(Thread.currentThread());
+                // Shares returned after waiting was incremented will signal
+                while (!tryAcquire(index)) {
+                    sharesAvailable.await();
+                }
+            } finally {
+                queuedThreads.remove(Thread.currentThread());
+                lock.unlock();
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Releases a shared latch, making it available for another thread to use.
+     * @return the previous counter value
+     */
+    @Override
+    public long countDown() {
+        int index = shardIndex();
+        long held = shards.incrementAndGet(index);
+        long global = available.get();
+        long batch = batchSize();
+        if (global < 0 || held > 2 * batch) {
+            // Give the surplus back to the global pool
+            long excess = global < 0 ? held : held - batch;
+            if (shards.compareAndSet(index, held, held - excess)) {
+                available.addAndGet(excess);
+            }
+        }
+        if (waiting.get() > 0) {
+            signalWaiting();
+        }
+        long result = getCount();
+        if (log.isDebugEnabled()) {
+            log.debug("Counting down["+Thread.currentThread().getName()+"] latch="+result);
+        }
+        return result;
+    }
+
+    /**
+     * Releases all waiting threads and causes the limit to be ignored until
+     * {@link #reset()} is called.
+     */
+    @Override
+    public boolean releaseAll() {
+        released = true;
+        signalWaiting();
+        return true;
+    }
+
+    /**
+     * Resets the latch and initializes the shared acquisition counter to zero.
+     * @see #releaseAll()
+     */
+    @Override
+    public synchronized void reset() {
+        for (int i = 0; i < shardCount; i++) {
+            shards.set(i * PADDING, 0);
+        }
+        available.set(limit);
+        released = false;
+    }
+
+    /**
+     * Returns <code>true</code> if there is at least one thread waiting to
+     * acquire the shared lock, otherwise returns <code>false</code>.
+     */
+    @Override
+    public boolean hasQueuedThreads() {
+        return waiting.get() > 0;
+    }
+
+    /**
+     * Provide access to the list of threads waiting to acquire this limited
+     * shared latch.
+     */
+    @Override
+    public Collection<Thread> getQueuedThreads() {
+        lock.lock();
+        try {
+            return new ArrayList<>(queuedThreads);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private boolean tryAcquire(int index) {
+        // Own shard first
+        if (takeFromShard(index)) {
+            return true;
+        }
+        // Then lease a batch from the global pool
+        long global;
+        while ((global = available.get()) > 0) {
+            long take = Math.min(global, batchSize());
+            if (available.compareAndSet(global, global - take)) {
+                if (take > 1) {
+                    shards.addAndGet(index, take - 1);
+                }
+                return true;
+            }
+        }
+        // Then take from any other shard
+        for (int i = 0; i < shardCount; i++) {
+            if (takeFromShard(i * PADDING)) {
+                return true;
+            }
+        }
+        if (released) {
+            // Limit is ignored but the acquisition is still counted
+            available.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean takeFromShard(int index) {
+        long held;
+        while ((held = shards.get(index)) > 0) {
+            if (shards.compareAndSet(index, held, held - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int shardIndex() {
+        return (int) (Thread.currentThread().getId() % shardCount) * PADDING;
+    }
+
+    private long batchSize() {
+        return Math.max(1, limit / (shardCount * 8L));
+    }
+
+    private void signalWaiting() {
+        lock.lock();
+        try {
+            sharesAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -37,7 +37,8 @@ import org.apache.tomcat.util.res.StringManager;
  * @author fhanik
  *
  */
-public class ThreadPoolExecutor extends java.util.concurrent.ThreadPoolExecutor {
+public class ThreadPoolExecutor extends java.util.concurrent.ThreadPoolExecutor
+        implements ResizableExecutor {
     /**
      * The string manager for this package.
      */
@@ -67,6 +68,16 @@ public class ThreadPoolExecutor extends java.util.concurrent.ThreadPoolExecutor
      */
     private long threadRenewalDelay = Constants.DEFAULT_THREAD_RENEWAL_DELAY;
 
+    /**
+     * Record how long tasks wait in the queue and how long they take to run?
+     * Used by {@link AdaptivePoolSizer}.
+     */
+    private volatile boolean collectTimings = false;
+
+    private final AtomicLong timedTaskCount = new AtomicLong(0L);
+    private final AtomicLong totalQueueTime = new AtomicLong(0L);
+    private final AtomicLong totalServiceTime = new AtomicLong(0L);
+
     public ThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue, RejectedExecutionHandler handler) {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, handler);
     }
@@ -92,10 +103,53 @@ public class ThreadPoolExecutor extends java.util.concurrent.ThreadPoolExecutor
         this.threadRenewalDelay = threadRenewalDelay;
     }
 
+    public boolean getCollectTimings() {
+        return collectTimings;
+    }
+
+    public void setCollectTimings(boolean collectTimings) {
+        this.collectTimings = collectTimings;
+    }
+
+    /**
+     * Number of completed tasks for which timings were recorded.
+     */
+    public long getTimedTaskCount() {
+        return timedTaskCount.get();
+    }
+
+    /**
+     * Total time in nanoseconds the timed tasks spent waiting in the queue.
+     */
+    public long getTotalQueueTime() {
+        return totalQueueTime.get();
+    }
+
+    /**
+     * Total time in nanoseconds the timed tasks spent running.
+     */
+    public long getTotalServiceTime() {
+        return totalServiceTime.get();
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        if (r instanceof TimedTask) {
+            ((TimedTask) r).started = System.nanoTime();
+        }
+    }
+
     @Override
     protected void afterExecute(Runnable r, Throwable t) {
         submittedCount.decrementAndGet();
 
+        if (r instanceof TimedTask) {
+            TimedTask task = (TimedTask) r;
+            totalQueueTime.addAndGet(task.started - task.queued);
+            totalServiceTime.addAndGet(System.nanoTime() - task.started);
+            timedTaskCount.incrementAndGet();
+        }
+
         if (t == null) {
             stopCurrentThreadIfNeeded();
         }
@@ -171,6 +225,9 @@ public class ThreadPoolExecutor extends java.util.concurrent.ThreadPoolExecutor
      * @throws NullPointerException if command or unit is null
      */
     public void execute(Runnable command, long timeout, TimeUnit unit) {
+        if (collectTimings && command != null) {
+            command = new TimedTask(command);
+        }
         submittedCount.incrementAndGet();
         try {
             super.execute(command);
@@ -232,6 +289,48 @@ public class ThreadPoolExecutor extends java.util.concurrent.ThreadPoolExecutor
         this.setCorePoolSize(savedCorePoolSize);
     }
 
+    @Override
+    public int getMaxThreads() {
+        return getMaximumPoolSize();
+    }
+
+    @Override
+    public boolean resizePool(int corePoolSize, int maximumPoolSize) {
+        // The core size may never exceed the maximum size
+        if (maximumPoolSize < getCorePoolSize()) {
+            setCorePoolSize(corePoolSize);
+            setMaximumPoolSize(maximumPoolSize);
+        } else {
+            setMaximumPoolSize(maximumPoolSize);
+            setCorePoolSize(corePoolSize);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean resizeQueue(int capacity) {
+        return false;
+    }
+
+    /**
+     * Records when a task was queued and when it started running.
+     */
+    private static class TimedTask implements Runnable {
+
+        private final Runnable task;
+        private final long queued = System.nanoTime();
+        private long started;
+
+        public TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
     private static class RejectHandler implements RejectedExecutionHandler {
         @Override
         public void rejectedExecution(Runnable r,
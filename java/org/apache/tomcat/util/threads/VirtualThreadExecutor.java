@@ -0,0 +1,388 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+
+/**
+ * An executor that runs tasks on virtual threads. Virtual threads are only
+ * available on Java runtimes that provide <code>Thread.ofVirtual()</code> so
+ * they are created via reflection. Use {@link #isSupported()} to check for
+ * support before creating an instance.
+ * <p>
+ * The number of tasks that run concurrently is limited by the maximum number
+ * of threads. Further tasks are queued and picked up by the virtual threads as
+ * they complete their current task.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService
+        implements ResizableExecutor {
+
+    private static final Log log = LogFactory.getLog(VirtualThreadExecutor.class);
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod(
+                    "name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            // Virtual threads may be a preview feature that is not enabled
+            ofVirtual.invoke(null);
+        } catch (Throwable t) {
+            ExceptionUtils.handleThrowable(t);
+            if (log.isDebugEnabled()) {
+                log.debug("Virtual threads are not available", t);
+            }
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+    }
+
+
+    /**
+     * Does the current Java runtime support virtual threads?
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+
+    private final ThreadFactory threadFactory;
+    private final ConcurrentLinkedQueue<Runnable> queue =
+            new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger(0);
+    private final ResizableSemaphore permits;
+    private final Set<Thread> threads =
+            Collections.newSetFromMap(new ConcurrentHashMap<Thread,Boolean>());
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+    private final AtomicLong completedTaskCount = new AtomicLong(0);
+    private final Object terminationLock = new Object();
+    /**
+     * Notified when a task leaves the queue if a caller is waiting for space.
+     */
+    private final Object queueSpaceLock = new Object();
+    private final AtomicInteger queueSpaceWaiters = new AtomicInteger(0);
+    private volatile int maxThreads;
+    private volatile int maxQueueSize;
+    private volatile int largestPoolSize = 0;
+    private volatile boolean shutdown = false;
+
+
+    /**
+     * @param namePrefix   Prefix for the names of the virtual threads
+     * @param maxThreads   Maximum number of tasks executing concurrently
+     * @param maxQueueSize Maximum number of tasks waiting to be executed
+     */
+    public VirtualThreadExecutor(String namePrefix, int maxThreads,
+            int maxQueueSize) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException();
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = BUILDER_NAME.invoke(builder, namePrefix, Long.valueOf(0));
+            threadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException(e);
+        }
+        this.maxThreads = maxThreads;
+        this.maxQueueSize = maxQueueSize;
+        this.permits = new ResizableSemaphore(maxThreads);
+    }
+
+
+    @Override
+    public void execute(Runnable command) {
+        if (!offer(command)) {
+            throw new RejectedExecutionException("Work queue full.");
+        }
+    }
+
+
+    /**
+     * Executes the given command, waiting for space in the queue if it is
+     * full.
+     *
+     * @param command the runnable task
+     * @param timeout how long to wait for space in the queue
+     * @param unit    the unit of the timeout
+     * @throws RejectedExecutionException if there is still no space in the
+     *         queue once the timeout has elapsed
+     */
+    public void execute(Runnable command, long timeout, TimeUnit unit) {
+        if (offer(command)) {
+            return;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        queueSpaceWaiters.incrementAndGet();
+        try {
+            synchronized (queueSpaceLock) {
+                while (!offer(command)) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new RejectedExecutionException("Work queue full.");
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(queueSpaceLock, remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        } finally {
+            queueSpaceWaiters.decrementAndGet();
+        }
+    }
+
+
+    /**
+     * @return <code>false</code> if the queue is full
+     */
+    private boolean offer(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor has been shut down.");
+        }
+        if (queueSize.incrementAndGet() > maxQueueSize) {
+            queueSize.decrementAndGet();
+            return false;
+        }
+        queue.offer(command);
+        startWorkers();
+        return true;
+    }
+
+
+    private void queueSpaceFreed() {
+        if (queueSpaceWaiters.get() > 0) {
+            synchronized (queueSpaceLock) {
+                queueSpaceLock.notifyAll();
+            }
+        }
+    }
+
+
+    /**
+     * Starts a new virtual thread for each queued task for which there is a
+     * free permit.
+     */
+    private void startWorkers() {
+        while (!queue.isEmpty() && permits.tryAcquire()) {
+            Thread t = threadFactory.newThread(new Worker());
+            threads.add(t);
+            int poolSize = threads.size();
+            if (poolSize > largestPoolSize) {
+                largestPoolSize = poolSize;
+            }
+            t.start();
+        }
+    }
+
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Runnable task = queue.poll();
+                    if (task == null) {
+                        permits.release();
+                        // A task may have been queued after the poll but
+                        // before the permit was released
+                        if (queue.isEmpty() || !permits.tryAcquire()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    queueSize.decrementAndGet();
+                    queueSpaceFreed();
+                    activeCount.incrementAndGet();
+                    try {
+                        task.run();
+                    } finally {
+                        activeCount.decrementAndGet();
+                        completedTaskCount.incrementAndGet();
+                    }
+                }
+            } finally {
+                threads.remove(Thread.currentThread());
+                if (shutdown && threads.isEmpty()) {
+                    synchronized (terminationLock) {
+                        terminationLock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+
+    // ----------------------------------------------------- ExecutorService
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> pending = new ArrayList<>();
+        Runnable task;
+        while ((task = queue.poll()) != null) {
+            queueSize.decrementAndGet();
+            pending.add(task);
+        }
+        queueSpaceFreed();
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+        return pending;
+    }
+
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && threads.isEmpty() && queue.isEmpty();
+    }
+
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (terminationLock) {
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
+            }
+        }
+        return true;
+    }
+
+
+    // -------------------------------------------------- ResizableExecutor
+
+    @Override
+    public int getPoolSize() {
+        return threads.size();
+    }
+
+
+    @Override
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+
+    @Override
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+
+    public long getCompletedTaskCount() {
+        return completedTaskCount.get();
+    }
+
+
+    public int getLargestPoolSize() {
+        return largestPoolSize;
+    }
+
+
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+
+    @Override
+    public synchronized boolean resizePool(int corePoolSize,
+            int maximumPoolSize) {
+        int delta = maximumPoolSize - maxThreads;
+        maxThreads = maximumPoolSize;
+        if (delta > 0) {
+            permits.release(delta);
+            startWorkers();
+        } else if (delta < 0) {
+            // Running tasks are not interrupted. No new threads are started
+            // until enough of them have completed.
+            permits.reducePermits(-delta);
+        }
+        return true;
+    }
+
+
+    @Override
+    public boolean resizeQueue(int capacity) {
+        maxQueueSize = capacity;
+        queueSpaceFreed();
+        return true;
+    }
+
+
+    private static class ResizableSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        public ResizableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        public void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.connector;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.servlet.http.Cookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.apache.tomcat.util.buf.MessageBytes;
+
+/**
+ * Checks that a recycled request allocates (almost) nothing when it is used
+ * again for a similar request.
+ */
+public class TestRequestAllocation {
+
+    private static final byte[] COOKIE =
+            "JSESSIONID=0123456789ABCDEF; theme=dark".getBytes();
+    private static final byte[] ACCEPT_LANGUAGE =
+            "en-GB,en;q=0.8,fr;q=0.5".getBytes();
+
+    private static final int WARM_UP = 20000;
+    private static final int ITERATIONS = 10000;
+
+
+    @Test
+    public void testLocales() {
+        Request request = createRequest();
+        addHeader(request, "accept-language", ACCEPT_LANGUAGE);
+        List<Locale> first = Collections.list(request.getLocales());
+        assertEquals(3, first.size());
+        assertEquals(new Locale("en", "GB"), first.get(0));
+        request.recycle();
+        request.getCoyoteRequest().recycle();
+
+        // Second time the parsed result of the first request is reused
+        addHeader(request, "accept-language", ACCEPT_LANGUAGE);
+        assertEquals(first, Collections.list(request.getLocales()));
+        request.recycle();
+        request.getCoyoteRequest().recycle();
+
+        addHeader(request, "accept-language", "de".getBytes());
+        assertEquals(new Locale("de"), request.getLocale());
+    }
+
+
+    @Test
+    public void testCookies() {
+        Request request = createRequest();
+        for (int i = 0; i < 3; i++) {
+            cycle(request, true);
+        }
+        addHeader(request, "cookie", COOKIE);
+        Cookie[] cookies = request.getCookies();
+        assertEquals(2, cookies.length);
+        assertEquals("theme", cookies[1].getName());
+        assertEquals("dark", cookies[1].getValue());
+    }
+
+
+    @Test
+    public void testSteadyStateAllocation() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long id = Thread.currentThread().getId();
+
+        Request request = createRequest();
+
+        for (int i = 0; i < WARM_UP; i++) {
+            cycle(request, false);
+        }
+        long start = threadBean.getThreadAllocatedBytes(id);
+        for (int i = 0; i < ITERATIONS; i++) {
+            cycle(request, false);
+        }
+        long perRequest =
+                (threadBean.getThreadAllocatedBytes(id) - start) / ITERATIONS;
+        assertTrue("Bytes allocated per request without cookies: " +
+                perRequest, perRequest < 64);
+
+        for (int i = 0; i < WARM_UP; i++) {
+            cycle(request, true);
+        }
+        start = threadBean.getThreadAllocatedBytes(id);
+        for (int i = 0; i < ITERATIONS; i++) {
+            cycle(request, true);
+        }
+        perRequest =
+                (threadBean.getThreadAllocatedBytes(id) - start) / ITERATIONS;
+        // Only the Cookie objects and their name and value Strings remain
+        assertTrue("Bytes allocated per request with cookies: " +
+                perRequest, perRequest < 1024);
+    }
+
+
+    private static Request createRequest() {
+        Request request = new Request();
+        request.setCoyoteRequest(new org.apache.coyote.Request());
+        return request;
+    }
+
+
+    private static void cycle(Request request, boolean cookies) {
+        org.apache.coyote.Request coyoteRequest = request.getCoyoteRequest();
+        addHeader(request, "accept-language", ACCEPT_LANGUAGE);
+        request.getLocale();
+        if (cookies) {
+            addHeader(request, "cookie", COOKIE);
+            request.getCookies();
+        }
+        request.recycle();
+        coyoteRequest.recycle();
+    }
+
+
+    private static void addHeader(Request request, String name, byte[] value) {
+        MessageBytes mb =
+                request.getCoyoteRequest().getMimeHeaders().addValue(name);
+        mb.setBytes(value, 0, value.length);
+    }
+}
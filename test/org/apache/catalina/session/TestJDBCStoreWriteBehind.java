@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+
+public class TestJDBCStoreWriteBehind {
+
+    private Database database;
+    private PersistentManager manager;
+    private JDBCStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        database = new Database();
+        manager = new PersistentManager();
+        StandardContext context = new StandardContext();
+        context.setName("/test");
+        manager.setContext(context);
+        store = new JDBCStore();
+        store.setManager(manager);
+        store.setDataSourceName("jdbc/sessions");
+        store.dataSource = database.getDataSource();
+        store.setWriteBehind(true);
+        // Writes are only made by the explicit flushes of the tests
+        store.setWriteBehindDelay(3600000);
+        store.setWriteBehindBatchSize(10);
+        store.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (store.getState().isAvailable()) {
+            store.stop();
+        }
+    }
+
+    private StandardSession createSession(String id, String value) {
+        StandardSession session = new StandardSession(manager);
+        session.setValid(true);
+        session.setId(id, false);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(1800);
+        session.setAttribute("value", value);
+        return session;
+    }
+
+    private Object loadValue(String id) throws Exception {
+        Session session = store.load(id);
+        return session == null ? null : session.getSession().getAttribute("value");
+    }
+
+    private String[] sortedKeys() throws Exception {
+        String[] keys = store.keys();
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        store.save(createSession("A", "a1"));
+        store.save(createSession("A", "a2"));
+        store.save(createSession("B", "b1"));
+        assertEquals(2, store.getPendingWriteCount());
+
+        assertTrue(store.flushWrites());
+        assertEquals(0, store.getPendingWriteCount());
+        assertEquals(Arrays.asList("UPDATE x2", "INSERT x2"), database.batches);
+        assertEquals(2, database.rows.size());
+        assertEquals("a2", loadValue("A"));
+        assertEquals("b1", loadValue("B"));
+    }
+
+    @Test
+    public void testUpdateThenInsert() throws Exception {
+        store.save(createSession("A", "a1"));
+        assertTrue(store.flushWrites());
+        store.save(createSession("A", "a2"));
+        store.save(createSession("B", "b1"));
+        assertTrue(store.flushWrites());
+
+        // Only the session that was not already stored is inserted
+        assertEquals(Arrays.asList("UPDATE x1", "INSERT x1", "UPDATE x2",
+                "INSERT x1"), database.batches);
+        assertEquals("a2", loadValue("A"));
+        assertEquals("b1", loadValue("B"));
+    }
+
+    @Test
+    public void testSuccessNoInfo() throws Exception {
+        store.save(createSession("A", "a1"));
+        assertTrue(store.flushWrites());
+
+        database.noInfo = true;
+        store.save(createSession("A", "a2"));
+        store.save(createSession("B", "b1"));
+        assertTrue(store.flushWrites());
+
+        // The stub rejects an insert of a stored session
+        assertEquals(2, database.rows.size());
+        assertEquals("a2", loadValue("A"));
+        assertEquals("b1", loadValue("B"));
+    }
+
+    @Test
+    public void testFlushOnStop() throws Exception {
+        store.save(createSession("A", "a1"));
+        assertTrue(store.flushWrites());
+        store.save(createSession("B", "b1"));
+        store.remove("A");
+        assertEquals(1, database.rows.size());
+
+        store.stop();
+        assertEquals(0, store.getPendingWriteCount());
+        assertEquals(new HashSet<>(Arrays.asList("B")), database.rows.keySet());
+    }
+
+    @Test
+    public void testReadQueuedWrites() throws Exception {
+        store.save(createSession("A", "a1"));
+        store.save(createSession("B", "b1"));
+        assertTrue(store.flushWrites());
+
+        store.save(createSession("A", "a2"));
+        store.save(createSession("C", "c1"));
+        store.remove("B");
+        assertEquals("a2", loadValue("A"));
+        assertNull(loadValue("B"));
+        assertEquals("c1", loadValue("C"));
+        assertArrayEquals(new String[] { "A", "C" }, sortedKeys());
+
+        // Nothing has been written yet
+        assertEquals(new HashSet<>(Arrays.asList("A", "B")), database.rows.keySet());
+    }
+
+    @Test
+    public void testSaveMetadata() throws Exception {
+        StandardSession a = createSession("A", "a1");
+        // Not stored
+        assertFalse(store.saveMetadata(a));
+
+        store.save(a);
+        a.thisAccessedTime = a.lastAccessedTime = a.lastAccessedTime + 1000;
+        // Applied to the queued save
+        assertTrue(store.saveMetadata(a));
+        assertEquals(a.lastAccessedTime,
+                ((StandardSession) store.load("A")).getLastAccessedTimeInternal());
+
+        assertTrue(store.flushWrites());
+        a.thisAccessedTime = a.lastAccessedTime = a.lastAccessedTime + 1000;
+        // Applied to the stored session straight away
+        assertTrue(store.saveMetadata(a));
+        assertEquals(0, store.getPendingWriteCount());
+        assertEquals(Long.valueOf(a.lastAccessedTime),
+                database.rows.get("A").lastAccessed);
+
+        store.remove("A");
+        assertFalse(store.saveMetadata(a));
+    }
+
+    @Test
+    public void testFailedWriteDropped() throws Exception {
+        database.failing.add("B");
+        store.save(createSession("A", "a1"));
+        store.save(createSession("B", "b1"));
+        store.save(createSession("C", "c1"));
+
+        // The failing write is retried on its own and then dropped
+        assertFalse(store.flushWrites());
+        assertEquals(0, store.getPendingWriteCount());
+        assertEquals(new HashSet<>(Arrays.asList("A", "C")), database.rows.keySet());
+    }
+
+    @Test
+    public void testDatabaseUnavailable() throws Exception {
+        store.save(createSession("A", "a1"));
+        store.save(createSession("B", "b1"));
+        database.available = false;
+        assertFalse(store.flushWrites());
+        assertEquals(2, store.getPendingWriteCount());
+        assertEquals("a1", loadValue("A"));
+
+        database.available = true;
+        assertTrue(store.flushWrites());
+        assertEquals(0, store.getPendingWriteCount());
+        assertEquals(2, database.rows.size());
+    }
+
+
+    /**
+     * Just enough of a database for the statements of the write behind mode
+     * of JDBCStore, with the default table and column names.
+     */
+    private static class Database {
+
+        private Map<String,Row> rows = new HashMap<>();
+        private final List<String> batches = new ArrayList<>();
+        private final Set<String> failing = new HashSet<>();
+        private volatile boolean available = true;
+        private volatile boolean noInfo = false;
+
+        private static Object proxy(Class<?> type, InvocationHandler handler) {
+            return Proxy.newProxyInstance(Database.class.getClassLoader(),
+                    new Class<?>[] { type }, handler);
+        }
+
+        public DataSource getDataSource() {
+            return (DataSource) proxy(DataSource.class, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws SQLException {
+                    if (method.getName().equals("getConnection")) {
+                        if (!available) {
+                            throw new SQLException("Unavailable");
+                        }
+                        return createConnection();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        private Connection createConnection() {
+            return (Connection) proxy(Connection.class, new InvocationHandler() {
+                private boolean autoCommit = true;
+                private Map<String,Row> committed;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                    case "prepareStatement":
+                        return createStatement((String) args[0]);
+                    case "getAutoCommit":
+                        return Boolean.valueOf(autoCommit);
+                    case "setAutoCommit":
+                        autoCommit = ((Boolean) args[0]).booleanValue();
+                        committed = new HashMap<>(rows);
+                        return null;
+                    case "commit":
+                        committed = new HashMap<>(rows);
+                        return null;
+                    case "rollback":
+                        rows = committed;
+                        return null;
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+            });
+        }
+
+        private PreparedStatement createStatement(final String sql) {
+            return (PreparedStatement) proxy(PreparedStatement.class, new InvocationHandler() {
+                private final Map<Integer,Object> parameters = new HashMap<>();
+                private final List<Map<Integer,Object>> batch = new ArrayList<>();
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws Exception {
+                    switch (method.getName()) {
+                    case "setString":
+                    case "setInt":
+                    case "setLong":
+                        parameters.put((Integer) args[0], args[1]);
+                        return null;
+                    case "setBinaryStream":
+                        byte[] data = new byte[((Integer) args[2]).intValue()];
+                        new DataInputStream((InputStream) args[1]).readFully(data);
+                        parameters.put((Integer) args[0], data);
+                        return null;
+                    case "addBatch":
+                        batch.add(new HashMap<>(parameters));
+                        return null;
+                    case "executeBatch":
+                        batches.add(sql.substring(0, sql.indexOf(' ')) + " x" + batch.size());
+                        int[] counts = new int[batch.size()];
+                        for (int i = 0; i < counts.length; i++) {
+                            counts[i] = execute(sql, batch.get(i));
+                            if (noInfo && sql.startsWith("UPDATE")) {
+                                counts[i] = Statement.SUCCESS_NO_INFO;
+                            }
+                        }
+                        batch.clear();
+                        return counts;
+                    case "executeUpdate":
+                        return Integer.valueOf(execute(sql, parameters));
+                    case "executeQuery":
+                        return query(sql, parameters);
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+            });
+        }
+
+        private int execute(String sql, Map<Integer,Object> parameters)
+                throws SQLException {
+            if (sql.startsWith("DELETE")) {
+                return rows.remove(parameters.get(Integer.valueOf(1))) == null ? 0 : 1;
+            } else if (sql.startsWith("UPDATE") && !sql.contains(" data = ")) {
+                String id = (String) parameters.get(Integer.valueOf(4));
+                Row row = rows.get(id);
+                if (row == null) {
+                    return 0;
+                }
+                rows.put(id, new Row(row.data,
+                        (Long) parameters.get(Integer.valueOf(3)),
+                        (Integer) parameters.get(Integer.valueOf(2))));
+                return 1;
+            }
+            String id = (String) parameters.get(Integer.valueOf(5));
+            if (failing.contains(id)) {
+                throw new SQLException("Failing " + id);
+            }
+            Row row = new Row((byte[]) parameters.get(Integer.valueOf(1)),
+                    (Long) parameters.get(Integer.valueOf(4)),
+                    (Integer) parameters.get(Integer.valueOf(3)));
+            if (sql.startsWith("UPDATE")) {
+                if (!rows.containsKey(id)) {
+                    return 0;
+                }
+            } else if (rows.containsKey(id)) {
+                throw new SQLException("Duplicate " + id);
+            }
+            rows.put(id, row);
+            return 1;
+        }
+
+        private ResultSet query(String sql, Map<Integer,Object> parameters) {
+            final List<Object[]> results = new ArrayList<>();
+            if (sql.contains(" data, ")) {
+                Object id = parameters.get(Integer.valueOf(1));
+                Row row = rows.get(id);
+                if (row != null) {
+                    results.add(new Object[] { id, row.data, row.lastAccessed,
+                            row.maxInactive });
+                }
+            } else {
+                for (String id : rows.keySet()) {
+                    results.add(new Object[] { id });
+                }
+            }
+            return (ResultSet) proxy(ResultSet.class, new InvocationHandler() {
+                private int index = -1;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                    case "next":
+                        return Boolean.valueOf(++index < results.size());
+                    case "getBinaryStream":
+                        return new ByteArrayInputStream(
+                                (byte[]) column(((Integer) args[0]).intValue()));
+                    case "getString":
+                    case "getLong":
+                    case "getInt":
+                        return column(((Integer) args[0]).intValue());
+                    case "close":
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                }
+
+                private Object column(int column) {
+                    return results.get(index)[column - 1];
+                }
+            });
+        }
+    }
+
+
+    private static class Row {
+
+        private final byte[] data;
+        private final Long lastAccessed;
+        private final Integer maxInactive;
+
+        public Row(byte[] data, Long lastAccessed, Integer maxInactive) {
+            this.data = data;
+            this.lastAccessed = lastAccessed;
+            this.maxInactive = maxInactive;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.startup.ExpandWar;
+
+public class TestMappedFileStore {
+
+    private File dir;
+    private PersistentManager manager;
+
+    @Before
+    public void setUp() {
+        dir = new File(System.getProperty("java.io.tmpdir"),
+                "TestMappedFileStore-" + System.nanoTime());
+        manager = new PersistentManager();
+        manager.setContext(new StandardContext());
+    }
+
+    @After
+    public void tearDown() {
+        ExpandWar.delete(dir);
+    }
+
+    private MappedFileStore createStore(int segmentSize) throws Exception {
+        MappedFileStore store = new MappedFileStore();
+        store.setManager(manager);
+        store.setDirectory(dir.getAbsolutePath());
+        store.setSegmentSize(segmentSize);
+        store.start();
+        return store;
+    }
+
+    private StandardSession createSession(String id, String value) {
+        StandardSession session = new StandardSession(manager);
+        session.setValid(true);
+        session.setId(id, false);
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(1800);
+        session.setAttribute("value", value);
+        return session;
+    }
+
+    @Test
+    public void testSaveLoadRemove() throws Exception {
+        MappedFileStore store = createStore(64 * 1024);
+        store.save(createSession("A", "a1"));
+        store.save(createSession("B", "b1"));
+        store.save(createSession("A", "a2"));
+        assertEquals(2, store.getSize());
+
+        Session a = store.load("A");
+        assertNotNull(a);
+        assertEquals("a2", a.getSession().getAttribute("value"));
+
+        store.remove("A");
+        assertNull(store.load("A"));
+        String[] keys = store.keys();
+        assertArrayEquals(new String[] { "B" }, keys);
+        store.stop();
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        MappedFileStore store = createStore(64 * 1024);
+        store.save(createSession("A", "a1"));
+        store.save(createSession("B", "b1"));
+        store.save(createSession("C", "c1"));
+        store.save(createSession("B", "b2"));
+        store.remove("C");
+        store.stop();
+
+        store = createStore(64 * 1024);
+        String[] keys = store.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new String[] { "A", "B" }, keys);
+        assertEquals("b2", store.load("B").getSession().getAttribute("value"));
+        store.stop();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        MappedFileStore store = createStore(4 * 1024);
+        for (int i = 0; i < 100; i++) {
+            store.save(createSession("S" + (i % 10), "v" + i));
+        }
+        store.remove("S0");
+        int before = store.getSegmentCount();
+        assertTrue(before > 2);
+
+        store.processExpires();
+        assertTrue(store.getSegmentCount() < before);
+        assertEquals(9, store.getSize());
+        for (int i = 1; i < 10; i++) {
+            assertEquals("v" + (90 + i),
+                    store.load("S" + i).getSession().getAttribute("value"));
+        }
+        store.stop();
+
+        // The removed session must not come back
+        store = createStore(4 * 1024);
+        assertEquals(9, store.getSize());
+        assertNull(store.load("S0"));
+        store.stop();
+    }
+
+    @Test
+    public void testSaveMetadata() throws Exception {
+        MappedFileStore store = createStore(4 * 1024);
+        StandardSession session = createSession("A", "a1");
+        assertFalse(store.saveMetadata(session));
+        store.save(session);
+
+        session.thisAccessedTime += 60000;
+        session.setMaxInactiveInterval(3600);
+        assertTrue(store.saveMetadata(session));
+        StandardSession loaded = (StandardSession) store.load("A");
+        assertEquals("a1", loaded.getSession().getAttribute("value"));
+        assertEquals(session.getThisAccessedTimeInternal(),
+                loaded.getThisAccessedTimeInternal());
+        assertEquals(3600, loaded.getMaxInactiveInterval());
+
+        // Fill segments so that the one holding the session is compacted
+        for (int i = 0; i < 50; i++) {
+            store.save(createSession("S", "v" + i));
+        }
+        store.processExpires();
+        store.stop();
+
+        store = createStore(4 * 1024);
+        loaded = (StandardSession) store.load("A");
+        assertEquals(session.getThisAccessedTimeInternal(),
+                loaded.getThisAccessedTimeInternal());
+        assertEquals(3600, loaded.getMaxInactiveInterval());
+        store.stop();
+    }
+
+    @Test
+    public void testWriteUnchangedSession() throws Exception {
+        MappedFileStore store = createStore(64 * 1024);
+        manager.setStore(store);
+        manager.setTrackAttributeChanges(true);
+        StandardSession session = createSession("A", "a1");
+        manager.writeSession(session);
+        assertFalse(session.isAttributesDirty());
+
+        // Only the metadata is written, so the stored attribute is unchanged
+        session.attributes.put("value", "a2");
+        session.thisAccessedTime += 60000;
+        manager.writeSession(session);
+        StandardSession loaded = (StandardSession) store.load("A");
+        assertEquals("a1", loaded.getSession().getAttribute("value"));
+        assertEquals(session.getThisAccessedTimeInternal(),
+                loaded.getThisAccessedTimeInternal());
+
+        session.setAttribute("value", "a3");
+        manager.writeSession(session);
+        loaded = (StandardSession) store.load("A");
+        assertEquals("a3", loaded.getSession().getAttribute("value"));
+        store.stop();
+    }
+
+    @Test
+    public void testExpiryCandidates() throws Exception {
+        MappedFileStore store = createStore(64 * 1024);
+        StandardSession session = createSession("A", "a1");
+        session.setMaxInactiveInterval(1);
+        store.save(session);
+        store.save(createSession("B", "b1"));
+        long now = System.currentTimeMillis();
+        assertEquals(0, store.expiryCandidates(now).length);
+        assertArrayEquals(new String[] { "A" },
+                store.expiryCandidates(now + 2000));
+        store.stop();
+    }
+}
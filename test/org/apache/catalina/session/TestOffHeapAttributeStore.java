@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestOffHeapAttributeStore {
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    @Test
+    public void testStoreLoad() {
+        OffHeapAttributeStore store = new OffHeapAttributeStore(1024);
+        byte[] d1 = createData(10);
+        byte[] d2 = createData(100);
+        byte[] d3 = createData(0);
+        long h1 = store.store(d1);
+        long h2 = store.store(d2);
+        long h3 = store.store(d3);
+        assertArrayEquals(d1, store.load(h1));
+        assertArrayEquals(d2, store.load(h2));
+        assertArrayEquals(d3, store.load(h3));
+
+        // One slab for the 64 byte chunks, one for the 128 byte chunk
+        assertEquals(2048, store.getAllocatedBytes());
+        assertEquals(64 + 128 + 64, store.getUsedBytes());
+    }
+
+    @Test
+    public void testFreeReuse() {
+        OffHeapAttributeStore store = new OffHeapAttributeStore(1024);
+        long h1 = store.store(createData(20));
+        long h2 = store.store(createData(30));
+        assertTrue(h1 != h2);
+        store.free(h1);
+        assertEquals(64, store.getUsedBytes());
+
+        byte[] d3 = createData(40);
+        long h3 = store.store(d3);
+        assertEquals(h1, h3);
+        assertArrayEquals(d3, store.load(h3));
+        assertEquals(1024, store.getAllocatedBytes());
+    }
+
+    @Test
+    public void testSlabFull() {
+        OffHeapAttributeStore store = new OffHeapAttributeStore(256);
+        byte[][] data = new byte[10][];
+        long[] handles = new long[10];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = createData(50 + i);
+            handles[i] = store.store(data[i]);
+        }
+        // Four 64 byte chunks per slab
+        assertEquals(3 * 256, store.getAllocatedBytes());
+        for (int i = 0; i < data.length; i++) {
+            assertArrayEquals(data[i], store.load(handles[i]));
+        }
+    }
+
+    @Test
+    public void testLargeValue() {
+        OffHeapAttributeStore store = new OffHeapAttributeStore(256);
+        byte[] large = createData(1000);
+        long h = store.store(large);
+        assertEquals(1004, store.getAllocatedBytes());
+        assertArrayEquals(large, store.load(h));
+        store.free(h);
+        assertEquals(0, store.getAllocatedBytes());
+        assertEquals(0, store.getUsedBytes());
+
+        // The slab index is reused
+        assertEquals(h, store.store(large));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.startup.ExpandWar;
+
+public class TestOffHeapManager {
+
+    private File dir;
+    private OffHeapManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = new File(System.getProperty("java.io.tmpdir"),
+                "TestOffHeapManager-" + System.nanoTime());
+        assertTrue(dir.mkdirs());
+        StandardHost host = new StandardHost();
+        host.setName("localhost");
+        StandardContext context = new StandardContext();
+        context.setName("/test");
+        context.setParent(host);
+        manager = new OffHeapManager();
+        manager.setContext(context);
+        manager.setPathname(new File(dir, "SESSIONS.ser").getAbsolutePath());
+        manager.setMaxHotAttributes(0);
+        manager.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (manager.getState().isAvailable()) {
+            manager.stop();
+        }
+        ExpandWar.delete(dir);
+    }
+
+    private static List<String> createValue(String item) {
+        List<String> value = new ArrayList<>();
+        value.add(item);
+        return value;
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        manager.setMaxHotAttributes(2);
+        Session[] sessions = new Session[3];
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = manager.createSession(null);
+            sessions[i].getSession().setAttribute("value", createValue("v" + i));
+        }
+        assertEquals(3, manager.getHotAttributeCount());
+        assertEquals(0, manager.getOffHeapUsedBytes());
+
+        manager.processExpires();
+        // The oldest session is moved off-heap
+        assertEquals(2, manager.getHotAttributeCount());
+        assertTrue(manager.getOffHeapUsedBytes() > 0);
+        assertEquals(createValue("v0"), sessions[0].getSession().getAttribute("value"));
+        assertEquals(3, manager.getHotAttributeCount());
+    }
+
+    @Test
+    public void testDeserializeOnRead() throws Exception {
+        Session session = manager.createSession(null);
+        List<String> value = createValue("v");
+        session.getSession().setAttribute("value", value);
+        manager.processExpires();
+        assertEquals(0, manager.getHotAttributeCount());
+        assertTrue(manager.getOffHeapUsedBytes() > 0);
+
+        Object read = session.getSession().getAttribute("value");
+        assertEquals(value, read);
+        assertTrue(value != read);
+        assertEquals(1, manager.getHotAttributeCount());
+        assertEquals(0, manager.getOffHeapUsedBytes());
+
+        // The value read is the one that is moved off-heap again
+        @SuppressWarnings("unchecked")
+        List<String> list = (List<String>) read;
+        list.add("w");
+        manager.processExpires();
+        assertEquals(0, manager.getHotAttributeCount());
+        assertEquals(2, ((List<?>) session.getSession().getAttribute("value")).size());
+    }
+
+    @Test
+    public void testWriteBackSkippedWhileActive() throws Exception {
+        Session session = manager.createSession(null);
+        session.access();
+        session.getSession().setAttribute("value", createValue("v"));
+        manager.processExpires();
+        assertEquals(1, manager.getHotAttributeCount());
+        assertEquals(0, manager.getOffHeapUsedBytes());
+
+        // The end of the request moves it
+        session.endAccess();
+        assertEquals(0, manager.getHotAttributeCount());
+        assertTrue(manager.getOffHeapUsedBytes() > 0);
+    }
+
+    @Test
+    public void testSetRemoveOffHeap() throws Exception {
+        Session session = manager.createSession(null);
+        session.getSession().setAttribute("value", createValue("v1"));
+        manager.processExpires();
+        assertTrue(manager.getOffHeapUsedBytes() > 0);
+
+        // Replacing the value frees the old one
+        session.getSession().setAttribute("value", createValue("v2"));
+        assertEquals(0, manager.getOffHeapUsedBytes());
+        assertEquals(1, manager.getHotAttributeCount());
+        manager.processExpires();
+        assertEquals(createValue("v2"), session.getSession().getAttribute("value"));
+
+        manager.processExpires();
+        assertTrue(manager.getOffHeapUsedBytes() > 0);
+        session.getSession().removeAttribute("value");
+        assertNull(session.getSession().getAttribute("value"));
+        assertEquals(0, manager.getOffHeapUsedBytes());
+        assertEquals(0, manager.getHotAttributeCount());
+    }
+
+    @Test
+    public void testUnloadReload() throws Exception {
+        Session session = manager.createSession(null);
+        String id = session.getId();
+        session.getSession().setAttribute("value", createValue("v"));
+        session.getSession().setAttribute("other", "o");
+        manager.processExpires();
+        assertTrue(manager.getOffHeapUsedBytes() > 0);
+
+        manager.stop();
+        assertEquals(0, manager.getOffHeapAllocatedBytes());
+        manager.start();
+
+        Session reloaded = manager.findSession(id);
+        assertNotNull(reloaded);
+        assertTrue(reloaded instanceof OffHeapSession);
+        assertEquals(2, manager.getHotAttributeCount());
+        manager.processExpires();
+        assertEquals(0, manager.getHotAttributeCount());
+        assertEquals(createValue("v"), reloaded.getSession().getAttribute("value"));
+        assertEquals("o", reloaded.getSession().getAttribute("other"));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.apache.catalina.Session;
+
+public class TestSessionExpiryIndex {
+
+    private static StandardSession createSession(long accessed,
+            int maxInactiveInterval) {
+        StandardSession session = new StandardSession(null);
+        session.setCreationTime(accessed);
+        session.setMaxInactiveInterval(maxInactiveInterval);
+        return session;
+    }
+
+    @Test
+    public void testPollDue() {
+        SessionExpiryIndex index = new SessionExpiryIndex();
+        StandardSession s1 = createSession(10000, 10);
+        StandardSession s2 = createSession(10000, 20);
+        index.update(s1);
+        index.update(s2);
+        assertEquals(2, index.size());
+
+        // Not yet due
+        assertTrue(index.pollDue(19999).isEmpty());
+
+        List<Session> due = index.pollDue(21000);
+        assertEquals(1, due.size());
+        assertSame(s1, due.get(0));
+        assertEquals(1, index.size());
+
+        due = index.pollDue(31000);
+        assertEquals(1, due.size());
+        assertSame(s2, due.get(0));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testUpdateMovesSession() {
+        SessionExpiryIndex index = new SessionExpiryIndex();
+        StandardSession s = createSession(10000, 10);
+        index.update(s);
+
+        // Accessed later, so it expires later
+        s.setCreationTime(15000);
+        index.update(s);
+        assertTrue(index.pollDue(21000).isEmpty());
+        assertEquals(1, index.pollDue(26000).size());
+    }
+
+    @Test
+    public void testReschedule() {
+        SessionExpiryIndex index = new SessionExpiryIndex();
+        StandardSession s = createSession(10000, 10);
+        index.update(s);
+
+        // Still in use when it is found to be due
+        List<Session> due = index.pollDue(21000);
+        assertEquals(1, due.size());
+        index.reschedule(s, 21000);
+        assertEquals(1, index.size());
+        assertTrue(index.pollDue(21000).isEmpty());
+        assertEquals(1, index.pollDue(23000).size());
+    }
+
+    @Test
+    public void testNeverExpires() {
+        SessionExpiryIndex index = new SessionExpiryIndex();
+        StandardSession s = createSession(10000, 10);
+        index.update(s);
+        s.setMaxInactiveInterval(-1);
+        index.update(s);
+        assertEquals(0, index.size());
+        assertTrue(index.pollDue(Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testRemove() {
+        SessionExpiryIndex index = new SessionExpiryIndex();
+        StandardSession s = createSession(10000, 10);
+        index.update(s);
+        index.remove(s);
+        assertEquals(0, index.size());
+        assertTrue(index.pollDue(Long.MAX_VALUE).isEmpty());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.apache.catalina.core.StandardContext;
+
+public class TestStandardSession {
+
+    private static StandardSession createSession() {
+        StandardManager manager = new StandardManager();
+        manager.setContext(new StandardContext());
+        StandardSession session = new StandardSession(manager);
+        session.setValid(true);
+        return session;
+    }
+
+    @Test
+    public void testNewSessionIsDirty() {
+        StandardSession session = createSession();
+        assertTrue(session.isAttributesDirty());
+        assertNull(session.getDirtyAttributeNames());
+    }
+
+    @Test
+    public void testSetAndRemoveMarkDirty() {
+        StandardSession session = createSession();
+        session.setAttribute("a", "1");
+        session.setAttribute("b", "2");
+        session.clearDirtyAttributes();
+        assertFalse(session.isAttributesDirty());
+        assertEquals(Collections.emptySet(), session.getDirtyAttributeNames());
+
+        // Reading does not make the session dirty
+        session.getAttribute("a");
+        assertFalse(session.isAttributesDirty());
+
+        session.setAttribute("a", "3");
+        assertTrue(session.isAttributesDirty());
+        assertEquals(Collections.singleton("a"),
+                session.getDirtyAttributeNames());
+
+        session.clearDirtyAttributes();
+        session.removeAttribute("b");
+        assertEquals(Collections.singleton("b"),
+                session.getDirtyAttributeNames());
+
+        // Removing an attribute that does not exist changes nothing
+        session.clearDirtyAttributes();
+        session.removeAttribute("c");
+        assertFalse(session.isAttributesDirty());
+    }
+
+    @Test
+    public void testChangeIdMarksAllDirty() {
+        StandardSession session = createSession();
+        session.setId("A", false);
+        session.setAttribute("a", "1");
+        session.clearDirtyAttributes();
+        session.setId("B", false);
+        assertTrue(session.isAttributesDirty());
+        assertNull(session.getDirtyAttributeNames());
+    }
+
+    @Test
+    public void testMarkAllDirty() {
+        StandardSession session = createSession();
+        session.clearDirtyAttributes();
+        session.markAllAttributesDirty();
+        assertTrue(session.isAttributesDirty());
+        assertNull(session.getDirtyAttributeNames());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+    @Test
+    public void testBuckets() {
+        for (long v = 0; v < 100000; v++) {
+            int index = LatencyHistogram.index(v);
+            long highest = LatencyHistogram.highestValue(index);
+            assertTrue(highest >= v);
+            assertTrue(highest - v <= v / 8);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.highestValue(index - 1) < v);
+            }
+        }
+    }
+
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordValue(i);
+        }
+        assertEquals(1000, histogram.getTotalCount());
+        assertWithin(500, histogram.getValueAtPercentile(50));
+        assertWithin(990, histogram.getValueAtPercentile(99));
+        assertWithin(999, histogram.getValueAtPercentile(99.9));
+        assertWithin(1000, histogram.getValueAtPercentile(100));
+
+        LatencyHistogram total = new LatencyHistogram();
+        total.add(histogram);
+        total.add(histogram);
+        assertEquals(2000, total.getTotalCount());
+        assertEquals(histogram.getValueAtPercentile(50),
+                total.getValueAtPercentile(50));
+
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+    }
+
+
+    @Test
+    public void testLargeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue(Long.MAX_VALUE);
+        histogram.recordValue(-1);
+        assertEquals(1, histogram.getTotalCount());
+        assertTrue(histogram.getValueAtPercentile(100) > 0);
+    }
+
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected);
+        assertTrue(actual - expected <= expected / 8);
+    }
+}
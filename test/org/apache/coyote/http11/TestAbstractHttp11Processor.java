@@ -308,6 +308,42 @@ public class TestAbstractHttp11Processor extends TomcatBaseTest {
     }
 
 
+    @Test
+    public void testPipeliningBatched() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        tomcat.getConnector().setProperty("batchPipelinedResponses", "true");
+
+        // Must have a real docBase - just use temp
+        Context ctxt = tomcat.addContext("",
+                System.getProperty("java.io.tmpdir"));
+
+        Tomcat.addServlet(ctxt, "TesterServlet", new TesterServlet());
+        ctxt.addServletMapping("/foo", "TesterServlet");
+
+        tomcat.start();
+
+        String request =
+            "GET /foo HTTP/1.1" + SimpleHttpClient.CRLF +
+            "Host: any" + SimpleHttpClient.CRLF +
+            SimpleHttpClient.CRLF;
+
+        // All three requests arrive together so the first two responses are
+        // held back and written with the third
+        Client client = new Client(tomcat.getConnector().getLocalPort());
+        client.setRequest(new String[] {request + request + request});
+        client.setUseContentLength(true);
+        client.connect();
+        client.sendRequest();
+
+        for (int i = 0; i < 3; i++) {
+            client.readResponse(true);
+            assertFalse(client.isResponse50x());
+            assertTrue(client.isResponse200());
+            assertEquals("OK", client.getResponseBody());
+        }
+    }
+
+
     @Test
     public void testChunking11NoContentLength() throws Exception {
         Tomcat tomcat = getTomcatInstance();
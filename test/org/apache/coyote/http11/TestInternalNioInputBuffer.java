@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.apache.coyote.Request;
+import org.apache.tomcat.util.net.NioBufferPool;
+import org.apache.tomcat.util.net.NioChannel;
+import org.apache.tomcat.util.net.NioEndpoint;
+import org.apache.tomcat.util.net.NioEndpoint.NioBufferHandler;
+import org.apache.tomcat.util.net.SocketWrapper;
+
+public class TestInternalNioInputBuffer {
+
+    /**
+     * The first read fills the small initial read buffer, so the channel
+     * switches to a full size one part way through the request line. The
+     * next read then returns the rest of the headers and the body at once.
+     */
+    @Test
+    public void testGrowReadBufferDuringHeaders() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            body.append('x');
+        }
+        String request = "POST /test/path/for/a/request/line HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "X-Header: a value that makes the headers a little longer\r\n" +
+                "Content-Length: " + body.length() + "\r\n" +
+                "\r\n" + body;
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            try (SocketChannel client = SocketChannel.open(server.getLocalAddress());
+                    SocketChannel accepted = server.accept()) {
+                ByteBuffer data = ByteBuffer.wrap(
+                        request.getBytes(StandardCharsets.ISO_8859_1));
+                while (data.hasRemaining()) {
+                    client.write(data);
+                }
+                // Wait for everything to arrive so that the second read
+                // returns all of it
+                Thread.sleep(100);
+
+                NioEndpoint endpoint = new NioEndpoint();
+                NioBufferPool pool = new NioBufferPool(64, 64,
+                        endpoint.getSocketProperties().getAppReadBufSize(),
+                        endpoint.getSocketProperties().getAppWriteBufSize(),
+                        false, false, 10);
+                NioChannel channel =
+                        new NioChannel(accepted, new NioBufferHandler(pool));
+
+                Request coyoteRequest = new Request();
+                InternalNioInputBuffer inputBuffer =
+                        new InternalNioInputBuffer(coyoteRequest, 1024);
+                inputBuffer.init(new SocketWrapper<>(channel), endpoint);
+
+                assertTrue(inputBuffer.parseRequestLine(false));
+                assertEquals(endpoint.getSocketProperties().getAppReadBufSize(),
+                        channel.getBufHandler().getReadBuffer().capacity());
+                assertTrue(inputBuffer.parseHeaders());
+                assertEquals("/test/path/for/a/request/line",
+                        coyoteRequest.requestURI().toString());
+                assertEquals("localhost", coyoteRequest.getHeader("Host"));
+                assertEquals(String.valueOf(body.length()),
+                        coyoteRequest.getHeader("Content-Length"));
+            }
+        }
+    }
+}
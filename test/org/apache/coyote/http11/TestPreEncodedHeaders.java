@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.apache.tomcat.util.http.FastHttpDateFormat;
+import org.apache.tomcat.util.http.HttpMessages;
+
+public class TestPreEncodedHeaders {
+
+    @Test
+    public void testStatusLine() {
+        HttpMessages messages = HttpMessages.getInstance(Locale.getDefault());
+        assertEquals("HTTP/1.1 200 " + messages.getMessage(200) + "\r\n",
+                toString(PreEncodedHeaders.getStatusLine(200, messages)));
+        assertEquals("HTTP/1.1 503 " + messages.getMessage(503) + "\r\n",
+                toString(PreEncodedHeaders.getStatusLine(503, messages)));
+        // Unknown status
+        assertNull(PreEncodedHeaders.getStatusLine(299, messages));
+        assertNull(PreEncodedHeaders.getStatusLine(999, messages));
+    }
+
+
+    @Test
+    public void testName() {
+        assertEquals("Content-Type: ",
+                toString(PreEncodedHeaders.getName("Content-Type")));
+        assertNull(PreEncodedHeaders.getName("X-Custom"));
+    }
+
+
+    @Test
+    public void testDate() throws Exception {
+        String date = FastHttpDateFormat.getCurrentDate();
+        byte[] header = PreEncodedHeaders.getDateHeader(date);
+        assertEquals("Date: " + date + "\r\n", toString(header));
+        // Cached until the date changes
+        assertTrue(header == PreEncodedHeaders.getDateHeader(date));
+        String other = FastHttpDateFormat.formatDate(0, null);
+        assertEquals("Date: " + other + "\r\n",
+                toString(PreEncodedHeaders.getDateHeader(other)));
+    }
+
+
+    private static String toString(byte[] bytes) {
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.tomcat.util.buf;
 
 import java.nio.charset.Charset;
 import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -139,4 +140,63 @@ public class TestB2CConverter {
         }
         Assert.assertNotNull(e);
     }
+
+    @Test
+    public void testDirectUtf8() throws Exception {
+        doTestDirect("UTF-8", "abc\u00e9def\u20acghi\ud83d\ude00jkl");
+    }
+
+    @Test
+    public void testDirectIso88591() throws Exception {
+        doTestDirect("ISO-8859-1", "abc\u00e9def\u00ffghi");
+    }
+
+    @Test
+    public void testDirectUsAscii() throws Exception {
+        doTestDirect("US-ASCII", "abcdefghijklmnopqrstuvwxyz");
+    }
+
+    private void doTestDirect(String encoding, String expected)
+            throws Exception {
+        byte[] bytes = expected.getBytes(B2CConverter.getCharset(encoding));
+        // Vary the output buffer size so conversion stops at every position
+        for (int size = 2; size <= bytes.length + 1; size++) {
+            B2CConverter conv = new B2CConverter(encoding);
+            ByteChunk bc = new ByteChunk();
+            bc.append(bytes, 0, bytes.length);
+            CharChunk cc = new CharChunk(size);
+            StringBuilder result = new StringBuilder();
+            while (bc.getLength() > 0) {
+                conv.convert(bc, cc, true);
+                result.append(cc.toString());
+                cc.recycle();
+            }
+            Assert.assertEquals(expected, result.toString());
+        }
+    }
+
+    @Test
+    public void testDirectUtf8SplitInput() throws Exception {
+        String expected = "ab\u00e9cd\u20acef";
+        byte[] bytes = expected.getBytes(StandardCharsets.UTF_8);
+        for (int split = 0; split <= bytes.length; split++) {
+            B2CConverter conv = new B2CConverter("UTF-8");
+            ByteChunk bc = new ByteChunk();
+            CharChunk cc = new CharChunk(32);
+            bc.append(bytes, 0, split);
+            conv.convert(bc, cc, false);
+            bc.append(bytes, split, bytes.length - split);
+            conv.convert(bc, cc, true);
+            Assert.assertEquals(expected, cc.toString());
+        }
+    }
+
+    @Test(expected=MalformedInputException.class)
+    public void testDirectUsAsciiInvalid() throws Exception {
+        B2CConverter conv = new B2CConverter("US-ASCII");
+        ByteChunk bc = new ByteChunk();
+        CharChunk cc = new CharChunk(32);
+        bc.append(new byte[] {'a', 'b', -1}, 0, 3);
+        conv.convert(bc, cc, true);
+    }
 }
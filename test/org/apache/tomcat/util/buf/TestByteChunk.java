@@ -136,4 +136,18 @@ public class TestByteChunk {
                 'e' }));
         assertEquals(-1, ByteChunk.findBytes(bytes, 2, 5, new byte[] { 'w' }));
     }
+
+    @Test
+    public void testFindBytesTable() throws UnsupportedEncodingException {
+        byte[] bytes = "Name: value\r\n".getBytes("ISO-8859-1");
+        boolean[] table = ByteChunk.createByteTable((byte) '\r', (byte) ':');
+        assertEquals(4, ByteChunk.findBytes(bytes, 0, bytes.length, table));
+        assertEquals(11, ByteChunk.findBytes(bytes, 5, bytes.length, table));
+        assertEquals(-1, ByteChunk.findBytes(bytes, 5, 11, table));
+
+        // Bytes above 0x7F
+        bytes = new byte[] { 'a', (byte) 0xE9, 'b' };
+        table = ByteChunk.createByteTable((byte) 0xE9);
+        assertEquals(1, ByteChunk.findBytes(bytes, 0, bytes.length, table));
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestC2BConverter {
+
+    @Test
+    public void testDirectUtf8() throws Exception {
+        doTest("UTF-8", "abc\u00e9def\u20acghi\ud83d\ude00jkl");
+    }
+
+    @Test
+    public void testDirectIso88591() throws Exception {
+        doTest("ISO-8859-1", "abc\u00e9def\u00ffghi\u20acjkl");
+    }
+
+    @Test
+    public void testDirectUsAscii() throws Exception {
+        doTest("US-ASCII", "abcdef\u00e9ghi");
+    }
+
+    private void doTest(String encoding, String input) throws Exception {
+        byte[] expected = input.getBytes(B2CConverter.getCharset(encoding));
+        // Vary the output buffer size so conversion stops at every position
+        for (int size = 4; size <= expected.length + 1; size++) {
+            C2BConverter conv = new C2BConverter(encoding);
+            CharChunk cc = new CharChunk(input.length());
+            cc.append(input);
+            ByteChunk bc = new ByteChunk(size);
+            ByteChunk result = new ByteChunk(expected.length);
+            result.setLimit(-1);
+            while (cc.getLength() > 0) {
+                conv.convert(cc, bc);
+                result.append(bc);
+                bc.recycle();
+            }
+            byte[] actual = new byte[result.getLength()];
+            System.arraycopy(result.getBuffer(), result.getStart(), actual, 0,
+                    actual.length);
+            Assert.assertArrayEquals(expected, actual);
+        }
+    }
+}
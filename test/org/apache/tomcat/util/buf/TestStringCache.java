@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.buf;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStringCache {
+
+    private final StringCache cache = new StringCache();
+    private boolean byteEnabled;
+    private boolean charEnabled;
+
+
+    @Before
+    public void setUp() {
+        byteEnabled = cache.getByteEnabled();
+        charEnabled = cache.getCharEnabled();
+        cache.setByteEnabled(true);
+        cache.setCharEnabled(true);
+        cache.reset();
+    }
+
+
+    @After
+    public void tearDown() {
+        cache.setByteEnabled(byteEnabled);
+        cache.setCharEnabled(charEnabled);
+        cache.reset();
+    }
+
+
+    @Test
+    public void testByteChunk() {
+        ByteChunk bc = byteChunk("keep-alive");
+        String first = StringCache.toString(bc);
+        String second = StringCache.toString(bc);
+        assertEquals("keep-alive", first);
+        assertSame(first, second);
+        assertEquals(2, cache.getAccessCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+
+    @Test
+    public void testByteChunkCharset() {
+        byte[] bytes = "café".getBytes(StandardCharsets.UTF_8);
+        ByteChunk utf8 = new ByteChunk();
+        utf8.setBytes(bytes, 0, bytes.length);
+        utf8.setCharset(StandardCharsets.UTF_8);
+        ByteChunk latin1 = new ByteChunk();
+        latin1.setBytes(bytes, 0, bytes.length);
+        latin1.setCharset(StandardCharsets.ISO_8859_1);
+        assertEquals("café", StringCache.toString(utf8));
+        assertEquals(new String(bytes, StandardCharsets.ISO_8859_1),
+                StringCache.toString(latin1));
+        assertEquals("café", StringCache.toString(utf8));
+    }
+
+
+    @Test
+    public void testCharChunk() {
+        CharChunk cc = new CharChunk();
+        char[] chars = "xxgzip, deflatexx".toCharArray();
+        cc.setChars(chars, 2, 13);
+        String first = StringCache.toString(cc);
+        assertEquals("gzip, deflate", first);
+        assertSame(first, StringCache.toString(cc));
+    }
+
+
+    @Test
+    public void testAdmission() {
+        cache.setCacheSize(4);
+        try {
+            ByteChunk frequent = byteChunk("frequent");
+            for (int i = 0; i < 10; i++) {
+                StringCache.toString(frequent);
+            }
+            // A scan of Strings seen once must not evict a frequent one
+            for (int i = 0; i < 100; i++) {
+                StringCache.toString(byteChunk("scan-" + i));
+            }
+            String cached = StringCache.toString(frequent);
+            assertSame(cached, StringCache.toString(frequent));
+            assertTrue(cache.getHitRatio() > 0);
+        } finally {
+            cache.setCacheSize(200);
+        }
+    }
+
+
+    @Test
+    public void testMaxStringSize() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < StringCache.maxStringSize; i++) {
+            sb.append('a');
+        }
+        ByteChunk bc = byteChunk(sb.toString());
+        assertNotSame(StringCache.toString(bc), StringCache.toString(bc));
+        assertEquals(0, cache.getAccessCount());
+    }
+
+
+    private static ByteChunk byteChunk(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        ByteChunk bc = new ByteChunk();
+        bc.setBytes(bytes, 0, bytes.length);
+        return bc;
+    }
+}
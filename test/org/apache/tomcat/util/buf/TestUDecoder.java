@@ -16,6 +16,9 @@
  */
 package org.apache.tomcat.util.buf;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -84,4 +87,40 @@ public class TestUDecoder {
         String result = UDecoder.URLDecode("xxxx%c3%aa", "UTF-8");
         assertEquals("xxxx\u00ea", result);
     }
+
+    @Test
+    public void testConvertByteChunkNoEscapes() throws IOException {
+        doTestConvert("/foo/bar?a=b", false, "/foo/bar?a=b");
+        doTestConvert("a=b&c=d", true, "a=b&c=d");
+        doTestConvert("", true, "");
+    }
+
+    @Test
+    public void testConvertByteChunkPath() throws IOException {
+        doTestConvert("/foo+bar/%41%42c", false, "/foo+bar/ABc");
+        doTestConvert("%41", false, "A");
+        doTestConvert("xx%41yy%42zz", false, "xxAyyBzz");
+    }
+
+    @Test
+    public void testConvertByteChunkQuery() throws IOException {
+        doTestConvert("a+b=c%20d+e", true, "a b=c d e");
+        doTestConvert("+", true, " ");
+        doTestConvert("name=some+long+value&other=%2F%2f", true,
+                "name=some long value&other=//");
+    }
+
+    @Test(expected = IOException.class)
+    public void testConvertByteChunkSlash() throws IOException {
+        doTestConvert("/foo%2Fbar", false, null);
+    }
+
+    private static void doTestConvert(String input, boolean query,
+            String expected) throws IOException {
+        byte[] bytes = ("xx" + input + "yy").getBytes(StandardCharsets.ISO_8859_1);
+        ByteChunk bc = new ByteChunk();
+        bc.setBytes(bytes, 2, bytes.length - 4);
+        new UDecoder().convert(bc, query);
+        assertEquals(expected, bc.toString());
+    }
 }
@@ -17,6 +17,8 @@
 
 package org.apache.tomcat.util.http;
 
+import static org.junit.Assert.assertEquals;
+
 import org.junit.Test;
 
 public class TestCookies {
@@ -112,6 +114,32 @@ public class TestCookies {
     }
 
 
+    @Test
+    public void testFindCookie() {
+        MimeHeaders headers = new MimeHeaders();
+        Cookies cs = new Cookies(headers);
+        byte[] header = "a=1; JSESSIONID=abc; b=\"JSESSIONID\"".getBytes();
+        headers.addValue("Cookie").setBytes(header, 0, header.length);
+        header = "JSESSIONID=def".getBytes();
+        headers.addValue("Cookie").setBytes(header, 0, header.length);
+
+        int i = cs.findCookie("JSESSIONID", 0);
+        assertEquals(1, i);
+        assertEquals("abc", cs.getCookie(i).getValue().toString());
+        i = cs.findCookie("JSESSIONID", i + 1);
+        assertEquals(3, i);
+        assertEquals("def", cs.getCookie(i).getValue().toString());
+        assertEquals(-1, cs.findCookie("JSESSIONID", i + 1));
+        assertEquals(-1, cs.findCookie("other", 0));
+
+        // The headers are not parsed if they do not contain the name
+        cs.recycle();
+        assertEquals(-1, cs.findCookie("other", 0));
+        assertEquals(0, cs.cookieCount);
+        assertEquals(4, cs.getCookieCount());
+    }
+
+
     public static void test( String s, int val ) throws Exception {
         System.out.println("Processing [" + s + "]");
         Cookies cs=new Cookies(null);
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestFastHttpDateFormat {
+
+    @Test
+    public void testFormat() {
+        DateFormat df = new SimpleDateFormat(FastHttpDateFormat.RFC1123_DATE,
+                Locale.US);
+        df.setTimeZone(TimeZone.getTimeZone("GMT"));
+        long now = System.currentTimeMillis();
+        for (long value : new long[] {0, 999, 1000, -1, now, now + 86400000L}) {
+            assertEquals(df.format(new Date(value)),
+                    FastHttpDateFormat.formatDate(value, null));
+        }
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT",
+                FastHttpDateFormat.formatDate(999, null));
+        assertEquals("Wed, 31 Dec 1969 23:59:59 GMT",
+                FastHttpDateFormat.formatDate(-1, null));
+    }
+
+
+    @Test
+    public void testCurrentDate() {
+        long before = System.currentTimeMillis() / 1000 * 1000;
+        long current = FastHttpDateFormat.parseDate(
+                FastHttpDateFormat.getCurrentDate(), null);
+        long after = System.currentTimeMillis();
+        assertTrue(current >= before && current <= after);
+    }
+
+
+    @Test
+    public void testParse() {
+        assertEquals(784111777000L, FastHttpDateFormat.parseDate(
+                "Sun, 06 Nov 1994 08:49:37 GMT", null));
+        assertEquals(784111777000L, FastHttpDateFormat.parseDate(
+                "Sunday, 06-Nov-94 08:49:37 GMT", null));
+        assertEquals(784111777000L, FastHttpDateFormat.parseDate(
+                "Sun Nov 6 08:49:37 1994", null));
+        assertEquals(-1, FastHttpDateFormat.parseDate("not a date", null));
+    }
+
+
+    @Test
+    public void testBoundedCache() {
+        FastHttpDateFormat.BoundedCache<Integer,String> cache =
+                new FastHttpDateFormat.BoundedCache<>(4);
+        for (int i = 0; i < 10; i++) {
+            cache.put(Integer.valueOf(i), Integer.toString(i));
+            assertTrue(cache.size() <= 4);
+        }
+        // Only the oldest entries have been evicted
+        for (int i = 0; i < 6; i++) {
+            assertNull(cache.get(Integer.valueOf(i)));
+        }
+        for (int i = 6; i < 10; i++) {
+            assertEquals(Integer.toString(i), cache.get(Integer.valueOf(i)));
+        }
+    }
+}
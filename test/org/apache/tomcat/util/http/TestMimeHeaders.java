@@ -19,6 +19,7 @@ package org.apache.tomcat.util.http;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.SocketException;
+import java.util.Enumeration;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
@@ -38,6 +39,7 @@ import org.apache.catalina.startup.SimpleHttpClient;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
 import org.apache.catalina.valves.TesterAccessLogValve;
+import org.apache.tomcat.util.buf.MessageBytes;
 
 public class TestMimeHeaders extends TomcatBaseTest {
 
@@ -153,6 +155,57 @@ public class TestMimeHeaders extends TomcatBaseTest {
         runHeadersTest(true, tomcat, 300, -1);
     }
 
+    @Test
+    public void testIndexedLookup() {
+        MimeHeaders mh = new MimeHeaders();
+        for (int i = 0; i < 40; i++) {
+            addBytesHeader(mh, "X-Header-" + i, "value" + i);
+        }
+        addBytesHeader(mh, "Accept", "a");
+        mh.addValue("x-header-5").setString("second");
+
+        assertEquals("value0", mh.getHeader("x-header-0"));
+        assertEquals("value39", mh.getHeader("X-HEADER-39"));
+        assertEquals("a", mh.getHeader("accept"));
+        assertNull(mh.getHeader("X-Missing"));
+        assertEquals(5, mh.findHeader("X-Header-5", 0));
+        assertEquals(41, mh.findHeader("X-Header-5", 6));
+        assertEquals(-1, mh.findHeader("X-Header-5", 42));
+
+        Enumeration<String> values = mh.values("X-HEADER-5");
+        assertEquals("value5", values.nextElement());
+        assertEquals("second", values.nextElement());
+        assertTrue(!values.hasMoreElements());
+
+        // Headers added after the index was built
+        mh.addValue("Late").setString("late");
+        assertEquals("late", mh.getHeader("late"));
+
+        // Removal swaps headers around
+        mh.removeHeader("x-header-0");
+        assertNull(mh.getHeader("X-Header-0"));
+        assertEquals("late", mh.getHeader("late"));
+        assertEquals("value1", mh.getHeader("x-header-1"));
+
+        mh.setValue("X-Header-5").setString("only");
+        assertEquals("only", mh.getUniqueValue("x-header-5").toString());
+
+        mh.recycle();
+        assertNull(mh.getHeader("Late"));
+        for (int i = 0; i < 10; i++) {
+            addBytesHeader(mh, "Y-" + i, "y" + i);
+        }
+        assertEquals("y9", mh.getHeader("y-9"));
+        assertNull(mh.getHeader("X-Header-1"));
+    }
+
+    private static void addBytesHeader(MimeHeaders mh, String name,
+            String value) {
+        byte[] bytes = (name + value).getBytes();
+        MessageBytes mb = mh.addValue(bytes, 0, name.length());
+        mb.setBytes(bytes, name.length(), value.length());
+    }
+
     private static final class HeaderCountLogValve extends TesterAccessLogValve {
         public volatile int arraySize = -1;
 
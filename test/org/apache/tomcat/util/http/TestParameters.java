@@ -18,7 +18,10 @@ package org.apache.tomcat.util.http;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Map;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -75,6 +78,70 @@ public class TestParameters {
                 SIMPLE, NO_VALUE, EMPTY_VALUE, UTF8);
     }
 
+    @Test
+    public void testProcessParametersLazy() {
+        doTestProcessParametersByteArrayIntInt(-1, true,
+                SIMPLE, SIMPLE_MULTIPLE, NO_VALUE, EMPTY_VALUE, EMPTY, UTF8);
+        doTestProcessParametersByteArrayIntInt(-1, true,
+                UTF8, SIMPLE, SIMPLE_MULTIPLE, NO_VALUE, EMPTY_VALUE, EMPTY);
+        doTestProcessParametersByteArrayIntInt(2, true,
+                SIMPLE, NO_VALUE, EMPTY_VALUE, UTF8);
+    }
+
+    @Test
+    public void testLazyDecodesOnDemand() {
+        byte[] data = "a=1&b=x%2&c=hello+world&a=%32".getBytes(
+                StandardCharsets.ISO_8859_1);
+        Parameters p = new Parameters();
+        p.setLazy(true);
+        p.processParameters(data, 0, data.length);
+
+        // Nothing has been decoded yet, so the invalid value is not found
+        assertFalse(p.isParseFailed());
+        assertEquals("hello world", p.getParameter("c"));
+        assertEquals("1", p.getParameter("a"));
+        assertArrayEquals(new String[] {"1", "2"}, p.getParameterValues("a"));
+        assertFalse(p.isParseFailed());
+
+        assertNull(p.getParameter("b"));
+        assertTrue(p.isParseFailed());
+
+        // Adding a parameter keeps the order
+        p.addParameter("d", "4");
+        Enumeration<String> names = p.getParameterNames();
+        assertEquals("a", names.nextElement());
+        assertEquals("c", names.nextElement());
+        assertEquals("d", names.nextElement());
+        assertFalse(names.hasMoreElements());
+        assertArrayEquals(new String[] {"1", "2"}, p.getParameterValues("a"));
+
+        p.recycle();
+        assertNull(p.getParameter("a"));
+        assertFalse(p.isParseFailed());
+    }
+
+    @Test
+    public void testIterator() {
+        byte[] data = "a=1&&b&c=hello+world&=x&d=%zz&%EF%AD%AB=%C3%A9".getBytes(
+                StandardCharsets.ISO_8859_1);
+        Iterator<Map.Entry<String,String>> iter =
+                Parameters.iterator(data, 0, data.length, "UTF-8");
+        assertNextParameter(iter, "a", "1");
+        assertNextParameter(iter, "b", "");
+        assertNextParameter(iter, "c", "hello world");
+        assertNextParameter(iter, "\ufb6b", "\u00e9");
+        assertFalse(iter.hasNext());
+    }
+
+    private static void assertNextParameter(
+            Iterator<Map.Entry<String,String>> iter, String name,
+            String value) {
+        assertTrue(iter.hasNext());
+        Map.Entry<String,String> entry = iter.next();
+        assertEquals(name, entry.getKey());
+        assertEquals(value, entry.getValue());
+    }
+
     // Make sure the inner Parameter class behaves correctly
     @Test
     public void testInternal() {
@@ -89,6 +156,12 @@ public class TestParameters {
 
     private long doTestProcessParametersByteArrayIntInt(int limit,
             Parameter... parameters) {
+        return doTestProcessParametersByteArrayIntInt(limit, false,
+                parameters);
+    }
+
+    private long doTestProcessParametersByteArrayIntInt(int limit,
+            boolean lazy, Parameter... parameters) {
 
         // Build the byte array
         StringBuilder input = new StringBuilder();
@@ -107,6 +180,7 @@ public class TestParameters {
         Parameters p = new Parameters();
         p.setEncoding("UTF-8");
         p.setLimit(limit);
+        p.setLazy(lazy);
 
         long start = System.nanoTime();
         p.processParameters(data, 0, data.length);
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import org.apache.tomcat.util.net.NioEndpoint.NioBufferHandler;
+
+public class TestNioBufferPool {
+
+    @Test
+    public void testGrowAndShrink() {
+        NioBufferPool pool = new NioBufferPool(16, 16, 64, 128, false, false, 10);
+        NioBufferHandler handler = new NioBufferHandler(pool);
+        assertEquals(16, handler.getReadBuffer().capacity());
+        assertEquals(16, handler.getWriteBuffer().capacity());
+
+        handler.growReadBuffer();
+        handler.growWriteBuffer();
+        assertEquals(64, handler.getReadBuffer().capacity());
+        assertEquals(128, handler.getWriteBuffer().capacity());
+        assertEquals(192, pool.getGrownBytes());
+        assertEquals(0, pool.getPooledBytes());
+
+        // Growing again keeps the full size buffers
+        ByteBuffer read = handler.getReadBuffer();
+        handler.growReadBuffer();
+        assertSame(read, handler.getReadBuffer());
+        assertEquals(192, pool.getGrownBytes());
+
+        handler.release();
+        assertEquals(16, handler.getReadBuffer().capacity());
+        assertEquals(16, handler.getWriteBuffer().capacity());
+        assertEquals(0, pool.getGrownBytes());
+        assertEquals(192, pool.getPooledBytes());
+
+        // Another connection reuses the pooled buffers
+        NioBufferHandler other = new NioBufferHandler(pool);
+        other.growReadBuffer();
+        assertSame(read, other.getReadBuffer());
+        assertEquals(64, pool.getGrownBytes());
+        assertEquals(128, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testShrinkKeepsUnwrittenData() {
+        NioBufferPool pool = new NioBufferPool(16, 16, 64, 64, false, false, 10);
+        NioBufferHandler handler = new NioBufferHandler(pool);
+        handler.growWriteBuffer();
+        handler.getWriteBuffer().put((byte) 1);
+        handler.release();
+        assertEquals(64, handler.getWriteBuffer().capacity());
+        assertEquals(64, pool.getGrownBytes());
+    }
+
+    @Test
+    public void testFree() {
+        NioBufferPool pool = new NioBufferPool(16, 16, 64, 64, false, false, 10);
+        NioBufferHandler handler = new NioBufferHandler(pool);
+        handler.growReadBuffer();
+        handler.growWriteBuffer();
+        handler.free();
+        assertEquals(16, handler.getReadBuffer().capacity());
+        assertEquals(16, handler.getWriteBuffer().capacity());
+        assertEquals(0, pool.getGrownBytes());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testNotAdaptive() {
+        NioBufferHandler handler = new NioBufferHandler(32, 32, false);
+        handler.growReadBuffer();
+        handler.growWriteBuffer();
+        handler.release();
+        assertEquals(32, handler.getReadBuffer().capacity());
+        assertEquals(32, handler.getWriteBuffer().capacity());
+    }
+
+    @Test
+    public void testReleaseIdle() {
+        NioBufferPool pool = new NioBufferPool(16, 16, 64, 64, false, true, 10);
+        NioBufferHandler handler = new NioBufferHandler(pool);
+        handler.growReadBuffer();
+        handler.release();
+        assertEquals(1, pool.getReleasedCount());
+        assertEquals(0, pool.getGrownBytes());
+        assertEquals(96, pool.getPooledBytes());
+
+        // The initial buffers are taken from the pool again
+        handler.acquire();
+        assertEquals(0, pool.getReleasedCount());
+        assertEquals(16, handler.getReadBuffer().capacity());
+        assertEquals(16, handler.getWriteBuffer().capacity());
+        assertEquals(64, pool.getPooledBytes());
+
+        // Access to the buffers of a released handler acquires them
+        handler.release();
+        assertEquals(16, handler.getWriteBuffer().capacity());
+        assertEquals(0, pool.getReleasedCount());
+
+        // Closing a released connection
+        handler.release();
+        handler.free();
+        assertEquals(0, pool.getReleasedCount());
+        assertEquals(16, handler.getReadBuffer().capacity());
+        assertEquals(0, pool.getReleasedCount());
+    }
+
+    @Test
+    public void testReleaseIdleFixedSize() {
+        NioBufferPool pool = new NioBufferPool(64, 64, 64, 64, false, true, 10);
+        NioBufferHandler handler = new NioBufferHandler(pool);
+        handler.growReadBuffer();
+        handler.growWriteBuffer();
+        assertEquals(0, pool.getGrownBytes());
+        handler.release();
+        assertEquals(128, pool.getPooledBytes());
+        handler.acquire();
+        assertEquals(64, handler.getReadBuffer().capacity());
+        assertEquals(0, pool.getPooledBytes());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestAdaptivePoolSizer {
+
+    @Test
+    public void testIdlePoolShrinks() throws Exception {
+        TaskQueue queue = new TaskQueue();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                2, 20, 60, TimeUnit.SECONDS, queue);
+        queue.setParent(executor);
+        AdaptivePoolSizer sizer =
+                new AdaptivePoolSizer("test", executor, executor, 2, 20);
+        try {
+            sizer.adjust();
+            assertEquals(18, executor.getMaximumPoolSize());
+            for (int i = 0; i < 50; i++) {
+                sizer.adjust();
+            }
+            assertEquals(2, executor.getMaximumPoolSize());
+            assertEquals(2, executor.getCorePoolSize());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void testGrowOnQueuingAfterShrink() throws Exception {
+        TesterExecutor executor = new TesterExecutor(20);
+        AdaptivePoolSizer sizer =
+                new AdaptivePoolSizer("test", executor, executor, 2, 20);
+        try {
+            // Light load, then idle
+            executor.addTasks(100, 0);
+            Thread.sleep(50);
+            sizer.adjust();
+            Thread.sleep(50);
+            sizer.adjust();
+            int size = executor.getMaximumPoolSize();
+            assertTrue(size < 20);
+
+            // Rising load with tasks waiting in the queue
+            executor.addTasks(1000, 10);
+            Thread.sleep(50);
+            sizer.adjust();
+            assertTrue(executor.getMaximumPoolSize() > size);
+            size = executor.getMaximumPoolSize();
+
+            executor.addTasks(10000, 10);
+            Thread.sleep(50);
+            sizer.adjust();
+            assertTrue(executor.getMaximumPoolSize() > size);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    @Test
+    public void testBounds() throws Exception {
+        TaskQueue queue = new TaskQueue();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                5, 10, 60, TimeUnit.SECONDS, queue);
+        queue.setParent(executor);
+        AdaptivePoolSizer sizer =
+                new AdaptivePoolSizer("test", executor, executor, 5, 10);
+        try {
+            sizer.setBounds(8, 10);
+            for (int i = 0; i < 10; i++) {
+                sizer.adjust();
+            }
+            assertEquals(8, executor.getMaximumPoolSize());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * Reports the task timings set by the test rather than measured ones.
+     */
+    private static class TesterExecutor extends ThreadPoolExecutor {
+
+        private long taskCount;
+        private long queueTime;
+        private long serviceTime;
+
+        public TesterExecutor(int maxThreads) {
+            super(2, maxThreads, 60, TimeUnit.SECONDS, new TaskQueue());
+            ((TaskQueue) getQueue()).setParent(this);
+        }
+
+        public void addTasks(long count, long queueTimeMillis) {
+            taskCount += count;
+            queueTime += count * TimeUnit.MILLISECONDS.toNanos(queueTimeMillis);
+            serviceTime += count * TimeUnit.MICROSECONDS.toNanos(10);
+        }
+
+        @Override
+        public long getTimedTaskCount() {
+            return taskCount;
+        }
+
+        @Override
+        public long getTotalQueueTime() {
+            return queueTime;
+        }
+
+        @Override
+        public long getTotalServiceTime() {
+            return serviceTime;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestShardedLimitLatch {
+
+    @Test
+    public void testNoThreads() throws Exception {
+        LimitLatch latch = new ShardedLimitLatch(0, 4);
+        assertFalse("No threads should be waiting", latch.hasQueuedThreads());
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        LimitLatch latch = new ShardedLimitLatch(100, 4);
+        for (int i = 0; i < 10; i++) {
+            latch.countUpOrAwait();
+        }
+        assertEquals(10, latch.getCount());
+        for (int i = 0; i < 10; i++) {
+            latch.countDown();
+        }
+        assertEquals(0, latch.getCount());
+    }
+
+    @Test
+    public void testOneThreadWaitCountUp() throws Exception {
+        LimitLatch latch = new ShardedLimitLatch(1, 4);
+        assertFalse("No threads should be waiting", latch.hasQueuedThreads());
+        Thread testThread = new TestThread(latch, 100);
+        latch.countUpOrAwait();
+        testThread.start();
+        Thread.sleep(50);
+        assertEquals("1 threads should be waiting", 1,
+                latch.getQueuedThreads().size());
+        latch.countDown();
+        Thread.sleep(50);
+        assertFalse("No threads should be waiting", latch.hasQueuedThreads());
+    }
+
+    @Test
+    public void testOneRelease() throws Exception {
+        LimitLatch latch = new ShardedLimitLatch(1, 4);
+        Thread testThread = new TestThread(latch, 100);
+        latch.countUpOrAwait();
+        testThread.start();
+        Thread.sleep(50);
+        assertEquals("1 threads should be waiting", 1,
+                latch.getQueuedThreads().size());
+        latch.releaseAll();
+        Thread.sleep(50);
+        assertFalse("No threads should be waiting", latch.hasQueuedThreads());
+    }
+
+    @Test
+    public void testTenWait() throws Exception {
+        LimitLatch latch = new ShardedLimitLatch(10, 4);
+        Thread[] testThread = new TestThread[30];
+        for (int i = 0; i < 30; i++) {
+            testThread[i] = new TestThread(latch, 1000);
+            testThread[i].start();
+        }
+        Thread.sleep(50);
+        assertEquals("20 threads should be waiting", 20,
+                latch.getQueuedThreads().size());
+        Thread.sleep(1000);
+        assertEquals("10 threads should be waiting", 10,
+                latch.getQueuedThreads().size());
+        Thread.sleep(1000);
+        assertFalse("No threads should be waiting", latch.hasQueuedThreads());
+    }
+
+    @Test
+    public void testLimitNeverExceeded() throws Exception {
+        final int limit = 8;
+        final LimitLatch latch = new ShardedLimitLatch(limit, 4);
+        final AtomicInteger active = new AtomicInteger(0);
+        final AtomicInteger maxActive = new AtomicInteger(0);
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 1000; j++) {
+                            latch.countUpOrAwait();
+                            int current = active.incrementAndGet();
+                            int max;
+                            while (current > (max = maxActive.get()) &&
+                                    !maxActive.compareAndSet(max, current)) {
+                                // Retry
+                            }
+                            active.decrementAndGet();
+                            latch.countDown();
+                        }
+                    } catch (InterruptedException x) {
+                        x.printStackTrace();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue("Limit exceeded: " + maxActive.get(),
+                maxActive.get() <= limit);
+        assertEquals(0, latch.getCount());
+    }
+
+    private static class TestThread extends Thread {
+
+        private int holdTime;
+        private LimitLatch latch;
+
+        public TestThread(LimitLatch latch, int holdTime) {
+            this.latch = latch;
+            this.holdTime = holdTime;
+        }
+
+        @Override
+        public void run() {
+            try {
+                latch.countUpOrAwait();
+                Thread.sleep(holdTime);
+                latch.countDown();
+            } catch (InterruptedException x) {
+                x.printStackTrace();
+            }
+        }
+    }
+}
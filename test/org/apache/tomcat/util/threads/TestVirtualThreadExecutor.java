@@ -0,0 +1,129 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class TestVirtualThreadExecutor {
+
+    @Test
+    public void testConcurrencyLimit() throws Exception {
+        Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+
+        VirtualThreadExecutor executor =
+                new VirtualThreadExecutor("test-", 4, Integer.MAX_VALUE);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(10);
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        for (int i = 0; i < 10; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    int max;
+                    while (current > (max = maxRunning.get()) &&
+                            !maxRunning.compareAndSet(max, current)) {
+                        // Retry
+                    }
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        Thread.sleep(100);
+        assertEquals(4, executor.getActiveCount());
+        assertEquals(6, executor.getQueueSize());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= 4);
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(10, executor.getCompletedTaskCount());
+    }
+
+
+    @Test
+    public void testExecuteTimeout() throws Exception {
+        Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+
+        VirtualThreadExecutor executor =
+                new VirtualThreadExecutor("test-", 1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(3);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                done.countDown();
+            }
+        };
+        executor.execute(task);
+        Thread.sleep(100);
+        executor.execute(task);
+
+        // No space in the queue before the timeout
+        long start = System.nanoTime();
+        try {
+            executor.execute(task, 100, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+        assertTrue(System.nanoTime() - start >=
+                TimeUnit.MILLISECONDS.toNanos(100));
+
+        // Space in the queue before the timeout
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                release.countDown();
+            }
+        }.start();
+        executor.execute(task, 5, TimeUnit.SECONDS);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}